@@ -0,0 +1,8 @@
+import { User } from './user';
+
+export class AttenderPage {
+
+  public attenders: User[];
+  public nextCursor: string; //Opaque value to get the next page (null on the last one)
+
+}
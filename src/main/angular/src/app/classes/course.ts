@@ -11,7 +11,8 @@ export class Course {
   public teacher: User;
   public courseDetails: CourseDetails;
   public sessions: Session[];
-  public attenders: User[];
+  public attenders: User[]; //Only sent to the server. Read the roster with CourseService.getCourseAttenders
+  public attendersCount?: number;
 
   constructor(title: string, image: string, courseDetails: CourseDetails){
     this.title = title;
@@ -53,6 +53,11 @@ export class CourseDetailsComponent implements OnInit {
   course: Course;
   selectedEntry: Entry;
 
+  //Roster of the course, read page by page (the course only carries its 'attendersCount')
+  attenders: User[] = [];
+  attendersCursor: string;
+  loadingAttenders: boolean = false;
+
   updatedFileGroup: FileGroup;
   updatedFile: File;
 
@@ -217,11 +222,32 @@ export class CourseDetailsComponent implements OnInit {
           if (this.course.sessions.length > 0) this.changeUpdatedSession(this.course.sessions[0]); //updatedSession default to first session
           this.updateCheckboxForumEdition(this.course.courseDetails.forum.activated);
           this.welcomeText = this.course.courseDetails.info;
+          this.attenders = [];
+          this.attendersCursor = null;
+          this.loadAttenders();
         },
         error => {});
     });
   }
 
+  //GET the next page of the roster
+  loadAttenders() {
+    this.loadingAttenders = true;
+    this.courseService.getCourseAttenders(this.course.id, this.attendersCursor).subscribe(
+      page => {
+        this.attenders = this.attenders.concat(page.attenders);
+        this.attendersCursor = page.nextCursor;
+        this.loadingAttenders = false;
+      },
+      error => {this.loadingAttenders = false;});
+  }
+
+  //Attenders just added are shown at the end of the roster
+  addLoadedAttenders(newAttenders: User[]) {
+    this.attenders = this.attenders.concat(newAttenders);
+    this.course.attendersCount += newAttenders.length;
+  }
+
   ngOnDestroy() {
     this.subscription1.unsubscribe();
     this.subscription2.unsubscribe();
@@ -493,8 +519,7 @@ export class CourseDetailsComponent implements OnInit {
         let arrayNewAttenders = [this.inputAttenderSimple];
         this.courseService.addCourseAttenders(this.course.id, arrayNewAttenders).subscribe(
           response => {
-            let newAttenders = response.attendersAdded as User[];
-            this.course.attenders = this.course.attenders.concat(newAttenders);
+            this.addLoadedAttenders(response.attendersAdded as User[]);
             this.handleAttendersMessage(response);
 
             this.processingPut = false;
@@ -517,8 +542,7 @@ export class CourseDetailsComponent implements OnInit {
 
         this.courseService.addCourseAttenders(this.course.id, arrayNewAttenders).subscribe(
           response => { //response is an object with 4 arrays: attenders added, attenders that were already added, emails invalid and emails not registered
-            let newAttenders = response.attendersAdded as User[];
-            this.course.attenders = this.course.attenders.concat(newAttenders);
+            this.addLoadedAttenders(response.attendersAdded as User[]);
             this.handleAttendersMessage(response);
 
             this.processingPut = false;
@@ -563,18 +587,13 @@ export class CourseDetailsComponent implements OnInit {
 
     this.arrayOfAttDels[j] = true; // Start deleting animation
 
-    let c = new Course(this.course.title, this.course.image, this.course.courseDetails);
-    c.id = this.course.id;
-    for (let i = 0; i < this.course.attenders.length; i++){
-      if (this.course.attenders[i].id !== attender.id) {
-        c.attenders.push(new User(this.course.attenders[i])); //Inserting a new User object equal to the attender but "courses" array empty
-      }
-    }
-    this.courseService.deleteCourseAttenders(c).subscribe(
-      response => {
-        this.course.attenders = response;
+    this.courseService.deleteCourseAttenders(this.course.id, [attender.id]).subscribe(
+      removed => {
+        //Only the attender is sent, so the rest of the roster does not need to be loaded
+        this.attenders = this.attenders.filter(a => removed.indexOf(a.id) < 0);
+        this.course.attendersCount -= removed.length;
         this.arrayOfAttDels[j] = false;
-        if (this.course.attenders.length <= 1) this.changeModeAttenders(); //If there are no attenders, mode edit is closed
+        if (this.course.attendersCount <= 1) this.changeModeAttenders(); //If there are no attenders, mode edit is closed
       },
       error => {this.arrayOfAttDels[j] = false;}
     );
@@ -631,7 +650,7 @@ export class CourseDetailsComponent implements OnInit {
       console.log("New attenders added:");
       console.log(newAttenders);
 
-      this.course.attenders = this.course.attenders.concat(newAttenders);
+      this.addLoadedAttenders(newAttenders);
       this.handleAttendersMessage(objResponse);
 
       this.processingPut = false; // Stop the loading animation
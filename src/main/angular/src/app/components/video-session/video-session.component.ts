@@ -13,6 +13,7 @@ import { UserData } from '../../classes/user-data';
 import { Session as MySession } from '../../classes/session';
 
 import { AuthenticationService } from '../../services/authentication.service';
+import { CourseService } from '../../services/course.service';
 import { VideoSessionService } from '../../services/video-session.service';
 import { AnimationService } from '../../services/animation.service';
 import { InterventionAskedPipe } from '../../pipes/intervention-asked.pipe';
@@ -70,6 +71,7 @@ export class VideoSessionComponent implements OnInit {
   smallStream: Stream;
 
   constructor(private authenticationService: AuthenticationService,
+    private courseService: CourseService,
     private videoSessionService: VideoSessionService,
     private animationService: AnimationService,
     private route: ActivatedRoute,
@@ -182,9 +184,14 @@ export class VideoSessionComponent implements OnInit {
     this.studentAccessGranted = grant;
   }
 
-  getPhotoByName(userName: string) {
-    let user = (this.course.attenders.filter(u => u.nickName == userName))[0];
-    return user.picture;
+  //The picture is looked up in the roster, as the course does not carry its attenders
+  setPhotoByName(uData: UserData) {
+    this.courseService.getCourseAttenders(this.course.id, null, uData.name).subscribe(
+      page => {
+        let user = (page.attenders.filter(u => u.nickName == uData.name))[0];
+        if (user) uData.picture = user.picture;
+      },
+      error => {});
   }
 
   /* Video controls */
@@ -344,7 +351,7 @@ export class VideoSessionComponent implements OnInit {
       this.OVConnections.push(event.connection);
 
       let uData: UserData = JSON.parse(event.connection.data);
-      uData.picture = this.getPhotoByName(uData.name);
+      this.setPhotoByName(uData);
       this.userData.push(uData);
     });
 
@@ -1,9 +1,10 @@
 import { Injectable } from '@angular/core';
-import { Http, Headers, RequestOptions, Response } from '@angular/http';
+import { Http, Headers, RequestOptions, Response, URLSearchParams } from '@angular/http';
 import { Observable } from 'rxjs/Observable';
 
 import { Course } from '../classes/course';
 import { User } from '../classes/user';
+import { AttenderPage } from '../classes/attender-page';
 import { CourseDetails } from '../classes/course-details';
 import { AuthenticationService } from './authentication.service';
 
@@ -42,6 +43,23 @@ export class CourseService {
       .catch(error => this.handleError("GET course FAIL. Response: ", error));
   }
 
+  //GET a page of the attenders of a course, sorted by nickname. 'after' is the nextCursor of the previous page
+  getCourseAttenders(courseId: number, after: string, prefix?: string) {
+    console.log("GET attenders of course " + courseId);
+
+    let params = new URLSearchParams();
+    if (after) params.set('after', after);
+    if (prefix) params.set('prefix', prefix);
+    let headers = new Headers({ 'Content-Type': 'application/json', 'Authorization': 'Bearer ' + this.authenticationService.token });
+    let options = new RequestOptions({ headers, search: params });
+    return this.http.get(this.url + "/course/" + courseId + "/attenders", options)
+      .map((response: Response) => {
+        console.log("GET attenders SUCCESS. Response: ", (response.json() as AttenderPage));
+        return (response.json() as AttenderPage);
+      })
+      .catch(error => this.handleError("GET attenders FAIL. Response: ", error));
+  }
+
   //POST new course. On success returns the created course
   newCourse(course: Course) {
     console.log("POST new course");
@@ -104,19 +122,19 @@ export class CourseService {
       .catch(error => this.handleError("PUT existing course FAIL (add attenders). Response: ", error));
   }
 
-  //PUT existing course, modifying its attenders (deleting them). On success returns the updated course.attenders array
-  public deleteCourseAttenders(course: Course) {
-    console.log("PUT exsiting course (remove attender)");
+  //PATCH the attenders of a course, removing some of them. On success returns the ids actually removed
+  public deleteCourseAttenders(courseId: number, attenderIds: number[]) {
+    console.log("PATCH existing course (remove attenders)");
 
-    let body = JSON.stringify(course);
+    let body = JSON.stringify({ add: [], remove: attenderIds });
     let headers = new Headers({ 'Content-Type': 'application/json', 'Authorization': 'Bearer ' + this.authenticationService.token });
     let options = new RequestOptions({ headers });
-    return this.http.put(this.url + "/edit/delete-attenders", body, options)
+    return this.http.patch(this.url + "/edit/attenders/course/" + courseId, body, options)
       .map(response => {
-        console.log("PUT existing course SUCCESS (remove attender). Response: ", (response.json() as User[]));
-        return (response.json() as User[]);
+        console.log("PATCH existing course SUCCESS (remove attenders). Response: ", response.json());
+        return (response.json().remove as number[]);
       })
-      .catch(error => this.handleError("PUT existing course FAIL (remove attender). Response: ", error));
+      .catch(error => this.handleError("PATCH existing course FAIL (remove attenders). Response: ", error));
   }
 
   private handleError(message: string, error: any) {
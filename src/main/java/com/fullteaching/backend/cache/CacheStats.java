@@ -0,0 +1,67 @@
+package com.fullteaching.backend.cache;
+
+public class CacheStats {
+	
+	private long hits;
+	
+	private long misses;
+	
+	//Requests that missed but waited for a load already in progress
+	private long coalesced;
+	
+	private long loadFailures;
+	
+	private long totalLoadTimeMillis;
+	
+	private long invalidations;
+	
+	private int size;
+	
+	public CacheStats(long hits, long misses, long coalesced, long loadFailures, long totalLoadTimeMillis, long invalidations, int size) {
+		this.hits = hits;
+		this.misses = misses;
+		this.coalesced = coalesced;
+		this.loadFailures = loadFailures;
+		this.totalLoadTimeMillis = totalLoadTimeMillis;
+		this.invalidations = invalidations;
+		this.size = size;
+	}
+	
+	public long getHits() {
+		return hits;
+	}
+	
+	public long getMisses() {
+		return misses;
+	}
+	
+	public long getCoalesced() {
+		return coalesced;
+	}
+	
+	public long getLoadFailures() {
+		return loadFailures;
+	}
+	
+	public long getTotalLoadTimeMillis() {
+		return totalLoadTimeMillis;
+	}
+	
+	public long getAverageLoadTimeMillis() {
+		return misses > 0 ? totalLoadTimeMillis / misses : 0;
+	}
+	
+	public long getInvalidations() {
+		return invalidations;
+	}
+	
+	public int getSize() {
+		return size;
+	}
+	
+	@Override
+	public String toString() {
+		return "CacheStats[hits: " + this.hits + ", misses: " + this.misses + ", coalesced: " + this.coalesced + ", loadFailures: " + this.loadFailures + ", size: " + this.size + "]";
+	}
+	
+}
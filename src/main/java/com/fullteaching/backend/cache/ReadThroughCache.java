@@ -0,0 +1,225 @@
+package com.fullteaching.backend.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, TTL'd read-through cache with single-flight loading: concurrent
+ * misses for the same key wait for one single load instead of each one
+ * hitting the database.
+ * 
+ * Null values are never cached. Invalidating a key while it is being loaded
+ * prevents the (possibly stale) loaded value from being stored.
+ */
+public class ReadThroughCache<K, V> {
+	
+	private final int maxEntries;
+	private final long ttlNanos;
+	private final LongSupplier clock;
+	
+	//Least recently used entry first. Guarded by 'this'
+	private final LinkedHashMap<K, CachedValue<V>> entries;
+	
+	//Loads in progress: concurrent misses for a key wait for the same load
+	private final Map<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+	
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder loadFailures = new LongAdder();
+	private final LongAdder loadNanos = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+	
+	public ReadThroughCache(int maxEntries, long ttlMillis) {
+		this(maxEntries, ttlMillis, System::nanoTime);
+	}
+	
+	ReadThroughCache(int maxEntries, long ttlMillis, LongSupplier clock) {
+		this.maxEntries = maxEntries;
+		this.ttlNanos = ttlMillis * 1_000_000L;
+		this.clock = clock;
+		this.entries = new LinkedHashMap<K, CachedValue<V>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, CachedValue<V>> eldest) {
+				return size() > ReadThroughCache.this.maxEntries;
+			}
+		};
+	}
+	
+	public V get(K key, Function<K, V> loader) {
+		synchronized (this) {
+			CachedValue<V> cached = entries.get(key);
+			if (cached != null) {
+				if (clock.getAsLong() - cached.loadedAt < ttlNanos) {
+					hits.increment();
+					return cached.value;
+				}
+				entries.remove(key);
+			}
+		}
+		
+		CompletableFuture<V> ownLoad = new CompletableFuture<>();
+		CompletableFuture<V> inProgress = loading.putIfAbsent(key, ownLoad);
+		if (inProgress != null) {
+			//Somebody else is already loading this key
+			coalesced.increment();
+			return join(inProgress);
+		}
+		
+		misses.increment();
+		long start = clock.getAsLong();
+		V value;
+		try {
+			value = loader.apply(key);
+		} catch (RuntimeException | Error e) {
+			//Waiting callers must be released whatever the loader throws
+			loadFailures.increment();
+			loading.remove(key, ownLoad);
+			ownLoad.completeExceptionally(e);
+			throw e;
+		}
+		long now = clock.getAsLong();
+		loadNanos.add(now - start);
+		
+		synchronized (this) {
+			//If the key was invalidated during the load, the value is not stored
+			if (loading.remove(key, ownLoad) && value != null) {
+				entries.put(key, new CachedValue<>(value, now));
+			}
+		}
+		ownLoad.complete(value);
+		return value;
+	}
+	
+	/**
+	 * Same as 'get' for several keys, but all the keys that are not cached (nor
+	 * being loaded by another thread) are loaded together in a single call to
+	 * 'loader'. Keys missing from the loaded map are considered null.
+	 */
+	public Map<K, V> getAll(Collection<K> keys, Function<Collection<K>, Map<K, V>> loader) {
+		Map<K, V> result = new HashMap<>();
+		List<K> missing = new ArrayList<>();
+		synchronized (this) {
+			for (K key : keys) {
+				CachedValue<V> cached = entries.get(key);
+				if (cached != null && clock.getAsLong() - cached.loadedAt < ttlNanos) {
+					hits.increment();
+					result.put(key, cached.value);
+				} else {
+					entries.remove(key);
+					missing.add(key);
+				}
+			}
+		}
+		
+		Map<K, CompletableFuture<V>> ownLoads = new LinkedHashMap<>();
+		Map<K, CompletableFuture<V>> otherLoads = new HashMap<>();
+		for (K key : missing) {
+			CompletableFuture<V> ownLoad = new CompletableFuture<>();
+			CompletableFuture<V> inProgress = loading.putIfAbsent(key, ownLoad);
+			if (inProgress != null) {
+				coalesced.increment();
+				otherLoads.put(key, inProgress);
+			} else {
+				ownLoads.put(key, ownLoad);
+			}
+		}
+		
+		if (!ownLoads.isEmpty()) {
+			misses.add(ownLoads.size());
+			long start = clock.getAsLong();
+			Map<K, V> values;
+			try {
+				values = loader.apply(new ArrayList<>(ownLoads.keySet()));
+			} catch (RuntimeException | Error e) {
+				loadFailures.increment();
+				ownLoads.forEach((key, ownLoad) -> {
+					loading.remove(key, ownLoad);
+					ownLoad.completeExceptionally(e);
+				});
+				throw e;
+			}
+			long now = clock.getAsLong();
+			loadNanos.add(now - start);
+			
+			synchronized (this) {
+				ownLoads.forEach((key, ownLoad) -> {
+					V value = values.get(key);
+					//If the key was invalidated during the load, the value is not stored
+					if (loading.remove(key, ownLoad) && value != null) {
+						entries.put(key, new CachedValue<>(value, now));
+					}
+				});
+			}
+			ownLoads.forEach((key, ownLoad) -> {
+				V value = values.get(key);
+				ownLoad.complete(value);
+				if (value != null) {
+					result.put(key, value);
+				}
+			});
+		}
+		
+		for (Map.Entry<K, CompletableFuture<V>> otherLoad : otherLoads.entrySet()) {
+			V value = join(otherLoad.getValue());
+			if (value != null) {
+				result.put(otherLoad.getKey(), value);
+			}
+		}
+		return result;
+	}
+	
+	public synchronized void invalidate(K key) {
+		invalidations.increment();
+		entries.remove(key);
+		loading.remove(key);
+	}
+	
+	public synchronized void invalidateAll() {
+		invalidations.increment();
+		entries.clear();
+		loading.clear();
+	}
+	
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	public CacheStats getStats() {
+		return new CacheStats(hits.sum(), misses.sum(), coalesced.sum(), loadFailures.sum(),
+				loadNanos.sum() / 1_000_000L, invalidations.sum(), size());
+	}
+	
+	private static <V> V join(CompletableFuture<V> load) {
+		try {
+			return load.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error) throw (Error) e.getCause();
+			throw e;
+		}
+	}
+	
+	private static class CachedValue<V> {
+		
+		private final V value;
+		private final long loadedAt;
+		
+		private CachedValue(V value, long loadedAt) {
+			this.value = value;
+			this.loadedAt = loadedAt;
+		}
+	}
+	
+}
@@ -8,14 +8,17 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
+import javax.persistence.Table;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import com.fullteaching.backend.user.User;
 
 @Entity
+@Table(indexes = @Index(name = "idx_comment_parent_date", columnList = "comment_parent_id,date,id"))
 public class Comment {
 	
 	public interface CommentNoParent {}
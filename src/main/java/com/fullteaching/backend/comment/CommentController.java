@@ -1,19 +1,35 @@
 package com.fullteaching.backend.comment;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.fullteaching.backend.entry.Entry;
 import com.fullteaching.backend.entry.EntryRepository;
+import com.fullteaching.backend.forum.CommentWriteBehindService;
+import com.fullteaching.backend.forum.ForumHotEntriesService;
+import com.fullteaching.backend.forum.ForumPostService;
+import com.fullteaching.backend.forum.ForumSearchService;
+import com.fullteaching.backend.forum.ForumUpdatesService;
 import com.fullteaching.backend.security.AuthorizationService;
+import com.fullteaching.backend.course.ContentChange;
+import com.fullteaching.backend.course.CourseCache;
 import com.fullteaching.backend.coursedetails.CourseDetails;
 import com.fullteaching.backend.coursedetails.CourseDetailsRepository;
 import com.fullteaching.backend.user.User;
@@ -25,6 +41,13 @@ public class CommentController {
 	
 	private static final Logger log = LoggerFactory.getLogger(CommentController.class);
 	
+	private static final int DEFAULT_THREAD_PAGE_SIZE = 20;
+	private static final int MAX_THREAD_PAGE_SIZE = 100;
+	private static final int DEFAULT_THREAD_DEPTH = 10;
+	private static final int MAX_THREAD_DEPTH = 100;
+	private static final int DEFAULT_THREAD_BREADTH = 10;
+	private static final int MAX_THREAD_BREADTH = 100;
+	
 	@Autowired
 	private EntryRepository entryRepository;
 	
@@ -40,7 +63,148 @@ public class CommentController {
 	@Autowired
 	private AuthorizationService authorizationService;
 	
+	@Autowired
+	private CourseCache courseCache;
+	
+	@Autowired
+	private CommentThreadService commentThreadService;
+	
+	@Autowired
+	private ForumPostService forumPostService;
+	
+	@Autowired
+	private ForumUpdatesService forumUpdatesService;
+	
+	@Autowired
+	private ForumSearchService forumSearchService;
+	
+	@Autowired
+	private ForumHotEntriesService forumHotEntriesService;
+	
+	@Autowired
+	private CommentWriteBehindService commentWriteBehindService;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	private TransactionTemplate transactionTemplate;
+	
+	@PostConstruct
+	public void init() {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+	
+	@RequestMapping(value = "/entry/{entryId}", method = RequestMethod.GET)
+	public ResponseEntity<Object> getComments(
+			@PathVariable(value="entryId") String entryId,
+			@RequestParam(value="after", required=false) String after,
+			@RequestParam(value="size", required=false) Integer size,
+			@RequestParam(value="maxDepth", required=false) Integer maxDepth,
+			@RequestParam(value="breadth", required=false) Integer breadth)
+	{
+		
+		log.info("CRUD operation: Getting a page of the comments of an entry");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_entry = -1;
+		try {
+			id_entry = Long.parseLong(entryId);
+		} catch(NumberFormatException e){
+			log.error("Entry ID '{}' is not of type Long", entryId);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		//First page: after any possible comment
+		long afterDate = Long.MIN_VALUE;
+		long afterId = Long.MIN_VALUE;
+		if (after != null) {
+			try {
+				long[] cursor = CommentThread.parseCursor(after);
+				afterDate = cursor[0];
+				afterId = cursor[1];
+			} catch (IllegalArgumentException e) {
+				log.error("Comments cursor '{}' is not valid", after);
+				return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+			}
+		}
+		int pageSize = (size != null) ? Math.max(1, Math.min(size, MAX_THREAD_PAGE_SIZE)) : DEFAULT_THREAD_PAGE_SIZE;
+		int depth = (maxDepth != null) ? Math.max(0, Math.min(maxDepth, MAX_THREAD_DEPTH)) : DEFAULT_THREAD_DEPTH;
+		int replies = (breadth != null) ? Math.max(0, Math.min(breadth, MAX_THREAD_BREADTH)) : DEFAULT_THREAD_BREADTH;
+		
+		if (!entryRepository.existsById(id_entry)) {
+			log.error("Entry {} not found", id_entry);
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		
+		//The user reads the comments they posted even if they are not saved yet
+		if (commentWriteBehindService.isEnabled()) {
+			commentWriteBehindService.awaitSaved(user.getLoggedUser().getId());
+		}
+		
+		return new ResponseEntity<>(commentThreadService.getThread(id_entry, afterDate, afterId, pageSize, depth, replies), HttpStatus.OK);
+	}
+	
+	//A page of the replies of a comment, to expand a branch of a thread from its 'repliesCursor'
+	@RequestMapping(value = "/comment/{commentId}/replies", method = RequestMethod.GET)
+	public ResponseEntity<Object> getReplies(
+			@PathVariable(value="commentId") String commentId,
+			@RequestParam(value="after", required=false) String after,
+			@RequestParam(value="size", required=false) Integer size,
+			@RequestParam(value="maxDepth", required=false) Integer maxDepth,
+			@RequestParam(value="breadth", required=false) Integer breadth)
+	{
+		
+		log.info("CRUD operation: Getting a page of the replies of a comment");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_comment = -1;
+		try {
+			id_comment = Long.parseLong(commentId);
+		} catch(NumberFormatException e){
+			log.error("Comment ID '{}' is not of type Long", commentId);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		//First page: after any possible reply
+		long afterDate = Long.MIN_VALUE;
+		long afterId = Long.MIN_VALUE;
+		if (after != null) {
+			try {
+				long[] cursor = CommentThread.parseCursor(after);
+				afterDate = cursor[0];
+				afterId = cursor[1];
+			} catch (IllegalArgumentException e) {
+				log.error("Replies cursor '{}' is not valid", after);
+				return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+			}
+		}
+		int pageSize = (size != null) ? Math.max(1, Math.min(size, MAX_THREAD_PAGE_SIZE)) : DEFAULT_THREAD_PAGE_SIZE;
+		int depth = (maxDepth != null) ? Math.max(0, Math.min(maxDepth, MAX_THREAD_DEPTH)) : DEFAULT_THREAD_DEPTH;
+		int replies = (breadth != null) ? Math.max(0, Math.min(breadth, MAX_THREAD_BREADTH)) : DEFAULT_THREAD_BREADTH;
+		
+		if (!commentRepository.existsById(id_comment)) {
+			log.error("Comment {} not found", id_comment);
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		
+		//The user reads the replies they posted even if they are not saved yet
+		if (commentWriteBehindService.isEnabled()) {
+			commentWriteBehindService.awaitSaved(user.getLoggedUser().getId());
+		}
+		
+		return new ResponseEntity<>(commentThreadService.getReplies(id_comment, afterDate, afterId, pageSize, depth, replies), HttpStatus.OK);
+	}
+	
 	@RequestMapping(value = "/entry/{entryId}/forum/{courseDetailsId}", method = RequestMethod.POST)
+	@Transactional
 	public ResponseEntity<Object> newComment(
 			@RequestBody Comment comment, 
 			@PathVariable(value="entryId") String entryId, 
@@ -83,9 +247,18 @@ public class CommentController {
 				Entry entry = entryRepository.findById(id_entry).orElse(null);
 				if(entry != null) {
 					entry.getComments().add(comment);
+					//Counted in memory for the response. The counters are incremented by the database
+					entry.addComment(comment.getDate());
+					cd.getForum().addComment(comment.getDate());
 					/*Saving the modified entry: Cascade relationship between entry and comments
 					  will add the new comment to CommentRepository*/
 					entryRepository.save(entry);
+					forumPostService.countComment(cd.getForum().getId(), entry.getId(), comment.getDate());
+					//The saved copy of the comment replaces it in the entry
+					courseCache.invalidate(cd.getCourse().getId(), this.changes(cd.getForum().getId(), entry.getId(), null,
+							entry.getComments().get(entry.getComments().size() - 1)));
+					this.posted(cd.getCourse().getId(), cd.getForum().getId(), entry.getId(), null,
+							entry.getComments().get(entry.getComments().size() - 1));
 					
 					log.info("New comment succesfully added: {}", comment.toString());
 					
@@ -102,10 +275,20 @@ public class CommentController {
 				Comment cParent = commentRepository.findById(comment.getCommentParent().getId()).orElse(null);
 				if(cParent != null){
 					cParent.getReplies().add(comment);
+					//Counted in memory for the response. The counters are incremented by the database
+					Entry entry = entryRepository.findById(id_entry).orElse(null);
+					if (entry != null) {
+						entry.addComment(comment.getDate());
+					}
+					cd.getForum().addComment(comment.getDate());
 					/*Saving the modified parent comment: Cascade relationship between comment and 
 					 its replies will add the new comment to CommentRepository*/
 					commentRepository.save(cParent);
-					Entry entry = entryRepository.findById(id_entry).orElse(null);
+					forumPostService.countComment(cd.getForum().getId(), id_entry, comment.getDate());
+					courseCache.invalidate(cd.getCourse().getId(), this.changes(cd.getForum().getId(), id_entry, cParent.getId(),
+							cParent.getReplies().get(cParent.getReplies().size() - 1)));
+					this.posted(cd.getCourse().getId(), cd.getForum().getId(), id_entry, cParent.getId(),
+							cParent.getReplies().get(cParent.getReplies().size() - 1));
 					
 					log.info("New comment succesfully added: {}", comment.toString());
 					
@@ -117,5 +300,101 @@ public class CommentController {
 			}
 		}
 	}
+	
+	//Same as 'newComment', but only the new comment is returned and the comments of the entry are never loaded.
+	//Replies are identified by 'parentId'. In write-behind mode the answer is 202 once the comment is logged
+	@RequestMapping(value = "/append/entry/{entryId}/forum/{courseDetailsId}", method = RequestMethod.POST)
+	public ResponseEntity<Object> appendComment(
+			@RequestBody Comment comment,
+			@PathVariable(value="entryId") String entryId,
+			@PathVariable(value="courseDetailsId") String courseDetailsId,
+			@RequestParam(value="parentId", required=false) Long parentId)
+	{
+		
+		log.info("CRUD operation: Appending new comment");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_entry = -1;
+		long id_courseDetails = -1;
+		try {
+			id_entry = Long.parseLong(entryId);
+			id_courseDetails = Long.parseLong(courseDetailsId);
+		} catch(NumberFormatException e){
+			log.error("Entry ID '{}' or CourseDetails ID '{}' are not of type Long", entryId, courseDetailsId);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		CourseDetails cd = courseDetailsRepository.findById(id_courseDetails).orElse(null);
+		
+		ResponseEntity<Object> userAuthorized = authorizationService.checkAuthorizationUsers(cd, cd != null ? cd.getCourse().getAttenders() : null);
+		if (userAuthorized != null) { // If the user is not an attender of the course
+			return userAuthorized;
+		}
+		
+		//The entry must belong to the forum of the course the user attends
+		if (!forumPostService.isInForum(cd.getForum().getId(), id_entry)) {
+			log.error("Entry {} is not in the forum of CourseDetails {}", id_entry, id_courseDetails);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		//Author and date are set by the server
+		comment.setId(0);
+		comment.setUser(user.getLoggedUser());
+		comment.setDate(System.currentTimeMillis());
+		comment.setReplies(new ArrayList<>());
+		
+		//In write-behind mode the comment is accepted once logged, and the cache, subscribers and search index are updated once it is saved
+		boolean writeBehind = commentWriteBehindService.isEnabled();
+		Comment saved;
+		if (writeBehind) {
+			saved = commentWriteBehindService.postComment(cd.getCourse().getId(), cd.getForum().getId(), id_entry, parentId, comment);
+		} else {
+			//The comment and its course changes are saved together. Not the whole request: in write-behind mode it waits for the log
+			long entry = id_entry;
+			saved = transactionTemplate.execute(status -> {
+				Comment posted = forumPostService.postComment(cd.getForum().getId(), entry, parentId, comment);
+				if (posted != null) {
+					courseCache.invalidate(cd.getCourse().getId(), this.changes(cd.getForum().getId(), entry, parentId, posted));
+				}
+				return posted;
+			});
+		}
+		if (saved == null) {
+			log.error("Parent comment {} not found in entry {}", parentId, id_entry);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		if (!writeBehind) {
+			this.posted(cd.getCourse().getId(), cd.getForum().getId(), id_entry, parentId, saved);
+		}
+		
+		log.info("New comment {} succesfully appended to entry {}", saved.getId(), id_entry);
+		
+		return new ResponseEntity<>(saved, writeBehind ? HttpStatus.ACCEPTED : HttpStatus.CREATED);
+	}
 
+	// Subscribers, search index and hot entries only learn about the comment once it is committed
+	private void posted(long courseId, long forumId, long entryId, Long parentId, Comment comment) {
+		ForumPostService.afterCommit(() -> {
+			forumUpdatesService.publishComment(courseId, entryId, parentId, comment);
+			forumSearchService.indexComment(courseId, entryId, comment);
+			forumHotEntriesService.commentPosted(forumId, entryId, comment.getDate());
+		});
+	}
+	
+	// The new comment, the counters of its entry and forum and the replies counter of its parent, if any
+	private ContentChange[] changes(long forumId, long entryId, Long parentId, Comment comment) {
+		List<ContentChange> changes = new ArrayList<>();
+		changes.add(ContentChange.created(ContentChange.Type.COMMENT, comment.getId()));
+		if (parentId != null) {
+			changes.add(ContentChange.saved(ContentChange.Type.COMMENT, parentId));
+		}
+		changes.add(ContentChange.saved(ContentChange.Type.ENTRY, entryId));
+		changes.add(ContentChange.saved(ContentChange.Type.FORUM, forumId));
+		return changes.toArray(new ContentChange[0]);
+	}
+	
 }
@@ -0,0 +1,95 @@
+package com.fullteaching.backend.comment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A comment of a thread loaded by CommentThreadService. Unlike Comment, its
+ * replies are already in memory, and may be cut at the maximum depth or
+ * breadth of the thread: 'repliesCount' is the number of direct replies it
+ * really has, and 'repliesCursor' continues them when some are missing.
+ */
+public class CommentNode {
+	
+	private long id;
+	
+	private String message;
+	
+	private long date;
+	
+	private Long userId;
+	
+	private String userNickName;
+	
+	private String userPicture;
+	
+	private long repliesCount;
+	
+	private List<CommentNode> replies = new ArrayList<>();
+	
+	//Opaque value to pass as 'after' to GET /api-comments/comment/{id}/replies for the missing replies (null if none is missing)
+	private String repliesCursor;
+	
+	public CommentNode(long id, String message, long date, Long userId, String userNickName, String userPicture, long repliesCount) {
+		this.id = id;
+		this.message = message;
+		this.date = date;
+		this.userId = userId;
+		this.userNickName = userNickName;
+		this.userPicture = userPicture;
+		this.repliesCount = repliesCount;
+	}
+	
+	//A row of 'CommentRepository.findRowsByIdIn' or 'CommentRepository.findThreadRows', without its replies
+	public static CommentNode fromRow(Object[] row) {
+		return new CommentNode(
+				((Number) row[0]).longValue(),
+				(String) row[2],
+				((Number) row[3]).longValue(),
+				row[4] != null ? ((Number) row[4]).longValue() : null,
+				(String) row[5],
+				(String) row[6],
+				((Number) row[7]).longValue());
+	}
+	
+	public long getId() {
+		return id;
+	}
+	
+	public String getMessage() {
+		return message;
+	}
+	
+	public long getDate() {
+		return date;
+	}
+	
+	public Long getUserId() {
+		return userId;
+	}
+	
+	public String getUserNickName() {
+		return userNickName;
+	}
+	
+	public String getUserPicture() {
+		return userPicture;
+	}
+	
+	public long getRepliesCount() {
+		return repliesCount;
+	}
+	
+	public List<CommentNode> getReplies() {
+		return replies;
+	}
+	
+	public String getRepliesCursor() {
+		return repliesCursor;
+	}
+	
+	public void setRepliesCursor(String repliesCursor) {
+		this.repliesCursor = repliesCursor;
+	}
+	
+}
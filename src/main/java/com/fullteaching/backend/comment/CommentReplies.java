@@ -0,0 +1,36 @@
+package com.fullteaching.backend.comment;
+
+import java.util.List;
+
+/**
+ * A page of the direct replies of a comment, each one with its own replies
+ * down to the requested depth. Used to expand a branch of a CommentThread.
+ */
+public class CommentReplies {
+	
+	private long commentId;
+	
+	private List<CommentNode> replies;
+	
+	//Opaque value to pass as 'after' to get the next page (null if this is the last one)
+	private String nextCursor;
+	
+	public CommentReplies(long commentId, List<CommentNode> replies, String nextCursor) {
+		this.commentId = commentId;
+		this.replies = replies;
+		this.nextCursor = nextCursor;
+	}
+	
+	public long getCommentId() {
+		return commentId;
+	}
+	
+	public List<CommentNode> getReplies() {
+		return replies;
+	}
+	
+	public String getNextCursor() {
+		return nextCursor;
+	}
+	
+}
@@ -1,7 +1,151 @@
 package com.fullteaching.backend.comment;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface CommentRepository extends JpaRepository<Comment, Long> {
+	
+	//[id, date] of the root comments of an entry, oldest first. Keyset pagination on (date, id)
+	@Query("select c.id, c.date from Entry e join e.comments c "
+			+ "where e.id = :entryId and (c.date > :afterDate or (c.date = :afterDate and c.id > :afterId)) "
+			+ "order by c.date asc, c.id asc")
+	public List<Object[]> findRootKeys(
+			@Param("entryId") long entryId,
+			@Param("afterDate") long afterDate,
+			@Param("afterId") long afterId,
+			Pageable pageable);
+			
+	//[id, parent id, message, date, user id, user nickname, user picture, direct replies] of the given comments
+	@Query(nativeQuery = true, value = "SELECT c.id, c.comment_parent_id, c.message, c.date, u.id AS user_id, u.nick_name, u.picture, "
+			+ "(SELECT COUNT(*) FROM comment r WHERE r.comment_parent_id = c.id) AS replies "
+			+ "FROM comment c LEFT JOIN user u ON u.id = c.user_id WHERE c.id IN (:ids) "
+			+ "ORDER BY c.date ASC, c.id ASC")
+	public List<Object[]> findRowsByIdIn(@Param("ids") Collection<Long> ids);
+	
+	//Same columns as 'findRowsByIdIn', plus the depth, of the given comments and of their replies down to 'maxDepth',
+	//with at most the first 'breadth' replies (oldest first) of each comment: 'ranked' numbers the replies of every
+	//comment read by 'thread', and 'shown' walks down again through the ones that are kept. Sorted breadth first,
+	//so that the first 'limit' rows are a tree. Window functions are not allowed in the recursive part of a query,
+	//so the replies are numbered in a CTE of their own between both walks
+	@Query(nativeQuery = true, value = "WITH RECURSIVE thread (id, parent_id, depth) AS ("
+			+ "SELECT c.id, c.comment_parent_id, 0 FROM comment c WHERE c.id IN (:rootIds) "
+			+ "UNION ALL "
+			+ "SELECT r.id, r.comment_parent_id, t.depth + 1 FROM thread t JOIN comment r ON r.comment_parent_id = t.id WHERE t.depth < :maxDepth), "
+			+ "ranked AS ("
+			+ "SELECT t.id, t.parent_id, t.depth, ROW_NUMBER() OVER (PARTITION BY t.parent_id ORDER BY c.date ASC, c.id ASC) AS reply_position "
+			+ "FROM thread t JOIN comment c ON c.id = t.id), "
+			+ "shown (id, depth, reply_position) AS ("
+			+ "SELECT r.id, r.depth, r.reply_position FROM ranked r WHERE r.depth = 0 "
+			+ "UNION ALL "
+			+ "SELECT r.id, r.depth, r.reply_position FROM shown s JOIN ranked r ON r.parent_id = s.id WHERE r.reply_position <= :breadth) "
+			+ "SELECT c.id, c.comment_parent_id, c.message, c.date, u.id AS user_id, u.nick_name, u.picture, "
+			+ "(SELECT COUNT(*) FROM comment r WHERE r.comment_parent_id = c.id) AS replies, s.depth "
+			+ "FROM shown s JOIN comment c ON c.id = s.id LEFT JOIN user u ON u.id = c.user_id "
+			+ "ORDER BY s.depth ASC, s.reply_position ASC, c.date ASC, c.id ASC "
+			+ "LIMIT :limit")
+	public List<Object[]> findThreadRows(
+			@Param("rootIds") Collection<Long> rootIds,
+			@Param("maxDepth") int maxDepth,
+			@Param("breadth") int breadth,
+			@Param("limit") int limit);
+	
+	//[id, date] of the direct replies of a comment after the cursor (date, id), oldest first
+	@Query("select c.id, c.date from Comment c "
+			+ "where c.commentParent.id = :parentId and (c.date > :afterDate or (c.date = :afterDate and c.id > :afterId)) "
+			+ "order by c.date asc, c.id asc")
+	public List<Object[]> findReplyKeys(
+			@Param("parentId") long parentId,
+			@Param("afterDate") long afterDate,
+			@Param("afterId") long afterId,
+			Pageable pageable);
+			
+	//Entry of the thread the comment belongs to (null if the comment does not exist), walking up to its root
+	@Query(nativeQuery = true, value = "WITH RECURSIVE ancestor (id, parent_id) AS ("
+			+ "SELECT c.id, c.comment_parent_id FROM comment c WHERE c.id = :commentId "
+			+ "UNION ALL "
+			+ "SELECT p.id, p.comment_parent_id FROM ancestor a JOIN comment p ON p.id = a.parent_id) "
+			+ "SELECT ec.entry_id FROM ancestor a JOIN entry_comments ec ON ec.comments_id = a.id WHERE a.parent_id IS NULL")
+	public Long findEntryId(@Param("commentId") long commentId);
+	
+	//[id, entry id] of the given comments that are in the forum (replies included), walking up from each one to its root
+	@Query(nativeQuery = true, value = "WITH RECURSIVE ancestor (comment_id, id, parent_id) AS ("
+			+ "SELECT c.id, c.id, c.comment_parent_id FROM comment c WHERE c.id IN (:ids) "
+			+ "UNION ALL "
+			+ "SELECT a.comment_id, p.id, p.comment_parent_id FROM ancestor a JOIN comment p ON p.id = a.parent_id) "
+			+ "SELECT a.comment_id, ec.entry_id FROM ancestor a JOIN entry_comments ec ON ec.comments_id = a.id "
+			+ "JOIN entry e ON e.id = ec.entry_id WHERE a.parent_id IS NULL AND e.forum_id = :forumId")
+	public List<Object[]> findEntryIdsOfForumIn(@Param("forumId") long forumId, @Param("ids") Collection<Long> ids);
+	
+	//[entry id, id, message] of all the comments of the entries, replies included, to index them (see ForumSearchService)
+	@Query(nativeQuery = true, value = "WITH RECURSIVE entry_comment (entry_id, comment_id) AS ("
+			+ "SELECT ec.entry_id, ec.comments_id FROM entry_comments ec WHERE ec.entry_id IN (:entryIds) "
+			+ "UNION ALL "
+			+ "SELECT ecm.entry_id, r.id FROM entry_comment ecm JOIN comment r ON r.comment_parent_id = ecm.comment_id) "
+			+ "SELECT ecm.entry_id, c.id, c.message FROM entry_comment ecm JOIN comment c ON c.id = ecm.comment_id "
+			+ "ORDER BY c.id")
+	public List<Object[]> findMessagesOfEntries(@Param("entryIds") Collection<Long> entryIds);
+	
+	//[forum id, entry id, id, message, date, user nickname] of the comments of the forums posted since 'since', replies
+	//included, newest first. Only entries active since then are walked. Keyset pagination on (date, id) for the feed (see FeedService)
+	@Query(nativeQuery = true, value = "WITH RECURSIVE entry_comment (forum_id, entry_id, comment_id) AS ("
+			+ "SELECT e.forum_id, ec.entry_id, ec.comments_id FROM entry e "
+			+ "JOIN entry_comments ec ON ec.entry_id = e.id WHERE e.forum_id IN (:forumIds) AND e.last_activity >= :since "
+			+ "UNION ALL "
+			+ "SELECT ecm.forum_id, ecm.entry_id, r.id FROM entry_comment ecm JOIN comment r ON r.comment_parent_id = ecm.comment_id) "
+			+ "SELECT ecm.forum_id, ecm.entry_id, c.id, c.message, c.date, u.nick_name FROM entry_comment ecm JOIN comment c ON c.id = ecm.comment_id "
+			+ "LEFT JOIN user u ON u.id = c.user_id "
+			+ "WHERE c.date >= :since AND (c.date < :beforeDate OR (c.date = :beforeDate AND c.id < :beforeId)) "
+			+ "ORDER BY c.date DESC, c.id DESC")
+	public List<Object[]> findFeedRows(
+			@Param("forumIds") Collection<Long> forumIds,
+			@Param("since") long since,
+			@Param("beforeDate") long beforeDate,
+			@Param("beforeId") long beforeId,
+			Pageable pageable);
+			
+	//[entry id, sum of 2^((date - now) / halfLife) of its comments] of the entries of the forum with comments since 'since',
+	//replies included. Only entries active since then are walked (see ForumHotEntriesService)
+	@Query(nativeQuery = true, value = "WITH RECURSIVE entry_comment (entry_id, comment_id) AS ("
+			+ "SELECT ec.entry_id, ec.comments_id FROM entry e "
+			+ "JOIN entry_comments ec ON ec.entry_id = e.id WHERE e.forum_id = :forumId AND e.last_activity >= :since "
+			+ "UNION ALL "
+			+ "SELECT ecm.entry_id, r.id FROM entry_comment ecm JOIN comment r ON r.comment_parent_id = ecm.comment_id) "
+			+ "SELECT ecm.entry_id, SUM(POWER(2, (c.date - :now) / :halfLife)) FROM entry_comment ecm JOIN comment c ON c.id = ecm.comment_id "
+			+ "WHERE c.date >= :since GROUP BY ecm.entry_id")
+	public List<Object[]> sumDecayedActivity(
+			@Param("forumId") long forumId,
+			@Param("since") long since,
+			@Param("now") long now,
+			@Param("halfLife") double halfLife);
+			
+	//The given ids that are comments of the forum (replies included), walking up from each one to its root
+	@Query(nativeQuery = true, value = "WITH RECURSIVE ancestor (comment_id, id, parent_id) AS ("
+			+ "SELECT c.id, c.id, c.comment_parent_id FROM comment c WHERE c.id IN (:ids) "
+			+ "UNION ALL "
+			+ "SELECT a.comment_id, p.id, p.comment_parent_id FROM ancestor a JOIN comment p ON p.id = a.parent_id) "
+			+ "SELECT a.comment_id FROM ancestor a JOIN entry_comments ec ON ec.comments_id = a.id "
+			+ "JOIN entry e ON e.id = ec.entry_id WHERE a.parent_id IS NULL AND e.forum_id = :forumId")
+	public List<Number> findIdsOfForumIn(@Param("forumId") long forumId, @Param("ids") Collection<Long> ids);
+	
+	//Ids of all the comments of the entries, replies included
+	@Query(nativeQuery = true, value = "WITH RECURSIVE entry_comment (comment_id) AS ("
+			+ "SELECT ec.comments_id FROM entry_comments ec WHERE ec.entry_id IN (:entryIds) "
+			+ "UNION ALL "
+			+ "SELECT r.id FROM entry_comment ecm JOIN comment r ON r.comment_parent_id = ecm.comment_id) "
+			+ "SELECT comment_id FROM entry_comment")
+	public List<Number> findIdsOfEntries(@Param("entryIds") Collection<Long> entryIds);
+	
+	//The given ids that are already saved
+	@Query("select c.id from Comment c where c.id in :ids")
+	public List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+	
+	//[id, message, date, user nickname] of the comments found by a search
+	@Query("select c.id, c.message, c.date, u.nickName from Comment c left join c.user u where c.id in :ids")
+	public List<Object[]> findSearchRows(@Param("ids") Collection<Long> ids);
 
 }
@@ -0,0 +1,48 @@
+package com.fullteaching.backend.comment;
+
+import java.util.List;
+
+import com.fullteaching.backend.paging.Cursors;
+
+/**
+ * A page of the root comments of an entry, each one with its replies down to
+ * the requested depth.
+ */
+public class CommentThread {
+	
+	private long entryId;
+	
+	private List<CommentNode> comments;
+	
+	//Opaque value to pass as 'after' to get the next page (null if this is the last one)
+	private String nextCursor;
+	
+	public CommentThread(long entryId, List<CommentNode> comments, String nextCursor) {
+		this.entryId = entryId;
+		this.comments = comments;
+		this.nextCursor = nextCursor;
+	}
+	
+	public long getEntryId() {
+		return entryId;
+	}
+	
+	public List<CommentNode> getComments() {
+		return comments;
+	}
+	
+	public String getNextCursor() {
+		return nextCursor;
+	}
+	
+	//A cursor is the date and the id of the last comment of a page, of roots or of replies: "{date}:{id}", Base64 encoded
+	public static String cursor(long date, long id) {
+		return Cursors.encode(date, id);
+	}
+	
+	// Returns [date, id] of the cursor, or throws IllegalArgumentException if it is not valid
+	public static long[] parseCursor(String cursor) {
+		return Cursors.decodeLongs(cursor, 2);
+	}
+	
+}
@@ -0,0 +1,102 @@
+package com.fullteaching.backend.comment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+/**
+ * Loads the comments of an entry as trees with a single query for all their
+ * levels, instead of letting 'Comment.replies' be initialized comment by
+ * comment. Every comment shows at most 'breadth' of its replies, and a request
+ * never returns more than 'maxNodes' comments: the rest of the replies of each
+ * comment are loaded page by page with its 'repliesCursor'.
+ */
+@Service
+public class CommentThreadService {
+	
+	@Autowired
+	private CommentRepository commentRepository;
+	
+	@Value("${forum.comments.thread.max-nodes:500}")
+	private int maxNodes;
+	
+	// Root comments after the cursor (date, id), with up to 'breadth' replies per comment down to 'maxDepth'
+	public CommentThread getThread(long entryId, long afterDate, long afterId, int size, int maxDepth, int breadth) {
+		//One extra root is requested to know if there is a next page
+		List<Object[]> roots = commentRepository.findRootKeys(entryId, afterDate, afterId, PageRequest.of(0, size + 1));
+		String nextCursor = null;
+		if (roots.size() > size) {
+			roots = roots.subList(0, size);
+			Object[] last = roots.get(size - 1);
+			nextCursor = CommentThread.cursor(((Number) last[1]).longValue(), ((Number) last[0]).longValue());
+		}
+		return new CommentThread(entryId, expand(ids(roots), maxDepth, breadth), nextCursor);
+	}
+	
+	// Direct replies of the comment after the cursor (date, id), each one expanded like the roots of a thread
+	public CommentReplies getReplies(long commentId, long afterDate, long afterId, int size, int maxDepth, int breadth) {
+		List<Object[]> replies = commentRepository.findReplyKeys(commentId, afterDate, afterId, PageRequest.of(0, size + 1));
+		String nextCursor = null;
+		if (replies.size() > size) {
+			replies = replies.subList(0, size);
+			Object[] last = replies.get(size - 1);
+			nextCursor = CommentThread.cursor(((Number) last[1]).longValue(), ((Number) last[0]).longValue());
+		}
+		return new CommentReplies(commentId, expand(ids(replies), maxDepth, breadth), nextCursor);
+	}
+	
+	//Loads the given comments and their replies down to 'maxDepth' in a single query, which keeps the first
+	//'breadth' replies of each comment and 'maxNodes' comments in all. Comments left with fewer replies than
+	//they have get a cursor to continue them
+	private List<CommentNode> expand(List<Long> ids, int maxDepth, int breadth) {
+		if (ids.isEmpty()) {
+			return new ArrayList<>();
+		}
+		Map<Long, CommentNode> nodes = new HashMap<>();
+		List<CommentNode> all = new ArrayList<>();
+		//The given comments are always returned, even if they are more than 'maxNodes'
+		for (Object[] row : commentRepository.findThreadRows(ids, maxDepth, breadth, Math.max(maxNodes, ids.size()))) {
+			CommentNode node = CommentNode.fromRow(row);
+			//Rows come breadth first and oldest first, so a reply is read after its parent and its older siblings
+			if (((Number) row[8]).intValue() > 0) {
+				nodes.get(((Number) row[1]).longValue()).getReplies().add(node);
+			}
+			nodes.put(node.getId(), node);
+			all.add(node);
+		}
+		List<CommentNode> roots = new ArrayList<>();
+		for (Long id : ids) {
+			//A comment deleted between both queries is left out
+			if (nodes.containsKey(id)) {
+				roots.add(nodes.get(id));
+			}
+		}
+		
+		for (CommentNode node : all) {
+			List<CommentNode> replies = node.getReplies();
+			if (replies.size() < node.getRepliesCount()) {
+				//Replies are the oldest ones, so the missing ones come after the last shown
+				CommentNode last = replies.isEmpty() ? null : replies.get(replies.size() - 1);
+				node.setRepliesCursor(last != null
+						? CommentThread.cursor(last.getDate(), last.getId())
+						: CommentThread.cursor(Long.MIN_VALUE, Long.MIN_VALUE));
+			}
+		}
+		return roots;
+	}
+	
+	private static List<Long> ids(List<Object[]> keys) {
+		List<Long> ids = new ArrayList<>();
+		for (Object[] key : keys) {
+			ids.add(((Number) key[0]).longValue());
+		}
+		return ids;
+	}
+	
+}
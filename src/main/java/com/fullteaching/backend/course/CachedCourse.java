@@ -0,0 +1,34 @@
+package com.fullteaching.backend.course;
+
+/**
+ * Serialized JSON of a course together with the version of the course it
+ * was read from, so the ETag of a cached response always matches its body.
+ */
+public class CachedCourse {
+	
+	private final long version;
+	
+	private final byte[] json;
+	
+	public CachedCourse(long version, byte[] json) {
+		this.version = version;
+		this.json = json;
+	}
+	
+	public long getVersion() {
+		return version;
+	}
+	
+	public byte[] getJson() {
+		return json;
+	}
+	
+	public String getETag() {
+		return CachedCourse.eTag(this.version);
+	}
+	
+	public static String eTag(long version) {
+		return "\"" + version + "\"";
+	}
+	
+}
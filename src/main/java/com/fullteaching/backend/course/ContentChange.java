@@ -0,0 +1,77 @@
+package com.fullteaching.backend.course;
+
+import java.util.Objects;
+
+/**
+ * A part of a course saved or deleted by an operation, passed to
+ * 'CourseCache.invalidate' so that clients can sync it (see CourseChangeService).
+ */
+public final class ContentChange {
+	
+	public enum Type { COURSE, COURSE_DETAILS, FORUM, ENTRY, COMMENT, FILE_GROUP, FILE, SESSION }
+	
+	private final Type type;
+	
+	private final long id;
+	
+	private final boolean created;
+	
+	private final boolean deleted;
+	
+	private ContentChange(Type type, long id, boolean created, boolean deleted) {
+		this.type = type;
+		this.id = id;
+		this.created = created;
+		this.deleted = deleted;
+	}
+	
+	// Inserted by the operation
+	public static ContentChange created(Type type, long id) {
+		return new ContentChange(type, id, true, false);
+	}
+	
+	// Updated, or inserted by an operation that cannot tell which of its objects are new
+	public static ContentChange saved(Type type, long id) {
+		return new ContentChange(type, id, false, false);
+	}
+	
+	public static ContentChange deleted(Type type, long id) {
+		return new ContentChange(type, id, false, true);
+	}
+	
+	public Type getType() {
+		return type;
+	}
+	
+	public long getId() {
+		return id;
+	}
+	
+	public boolean isCreated() {
+		return created;
+	}
+	
+	public boolean isDeleted() {
+		return deleted;
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof ContentChange)) {
+			return false;
+		}
+		ContentChange change = (ContentChange) other;
+		return change.type == this.type && change.id == this.id && change.created == this.created && change.deleted == this.deleted;
+	}
+	
+	@Override
+	public int hashCode() {
+		return Objects.hash(type, id, created, deleted);
+	}
+	
+	@Override
+	public String toString() {
+		return (created ? "created " : deleted ? "deleted " : "saved ") + type + " " + id;
+	}
+	
+}
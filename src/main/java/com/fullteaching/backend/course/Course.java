@@ -4,16 +4,25 @@ import java.util.Set;
 import java.util.HashSet;
 
 import javax.persistence.CascadeType;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.JoinTable;
 import javax.persistence.OneToOne;
 import javax.persistence.OneToMany;
 import javax.persistence.ManyToMany;
 import javax.persistence.ManyToOne;
 
+import org.hibernate.annotations.LazyCollection;
+import org.hibernate.annotations.LazyCollectionOption;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonView;
 import com.fullteaching.backend.user.User;
 import com.fullteaching.backend.session.Session;
@@ -45,9 +54,33 @@ public class Course {
 	@OneToMany(fetch = FetchType.EAGER, cascade=CascadeType.ALL, mappedBy="course")
 	private Set<Session> sessions;
 	
+	//Indexed by attender so the "my courses" listing can be resolved from the join table alone.
+	//Never serialized (see 'getAttendersCount' and 'GET /api-courses/course/{id}/attenders'), and extra lazy
+	//so that 'size' and 'contains' are answered by the database without loading the whole roster
+	@JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+	@LazyCollection(LazyCollectionOption.EXTRA)
 	@ManyToMany
+	@JoinTable(name = "course_attenders",
+		joinColumns = @JoinColumn(name = "courses_id"),
+		inverseJoinColumns = @JoinColumn(name = "attenders_id"),
+		indexes = @Index(name = "idx_course_attenders_attender", columnList = "attenders_id,courses_id"))
 	private Set<User> attenders;
 	
+	//Incremented on every change of any part of the course graph (see CourseCache.invalidate).
+	//Never written by entity updates, only by CourseRepository.incrementVersion
+	@Column(updatable = false)
+	private long version;
+	
+	//Incremented only when the title, image or info of the course change, as the optimistic lock of
+	//'PATCH /api-courses/edit/{id}', so that changes to the rest of the graph do not conflict with it.
+	//Never written by entity updates, only by CourseRepository.patch and incrementHeaderVersion
+	@Column(updatable = false)
+	private long headerVersion;
+	
+	//Tombstone: a deleted course is hidden at once, and its rows are removed later by CourseDeletionService
+	@JsonIgnore
+	private boolean deleted;
+	
 	public Course() {}
 	
 	public Course(String title, String image, User teacher) {
@@ -108,6 +141,18 @@ public class Course {
 		this.courseDetails = courseDetails;
 	}
 
+	public long getVersion() {
+		return version;
+	}
+	
+	public long getHeaderVersion() {
+		return headerVersion;
+	}
+	
+	public boolean isDeleted() {
+		return deleted;
+	}
+	
 	public Set<User> getAttenders() {
 		return attenders;
 	}
@@ -115,6 +160,11 @@ public class Course {
 	public void setAttenders(Set<User> attenders) {
 		this.attenders = attenders;
 	}
+	
+	//The roster itself is paged by 'GET /api-courses/course/{id}/attenders'
+	public int getAttendersCount() {
+		return (attenders != null) ? attenders.size() : 0;
+	}
 
 	public Set<Session> getSessions() {
 		return sessions;
@@ -0,0 +1,18 @@
+package com.fullteaching.backend.course;
+
+/**
+ * Read-only projection of an attender for the paged roster of a course. The
+ * users are never loaded as entities, so neither their roles nor their
+ * courses are fetched.
+ */
+public interface CourseAttender {
+	
+	long getId();
+	
+	String getName();
+	
+	String getNickName();
+	
+	String getPicture();
+	
+}
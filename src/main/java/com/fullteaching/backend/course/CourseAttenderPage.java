@@ -0,0 +1,43 @@
+package com.fullteaching.backend.course;
+
+import java.util.List;
+
+import com.fullteaching.backend.paging.Cursors;
+
+public class CourseAttenderPage {
+	
+	private List<CourseAttender> attenders;
+	
+	//Opaque value to pass as 'after' to get the next page (null if this is the last one)
+	private String nextCursor;
+	
+	public CourseAttenderPage(List<CourseAttender> attenders, String nextCursor) {
+		this.attenders = attenders;
+		this.nextCursor = nextCursor;
+	}
+	
+	public List<CourseAttender> getAttenders() {
+		return attenders;
+	}
+	
+	public String getNextCursor() {
+		return nextCursor;
+	}
+	
+	//A cursor is the sort key and the id of the last attender of a page: "{id}:{key}", Base64 encoded
+	public static String cursor(String sortKey, long id) {
+		//The key goes last, as it may contain ':'
+		return Cursors.encode(id, sortKey != null ? sortKey : "");
+	}
+	
+	// Returns the id of the cursor, or throws IllegalArgumentException if it is not valid
+	public static long cursorId(String cursor) {
+		return Long.parseLong(Cursors.decode(cursor, 2)[0]);
+	}
+	
+	// Returns the sort key of the cursor, or throws IllegalArgumentException if it is not valid
+	public static String cursorKey(String cursor) {
+		return Cursors.decode(cursor, 2)[1];
+	}
+	
+}
@@ -0,0 +1,118 @@
+package com.fullteaching.backend.course;
+
+import java.util.Arrays;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fullteaching.backend.cache.CacheStats;
+import com.fullteaching.backend.cache.ReadThroughCache;
+
+/**
+ * Cache of the serialized JSON of whole courses (CourseDetails, Forum and
+ * FileGroups included), as returned by 'GET /api-courses/course/{id}'.
+ * 
+ * The JSON is cached instead of the entity so cached courses never need an
+ * open persistence context. Every operation that modifies any part of a course
+ * graph must call 'invalidate' in the transaction that saves its changes: it
+ * also increments the version of the course, used as its ETag, and records the
+ * changed content so clients can sync only it (see CourseChangeService). The
+ * course is evicted again once that transaction ends.
+ */
+@Component
+public class CourseCache {
+	
+	private static final Logger log = LoggerFactory.getLogger(CourseCache.class);
+	
+	@Autowired
+	private CourseRepository courseRepository;
+	
+	@Autowired
+	private CourseChangeService courseChangeService;
+	
+	@Autowired
+	private ObjectMapper objectMapper;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	@Value("${course.cache.max-entries:500}")
+	private int maxEntries;
+	
+	@Value("${course.cache.ttl-millis:60000}")
+	private long ttlMillis;
+	
+	private ReadThroughCache<Long, CachedCourse> cache;
+	
+	private TransactionTemplate readOnlyTransaction;
+	
+	@PostConstruct
+	public void init() {
+		this.cache = new ReadThroughCache<>(maxEntries, ttlMillis);
+		this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+		this.readOnlyTransaction.setReadOnly(true);
+	}
+	
+	// Returns null if the course does not exist or has been deleted
+	public CachedCourse getCourse(long courseId) {
+		return cache.get(courseId, this::loadCourse);
+	}
+	
+	// 'changes' are the parts of the course content saved or deleted, if any
+	public void invalidate(long courseId, ContentChange... changes) {
+		log.debug("Invalidating cached course {}", courseId);
+		//Recorded in the caller's transaction, so they are never lost once its changes are committed
+		if (changes.length == 0) {
+			courseRepository.incrementVersion(courseId);
+		} else {
+			courseChangeService.record(courseId, Arrays.asList(changes));
+		}
+		cache.invalidate(courseId);
+		//A course loaded before the caller's transaction ends may be the old one, or one that is rolled back
+		if (TransactionSynchronizationManager.isActualTransactionActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					cache.invalidate(courseId);
+				}
+			});
+		}
+	}
+	
+	// For changes that already incremented the version of the course themselves
+	public void evict(long courseId) {
+		log.debug("Evicting cached course {}", courseId);
+		cache.invalidate(courseId);
+	}
+	
+	public CacheStats getStats() {
+		return cache.getStats();
+	}
+	
+	private CachedCourse loadCourse(long courseId) {
+		//Serialized inside the transaction so that lazy associations can be initialized
+		return readOnlyTransaction.execute(status -> {
+			Course course = courseRepository.findById(courseId).orElse(null);
+			if (course == null || course.isDeleted()) {
+				return null;
+			}
+			try {
+				return new CachedCourse(course.getVersion(), objectMapper.writeValueAsBytes(course));
+			} catch (JsonProcessingException e) {
+				throw new IllegalStateException("Course " + courseId + " could not be serialized", e);
+			}
+		});
+	}
+	
+}
@@ -0,0 +1,90 @@
+package com.fullteaching.backend.course;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * Last change of a part of a course: one row per object, moved to the new
+ * 'sequence' every time the object changes, so the log never grows beyond
+ * the number of objects the course ever had. Deleted objects keep their row
+ * as a tombstone.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_course_change_object", columnNames = { "courseId", "type", "objectId" }),
+		indexes = @Index(name = "idx_course_change_sequence", columnList = "courseId,sequence,id"))
+public class CourseChange {
+	
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO)
+	private long id;
+	
+	private long courseId;
+	
+	@Enumerated(EnumType.STRING)
+	private ContentChange.Type type;
+	
+	private long objectId;
+	
+	//Version of the course the object was last changed in
+	private long sequence;
+	
+	//Version of the course the object was created in, so it is new to clients synced before it.
+	//0 for objects that already existed when they were first recorded
+	private long createdSequence;
+	
+	private boolean deleted;
+	
+	public CourseChange() {}
+	
+	public CourseChange(long courseId, ContentChange.Type type, long objectId, long sequence, long createdSequence) {
+		this.courseId = courseId;
+		this.type = type;
+		this.objectId = objectId;
+		this.sequence = sequence;
+		this.createdSequence = createdSequence;
+	}
+	
+	public long getId() {
+		return id;
+	}
+	
+	public long getCourseId() {
+		return courseId;
+	}
+	
+	public ContentChange.Type getType() {
+		return type;
+	}
+	
+	public long getObjectId() {
+		return objectId;
+	}
+	
+	public long getSequence() {
+		return sequence;
+	}
+	
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+	
+	public long getCreatedSequence() {
+		return createdSequence;
+	}
+	
+	public boolean isDeleted() {
+		return deleted;
+	}
+	
+	public void setDeleted(boolean deleted) {
+		this.deleted = deleted;
+	}
+	
+}
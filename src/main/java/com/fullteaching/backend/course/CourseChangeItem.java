@@ -0,0 +1,71 @@
+package com.fullteaching.backend.course;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A part of a course changed since the sequence a client synced to. 'data' is
+ * its current state, in the same form as the endpoint that lists that kind of
+ * object, and is missing for deletions. Objects whose insertion was not known
+ * as such (e.g. uploaded files) come as updates, so clients must apply an
+ * update of an object they do not have as an insertion.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CourseChangeItem {
+	
+	public enum Operation { INSERT, UPDATE, DELETE }
+	
+	private ContentChange.Type type;
+	
+	private long id;
+	
+	private Operation operation;
+	
+	private long sequence;
+	
+	//Entry of a comment
+	private Long entryId;
+	
+	//Parent comment of a reply, group of a file or parent group of a file group (null for the rest)
+	private Long parentId;
+	
+	private Object data;
+	
+	public CourseChangeItem(ContentChange.Type type, long id, Operation operation, long sequence, Long entryId, Long parentId, Object data) {
+		this.type = type;
+		this.id = id;
+		this.operation = operation;
+		this.sequence = sequence;
+		this.entryId = entryId;
+		this.parentId = parentId;
+		this.data = data;
+	}
+	
+	public ContentChange.Type getType() {
+		return type;
+	}
+	
+	public long getId() {
+		return id;
+	}
+	
+	public Operation getOperation() {
+		return operation;
+	}
+	
+	public long getSequence() {
+		return sequence;
+	}
+	
+	public Long getEntryId() {
+		return entryId;
+	}
+	
+	public Long getParentId() {
+		return parentId;
+	}
+	
+	public Object getData() {
+		return data;
+	}
+	
+}
@@ -0,0 +1,25 @@
+package com.fullteaching.backend.course;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface CourseChangeRepository extends JpaRepository<CourseChange, Long> {
+	
+	public List<CourseChange> findByCourseIdAndTypeAndObjectIdIn(long courseId, ContentChange.Type type, Collection<Long> objectIds);
+	
+	//Oldest changes first. Keyset pagination on (sequence, id): 'pageable' only limits the page size
+	@Query("select c from CourseChange c where c.courseId = :courseId "
+			+ "and (c.sequence > :afterSequence or (c.sequence = :afterSequence and c.id > :afterId)) "
+			+ "order by c.sequence asc, c.id asc")
+	public List<CourseChange> findPage(
+			@Param("courseId") long courseId,
+			@Param("afterSequence") long afterSequence,
+			@Param("afterId") long afterId,
+			Pageable pageable);
+			
+}
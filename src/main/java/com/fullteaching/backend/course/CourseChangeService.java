@@ -0,0 +1,257 @@
+package com.fullteaching.backend.course;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fullteaching.backend.comment.CommentNode;
+import com.fullteaching.backend.comment.CommentRepository;
+import com.fullteaching.backend.coursedetails.CourseDetailsRepository;
+import com.fullteaching.backend.entry.EntryRepository;
+import com.fullteaching.backend.entry.EntrySummary;
+import com.fullteaching.backend.file.File;
+import com.fullteaching.backend.file.FileRepository;
+import com.fullteaching.backend.filegroup.FileGroupRepository;
+import com.fullteaching.backend.filegroup.FileGroupSummary;
+import com.fullteaching.backend.forum.ForumRepository;
+import com.fullteaching.backend.forum.ForumSummary;
+import com.fullteaching.backend.session.SessionRepository;
+import com.fullteaching.backend.session.SessionSummary;
+
+/**
+ * Change log of the content of each course, so returning clients sync only
+ * what changed instead of reloading the whole course. The sequence of a change
+ * is the version of the course it was made in. 'record' increments the version
+ * and records the changes in the transaction of the operation that made them
+ * (through CourseCache.invalidate), so both commit or roll back together, and
+ * the UPDATE of the course row makes changes of the same course commit in the
+ * order of their sequence.
+ *
+ * Only the last change of each object is kept (see CourseChange), and its
+ * current state is read when the changes are requested. Objects deleted along
+ * with their container (the comments of a deleted entry, the files of a
+ * deleted group...) are only deleted through the container.
+ */
+@Service
+public class CourseChangeService {
+	
+	@Autowired
+	private CourseChangeRepository courseChangeRepository;
+	
+	@Autowired
+	private CourseRepository courseRepository;
+	
+	@Autowired
+	private CourseDetailsRepository courseDetailsRepository;
+	
+	@Autowired
+	private ForumRepository forumRepository;
+	
+	@Autowired
+	private EntryRepository entryRepository;
+	
+	@Autowired
+	private CommentRepository commentRepository;
+	
+	@Autowired
+	private FileGroupRepository fileGroupRepository;
+	
+	@Autowired
+	private FileRepository fileRepository;
+	
+	@Autowired
+	private SessionRepository sessionRepository;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	private TransactionTemplate transactionTemplate;
+	
+	@PostConstruct
+	public void init() {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+	
+	// Increments the version of the course and records the changes with it, in the caller's transaction if there is one
+	public void record(long courseId, List<ContentChange> changes) {
+		transactionTemplate.execute(status -> {
+			courseRepository.incrementVersion(courseId);
+			Long version = courseRepository.findVersion(courseId);
+			//Nothing is synced from a deleted course
+			if (version != null) {
+				this.recordAt(courseId, version, changes);
+			}
+			return null;
+		});
+	}
+	
+	// Records the changes with a version the caller's transaction has just set
+	void recordAt(long courseId, long sequence, List<ContentChange> changes) {
+		//Only the last change of each object counts, but an object created by the operation stays new
+		Map<ContentChange.Type, Map<Long, Boolean>> byType = new EnumMap<>(ContentChange.Type.class);
+		Set<ContentChange> created = new HashSet<>();
+		for (ContentChange change : changes) {
+			byType.computeIfAbsent(change.getType(), type -> new LinkedHashMap<>()).put(change.getId(), change.isDeleted());
+			if (change.isCreated()) {
+				created.add(change);
+			}
+		}
+		List<CourseChange> rows = new ArrayList<>();
+		for (Map.Entry<ContentChange.Type, Map<Long, Boolean>> type : byType.entrySet()) {
+			Map<Long, CourseChange> existing = new HashMap<>();
+			for (CourseChange row : courseChangeRepository.findByCourseIdAndTypeAndObjectIdIn(courseId, type.getKey(), type.getValue().keySet())) {
+				existing.put(row.getObjectId(), row);
+			}
+			for (Map.Entry<Long, Boolean> object : type.getValue().entrySet()) {
+				CourseChange row = existing.get(object.getKey());
+				if (row == null) {
+					//Objects not created now existed before the log knew them, so no client is told they are new
+					boolean isNew = created.contains(ContentChange.created(type.getKey(), object.getKey()));
+					row = new CourseChange(courseId, type.getKey(), object.getKey(), sequence, isNew ? sequence : 0);
+				}
+				row.setSequence(sequence);
+				row.setDeleted(object.getValue());
+				rows.add(row);
+			}
+		}
+		courseChangeRepository.saveAll(rows);
+	}
+	
+	// Changes after (afterSequence, afterId), for a client synced to 'since'. 'version' is the current one of the course
+	public CourseChanges getChanges(long courseId, long version, long since, long afterSequence, long afterId, int size) {
+		//One extra change is requested to know if there is a next page
+		List<CourseChange> rows = courseChangeRepository.findPage(courseId, afterSequence, afterId, PageRequest.of(0, size + 1));
+		String nextCursor = null;
+		long sequence;
+		if (rows.size() > size) {
+			rows = rows.subList(0, size);
+			CourseChange last = rows.get(size - 1);
+			nextCursor = CourseChanges.cursor(since, last.getSequence(), last.getId());
+			//Changes of the sequence of the last one may continue in the next page
+			sequence = Math.max(since, last.getSequence() - 1);
+		} else {
+			//Changes newer than 'version' may have been read too
+			sequence = Math.max(version, since);
+			for (CourseChange row : rows) {
+				sequence = Math.max(sequence, row.getSequence());
+			}
+		}
+		
+		Map<ContentChange.Type, List<Long>> saved = new EnumMap<>(ContentChange.Type.class);
+		for (CourseChange row : rows) {
+			if (!row.isDeleted()) {
+				saved.computeIfAbsent(row.getType(), type -> new ArrayList<>()).add(row.getObjectId());
+			}
+		}
+		Map<ContentChange.Type, Map<Long, CourseChangeItem>> current = new EnumMap<>(ContentChange.Type.class);
+		for (Map.Entry<ContentChange.Type, List<Long>> type : saved.entrySet()) {
+			current.put(type.getKey(), this.load(courseId, type.getKey(), type.getValue()));
+		}
+		
+		List<CourseChangeItem> changes = new ArrayList<>();
+		for (CourseChange row : rows) {
+			boolean created = row.getCreatedSequence() > since;
+			CourseChangeItem item = row.isDeleted() ? null : current.get(row.getType()).get(row.getObjectId());
+			if (item != null) {
+				changes.add(new CourseChangeItem(row.getType(), row.getObjectId(),
+						created ? CourseChangeItem.Operation.INSERT : CourseChangeItem.Operation.UPDATE,
+						row.getSequence(), item.getEntryId(), item.getParentId(), item.getData()));
+			} else if (!created) {
+				//Deleted, or no longer found because its container was deleted. New objects the client never saw are skipped
+				changes.add(new CourseChangeItem(row.getType(), row.getObjectId(), CourseChangeItem.Operation.DELETE,
+						row.getSequence(), null, null, null));
+			}
+		}
+		return new CourseChanges(courseId, sequence, changes, nextCursor);
+	}
+	
+	// Current state of the objects of the course, by id (only their data and links are set). Missing objects are left out
+	private Map<Long, CourseChangeItem> load(long courseId, ContentChange.Type type, List<Long> ids) {
+		Map<Long, CourseChangeItem> items = new HashMap<>();
+		switch (type) {
+		case COURSE:
+			CourseHeader header = courseRepository.findHeader(courseId);
+			if (header != null && ids.contains(courseId)) {
+				items.put(courseId, item(header, null, null));
+			}
+			break;
+		case COURSE_DETAILS:
+			this.putIfListed(items, ids, courseDetailsRepository.findInfoByCourseId(courseId), info -> info.getId());
+			break;
+		case FORUM:
+			this.putIfListed(items, ids, forumRepository.findSummaryByCourseId(courseId), ForumSummary::getId);
+			break;
+		case ENTRY:
+			ForumSummary forum = forumRepository.findSummaryByCourseId(courseId);
+			if (forum != null) {
+				for (EntrySummary entry : entryRepository.findSummariesByForumIdAndIdIn(forum.getId(), ids)) {
+					items.put(entry.getId(), item(entry, null, null));
+				}
+			}
+			break;
+		case COMMENT:
+			ForumSummary commentsForum = forumRepository.findSummaryByCourseId(courseId);
+			if (commentsForum != null) {
+				Map<Long, Long> entryIds = new HashMap<>();
+				for (Object[] row : commentRepository.findEntryIdsOfForumIn(commentsForum.getId(), ids)) {
+					entryIds.put(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+				}
+				if (!entryIds.isEmpty()) {
+					for (Object[] row : commentRepository.findRowsByIdIn(entryIds.keySet())) {
+						CommentNode comment = CommentNode.fromRow(row);
+						Long parentId = row[1] != null ? ((Number) row[1]).longValue() : null;
+						items.put(comment.getId(), item(comment, entryIds.get(comment.getId()), parentId));
+					}
+				}
+			}
+			break;
+		case FILE_GROUP:
+			//Groups are only reachable from their course, so none of another course is ever recorded here
+			for (FileGroupSummary group : fileGroupRepository.findSummariesByIdIn(ids)) {
+				items.put(group.getId(), item(group, null, group.getParentId()));
+			}
+			break;
+		case FILE:
+			Map<Long, Long> groupIds = new HashMap<>();
+			for (Object[] row : fileRepository.findGroupIdsOfCourseIn(courseId, ids)) {
+				groupIds.put(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+			}
+			for (File file : fileRepository.findAllById(groupIds.keySet())) {
+				items.put(file.getId(), item(file, null, groupIds.get(file.getId())));
+			}
+			break;
+		case SESSION:
+			for (SessionSummary session : sessionRepository.findSummariesByCourseIdAndIdIn(courseId, ids)) {
+				items.put(session.getId(), item(session, null, null));
+			}
+			break;
+		default:
+			throw new IllegalStateException("Unexpected content type " + type);
+		}
+		return items;
+	}
+	
+	private <T> void putIfListed(Map<Long, CourseChangeItem> items, List<Long> ids, T data, java.util.function.ToLongFunction<T> id) {
+		if (data != null && ids.contains(id.applyAsLong(data))) {
+			items.put(id.applyAsLong(data), item(data, null, null));
+		}
+	}
+	
+	private static CourseChangeItem item(Object data, Long entryId, Long parentId) {
+		return new CourseChangeItem(null, 0, null, 0, entryId, parentId, data);
+	}
+	
+}
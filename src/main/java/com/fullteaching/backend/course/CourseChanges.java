@@ -0,0 +1,58 @@
+package com.fullteaching.backend.course;
+
+import java.util.List;
+
+import com.fullteaching.backend.paging.Cursors;
+
+/**
+ * A page of the changes of a course after a sequence, as returned by
+ * 'GET /api-courses/course/{id}/changes'. Sequences are versions of the
+ * course, so the ETag of 'GET /api-courses/course/{id}' is a valid 'since'.
+ */
+public class CourseChanges {
+	
+	private long courseId;
+	
+	//Sequence the client is synced to once it applies this page: the 'since' of its next sync
+	private long sequence;
+	
+	private List<CourseChangeItem> changes;
+	
+	//Opaque value to pass as 'after' to get the next page (null if this is the last one)
+	private String nextCursor;
+	
+	public CourseChanges(long courseId, long sequence, List<CourseChangeItem> changes, String nextCursor) {
+		this.courseId = courseId;
+		this.sequence = sequence;
+		this.changes = changes;
+		this.nextCursor = nextCursor;
+	}
+	
+	public long getCourseId() {
+		return courseId;
+	}
+	
+	public long getSequence() {
+		return sequence;
+	}
+	
+	public List<CourseChangeItem> getChanges() {
+		return changes;
+	}
+	
+	public String getNextCursor() {
+		return nextCursor;
+	}
+	
+	//A cursor is the sequence the sync started from and the sequence and id of the last change of a page:
+	//"{since}:{sequence}:{id}", Base64 encoded
+	public static String cursor(long since, long sequence, long id) {
+		return Cursors.encode(since, sequence, id);
+	}
+	
+	// Returns [since, sequence, id] of the cursor, or throws IllegalArgumentException if it is not valid
+	public static long[] parseCursor(String cursor) {
+		return Cursors.decodeLongs(cursor, 3);
+	}
+	
+}
@@ -0,0 +1,493 @@
+package com.fullteaching.backend.course;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fullteaching.backend.coursedetails.CourseDetailsInfo;
+import com.fullteaching.backend.coursedetails.CourseDetailsRepository;
+import com.fullteaching.backend.entry.EntryRepository;
+import com.fullteaching.backend.entry.EntrySummary;
+import com.fullteaching.backend.filegroup.FileGroup;
+import com.fullteaching.backend.filegroup.FileGroupRepository;
+import com.fullteaching.backend.forum.CommentWriteBehindService;
+import com.fullteaching.backend.forum.Forum;
+import com.fullteaching.backend.forum.ForumHotEntriesService;
+import com.fullteaching.backend.forum.ForumPage;
+import com.fullteaching.backend.forum.ForumReadMarks;
+import com.fullteaching.backend.forum.ForumReadService;
+import com.fullteaching.backend.forum.ForumRepository;
+import com.fullteaching.backend.forum.ForumSearchPage;
+import com.fullteaching.backend.forum.ForumSearchService;
+import com.fullteaching.backend.security.AuthorizationService;
+import com.fullteaching.backend.session.SessionRepository;
+import com.fullteaching.backend.session.SessionSummary;
+import com.fullteaching.backend.user.UserComponent;
+
+/**
+ * Parts of a course that can be requested on their own instead of through the
+ * whole 'GET /api-courses/course/{id}' document. Each one is read with its own
+ * query, without loading the rest of the course graph.
+ */
+@RestController
+@RequestMapping("/api-courses/course/{id}")
+public class CourseContentController {
+	
+	private static final Logger log = LoggerFactory.getLogger(CourseContentController.class);
+	
+	private static final int DEFAULT_FORUM_PAGE_SIZE = 20;
+	private static final int MAX_FORUM_PAGE_SIZE = 100;
+	
+	private static final int DEFAULT_SEARCH_PAGE_SIZE = 20;
+	private static final int MAX_SEARCH_PAGE_SIZE = 100;
+	
+	private static final int DEFAULT_HOT_ENTRIES_SIZE = 10;
+	private static final int MAX_HOT_ENTRIES_SIZE = 50;
+	
+	private static final int MAX_READ_IDS = 1000;
+	
+	private static final int DEFAULT_CHANGES_PAGE_SIZE = 500;
+	private static final int MAX_CHANGES_PAGE_SIZE = 1000;
+	
+	@Autowired
+	private CourseRepository courseRepository;
+	
+	@Autowired
+	private CourseDetailsRepository courseDetailsRepository;
+	
+	@Autowired
+	private SessionRepository sessionRepository;
+	
+	@Autowired
+	private ForumRepository forumRepository;
+	
+	@Autowired
+	private EntryRepository entryRepository;
+	
+	@Autowired
+	private FileGroupRepository fileGroupRepository;
+	
+	@Autowired
+	private CourseChangeService courseChangeService;
+	
+	@Autowired
+	private ForumSearchService forumSearchService;
+	
+	@Autowired
+	private ForumReadService forumReadService;
+	
+	@Autowired
+	private ForumHotEntriesService forumHotEntriesService;
+	
+	@Autowired
+	private CommentWriteBehindService commentWriteBehindService;
+	
+	@Autowired
+	private AuthorizationService authorizationService;
+	
+	@Autowired
+	private UserComponent user;
+	
+	@RequestMapping(value = "/details", method = RequestMethod.GET)
+	public ResponseEntity<Object> getCourseInfo(@PathVariable(value="id") String id) {
+		
+		log.info("CRUD operation: Getting the information of one course");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_i = -1;
+		try{
+			id_i = Long.parseLong(id);
+		}catch(NumberFormatException e){
+			log.error("Course ID '{}' is not of type Long", id);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		CourseDetailsInfo info = courseDetailsRepository.findInfoByCourseId(id_i);
+		if (info == null) {
+			log.error("Course {} not found", id_i);
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(info, HttpStatus.OK);
+	}
+	
+	@RequestMapping(value = "/sessions", method = RequestMethod.GET)
+	public ResponseEntity<Object> getCourseSessions(@PathVariable(value="id") String id) {
+		
+		log.info("CRUD operation: Getting the sessions of one course");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_i = -1;
+		try{
+			id_i = Long.parseLong(id);
+		}catch(NumberFormatException e){
+			log.error("Course ID '{}' is not of type Long", id);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		//An empty list is also the answer for a missing course, so it is checked apart
+		if (courseRepository.findVersion(id_i) == null) {
+			log.error("Course {} not found", id_i);
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		List<SessionSummary> sessions = sessionRepository.findSummariesByCourseId(id_i);
+		return new ResponseEntity<>(sessions, HttpStatus.OK);
+	}
+	
+	@RequestMapping(value = "/forum", method = RequestMethod.GET)
+	public ResponseEntity<Object> getCourseForum(
+			@PathVariable(value="id") String id,
+			@RequestParam(value="after", required=false) String after,
+			@RequestParam(value="size", required=false) Integer size)
+	{
+		
+		log.info("CRUD operation: Getting a page of the forum of one course");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_i = -1;
+		try{
+			id_i = Long.parseLong(id);
+		}catch(NumberFormatException e){
+			log.error("Course ID '{}' is not of type Long", id);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		//First page: before any possible entry
+		long beforeDate = Long.MAX_VALUE;
+		long beforeId = Long.MAX_VALUE;
+		if (after != null) {
+			try {
+				long[] cursor = ForumPage.parseCursor(after);
+				beforeDate = cursor[0];
+				beforeId = cursor[1];
+			} catch (IllegalArgumentException e) {
+				log.error("Forum cursor '{}' is not valid", after);
+				return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+			}
+		}
+		int pageSize = (size != null) ? Math.max(1, Math.min(size, MAX_FORUM_PAGE_SIZE)) : DEFAULT_FORUM_PAGE_SIZE;
+		
+		this.awaitOwnComments();
+		
+		Forum forum = forumRepository.findByCourseId(id_i);
+		if (forum == null) {
+			log.error("Forum of course {} not found", id_i);
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		
+		//One extra row is requested to know if there is a next page
+		List<EntrySummary> entries = entryRepository.findSummariesByForumId(forum.getId(), beforeDate, beforeId, PageRequest.of(0, pageSize + 1));
+		String nextCursor = null;
+		if (entries.size() > pageSize) {
+			entries = new ArrayList<>(entries.subList(0, pageSize));
+			EntrySummary last = entries.get(pageSize - 1);
+			nextCursor = ForumPage.cursor(last.getDate(), last.getId());
+		}
+		
+		return new ResponseEntity<>(new ForumPage(forum, entries, nextCursor), HttpStatus.OK);
+	}
+	
+	@RequestMapping(value = "/forum/search", method = RequestMethod.GET)
+	public ResponseEntity<Object> searchCourseForum(
+			@PathVariable(value="id") String id,
+			@RequestParam(value="q", required=false) String q,
+			@RequestParam(value="after", required=false) String after,
+			@RequestParam(value="size", required=false) Integer size)
+	{
+		
+		log.info("CRUD operation: Searching the forum of one course");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_i = -1;
+		try{
+			id_i = Long.parseLong(id);
+		}catch(NumberFormatException e){
+			log.error("Course ID '{}' is not of type Long", id);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		if (q == null || q.trim().isEmpty()) {
+			log.error("Forum search without a query");
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		//First page: after no hit
+		int[] cursor = null;
+		if (after != null) {
+			try {
+				cursor = ForumSearchPage.parseCursor(after);
+			} catch (IllegalArgumentException e) {
+				log.error("Forum search cursor '{}' is not valid", after);
+				return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+			}
+		}
+		int pageSize = (size != null) ? Math.max(1, Math.min(size, MAX_SEARCH_PAGE_SIZE)) : DEFAULT_SEARCH_PAGE_SIZE;
+		
+		this.awaitOwnComments();
+		
+		Forum forum = forumRepository.findByCourseId(id_i);
+		if (forum == null) {
+			log.error("Forum of course {} not found", id_i);
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		
+		return new ResponseEntity<>(forumSearchService.search(id_i, forum, q, cursor, pageSize), HttpStatus.OK);
+	}
+	
+	@RequestMapping(value = "/forum/hot", method = RequestMethod.GET)
+	public ResponseEntity<Object> getCourseForumHotEntries(
+			@PathVariable(value="id") String id,
+			@RequestParam(value="size", required=false) Integer size)
+	{
+		
+		log.info("CRUD operation: Getting the hot entries of the forum of one course");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_i = -1;
+		try{
+			id_i = Long.parseLong(id);
+		}catch(NumberFormatException e){
+			log.error("Course ID '{}' is not of type Long", id);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		int listSize = (size != null) ? Math.max(1, Math.min(size, MAX_HOT_ENTRIES_SIZE)) : DEFAULT_HOT_ENTRIES_SIZE;
+		
+		this.awaitOwnComments();
+		
+		Forum forum = forumRepository.findByCourseId(id_i);
+		if (forum == null) {
+			log.error("Forum of course {} not found", id_i);
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		
+		return new ResponseEntity<>(forumHotEntriesService.getHotEntries(forum.getId(), listSize), HttpStatus.OK);
+	}
+	
+	@RequestMapping(value = "/forum/read", method = RequestMethod.GET)
+	public ResponseEntity<Object> getCourseForumReadState(
+			@PathVariable(value="id") String id,
+			@RequestParam(value="entryIds", required=false) List<Long> entryIds,
+			@RequestParam(value="commentIds", required=false) List<Long> commentIds)
+	{
+		
+		log.info("CRUD operation: Getting the unread entries and comments of the forum of one course");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_i = -1;
+		try{
+			id_i = Long.parseLong(id);
+		}catch(NumberFormatException e){
+			log.error("Course ID '{}' is not of type Long", id);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		List<Long> entries = (entryIds != null) ? entryIds : new ArrayList<>();
+		List<Long> comments = (commentIds != null) ? commentIds : new ArrayList<>();
+		if (entries.size() + comments.size() > MAX_READ_IDS) {
+			log.error("More than {} entries and comments asked for", MAX_READ_IDS);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		long userId = user.getLoggedUser().getId();
+		Forum forum = forumRepository.findByCourseId(id_i);
+		ResponseEntity<Object> attenderAuthorized = this.checkForumReader(id_i, forum, userId);
+		if (attenderAuthorized != null) {
+			return attenderAuthorized;
+		}
+		
+		return new ResponseEntity<>(forumReadService.getReadState(userId, id_i, forum, entries, comments), HttpStatus.OK);
+	}
+	
+	@RequestMapping(value = "/forum/read", method = RequestMethod.PUT)
+	public ResponseEntity<Object> markCourseForumRead(
+			@PathVariable(value="id") String id,
+			@RequestParam(value="all", defaultValue="false") boolean all,
+			@RequestBody(required=false) ForumReadMarks marks)
+	{
+		
+		log.info("CRUD operation: Marking entries and comments of the forum of one course as read");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_i = -1;
+		try{
+			id_i = Long.parseLong(id);
+		}catch(NumberFormatException e){
+			log.error("Course ID '{}' is not of type Long", id);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		if (!all && (marks == null || marks.getEntryIds() == null || marks.getCommentIds() == null
+				|| marks.getEntryIds().size() + marks.getCommentIds().size() > MAX_READ_IDS)) {
+			log.error("Marks of read entries and comments missing or longer than {}", MAX_READ_IDS);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		long userId = user.getLoggedUser().getId();
+		Forum forum = forumRepository.findByCourseId(id_i);
+		ResponseEntity<Object> attenderAuthorized = this.checkForumReader(id_i, forum, userId);
+		if (attenderAuthorized != null) {
+			return attenderAuthorized;
+		}
+		
+		if (all) {
+			return new ResponseEntity<>(forumReadService.markAllRead(userId, id_i, forum), HttpStatus.OK);
+		}
+		return new ResponseEntity<>(forumReadService.markRead(userId, id_i, forum, marks.getEntryIds(), marks.getCommentIds()), HttpStatus.OK);
+	}
+	
+	// Only attenders of the course have a read state in its forum
+	private ResponseEntity<Object> checkForumReader(long courseId, Forum forum, long userId) {
+		if (forum == null) {
+			log.error("Forum of course {} not found", courseId);
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		if (courseRepository.findAttenderIdsIn(courseId, List.of(userId)).isEmpty()) {
+			log.error("User not authorized. Must be a participant of the course");
+			return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+		}
+		return null;
+	}
+	
+	@RequestMapping(value = "/files", method = RequestMethod.GET)
+	public ResponseEntity<Object> getCourseFiles(@PathVariable(value="id") String id) {
+		
+		log.info("CRUD operation: Getting the files of one course");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_i = -1;
+		try{
+			id_i = Long.parseLong(id);
+		}catch(NumberFormatException e){
+			log.error("Course ID '{}' is not of type Long", id);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		if (courseRepository.findVersion(id_i) == null) {
+			log.error("Course {} not found", id_i);
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		//Root file groups, with their whole subtrees
+		List<FileGroup> fileGroups = fileGroupRepository.findRootsByCourseId(id_i);
+		return new ResponseEntity<>(fileGroups, HttpStatus.OK);
+	}
+	
+	@RequestMapping(value = "/changes", method = RequestMethod.GET)
+	public ResponseEntity<Object> getCourseChanges(
+			@PathVariable(value="id") String id,
+			@RequestParam(value="since", required=false) Long since,
+			@RequestParam(value="after", required=false) String after,
+			@RequestParam(value="size", required=false) Integer size)
+	{
+		
+		log.info("CRUD operation: Getting the changes of one course");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_i = -1;
+		try{
+			id_i = Long.parseLong(id);
+		}catch(NumberFormatException e){
+			log.error("Course ID '{}' is not of type Long", id);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		//A sync starts from a sequence and goes on with the cursors of its pages
+		if ((since == null) == (after == null)) {
+			log.error("Exactly one of 'since' and 'after' is required");
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		long since_i;
+		long afterSequence;
+		long afterId;
+		if (after != null) {
+			try {
+				long[] cursor = CourseChanges.parseCursor(after);
+				since_i = cursor[0];
+				afterSequence = cursor[1];
+				afterId = cursor[2];
+			} catch (IllegalArgumentException e) {
+				log.error("Changes cursor '{}' is not valid", after);
+				return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+			}
+		} else {
+			since_i = since;
+			afterSequence = since;
+			afterId = Long.MAX_VALUE;
+		}
+		if (since_i < 0) {
+			log.error("Sequence {} is not valid", since_i);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		int pageSize = (size != null) ? Math.max(1, Math.min(size, MAX_CHANGES_PAGE_SIZE)) : DEFAULT_CHANGES_PAGE_SIZE;
+		
+		this.awaitOwnComments();
+		
+		Long version = courseRepository.findVersion(id_i);
+		if (version == null) {
+			log.error("Course {} not found", id_i);
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		if (since_i > version) {
+			//Not a sequence of this course (or of a database that was recreated): it must be loaded again
+			log.error("Course {} is at sequence {}, before {}", id_i, version, since_i);
+			return new ResponseEntity<>(HttpStatus.GONE);
+		}
+		
+		return new ResponseEntity<>(courseChangeService.getChanges(id_i, version, since_i, afterSequence, afterId, pageSize), HttpStatus.OK);
+	}
+	
+	//The user reads the comments they posted even if they are not saved yet (see CommentWriteBehindService)
+	private void awaitOwnComments() {
+		if (commentWriteBehindService.isEnabled()) {
+			commentWriteBehindService.awaitSaved(user.getLoggedUser().getId());
+		}
+	}
+	
+}
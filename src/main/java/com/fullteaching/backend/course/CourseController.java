@@ -1,27 +1,44 @@
 package com.fullteaching.backend.course;
 
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-import org.apache.commons.validator.routines.EmailValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.fullteaching.backend.user.UserComponent;
 import com.fullteaching.backend.user.UserRepository;
 import com.fasterxml.jackson.annotation.JsonView;
 import com.fullteaching.backend.course.Course.SimpleCourseList;
+import com.fullteaching.backend.course.CourseFieldsService.CourseFields;
+import com.fullteaching.backend.enrollment.AttendersDelta;
+import com.fullteaching.backend.enrollment.EnrollmentResult;
+import com.fullteaching.backend.enrollment.EnrollmentService;
 import com.fullteaching.backend.security.AuthorizationService;
+import com.fullteaching.backend.session.SessionRepository;
+import com.fullteaching.backend.session.SessionSummary;
 import com.fullteaching.backend.user.User;
 
 @RestController
@@ -29,6 +46,12 @@ import com.fullteaching.backend.user.User;
 public class CourseController {
 	
 	private static final Logger log = LoggerFactory.getLogger(CourseController.class);
+	
+	private static final int DEFAULT_SUMMARY_PAGE_SIZE = 20;
+	private static final int MAX_SUMMARY_PAGE_SIZE = 100;
+	private static final int MAX_SUMMARY_SESSIONS = 10;
+	private static final int DEFAULT_ROSTER_PAGE_SIZE = 50;
+	private static final int MAX_ROSTER_PAGE_SIZE = 200;
 
 	@Autowired
 	private CourseRepository courseRepository;
@@ -36,12 +59,33 @@ public class CourseController {
 	@Autowired
 	private UserRepository userRepository;
 	
+	@Autowired
+	private SessionRepository sessionRepository;
+	
 	@Autowired
 	private UserComponent user;
 	
 	@Autowired
 	private AuthorizationService authorizationService;
 	
+	@Autowired
+	private CourseCache courseCache;
+	
+	@Autowired
+	private EnrollmentService enrollmentService;
+	
+	@Autowired
+	private CourseDeletionService courseDeletionService;
+	
+	@Autowired
+	private CoursePatchService coursePatchService;
+	
+	@Autowired
+	private CourseStatisticsService courseStatisticsService;
+	
+	@Autowired
+	private CourseFieldsService courseFieldsService;
+	
 	private class AddAttendersResponse {
 		public Collection<User> attendersAdded;
 		public Collection<User> attendersAlreadyAdded;
@@ -75,8 +119,61 @@ public class CourseController {
 		return new ResponseEntity<>(courses, HttpStatus.OK);
 	}
 	
+	@RequestMapping(value = "/user/{id}/summary", method = RequestMethod.GET)
+	public ResponseEntity<Object> getCourseSummaries(
+			@PathVariable(value="id") String id,
+			@RequestParam(value="after", required=false) Long after,
+			@RequestParam(value="size", required=false) Integer size,
+			@RequestParam(value="sessionsLimit", required=false) Integer sessionsLimit)
+	{
+		
+		log.info("CRUD operation: Getting a page of user course summaries");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_i = -1;
+		try{
+			id_i = Long.parseLong(id);
+		}catch(NumberFormatException e){
+			log.error("User ID '{}' is not of type Long", id);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		long afterId = (after != null) ? after : -1;
+		int pageSize = (size != null) ? Math.max(1, Math.min(size, MAX_SUMMARY_PAGE_SIZE)) : DEFAULT_SUMMARY_PAGE_SIZE;
+		int sessionsPerCourse = (sessionsLimit != null) ? Math.max(0, Math.min(sessionsLimit, MAX_SUMMARY_SESSIONS)) : 0;
+		long now = System.currentTimeMillis();
+		
+		//One extra row is requested to know if there is a next page
+		List<CourseSummary> courses = courseRepository.findSummariesByAttender(id_i, afterId, now, PageRequest.of(0, pageSize + 1));
+		Long nextCursor = null;
+		if (courses.size() > pageSize) {
+			courses = new ArrayList<>(courses.subList(0, pageSize));
+			nextCursor = courses.get(pageSize - 1).getId();
+		}
+		
+		Map<Long, List<SessionSummary>> sessions = new HashMap<>();
+		if (sessionsPerCourse > 0 && !courses.isEmpty()) {
+			List<Long> courseIds = new ArrayList<>();
+			for (CourseSummary c : courses) {
+				courseIds.add(c.getId());
+			}
+			for (SessionSummary s : sessionRepository.findUpcomingByCourseIds(courseIds, now, sessionsPerCourse)) {
+				sessions.computeIfAbsent(s.getCourseId(), k -> new ArrayList<>()).add(s);
+			}
+		}
+		
+		return new ResponseEntity<>(new CourseSummaryPage(courses, sessions, nextCursor), HttpStatus.OK);
+	}
+	
 	@RequestMapping(value = "/course/{id}", method = RequestMethod.GET)
-	public ResponseEntity<Object> getCourse(@PathVariable(value="id") String id) {
+	public ResponseEntity<Object> getCourse(
+			@PathVariable(value="id") String id,
+			@RequestParam(value="fields", required=false) String fields,
+			@RequestHeader(value="If-None-Match", required=false) String ifNoneMatch) {
 		
 		log.info("CRUD operation: Getting one course");
 		
@@ -92,8 +189,155 @@ public class CourseController {
 			log.error("Course ID '{}' is not of type Long", id);
 			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
 		}
-		Course course = courseRepository.findById(id_i).orElse(null);
-		return new ResponseEntity<>(course ,HttpStatus.OK);
+		
+		//Sparse fieldset: comma separated top level fields of the course
+		Set<String> fieldSet = null;
+		if (fields != null) {
+			fieldSet = new HashSet<>();
+			for (String field : fields.split(",")) {
+				if (!field.trim().isEmpty()) {
+					fieldSet.add(field.trim());
+				}
+			}
+			if (fieldSet.isEmpty() || !CourseFieldsService.FIELDS.containsAll(fieldSet)) {
+				log.error("Course fields '{}' are not a subset of {}", fields, CourseFieldsService.FIELDS);
+				return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+			}
+		}
+		
+		//Revalidation only costs a primary key lookup of the version
+		Long version = courseRepository.findVersion(id_i);
+		if (version != null && ifNoneMatch != null && eTagMatches(ifNoneMatch, CachedCourse.eTag(version))) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(CachedCourse.eTag(version)).build();
+		}
+		
+		if (fieldSet != null) {
+			CourseFields courseFields = courseFieldsService.getFields(id_i, fieldSet);
+			if (courseFields == null) {
+				return new ResponseEntity<>(HttpStatus.OK);
+			}
+			return ResponseEntity.ok().eTag(CachedCourse.eTag(courseFields.getVersion())).body(courseFields.getValues());
+		}
+		
+		//Already serialized course (null if it does not exist)
+		CachedCourse course = courseCache.getCourse(id_i);
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+		if (course == null) {
+			return new ResponseEntity<>(null, headers, HttpStatus.OK);
+		}
+		//The ETag is the version the cached JSON was read with, which may be older than 'version'
+		headers.setETag(course.getETag());
+		return new ResponseEntity<>(course.getJson(), headers, HttpStatus.OK);
+	}
+	
+	// Weak comparison of an If-None-Match header ('*' or a list of entity tags)
+	private static boolean eTagMatches(String ifNoneMatch, String eTag) {
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if (tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			if (tag.equals("*") || tag.equals(eTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@RequestMapping(value = "/course/{id}/attenders", method = RequestMethod.GET)
+	public ResponseEntity<Object> getCourseAttenders(
+			@PathVariable(value="id") String id,
+			@RequestParam(value="sort", required=false) String sort,
+			@RequestParam(value="prefix", required=false) String prefix,
+			@RequestParam(value="after", required=false) String after,
+			@RequestParam(value="size", required=false) Integer size)
+	{
+		
+		log.info("CRUD operation: Getting a page of course attenders");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_i = -1;
+		try{
+			id_i = Long.parseLong(id);
+		}catch(NumberFormatException e){
+			log.error("Course ID '{}' is not of type Long", id);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		//Sorted by nickname (default) or by email
+		boolean byEmail = "email".equals(sort);
+		if (sort != null && !byEmail && !"nickname".equals(sort)) {
+			log.error("Roster sort '{}' is not 'nickname' or 'email'", sort);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		String afterKey = "";
+		long afterId = -1;
+		if (after != null) {
+			try {
+				afterKey = CourseAttenderPage.cursorKey(after);
+				afterId = CourseAttenderPage.cursorId(after);
+			} catch (IllegalArgumentException e) {
+				log.error("Roster cursor '{}' is not valid", after);
+				return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+			}
+		}
+		
+		Course c = courseRepository.findById(id_i).orElse(null);
+		
+		//Only the attenders of the course (teacher included) can see its roster
+		ResponseEntity<Object> userAuthorized = authorizationService.checkAuthorizationUsers(c, c != null ? c.getAttenders() : null);
+		if (userAuthorized != null) {
+			return userAuthorized;
+		}
+		
+		String likePrefix = (prefix != null ? prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") : "") + "%";
+		int pageSize = (size != null) ? Math.max(1, Math.min(size, MAX_ROSTER_PAGE_SIZE)) : DEFAULT_ROSTER_PAGE_SIZE;
+		
+		//One extra row is requested to know if there is a next page
+		PageRequest limit = PageRequest.of(0, pageSize + 1);
+		List<CourseAttender> attenders = byEmail
+				? courseRepository.findAttendersByName(id_i, likePrefix, afterKey, afterId, limit)
+				: courseRepository.findAttendersByNickName(id_i, likePrefix, afterKey, afterId, limit);
+		String nextCursor = null;
+		if (attenders.size() > pageSize) {
+			attenders = new ArrayList<>(attenders.subList(0, pageSize));
+			CourseAttender last = attenders.get(pageSize - 1);
+			nextCursor = CourseAttenderPage.cursor(byEmail ? last.getName() : last.getNickName(), last.getId());
+		}
+		
+		return new ResponseEntity<>(new CourseAttenderPage(attenders, nextCursor), HttpStatus.OK);
+	}
+	
+	@RequestMapping(value = "/statistics", method = RequestMethod.GET)
+	public ResponseEntity<Object> getCourseStatistics() {
+		
+		log.info("CRUD operation: Getting statistics of the courses of the teacher");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		//Only the courses taught by the logged user
+		List<CourseStatistics> statistics = courseStatisticsService.getTaughtCourseStatistics(this.user.getLoggedUser().getId());
+		return new ResponseEntity<>(statistics, HttpStatus.OK);
+	}
+	
+	@RequestMapping(value = "/cache-stats", method = RequestMethod.GET)
+	public ResponseEntity<Object> getCourseCacheStats() {
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		return new ResponseEntity<>(courseCache.getStats(), HttpStatus.OK);
 	}
 	
 	@RequestMapping(value = "/new", method = RequestMethod.POST)
@@ -126,6 +370,7 @@ public class CourseController {
 	}
 	
 	@RequestMapping(value = "/edit", method = RequestMethod.PUT)
+	@Transactional
 	public ResponseEntity<Object> modifyCourse(@RequestBody Course course) {
 		
 		log.info("CRUD operation: Updating course");
@@ -146,13 +391,19 @@ public class CourseController {
 			//Modifying the course attributes
 			c.setImage(course.getImage());
 			c.setTitle(course.getTitle());
+			List<ContentChange> changes = new ArrayList<>();
+			changes.add(ContentChange.saved(ContentChange.Type.COURSE, c.getId()));
 			if (course.getCourseDetails() != null){
 				if (course.getCourseDetails().getInfo() != null){
 					c.getCourseDetails().setInfo(course.getCourseDetails().getInfo());
+					changes.add(ContentChange.saved(ContentChange.Type.COURSE_DETAILS, c.getCourseDetails().getId()));
 				}
 			}
 			//Saving the modified course
 			courseRepository.save(c);
+			//Pending patches of the header were made against the old values
+			courseRepository.incrementHeaderVersion(c.getId());
+			courseCache.invalidate(c.getId(), changes.toArray(new ContentChange[0]));
 			
 			log.info("Course succesfully updated. Modified value: {}", c.toString());
 			
@@ -160,6 +411,48 @@ public class CourseController {
 		}
 	}
 	
+	@RequestMapping(value = "/edit/{courseId}", method = RequestMethod.PATCH)
+	public ResponseEntity<Object> patchCourse(@RequestBody CoursePatch patch, @PathVariable(value="courseId") String courseId) {
+		
+		log.info("CRUD operation: Patching course");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_course = -1;
+		try{
+			id_course = Long.parseLong(courseId);
+		}catch(NumberFormatException e){
+			log.error("Course ID '{}' is not of type Long", courseId);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		if (patch.getHeaderVersion() == null) {
+			log.error("The expected header version of course {} is missing", id_course);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		//Only the teacher is read, not the course graph
+		User teacher = courseRepository.findTeacher(id_course);
+		
+		ResponseEntity<Object> teacherAuthorized = authorizationService.checkAuthorization(teacher, teacher);
+		if (teacherAuthorized != null) { // If the user is not the teacher of the course
+			return teacherAuthorized;
+		}
+		
+		CoursePatch applied = coursePatchService.patch(id_course, patch);
+		if (applied == null) {
+			return new ResponseEntity<>(HttpStatus.CONFLICT);
+		}
+		courseCache.evict(id_course);
+		
+		log.info("Course succesfully patched: {}", applied);
+		
+		return new ResponseEntity<>(applied, HttpStatus.OK);
+	}
+	
 	@RequestMapping(value = "/delete/{courseId}", method = RequestMethod.DELETE)
 	public ResponseEntity<Object> deleteCourse(@PathVariable(value="courseId") String courseId) {
 		
@@ -180,29 +473,61 @@ public class CourseController {
 		
 		Course c = courseRepository.findById(id_course).orElse(null);
 		
-		ResponseEntity<Object> teacherAuthorized = authorizationService.checkAuthorization(c, c.getTeacher());
+		ResponseEntity<Object> teacherAuthorized;
+		if (c != null && c.isDeleted()) {
+			//Deleted courses are hidden, but their teacher can delete them again to retry a failed deletion
+			teacherAuthorized = this.user.getLoggedUser().equals(c.getTeacher()) ? null : new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		} else {
+			teacherAuthorized = authorizationService.checkAuthorization(c, c != null ? c.getTeacher() : null);
+		}
 		if (teacherAuthorized != null) { // If the user is not the teacher of the course
 			return teacherAuthorized;
 		} else {
 			
 			log.info("Deleting course: {}", c.toString());
 			
-			//Removing the deleted course from its attenders
-			Collection<Course> courses = new HashSet<>();
-			courses.add(c);
-			Collection<User> users = userRepository.findByCourses(courses);
-			for(User u: users){
-				u.getCourses().remove(c);
-			}
-			userRepository.saveAll(users);
-			c.getAttenders().clear();
-			
-			courseRepository.delete(c);
+			//The course is hidden at once, its content is removed in background
+			CourseDeletion deletion = courseDeletionService.delete(c, this.user.getLoggedUser().getId());
 			
-			log.info("Course successfully deleted");
+			log.info("Course successfully tombstoned: {}", deletion);
 			
-			return new ResponseEntity<>(c, HttpStatus.OK);
+			HttpHeaders headers = new HttpHeaders();
+			headers.setLocation(URI.create("/api-courses/delete/jobs/" + deletion.getId()));
+			return new ResponseEntity<>(c, headers, HttpStatus.ACCEPTED);
+		}
+	}
+	
+	@RequestMapping(value = "/delete/jobs/{jobId}", method = RequestMethod.GET)
+	public ResponseEntity<Object> getCourseDeletion(@PathVariable(value="jobId") String jobId) {
+		
+		log.info("CRUD operation: Getting course deletion progress");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_job = -1;
+		try{
+			id_job = Long.parseLong(jobId);
+		}catch(NumberFormatException e){
+			log.error("Job ID '{}' is not of type Long", jobId);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		CourseDeletion deletion = courseDeletionService.getDeletion(id_job);
+		if (deletion == null) {
+			log.error("Course deletion {} not found", id_job);
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
 		}
+		
+		//The course may not exist anymore, so the teacher that requested the deletion is checked instead
+		if (deletion.getTeacherId() != this.user.getLoggedUser().getId()) {
+			log.warn("The user is not authorized");
+			return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+		}
+		
+		return new ResponseEntity<>(deletion, HttpStatus.OK);
 	}
 	
 
@@ -236,51 +561,15 @@ public class CourseController {
 		} else {
 			
 			log.info("Adding attenders {} to course {}", Arrays.toString(attenderEmails), c.toString());
-		
-			//Strings with a valid email format
-			Set<String> attenderEmailsValid = new HashSet<>();
-			//Strings with an invalid email format
-			Set<String> attenderEmailsInvalid = new HashSet<>();
-			//Strings with a valid email format but no registered in the application
-			Set<String> attenderEmailsNotRegistered = new HashSet<>();
-			
-			EmailValidator emailValidator = EmailValidator.getInstance();
-			
-			for (int i = 0; i < attenderEmails.length; i++){
-				if (emailValidator.isValid(attenderEmails[i])) {
-					attenderEmailsValid.add(attenderEmails[i]);
-				} else {
-					attenderEmailsInvalid.add(attenderEmails[i]);
-				}
-			}
-			
-			Collection<User> newPossibleAttenders = userRepository.findByNameIn(attenderEmailsValid);
-			Collection<User> newAddedAttenders = new HashSet<>();
-			Collection<User> alreadyAddedAttenders = new HashSet<>();
-			
-			for (String s : attenderEmailsValid){
-				if (!this.userListContainsEmail(newPossibleAttenders, s)){
-					attenderEmailsNotRegistered.add(s);
-				}
-			}
-			
-			for (User attender : newPossibleAttenders){
-				boolean newAtt = true;
-				if (!attender.getCourses().contains(c)) attender.getCourses().add(c); else newAtt = false;
-				if (!c.getAttenders().contains(attender)) c.getAttenders().add(attender); else newAtt = false;
-				if (newAtt) newAddedAttenders.add(attender); else alreadyAddedAttenders.add(attender);
-			}
 			
-			//Saving the attenders (all of them, just in case a field of the bidirectional relationship is missing in a Course or a User)
-			userRepository.saveAll(newPossibleAttenders);	
-			//Saving the modified course
-			courseRepository.save(c);
+			EnrollmentResult result = enrollmentService.enroll(c.getId(), Arrays.asList(attenderEmails));
+			courseCache.invalidate(c.getId());
 			
 			AddAttendersResponse customResponse = new AddAttendersResponse();
-			customResponse.attendersAdded = newAddedAttenders;
-			customResponse.attendersAlreadyAdded = alreadyAddedAttenders;
-			customResponse.emailsInvalid = attenderEmailsInvalid;
-			customResponse.emailsValidNotRegistered = attenderEmailsNotRegistered;
+			customResponse.attendersAdded = result.getAttendersAdded();
+			customResponse.attendersAlreadyAdded = result.getAttendersAlreadyAdded();
+			customResponse.emailsInvalid = result.getEmailsInvalid();
+			customResponse.emailsValidNotRegistered = result.getEmailsValidNotRegistered();
 			
 			log.info("Attenders added: {} | Attenders already exist: {} | Emails not valid: {} | Emails valid but no registered: {}",
 					customResponse.attendersAdded,
@@ -294,6 +583,50 @@ public class CourseController {
 	
 	
 	
+	@RequestMapping(value = "/edit/attenders/course/{courseId}", method = RequestMethod.PATCH)
+	public ResponseEntity<Object> modifyAttenders(
+			@RequestBody AttendersDelta delta,
+			@PathVariable(value="courseId") String courseId)
+	{
+		
+		log.info("CRUD operation: Modifying attenders of course");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_course = -1;
+		try{
+			id_course = Long.parseLong(courseId);
+		}catch(NumberFormatException e) {
+			log.error("Course ID '{}' is not of type Long", courseId);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		if (delta.getAdd() == null || delta.getRemove() == null || !Collections.disjoint(delta.getAdd(), delta.getRemove())) {
+			log.error("Invalid attenders delta {}", delta);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		Course c = courseRepository.findById(id_course).orElse(null);
+		
+		ResponseEntity<Object> teacherAuthorized = authorizationService.checkAuthorization(c, c != null ? c.getTeacher() : null);
+		if (teacherAuthorized != null) { // If the user is not the teacher of the course
+			return teacherAuthorized;
+		} else {
+			
+			log.info("Modifying attenders of course {}: {}", c, delta);
+			
+			AttendersDelta applied = enrollmentService.applyDelta(c.getId(), delta);
+			if (!applied.getAdd().isEmpty() || !applied.getRemove().isEmpty()) {
+				courseCache.invalidate(c.getId());
+			}
+			
+			return new ResponseEntity<>(applied, HttpStatus.OK);
+		}
+	}
+	
 	@RequestMapping(value = "/edit/delete-attenders", method = RequestMethod.PUT)
 	public ResponseEntity<Object> deleteAttenders(@RequestBody Course course) {
 		
@@ -330,22 +663,11 @@ public class CourseController {
 			c.setAttenders(course.getAttenders());
 			//Saving the modified course
 			courseRepository.save(c);
+			courseCache.invalidate(c.getId());
 			return new ResponseEntity<>(c.getAttenders(), HttpStatus.OK);
 		}
 	}
 	
-	//Checks if a User collection contains a user with certain email
-	private boolean userListContainsEmail(Collection<User> users, String email){
-		boolean isContained = false;
-		for (User u : users){
-			if (u.getName().equals(email)) {
-				isContained = true;
-				break;
-			}
-		}
-		return isContained;
-	}
-	
 }
 
 	
@@ -0,0 +1,140 @@
+package com.fullteaching.backend.course;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+
+/**
+ * Background deletion of a tombstoned course. 'step' is the next step to run
+ * and is stored in the same transaction as the rows deleted by the previous
+ * one, so an interrupted deletion is resumed from where it stopped.
+ */
+@Entity
+public class CourseDeletion {
+	
+	public enum Status { PENDING, RUNNING, COMPLETED, FAILED }
+	
+	public enum Step { PURGE_FILES, DELETE_ATTENDERS, DELETE_SESSIONS, DELETE_FORUM, DELETE_FILE_GROUPS, DELETE_COURSE, DONE }
+	
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO)
+	private long id;
+	
+	private long courseId;
+	
+	private long teacherId;
+	
+	@Enumerated(EnumType.STRING)
+	private Status status;
+	
+	@Enumerated(EnumType.STRING)
+	private Step step;
+	
+	private int filesTotal;
+	
+	private int filesPurged;
+	
+	private long rowsDeleted;
+	
+	private String error;
+	
+	private long creationDate;
+	
+	private long lastUpdateDate;
+	
+	public CourseDeletion() {}
+	
+	public CourseDeletion(long courseId, long teacherId) {
+		this.courseId = courseId;
+		this.teacherId = teacherId;
+		this.status = Status.PENDING;
+		this.step = Step.PURGE_FILES;
+		this.creationDate = System.currentTimeMillis();
+		this.lastUpdateDate = this.creationDate;
+	}
+	
+	public void completeStep(Step nextStep, long rows) {
+		this.step = nextStep;
+		this.rowsDeleted += rows;
+		this.lastUpdateDate = System.currentTimeMillis();
+	}
+	
+	public boolean isFinished() {
+		return this.status == Status.COMPLETED;
+	}
+	
+	public long getId() {
+		return id;
+	}
+	
+	public void setId(long id) {
+		this.id = id;
+	}
+	
+	public long getCourseId() {
+		return courseId;
+	}
+	
+	public long getTeacherId() {
+		return teacherId;
+	}
+	
+	public Status getStatus() {
+		return status;
+	}
+	
+	public void setStatus(Status status) {
+		this.status = status;
+		this.lastUpdateDate = System.currentTimeMillis();
+	}
+	
+	public Step getStep() {
+		return step;
+	}
+	
+	public int getFilesTotal() {
+		return filesTotal;
+	}
+	
+	public void setFilesTotal(int filesTotal) {
+		this.filesTotal = filesTotal;
+	}
+	
+	public int getFilesPurged() {
+		return filesPurged;
+	}
+	
+	public void setFilesPurged(int filesPurged) {
+		this.filesPurged = filesPurged;
+		this.lastUpdateDate = System.currentTimeMillis();
+	}
+	
+	public long getRowsDeleted() {
+		return rowsDeleted;
+	}
+	
+	public String getError() {
+		return error;
+	}
+	
+	public void setError(String error) {
+		this.error = error;
+	}
+	
+	public long getCreationDate() {
+		return creationDate;
+	}
+	
+	public long getLastUpdateDate() {
+		return lastUpdateDate;
+	}
+	
+	@Override
+	public String toString() {
+		return "CourseDeletion[id: " + this.id + ", course: " + this.courseId + ", status: " + this.status + ", step: " + this.step + "]";
+	}
+	
+}
@@ -0,0 +1,14 @@
+package com.fullteaching.backend.course;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface CourseDeletionRepository extends JpaRepository<CourseDeletion, Long> {
+	
+	public CourseDeletion findByCourseId(long courseId);
+	
+	public List<CourseDeletion> findByStatusIn(Collection<CourseDeletion.Status> status);
+	
+}
@@ -0,0 +1,329 @@
+package com.fullteaching.backend.course;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fullteaching.backend.file.FileOperationsService;
+import com.fullteaching.backend.forum.ForumHotEntriesService;
+import com.fullteaching.backend.forum.ForumSearchService;
+
+/**
+ * Deletes courses in two phases. 'delete' only tombstones the course (it is
+ * hidden from then on) and stores a CourseDeletion. A background worker then
+ * purges the stored files of the course in parallel and removes its rows with
+ * bulk DELETE statements, one transaction per CourseDeletion.Step, instead of
+ * loading the whole course graph and letting JPA cascades remove it row by row.
+ * Unfinished deletions are resumed when the application starts.
+ */
+@Service
+public class CourseDeletionService {
+	
+	private static final Logger log = LoggerFactory.getLogger(CourseDeletionService.class);
+	
+	//Maximum number of parameters of each 'IN' statement
+	static final int ID_CHUNK_SIZE = 500;
+	
+	//Number of purged files between two progress updates
+	static final int PURGE_BATCH_SIZE = 100;
+	
+	@Autowired
+	private CourseRepository courseRepository;
+	
+	@Autowired
+	private CourseDeletionRepository deletionRepository;
+	
+	@Autowired
+	private CourseCache courseCache;
+	
+	@Autowired
+	private FileOperationsService fileOperationsService;
+	
+	@Autowired
+	private ForumSearchService forumSearchService;
+	
+	@Autowired
+	private ForumHotEntriesService forumHotEntriesService;
+	
+	@Autowired
+	private NamedParameterJdbcTemplate jdbcTemplate;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	@Value("${profile.stage}")
+	private String profileStage;
+	
+	@Value("${course.deletion.purge-threads:4}")
+	private int purgeThreads;
+	
+	private ExecutorService worker;
+	
+	private ExecutorService purgeExecutor;
+	
+	private TransactionTemplate transactionTemplate;
+	
+	@PostConstruct
+	public void init() {
+		//Deletions are rare: they are run one at a time, but never rejected
+		this.worker = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "course-deletion");
+			t.setDaemon(true);
+			return t;
+		});
+		AtomicInteger threadCount = new AtomicInteger();
+		this.purgeExecutor = Executors.newFixedThreadPool(purgeThreads, r -> {
+			Thread t = new Thread(r, "course-deletion-purge-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+	
+	@PreDestroy
+	public void shutdown() {
+		//The running deletion stops after its current step, and is resumed on the next start
+		worker.shutdownNow();
+		purgeExecutor.shutdownNow();
+	}
+	
+	/**
+	 * Tombstones the course and queues the deletion of its content. Deleting a
+	 * course twice returns its existing CourseDeletion, queued again if it failed.
+	 */
+	public CourseDeletion delete(Course course, long requestedBy) {
+		CourseDeletion deletion = transactionTemplate.execute(status -> {
+			CourseDeletion existing = deletionRepository.findByCourseId(course.getId());
+			if (existing != null) {
+				return existing;
+			}
+			courseRepository.markDeleted(course.getId());
+			return deletionRepository.save(new CourseDeletion(course.getId(), requestedBy));
+		});
+		courseCache.invalidate(course.getId());
+		//Its forum cannot be searched anymore
+		forumSearchService.deleteIndex(course.getId());
+		log.info("Course {} tombstoned: {}", course.getId(), deletion);
+		if (!deletion.isFinished()) {
+			this.queue(deletion.getId());
+		}
+		return deletion;
+	}
+	
+	public CourseDeletion getDeletion(long deletionId) {
+		return deletionRepository.findById(deletionId).orElse(null);
+	}
+	
+	@EventListener(ApplicationReadyEvent.class)
+	public void resumeUnfinishedDeletions() {
+		//Failed deletions are retried too: their courses are already hidden and must not be left half deleted
+		for (CourseDeletion deletion : deletionRepository.findByStatusIn(Arrays.asList(
+				CourseDeletion.Status.PENDING, CourseDeletion.Status.RUNNING, CourseDeletion.Status.FAILED))) {
+			log.info("Resuming unfinished {}", deletion);
+			this.queue(deletion.getId());
+		}
+	}
+	
+	private void queue(long deletionId) {
+		worker.execute(() -> this.run(deletionId));
+	}
+	
+	void run(long deletionId) {
+		CourseDeletion deletion = deletionRepository.findById(deletionId).orElse(null);
+		if (deletion == null || deletion.isFinished()) {
+			return;
+		}
+		try {
+			deletion.setStatus(CourseDeletion.Status.RUNNING);
+			deletion.setError(null);
+			deletion = deletionRepository.save(deletion);
+			
+			while (deletion.getStep() != CourseDeletion.Step.DONE) {
+				if (Thread.currentThread().isInterrupted()) {
+					log.info("Course deletion {} interrupted at step {}", deletionId, deletion.getStep());
+					return;
+				}
+				if (deletion.getStep() == CourseDeletion.Step.PURGE_FILES) {
+					deletion = this.purgeFiles(deletion);
+				} else {
+					CourseDeletion current = deletion;
+					deletion = transactionTemplate.execute(status -> {
+						long rows = this.deleteRows(current.getCourseId(), current.getStep());
+						CourseDeletion.Step next = CourseDeletion.Step.values()[current.getStep().ordinal() + 1];
+						current.completeStep(next, rows);
+						if (next == CourseDeletion.Step.DONE) {
+							current.setStatus(CourseDeletion.Status.COMPLETED);
+						}
+						return deletionRepository.save(current);
+					});
+				}
+			}
+			
+			log.info("Course deletion finished: {} ({} rows deleted, {} files purged)", deletion, deletion.getRowsDeleted(), deletion.getFilesPurged());
+		} catch (RuntimeException e) {
+			log.error("Course deletion {} failed", deletionId, e);
+			//Reloaded, as the failed step may have left the instance modified
+			deletion = deletionRepository.findById(deletionId).orElse(deletion);
+			deletion.setStatus(CourseDeletion.Status.FAILED);
+			String error = String.valueOf(e.getMessage());
+			deletion.setError(error.length() > 255 ? error.substring(0, 255) : error);
+			deletionRepository.save(deletion);
+		}
+	}
+	
+	private CourseDeletion purgeFiles(CourseDeletion deletion) {
+		//Files are purged before their rows are deleted, so they can always be found again after a restart.
+		//The list is ordered, so 'filesPurged' is also the position to resume from
+		List<String> fileNames = this.queryInChunks("SELECT name_ident FROM file WHERE files_id IN (:ids) ORDER BY id",
+				this.fileGroupIds(deletion.getCourseId()), String.class);
+		deletion.setFilesTotal(fileNames.size());
+		deletion = deletionRepository.save(deletion);
+		
+		boolean production = "prod".equals(profileStage);
+		while (deletion.getFilesPurged() < fileNames.size()) {
+			List<Callable<Void>> tasks = new ArrayList<>();
+			for (String fileName : fileNames.subList(deletion.getFilesPurged(), Math.min(deletion.getFilesPurged() + PURGE_BATCH_SIZE, fileNames.size()))) {
+				tasks.add(() -> {
+					fileOperationsService.purgeCourseFile(fileName, production);
+					return null;
+				});
+			}
+			try {
+				//A failed file fails the whole batch, which is purged again when the deletion is retried
+				for (Future<Void> result : purgeExecutor.invokeAll(tasks)) {
+					result.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return deletion;
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Purge of a course file failed: " + e.getCause().getMessage(), e.getCause());
+			}
+			deletion.setFilesPurged(deletion.getFilesPurged() + tasks.size());
+			deletion = deletionRepository.save(deletion);
+		}
+		
+		deletion.completeStep(CourseDeletion.Step.DELETE_ATTENDERS, 0);
+		return deletionRepository.save(deletion);
+	}
+	
+	private long deleteRows(long courseId, CourseDeletion.Step step) {
+		Map<String, Long> course = Collections.singletonMap("courseId", courseId);
+		Long detailsId = this.queryId("SELECT course_details_id FROM course WHERE id = :courseId", courseId);
+		Long forumId = this.queryId("SELECT cd.forum_id FROM course c JOIN course_details cd ON cd.id = c.course_details_id WHERE c.id = :courseId", courseId);
+		long rows = 0;
+		switch (step) {
+		case DELETE_ATTENDERS:
+			rows += jdbcTemplate.update("DELETE FROM course_attenders WHERE courses_id = :courseId", course);
+			break;
+		case DELETE_SESSIONS:
+			rows += jdbcTemplate.update("DELETE FROM session WHERE course_id = :courseId", course);
+			break;
+		case DELETE_FORUM:
+			rows += jdbcTemplate.update("DELETE FROM forum_read_state WHERE course_id = :courseId", course);
+			if (forumId != null) {
+				List<Long> entryIds = jdbcTemplate.queryForList("SELECT id FROM entry WHERE forum_id = :forumId",
+						Collections.singletonMap("forumId", forumId), Long.class);
+				//Only root comments are in 'entry_comments', replies are reached through their parent
+				List<Long> commentIds = this.withDescendants(
+						this.queryInChunks("SELECT comments_id FROM entry_comments WHERE entry_id IN (:ids)", entryIds, Long.class),
+						"SELECT id FROM comment WHERE comment_parent_id IN (:ids)");
+				rows += this.updateInChunks("DELETE FROM entry_comments WHERE entry_id IN (:ids)", entryIds);
+				//Parent references are cleared first, so comments can be deleted in any order
+				this.updateInChunks("UPDATE comment SET comment_parent_id = NULL WHERE id IN (:ids)", commentIds);
+				rows += this.updateInChunks("DELETE FROM comment WHERE id IN (:ids)", commentIds);
+				rows += this.updateInChunks("DELETE FROM entry WHERE id IN (:ids)", entryIds);
+				forumHotEntriesService.forumDeleted(forumId);
+			}
+			break;
+		case DELETE_FILE_GROUPS:
+			if (detailsId != null) {
+				List<Long> fileGroupIds = this.fileGroupIds(courseId);
+				rows += this.updateInChunks("DELETE FROM file WHERE files_id IN (:ids)", fileGroupIds);
+				rows += jdbcTemplate.update("DELETE FROM course_details_files WHERE course_details_id = :detailsId", Collections.singletonMap("detailsId", detailsId));
+				this.updateInChunks("UPDATE file_group SET file_group_parent_id = NULL WHERE id IN (:ids)", fileGroupIds);
+				rows += this.updateInChunks("DELETE FROM file_group WHERE id IN (:ids)", fileGroupIds);
+			}
+			break;
+		case DELETE_COURSE:
+			rows += jdbcTemplate.update("DELETE FROM course_change WHERE course_id = :courseId", course);
+			rows += jdbcTemplate.update("DELETE FROM course WHERE id = :courseId", course);
+			if (detailsId != null) {
+				rows += jdbcTemplate.update("DELETE FROM course_details WHERE id = :detailsId", Collections.singletonMap("detailsId", detailsId));
+			}
+			if (forumId != null) {
+				rows += jdbcTemplate.update("DELETE FROM forum WHERE id = :forumId", Collections.singletonMap("forumId", forumId));
+			}
+			break;
+		default:
+			throw new IllegalStateException("Unexpected course deletion step " + step);
+		}
+		log.info("Course {}: step {} deleted {} rows", courseId, step, rows);
+		return rows;
+	}
+	
+	// All the FileGroups of the course, at any depth
+	private List<Long> fileGroupIds(long courseId) {
+		List<Long> rootIds = jdbcTemplate.queryForList(
+				"SELECT f.files_id FROM course c JOIN course_details_files f ON f.course_details_id = c.course_details_id WHERE c.id = :courseId ORDER BY f.files_id",
+				Collections.singletonMap("courseId", courseId), Long.class);
+		return this.withDescendants(rootIds, "SELECT id FROM file_group WHERE file_group_parent_id IN (:ids) ORDER BY id");
+	}
+	
+	// Breadth-first traversal of a tree, one query per level
+	private List<Long> withDescendants(List<Long> rootIds, String childrenQuery) {
+		List<Long> ids = new ArrayList<>(rootIds);
+		List<Long> level = rootIds;
+		while (!level.isEmpty()) {
+			level = this.queryInChunks(childrenQuery, level, Long.class);
+			ids.addAll(level);
+		}
+		return ids;
+	}
+	
+	private Long queryId(String query, long courseId) {
+		List<Long> ids = jdbcTemplate.queryForList(query, Collections.singletonMap("courseId", courseId), Long.class);
+		return ids.isEmpty() ? null : ids.get(0);
+	}
+	
+	private <T> List<T> queryInChunks(String query, List<Long> ids, Class<T> type) {
+		List<T> result = new ArrayList<>();
+		for (int i = 0; i < ids.size(); i += ID_CHUNK_SIZE) {
+			result.addAll(jdbcTemplate.queryForList(query,
+					Collections.singletonMap("ids", ids.subList(i, Math.min(i + ID_CHUNK_SIZE, ids.size()))), type));
+		}
+		return result;
+	}
+	
+	private long updateInChunks(String statement, List<Long> ids) {
+		long rows = 0;
+		for (int i = 0; i < ids.size(); i += ID_CHUNK_SIZE) {
+			rows += jdbcTemplate.update(statement,
+					Collections.singletonMap("ids", ids.subList(i, Math.min(i + ID_CHUNK_SIZE, ids.size()))));
+		}
+		return rows;
+	}
+	
+}
@@ -0,0 +1,129 @@
+package com.fullteaching.backend.course;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fullteaching.backend.session.SessionRepository;
+
+/**
+ * Sparse fieldsets of a course. Only 'courseDetails' needs the whole course
+ * graph, and it is then taken from CourseCache; any other field is read with
+ * its own query.
+ */
+@Service
+public class CourseFieldsService {
+	
+	//Top level fields of a serialized Course, in the order they are returned
+	public static final Set<String> FIELDS = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+			"id", "title", "image", "version", "headerVersion", "attendersCount", "teacher", "sessions", "courseDetails")));
+			
+	@Autowired
+	private CourseRepository courseRepository;
+	
+	@Autowired
+	private SessionRepository sessionRepository;
+	
+	@Autowired
+	private CourseCache courseCache;
+	
+	@Autowired
+	private ObjectMapper objectMapper;
+	
+	public static class CourseFields {
+		
+		private final long version;
+		
+		private final Map<String, Object> values;
+		
+		public CourseFields(long version, Map<String, Object> values) {
+			this.version = version;
+			this.values = values;
+		}
+		
+		// Version of the course the values were read with
+		public long getVersion() {
+			return version;
+		}
+		
+		public Map<String, Object> getValues() {
+			return values;
+		}
+		
+	}
+	
+	// Returns null if the course does not exist or has been deleted. 'fields' must be a subset of FIELDS
+	public CourseFields getFields(long courseId, Set<String> fields) {
+		if (fields.contains("courseDetails")) {
+			return getCachedFields(courseId, fields);
+		}
+		CourseHeader header = courseRepository.findHeader(courseId);
+		if (header == null) {
+			return null;
+		}
+		Map<String, Object> values = new LinkedHashMap<>();
+		for (String field : FIELDS) {
+			if (!fields.contains(field)) {
+				continue;
+			}
+			switch (field) {
+			case "id":
+				values.put(field, header.getId());
+				break;
+			case "title":
+				values.put(field, header.getTitle());
+				break;
+			case "image":
+				values.put(field, header.getImage());
+				break;
+			case "version":
+				values.put(field, header.getVersion());
+				break;
+			case "headerVersion":
+				values.put(field, header.getHeaderVersion());
+				break;
+			case "attendersCount":
+				values.put(field, header.getAttendersCount());
+				break;
+			case "teacher":
+				values.put(field, courseRepository.findTeacher(courseId));
+				break;
+			case "sessions":
+				values.put(field, sessionRepository.findSummariesByCourseId(courseId));
+				break;
+			}
+		}
+		return new CourseFields(header.getVersion(), values);
+	}
+	
+	//All the fields are taken from the same cached JSON, so they belong to the same version
+	private CourseFields getCachedFields(long courseId, Set<String> fields) {
+		CachedCourse course = courseCache.getCourse(courseId);
+		if (course == null) {
+			return null;
+		}
+		JsonNode json;
+		try {
+			json = objectMapper.readTree(course.getJson());
+		} catch (IOException e) {
+			throw new IllegalStateException("Cached course " + courseId + " could not be read", e);
+		}
+		Map<String, Object> values = new LinkedHashMap<>();
+		for (String field : FIELDS) {
+			if (fields.contains(field)) {
+				values.put(field, json.get(field));
+			}
+		}
+		return new CourseFields(course.getVersion(), values);
+	}
+	
+}
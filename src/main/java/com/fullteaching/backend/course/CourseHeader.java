@@ -0,0 +1,22 @@
+package com.fullteaching.backend.course;
+
+/**
+ * Read-only projection of the scalar fields of a Course, used to answer
+ * sparse fieldsets ('GET /api-courses/course/{id}?fields=...') without
+ * loading its details, forum or files.
+ */
+public interface CourseHeader {
+	
+	long getId();
+	
+	String getTitle();
+	
+	String getImage();
+	
+	long getVersion();
+	
+	long getHeaderVersion();
+	
+	int getAttendersCount();
+	
+}
@@ -0,0 +1,92 @@
+package com.fullteaching.backend.course;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Partial update of a course: only non-null fields are modified, and only if
+ * the header of the course is still at 'headerVersion'. The applied changes are
+ * answered with the same document, holding the new header version, the new
+ * version of the whole course (its ETag) and only the modified fields.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CoursePatch {
+	
+	private Long id;
+	
+	private Long headerVersion;
+	
+	//Only answered: the expected version is 'headerVersion'
+	private Long version;
+	
+	private String title;
+	
+	private String image;
+	
+	//Info of the CourseDetails of the course
+	private String info;
+	
+	public CoursePatch() {}
+	
+	public CoursePatch(Long id, Long headerVersion, Long version, String title, String image, String info) {
+		this.id = id;
+		this.headerVersion = headerVersion;
+		this.version = version;
+		this.title = title;
+		this.image = image;
+		this.info = info;
+	}
+	
+	public Long getId() {
+		return id;
+	}
+	
+	public void setId(Long id) {
+		this.id = id;
+	}
+	
+	public Long getHeaderVersion() {
+		return headerVersion;
+	}
+	
+	public void setHeaderVersion(Long headerVersion) {
+		this.headerVersion = headerVersion;
+	}
+	
+	public Long getVersion() {
+		return version;
+	}
+	
+	public void setVersion(Long version) {
+		this.version = version;
+	}
+	
+	public String getTitle() {
+		return title;
+	}
+	
+	public void setTitle(String title) {
+		this.title = title;
+	}
+	
+	public String getImage() {
+		return image;
+	}
+	
+	public void setImage(String image) {
+		this.image = image;
+	}
+	
+	public String getInfo() {
+		return info;
+	}
+	
+	public void setInfo(String info) {
+		this.info = info;
+	}
+	
+	@Override
+	public String toString() {
+		return "CoursePatch[id: " + this.id + ", headerVersion: " + this.headerVersion + ", version: " + this.version + ", title: " + this.title + ", image: " + this.image + "]";
+	}
+	
+}
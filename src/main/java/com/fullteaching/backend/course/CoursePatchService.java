@@ -0,0 +1,60 @@
+package com.fullteaching.backend.course;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fullteaching.backend.coursedetails.CourseDetailsInfo;
+import com.fullteaching.backend.coursedetails.CourseDetailsRepository;
+
+/**
+ * Applies a CoursePatch with targeted UPDATE statements, without loading the
+ * course graph. The check of the header version and its increment are part of
+ * the UPDATE of the course row, so concurrent patches of the same header
+ * cannot both win. Changes to other parts of the course, which only increment
+ * its version, do not make a patch conflict.
+ */
+@Service
+public class CoursePatchService {
+	
+	private static final Logger log = LoggerFactory.getLogger(CoursePatchService.class);
+	
+	@Autowired
+	private CourseRepository courseRepository;
+	
+	@Autowired
+	private CourseDetailsRepository courseDetailsRepository;
+	
+	@Autowired
+	private CourseChangeService courseChangeService;
+	
+	// Returns null if the header of the course is not at the expected version anymore
+	@Transactional
+	public CoursePatch patch(long courseId, CoursePatch patch) {
+		if (courseRepository.patch(courseId, patch.getHeaderVersion(), patch.getTitle(), patch.getImage()) == 0) {
+			log.warn("Header of course {} is not at version {} anymore", courseId, patch.getHeaderVersion());
+			return null;
+		}
+		List<ContentChange> changes = new ArrayList<>();
+		if (patch.getTitle() != null || patch.getImage() != null) {
+			changes.add(ContentChange.saved(ContentChange.Type.COURSE, courseId));
+		}
+		if (patch.getInfo() != null) {
+			courseRepository.updateInfo(courseId, patch.getInfo());
+			CourseDetailsInfo details = courseDetailsRepository.findInfoByCourseId(courseId);
+			if (details != null) {
+				changes.add(ContentChange.saved(ContentChange.Type.COURSE_DETAILS, details.getId()));
+			}
+		}
+		//The row is locked by the UPDATE, so this is the version it has just set
+		long version = courseRepository.findVersion(courseId);
+		courseChangeService.recordAt(courseId, version, changes);
+		return new CoursePatch(courseId, patch.getHeaderVersion() + 1, version, patch.getTitle(), patch.getImage(), patch.getInfo());
+	}
+	
+}
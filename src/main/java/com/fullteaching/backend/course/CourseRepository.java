@@ -1,13 +1,110 @@
 package com.fullteaching.backend.course;
 
 import java.util.Collection;
+import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.fullteaching.backend.user.User;
 
 public interface CourseRepository extends JpaRepository<Course, Long> {
 	
-    public Collection<Course> findByAttenders(Collection<User> users);
+    @Query("select distinct c from Course c join c.attenders a where a in :users and c.deleted = false")
+    public Collection<Course> findByAttenders(@Param("users") Collection<User> users);
+    
+    //[id, title, forum id, forum activated, forum last activity] of the courses the user attends, for the feed (see FeedService)
+    @Query("select c.id, c.title, f.id, f.activated, f.lastActivity from Course c join c.attenders a "
+    		+ "left join c.courseDetails d left join d.forum f where a.id = :userId and c.deleted = false order by c.id asc")
+    public List<Object[]> findFeedCoursesByAttender(@Param("userId") long userId);
+    
+    //Null if the course does not exist or has been deleted
+    @Query("select c.version from Course c where c.id = :courseId and c.deleted = false")
+    public Long findVersion(@Param("courseId") long courseId);
+    
+    @Transactional
+    @Modifying
+    @Query("update Course c set c.version = c.version + 1 where c.id = :courseId")
+    public int incrementVersion(@Param("courseId") long courseId);
+    
+    @Transactional
+    @Modifying
+    @Query("update Course c set c.headerVersion = c.headerVersion + 1 where c.id = :courseId")
+    public int incrementHeaderVersion(@Param("courseId") long courseId);
+    
+    @Query("select c.teacher from Course c where c.id = :courseId and c.deleted = false")
+    public User findTeacher(@Param("courseId") long courseId);
+    
+    //Null arguments leave their field untouched. Returns 0 if the header of the course is not at 'headerVersion' anymore
+    @Modifying
+    @Query("update Course c set c.title = coalesce(:title, c.title), c.image = coalesce(:image, c.image), "
+    		+ "c.headerVersion = c.headerVersion + 1, c.version = c.version + 1 "
+    		+ "where c.id = :courseId and c.headerVersion = :headerVersion and c.deleted = false")
+    public int patch(@Param("courseId") long courseId, @Param("headerVersion") long headerVersion,
+    		@Param("title") String title, @Param("image") String image);
+    		
+    @Modifying
+    @Query("update CourseDetails d set d.info = :info where d.id = (select c.courseDetails.id from Course c where c.id = :courseId)")
+    public int updateInfo(@Param("courseId") long courseId, @Param("info") String info);
+    
+    @Modifying
+    @Query("update Course c set c.deleted = true where c.id = :courseId")
+    public int markDeleted(@Param("courseId") long courseId);
+    
+    @Query("select c.id as id, c.title as title, c.image as image, c.version as version, c.headerVersion as headerVersion, "
+    		+ "(select count(a) from Course c2 join c2.attenders a where c2.id = c.id) as attendersCount "
+    		+ "from Course c where c.id = :courseId and c.deleted = false")
+    public CourseHeader findHeader(@Param("courseId") long courseId);
+    
+    @Query("select a.id from Course c join c.attenders a where c.id = :courseId")
+    public List<Long> findAttenderIds(@Param("courseId") long courseId);
+    
+    //Which of the given users are attenders of the course, resolved on the join table index
+    @Query("select a.id from Course c join c.attenders a where c.id = :courseId and a.id in :userIds")
+    public List<Long> findAttenderIdsIn(@Param("courseId") long courseId, @Param("userIds") Collection<Long> userIds);
+    
+    //Keyset pagination on course id: 'pageable' only limits the page size
+    @Query("select c.id as id, c.title as title, c.image as image, t.nickName as teacherNickName, "
+    		+ "(select min(s.date) from Session s where s.course = c and s.date >= :now) as nextSessionDate, "
+    		+ "case when f.entryCount + f.commentCount > coalesce(r.readCount, 0) "
+    		+ "then (f.entryCount + f.commentCount - coalesce(r.readCount, 0)) else 0 end as unreadCount "
+    		+ "from Course c join c.attenders a left join c.teacher t left join c.courseDetails d left join d.forum f "
+    		+ "left join ForumReadState r on r.userId = :userId and r.courseId = c.id "
+    		+ "where a.id = :userId and c.id > :afterId and c.deleted = false order by c.id asc")
+    public List<CourseSummary> findSummariesByAttender(
+    		@Param("userId") long userId,
+    		@Param("afterId") long afterId,
+    		@Param("now") long now,
+    		Pageable pageable);
 
+    //Keyset pagination of the roster on (nickName, id): 'prefix' must already be escaped with '!'
+    @Query("select a.id as id, a.name as name, a.nickName as nickName, a.picture as picture "
+    		+ "from Course c join c.attenders a "
+    		+ "where c.id = :courseId and c.deleted = false and a.nickName like :prefix escape '!' "
+    		+ "and (a.nickName > :afterKey or (a.nickName = :afterKey and a.id > :afterId)) "
+    		+ "order by a.nickName asc, a.id asc")
+    public List<CourseAttender> findAttendersByNickName(
+    		@Param("courseId") long courseId,
+    		@Param("prefix") String prefix,
+    		@Param("afterKey") String afterKey,
+    		@Param("afterId") long afterId,
+    		Pageable pageable);
+    		
+    //Same as 'findAttendersByNickName', sorted by email
+    @Query("select a.id as id, a.name as name, a.nickName as nickName, a.picture as picture "
+    		+ "from Course c join c.attenders a "
+    		+ "where c.id = :courseId and c.deleted = false and a.name like :prefix escape '!' "
+    		+ "and (a.name > :afterKey or (a.name = :afterKey and a.id > :afterId)) "
+    		+ "order by a.name asc, a.id asc")
+    public List<CourseAttender> findAttendersByName(
+    		@Param("courseId") long courseId,
+    		@Param("prefix") String prefix,
+    		@Param("afterKey") String afterKey,
+    		@Param("afterId") long afterId,
+    		Pageable pageable);
+    		
 }
@@ -0,0 +1,95 @@
+package com.fullteaching.backend.course;
+
+/**
+ * Aggregated counters of one course, as computed by CourseStatisticsService.
+ * 'version' is the version of the course the counters were computed for.
+ */
+public class CourseStatistics {
+	
+	private long courseId;
+	
+	private String title;
+	
+	private long version;
+	
+	private long attenders;
+	
+	private long sessions;
+	
+	private long entries;
+	
+	//Comments and replies at any depth
+	private long comments;
+	
+	//Files of all the file groups, at any depth
+	private long files;
+	
+	private long storedBytes;
+	
+	public CourseStatistics(long courseId, String title, long version) {
+		this.courseId = courseId;
+		this.title = title;
+		this.version = version;
+	}
+	
+	public long getCourseId() {
+		return courseId;
+	}
+	
+	public String getTitle() {
+		return title;
+	}
+	
+	public long getVersion() {
+		return version;
+	}
+	
+	public long getAttenders() {
+		return attenders;
+	}
+	
+	public void setAttenders(long attenders) {
+		this.attenders = attenders;
+	}
+	
+	public long getSessions() {
+		return sessions;
+	}
+	
+	public void setSessions(long sessions) {
+		this.sessions = sessions;
+	}
+	
+	public long getEntries() {
+		return entries;
+	}
+	
+	public void setEntries(long entries) {
+		this.entries = entries;
+	}
+	
+	public long getComments() {
+		return comments;
+	}
+	
+	public void setComments(long comments) {
+		this.comments = comments;
+	}
+	
+	public long getFiles() {
+		return files;
+	}
+	
+	public void setFiles(long files) {
+		this.files = files;
+	}
+	
+	public long getStoredBytes() {
+		return storedBytes;
+	}
+	
+	public void setStoredBytes(long storedBytes) {
+		this.storedBytes = storedBytes;
+	}
+	
+}
@@ -0,0 +1,57 @@
+package com.fullteaching.backend.course;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * Aggregate queries behind CourseStatisticsService. Each one covers any number
+ * of courses and returns one row per course: [course id, count(, bytes)].
+ * Courses without any counted element have no row.
+ */
+public interface CourseStatisticsRepository extends Repository<Course, Long> {
+	
+	//[course id, title, version]
+	@Query("select c.id, c.title, c.version from Course c where c.teacher.id = :teacherId and c.deleted = false order by c.id")
+	public List<Object[]> findTaughtCourses(@Param("teacherId") long teacherId);
+	
+	//[course id, title, version]
+	@Query("select c.id, c.title, c.version from Course c where c.id in :courseIds and c.deleted = false")
+	public List<Object[]> findCourses(@Param("courseIds") Collection<Long> courseIds);
+	
+	@Query("select c.id, count(a) from Course c join c.attenders a where c.id in :courseIds group by c.id")
+	public List<Object[]> countAttenders(@Param("courseIds") Collection<Long> courseIds);
+	
+	@Query("select s.course.id, count(s) from Session s where s.course.id in :courseIds group by s.course.id")
+	public List<Object[]> countSessions(@Param("courseIds") Collection<Long> courseIds);
+	
+	@Query("select c.id, count(e) from Course c join c.courseDetails d join d.forum f join f.entries e where c.id in :courseIds group by c.id")
+	public List<Object[]> countEntries(@Param("courseIds") Collection<Long> courseIds);
+	
+	//Replies are only linked to their parent comment, so the comment trees are walked with a recursive query
+	@Query(nativeQuery = true, value = "WITH RECURSIVE course_comment (course_id, comment_id) AS ("
+			+ "SELECT c.id, ec.comments_id FROM course c "
+			+ "JOIN course_details cd ON cd.id = c.course_details_id "
+			+ "JOIN entry e ON e.forum_id = cd.forum_id "
+			+ "JOIN entry_comments ec ON ec.entry_id = e.id "
+			+ "WHERE c.id IN (:courseIds) "
+			+ "UNION ALL "
+			+ "SELECT cc.course_id, r.id FROM course_comment cc JOIN comment r ON r.comment_parent_id = cc.comment_id) "
+			+ "SELECT course_id, COUNT(*) FROM course_comment GROUP BY course_id")
+	public List<Object[]> countComments(@Param("courseIds") Collection<Long> courseIds);
+	
+	//[course id, files, bytes]. File groups are nested, so they are walked with a recursive query
+	@Query(nativeQuery = true, value = "WITH RECURSIVE course_group (course_id, group_id) AS ("
+			+ "SELECT c.id, cdf.files_id FROM course c "
+			+ "JOIN course_details_files cdf ON cdf.course_details_id = c.course_details_id "
+			+ "WHERE c.id IN (:courseIds) "
+			+ "UNION ALL "
+			+ "SELECT cg.course_id, fg.id FROM course_group cg JOIN file_group fg ON fg.file_group_parent_id = cg.group_id) "
+			+ "SELECT cg.course_id, COUNT(f.id), COALESCE(SUM(f.size), 0) FROM course_group cg "
+			+ "JOIN file f ON f.files_id = cg.group_id GROUP BY cg.course_id")
+	public List<Object[]> countFiles(@Param("courseIds") Collection<Long> courseIds);
+	
+}
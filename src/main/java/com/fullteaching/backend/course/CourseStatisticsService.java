@@ -0,0 +1,129 @@
+package com.fullteaching.backend.course;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fullteaching.backend.cache.CacheStats;
+import com.fullteaching.backend.cache.ReadThroughCache;
+
+/**
+ * Statistics of many courses at once. The courses not cached are computed
+ * together with a fixed number of aggregate queries, whatever their number.
+ *
+ * Cached statistics are validated against the version of their course, which
+ * is incremented on every write (see CourseCache.invalidate), so no write
+ * needs to know about this cache.
+ */
+@Service
+public class CourseStatisticsService {
+	
+	@Autowired
+	private CourseStatisticsRepository statisticsRepository;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	@Value("${course.statistics.cache.max-entries:5000}")
+	private int maxEntries;
+	
+	@Value("${course.statistics.cache.ttl-millis:600000}")
+	private long ttlMillis;
+	
+	private ReadThroughCache<Long, CourseStatistics> cache;
+	
+	private TransactionTemplate readOnlyTransaction;
+	
+	@PostConstruct
+	public void init() {
+		this.cache = new ReadThroughCache<>(maxEntries, ttlMillis);
+		this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+		this.readOnlyTransaction.setReadOnly(true);
+	}
+	
+	// Statistics of all the courses taught by the user, ordered by course id
+	public List<CourseStatistics> getTaughtCourseStatistics(long teacherId) {
+		List<Object[]> courses = statisticsRepository.findTaughtCourses(teacherId);
+		List<Long> courseIds = new ArrayList<>();
+		for (Object[] course : courses) {
+			courseIds.add(((Number) course[0]).longValue());
+		}
+		
+		Map<Long, CourseStatistics> statistics = cache.getAll(courseIds, this::loadStatistics);
+		
+		//Statistics of courses modified after being cached are computed again
+		List<Long> staleIds = new ArrayList<>();
+		for (Object[] course : courses) {
+			CourseStatistics s = statistics.get(((Number) course[0]).longValue());
+			if (s != null && s.getVersion() != ((Number) course[2]).longValue()) {
+				staleIds.add(s.getCourseId());
+				cache.invalidate(s.getCourseId());
+			}
+		}
+		if (!staleIds.isEmpty()) {
+			statistics.putAll(cache.getAll(staleIds, this::loadStatistics));
+		}
+		
+		List<CourseStatistics> result = new ArrayList<>();
+		for (Long courseId : courseIds) {
+			//Courses deleted in the meantime have no statistics
+			if (statistics.containsKey(courseId)) {
+				result.add(statistics.get(courseId));
+			}
+		}
+		return result;
+	}
+	
+	public CacheStats getStats() {
+		return cache.getStats();
+	}
+	
+	private Map<Long, CourseStatistics> loadStatistics(Collection<Long> courseIds) {
+		return readOnlyTransaction.execute(status -> {
+			//Versions are read first: counters newer than their version are fixed by the next version check
+			Map<Long, CourseStatistics> statistics = new HashMap<>();
+			for (Object[] course : statisticsRepository.findCourses(courseIds)) {
+				long courseId = ((Number) course[0]).longValue();
+				statistics.put(courseId, new CourseStatistics(courseId, (String) course[1], ((Number) course[2]).longValue()));
+			}
+			if (statistics.isEmpty()) {
+				return statistics;
+			}
+			Collection<Long> ids = statistics.keySet();
+			addCounts(statistics, statisticsRepository.countAttenders(ids), (s, row) -> s.setAttenders(longValue(row, 1)));
+			addCounts(statistics, statisticsRepository.countSessions(ids), (s, row) -> s.setSessions(longValue(row, 1)));
+			addCounts(statistics, statisticsRepository.countEntries(ids), (s, row) -> s.setEntries(longValue(row, 1)));
+			addCounts(statistics, statisticsRepository.countComments(ids), (s, row) -> s.setComments(longValue(row, 1)));
+			addCounts(statistics, statisticsRepository.countFiles(ids), (s, row) -> {
+				s.setFiles(longValue(row, 1));
+				s.setStoredBytes(longValue(row, 2));
+			});
+			return statistics;
+		});
+	}
+	
+	private static void addCounts(Map<Long, CourseStatistics> statistics, List<Object[]> rows, BiConsumer<CourseStatistics, Object[]> setter) {
+		for (Object[] row : rows) {
+			CourseStatistics s = statistics.get(longValue(row, 0));
+			if (s != null) {
+				setter.accept(s, row);
+			}
+		}
+	}
+	
+	private static long longValue(Object[] row, int column) {
+		return ((Number) row[column]).longValue();
+	}
+	
+}
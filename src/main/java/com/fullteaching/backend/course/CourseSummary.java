@@ -0,0 +1,24 @@
+package com.fullteaching.backend.course;
+
+/**
+ * Read-only projection of a Course for the "my courses" listing. It is
+ * resolved with a single query, so neither the sessions nor the attenders of
+ * the course are ever loaded.
+ */
+public interface CourseSummary {
+	
+	long getId();
+	
+	String getTitle();
+	
+	String getImage();
+	
+	String getTeacherNickName();
+	
+	//Date of the first session that has not started yet (null if there is none)
+	Long getNextSessionDate();
+	
+	//Entries and comments of its forum the user has not read (see ForumReadService)
+	Long getUnreadCount();
+	
+}
@@ -0,0 +1,36 @@
+package com.fullteaching.backend.course;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fullteaching.backend.session.SessionSummary;
+
+public class CourseSummaryPage {
+	
+	private List<CourseSummary> courses;
+	
+	//Upcoming sessions of each listed course, by course id (only filled if requested)
+	private Map<Long, List<SessionSummary>> sessions;
+	
+	//Course id to pass as 'after' to get the next page (null if this is the last one)
+	private Long nextCursor;
+	
+	public CourseSummaryPage(List<CourseSummary> courses, Map<Long, List<SessionSummary>> sessions, Long nextCursor) {
+		this.courses = courses;
+		this.sessions = sessions;
+		this.nextCursor = nextCursor;
+	}
+	
+	public List<CourseSummary> getCourses() {
+		return courses;
+	}
+	
+	public Map<Long, List<SessionSummary>> getSessions() {
+		return sessions;
+	}
+	
+	public Long getNextCursor() {
+		return nextCursor;
+	}
+	
+}
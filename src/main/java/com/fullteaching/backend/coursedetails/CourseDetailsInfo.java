@@ -0,0 +1,13 @@
+package com.fullteaching.backend.coursedetails;
+
+/**
+ * Read-only projection of the information of a course, loaded without its
+ * forum or its files.
+ */
+public interface CourseDetailsInfo {
+	
+	long getId();
+	
+	String getInfo();
+	
+}
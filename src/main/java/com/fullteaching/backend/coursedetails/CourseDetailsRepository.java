@@ -1,10 +1,16 @@
 package com.fullteaching.backend.coursedetails;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
 import com.fullteaching.backend.course.Course;
 
 public interface CourseDetailsRepository extends JpaRepository<CourseDetails, Long> {
 	
 	CourseDetails findByCourse(Course course);
+	
+	@Query("select d.id as id, d.info as info from Course c join c.courseDetails d where c.id = :courseId and c.deleted = false")
+	CourseDetailsInfo findInfoByCourseId(@Param("courseId") long courseId);
 
 }
@@ -0,0 +1,45 @@
+package com.fullteaching.backend.enrollment;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Ids of the users to add to and remove from the attenders of a course. It is
+ * both the body of the request and its response, where it only contains the
+ * ids that were actually added or removed.
+ */
+public class AttendersDelta {
+	
+	private Collection<Long> add = new ArrayList<>();
+	
+	private Collection<Long> remove = new ArrayList<>();
+	
+	public AttendersDelta() {}
+	
+	public AttendersDelta(Collection<Long> add, Collection<Long> remove) {
+		this.add = add;
+		this.remove = remove;
+	}
+	
+	public Collection<Long> getAdd() {
+		return add;
+	}
+	
+	public void setAdd(Collection<Long> add) {
+		this.add = add;
+	}
+	
+	public Collection<Long> getRemove() {
+		return remove;
+	}
+	
+	public void setRemove(Collection<Long> remove) {
+		this.remove = remove;
+	}
+	
+	@Override
+	public String toString() {
+		return "AttendersDelta[add: " + this.add + ", remove: " + this.remove + "]";
+	}
+	
+}
@@ -0,0 +1,161 @@
+package com.fullteaching.backend.enrollment;
+
+import javax.persistence.CascadeType;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.OneToOne;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Asynchronous enrollment of a (possibly huge) list of emails in a course.
+ * The emails are processed in chunks, and 'processed' is updated in the same
+ * transaction as the chunk it accounts for, so an interrupted job can always
+ * be resumed from the first email not yet enrolled.
+ */
+@Entity
+public class EnrollmentJob {
+	
+	public enum Status { PENDING, RUNNING, COMPLETED, FAILED }
+	
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO)
+	private long id;
+	
+	private long courseId;
+	
+	private long requestedBy;
+	
+	@Enumerated(EnumType.STRING)
+	private Status status;
+	
+	//Only loaded when the job is run, never when its progress is checked
+	@JsonIgnore
+	@OneToOne(fetch = FetchType.LAZY, cascade = CascadeType.ALL, optional = false)
+	private EnrollmentJobRoster roster;
+	
+	private int total;
+	
+	//Number of emails already processed (position to resume the job from)
+	private int processed;
+	
+	//Counters matching the collections of the synchronous add-attenders response
+	private int attendersAdded;
+	
+	private int attendersAlreadyAdded;
+	
+	private int emailsInvalid;
+	
+	private int emailsValidNotRegistered;
+	
+	private String error;
+	
+	private long creationDate;
+	
+	private long lastUpdateDate;
+	
+	public EnrollmentJob() {}
+	
+	public EnrollmentJob(long courseId, long requestedBy, EnrollmentJobRoster roster, int total) {
+		this.courseId = courseId;
+		this.requestedBy = requestedBy;
+		this.roster = roster;
+		this.total = total;
+		this.status = Status.PENDING;
+		this.creationDate = System.currentTimeMillis();
+		this.lastUpdateDate = this.creationDate;
+	}
+	
+	public void addChunkResult(int processedEmails, EnrollmentResult result) {
+		this.processed += processedEmails;
+		this.attendersAdded += result.getAttendersAdded().size();
+		this.attendersAlreadyAdded += result.getAttendersAlreadyAdded().size();
+		this.emailsInvalid += result.getEmailsInvalid().size();
+		this.emailsValidNotRegistered += result.getEmailsValidNotRegistered().size();
+		this.lastUpdateDate = System.currentTimeMillis();
+	}
+	
+	public boolean isFinished() {
+		return this.status == Status.COMPLETED || this.status == Status.FAILED;
+	}
+	
+	public long getId() {
+		return id;
+	}
+	
+	public void setId(long id) {
+		this.id = id;
+	}
+	
+	public long getCourseId() {
+		return courseId;
+	}
+	
+	public long getRequestedBy() {
+		return requestedBy;
+	}
+	
+	public Status getStatus() {
+		return status;
+	}
+	
+	public void setStatus(Status status) {
+		this.status = status;
+		this.lastUpdateDate = System.currentTimeMillis();
+	}
+	
+	public EnrollmentJobRoster getRoster() {
+		return roster;
+	}
+	
+	public int getTotal() {
+		return total;
+	}
+	
+	public int getProcessed() {
+		return processed;
+	}
+	
+	public int getAttendersAdded() {
+		return attendersAdded;
+	}
+	
+	public int getAttendersAlreadyAdded() {
+		return attendersAlreadyAdded;
+	}
+	
+	public int getEmailsInvalid() {
+		return emailsInvalid;
+	}
+	
+	public int getEmailsValidNotRegistered() {
+		return emailsValidNotRegistered;
+	}
+	
+	public String getError() {
+		return error;
+	}
+	
+	public void setError(String error) {
+		this.error = error;
+	}
+	
+	public long getCreationDate() {
+		return creationDate;
+	}
+	
+	public long getLastUpdateDate() {
+		return lastUpdateDate;
+	}
+	
+	@Override
+	public String toString() {
+		return "EnrollmentJob[id: " + this.id + ", course: " + this.courseId + ", status: " + this.status + ", processed: " + this.processed + "/" + this.total + "]";
+	}
+	
+}
@@ -0,0 +1,153 @@
+package com.fullteaching.backend.enrollment;
+
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fullteaching.backend.course.Course;
+import com.fullteaching.backend.course.CourseRepository;
+import com.fullteaching.backend.security.AuthorizationService;
+import com.fullteaching.backend.user.UserComponent;
+
+@RestController
+@RequestMapping("/api-courses")
+public class EnrollmentJobController {
+	
+	private static final Logger log = LoggerFactory.getLogger(EnrollmentJobController.class);
+	
+	@Autowired
+	private EnrollmentJobService enrollmentJobService;
+	
+	@Autowired
+	private CourseRepository courseRepository;
+	
+	@Autowired
+	private UserComponent user;
+	
+	@Autowired
+	private AuthorizationService authorizationService;
+	
+	@RequestMapping(value = "/edit/add-attenders/course/{courseId}/jobs", method = RequestMethod.POST)
+	public ResponseEntity<Object> newEnrollmentJob(
+			@RequestBody String[] attenderEmails,
+			@PathVariable(value="courseId") String courseId)
+	{
+		
+		log.info("CRUD operation: Creating enrollment job");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_course = -1;
+		try{
+			id_course = Long.parseLong(courseId);
+		}catch(NumberFormatException e) {
+			log.error("Course ID '{}' is not of type Long", courseId);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		Course c = courseRepository.findById(id_course).orElse(null);
+		
+		ResponseEntity<Object> teacherAuthorized = authorizationService.checkAuthorization(c, c != null ? c.getTeacher() : null);
+		if (teacherAuthorized != null) { // If the user is not the teacher of the course
+			return teacherAuthorized;
+		}
+		
+		try {
+			EnrollmentJob job = enrollmentJobService.submit(c.getId(), Arrays.asList(attenderEmails), this.user.getLoggedUser().getId());
+			log.info("Enrollment job created: {}", job);
+			return new ResponseEntity<>(job, HttpStatus.ACCEPTED);
+		} catch (RejectedExecutionException e) {
+			log.error("Enrollment job for course {} could not be queued", id_course);
+			return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+		}
+	}
+	
+	@RequestMapping(value = "/add-attenders/jobs/{jobId}", method = RequestMethod.GET)
+	public ResponseEntity<Object> getEnrollmentJob(@PathVariable(value="jobId") String jobId) {
+		
+		log.info("CRUD operation: Getting enrollment job");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_job = -1;
+		try{
+			id_job = Long.parseLong(jobId);
+		}catch(NumberFormatException e) {
+			log.error("Job ID '{}' is not of type Long", jobId);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		EnrollmentJob job = enrollmentJobService.getJob(id_job);
+		if (job == null) {
+			log.error("Enrollment job {} not found", id_job);
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		
+		Course c = courseRepository.findById(job.getCourseId()).orElse(null);
+		
+		ResponseEntity<Object> teacherAuthorized = authorizationService.checkAuthorization(c, c != null ? c.getTeacher() : null);
+		if (teacherAuthorized != null) { // If the user is not the teacher of the course
+			return teacherAuthorized;
+		}
+		
+		return new ResponseEntity<>(job, HttpStatus.OK);
+	}
+	
+	@RequestMapping(value = "/edit/add-attenders/jobs/{jobId}/resume", method = RequestMethod.POST)
+	public ResponseEntity<Object> resumeEnrollmentJob(@PathVariable(value="jobId") String jobId) {
+		
+		log.info("CRUD operation: Resuming enrollment job");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_job = -1;
+		try{
+			id_job = Long.parseLong(jobId);
+		}catch(NumberFormatException e) {
+			log.error("Job ID '{}' is not of type Long", jobId);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		EnrollmentJob job = enrollmentJobService.getJob(id_job);
+		if (job == null) {
+			log.error("Enrollment job {} not found", id_job);
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		
+		Course c = courseRepository.findById(job.getCourseId()).orElse(null);
+		
+		ResponseEntity<Object> teacherAuthorized = authorizationService.checkAuthorization(c, c != null ? c.getTeacher() : null);
+		if (teacherAuthorized != null) { // If the user is not the teacher of the course
+			return teacherAuthorized;
+		}
+		
+		try {
+			job = enrollmentJobService.resume(job);
+			log.info("Enrollment job resumed: {}", job);
+			return new ResponseEntity<>(job, HttpStatus.ACCEPTED);
+		} catch (RejectedExecutionException e) {
+			log.error("Enrollment job {} could not be queued", job.getId());
+			return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+		}
+	}
+	
+}
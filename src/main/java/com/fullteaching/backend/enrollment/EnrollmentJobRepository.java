@@ -0,0 +1,12 @@
+package com.fullteaching.backend.enrollment;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface EnrollmentJobRepository extends JpaRepository<EnrollmentJob, Long> {
+	
+	public List<EnrollmentJob> findByStatusIn(Collection<EnrollmentJob.Status> status);
+	
+}
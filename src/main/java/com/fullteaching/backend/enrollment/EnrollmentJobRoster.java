@@ -0,0 +1,34 @@
+package com.fullteaching.backend.enrollment;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+
+@Entity
+public class EnrollmentJobRoster {
+	
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO)
+	private long id;
+	
+	//JSON array with all the emails of an EnrollmentJob (duplicates already removed)
+	@Lob
+	private String emails;
+	
+	public EnrollmentJobRoster() {}
+	
+	public EnrollmentJobRoster(String emails) {
+		this.emails = emails;
+	}
+	
+	public long getId() {
+		return id;
+	}
+	
+	public String getEmails() {
+		return emails;
+	}
+	
+}
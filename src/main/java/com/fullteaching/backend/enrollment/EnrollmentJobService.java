@@ -0,0 +1,218 @@
+package com.fullteaching.backend.enrollment;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fullteaching.backend.course.CourseCache;
+
+/**
+ * Runs EnrollmentJobs in a bounded pool of background threads. Each chunk of
+ * emails is enrolled and accounted for in its own transaction, so the progress
+ * stored in the job is always exact and a job interrupted by a shutdown is
+ * resumed from its first unprocessed email when the application starts again.
+ */
+@Service
+public class EnrollmentJobService {
+	
+	private static final Logger log = LoggerFactory.getLogger(EnrollmentJobService.class);
+	
+	@Autowired
+	private EnrollmentJobRepository jobRepository;
+	
+	@Autowired
+	private EnrollmentService enrollmentService;
+	
+	@Autowired
+	private CourseCache courseCache;
+	
+	@Autowired
+	private ObjectMapper objectMapper;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	@Value("${enrollment.jobs.threads:2}")
+	private int threads;
+	
+	@Value("${enrollment.jobs.queue-capacity:100}")
+	private int queueCapacity;
+	
+	@Value("${enrollment.jobs.chunk-size:1000}")
+	private int chunkSize;
+	
+	private ThreadPoolExecutor executor;
+	
+	private TransactionTemplate transactionTemplate;
+	
+	//Ids of the jobs queued or running in this instance, so a job is never run twice at the same time
+	private final Set<Long> activeJobs = ConcurrentHashMap.newKeySet();
+	
+	@PostConstruct
+	public void init() {
+		AtomicInteger threadCount = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), r -> {
+					Thread t = new Thread(r, "enrollment-job-" + threadCount.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+	
+	@PreDestroy
+	public void shutdown() {
+		//Running jobs stop after their current chunk and stay RUNNING, to be resumed on the next start
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * Stores a new job for the given emails and queues it. If the queue fills
+	 * up between the check and the queueing, the job is returned PENDING: it
+	 * runs when it is resumed or when the application restarts.
+	 *
+	 * @throws RejectedExecutionException if the queue of jobs is full. Nothing
+	 * is stored then, so the request can simply be retried
+	 */
+	public EnrollmentJob submit(long courseId, Collection<String> emails, long requestedBy) {
+		if (executor.getQueue().remainingCapacity() == 0) {
+			throw new RejectedExecutionException("The queue of enrollment jobs is full");
+		}
+		Set<String> uniqueEmails = new LinkedHashSet<>(emails);
+		String serializedEmails;
+		try {
+			serializedEmails = objectMapper.writeValueAsString(uniqueEmails);
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException("Emails could not be serialized", e);
+		}
+		EnrollmentJob job = new EnrollmentJob(courseId, requestedBy, new EnrollmentJobRoster(serializedEmails), uniqueEmails.size());
+		job = jobRepository.save(job);
+		log.info("Enrollment job {} created for {} emails", job.getId(), uniqueEmails.size());
+		try {
+			this.queue(job.getId());
+		} catch (RejectedExecutionException e) {
+			log.warn("Enrollment job {} could not be queued: it stays PENDING until it is resumed", job.getId());
+		}
+		return job;
+	}
+	
+	public EnrollmentJob getJob(long jobId) {
+		return jobRepository.findById(jobId).orElse(null);
+	}
+	
+	/**
+	 * Queues again a FAILED job (or a job that could not be queued), starting
+	 * from its first unprocessed email. Finished or already queued jobs are
+	 * returned untouched.
+	 */
+	public EnrollmentJob resume(EnrollmentJob job) {
+		if (job.getStatus() == EnrollmentJob.Status.COMPLETED || activeJobs.contains(job.getId())) {
+			return job;
+		}
+		if (job.getStatus() == EnrollmentJob.Status.FAILED) {
+			job.setStatus(EnrollmentJob.Status.PENDING);
+			job.setError(null);
+			job = jobRepository.save(job);
+		}
+		this.queue(job.getId());
+		return job;
+	}
+	
+	@EventListener(ApplicationReadyEvent.class)
+	public void resumeUnfinishedJobs() {
+		List<EnrollmentJob> unfinished = jobRepository.findByStatusIn(Arrays.asList(EnrollmentJob.Status.PENDING, EnrollmentJob.Status.RUNNING));
+		for (EnrollmentJob job : unfinished) {
+			log.info("Resuming unfinished {}", job);
+			try {
+				this.queue(job.getId());
+			} catch (RejectedExecutionException e) {
+				log.warn("Enrollment job {} could not be resumed: queue is full", job.getId());
+			}
+		}
+	}
+	
+	private void queue(long jobId) {
+		if (!activeJobs.add(jobId)) {
+			return;
+		}
+		try {
+			executor.execute(() -> {
+				try {
+					this.run(jobId);
+				} finally {
+					activeJobs.remove(jobId);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			activeJobs.remove(jobId);
+			throw e;
+		}
+	}
+	
+	void run(long jobId) {
+		EnrollmentJob job = jobRepository.findById(jobId).orElse(null);
+		if (job == null || job.isFinished()) {
+			return;
+		}
+		try {
+			String serializedEmails = transactionTemplate.execute(status -> jobRepository.findById(jobId).get().getRoster().getEmails());
+			List<String> emails = Arrays.asList(objectMapper.readValue(serializedEmails, String[].class));
+			
+			job.setStatus(EnrollmentJob.Status.RUNNING);
+			job = jobRepository.save(job);
+			
+			while (job.getProcessed() < emails.size()) {
+				if (Thread.currentThread().isInterrupted()) {
+					log.info("Enrollment job {} interrupted after {} emails", jobId, job.getProcessed());
+					return;
+				}
+				List<String> chunk = new ArrayList<>(emails.subList(job.getProcessed(), Math.min(job.getProcessed() + chunkSize, emails.size())));
+				EnrollmentJob current = job;
+				job = transactionTemplate.execute(status -> {
+					EnrollmentResult result = enrollmentService.enroll(current.getCourseId(), chunk);
+					current.addChunkResult(chunk.size(), result);
+					return jobRepository.save(current);
+				});
+				courseCache.invalidate(job.getCourseId());
+			}
+			
+			job.setStatus(EnrollmentJob.Status.COMPLETED);
+			jobRepository.save(job);
+			log.info("Enrollment job finished: {}", job);
+		} catch (IOException | RuntimeException e) {
+			log.error("Enrollment job {} failed", jobId, e);
+			//Reloaded, as the failed chunk may have left the job instance modified
+			job = jobRepository.findById(jobId).orElse(job);
+			job.setStatus(EnrollmentJob.Status.FAILED);
+			String error = String.valueOf(e.getMessage());
+			job.setError(error.length() > 255 ? error.substring(0, 255) : error);
+			jobRepository.save(job);
+		}
+	}
+	
+}
@@ -0,0 +1,36 @@
+package com.fullteaching.backend.enrollment;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import com.fullteaching.backend.user.User;
+
+public class EnrollmentResult {
+	
+	private Collection<User> attendersAdded = new ArrayList<>();
+	
+	private Collection<User> attendersAlreadyAdded = new ArrayList<>();
+	
+	//Strings with an invalid email format
+	private Collection<String> emailsInvalid = new ArrayList<>();
+	
+	//Strings with a valid email format but no registered in the application
+	private Collection<String> emailsValidNotRegistered = new ArrayList<>();
+	
+	public Collection<User> getAttendersAdded() {
+		return attendersAdded;
+	}
+	
+	public Collection<User> getAttendersAlreadyAdded() {
+		return attendersAlreadyAdded;
+	}
+	
+	public Collection<String> getEmailsInvalid() {
+		return emailsInvalid;
+	}
+	
+	public Collection<String> getEmailsValidNotRegistered() {
+		return emailsValidNotRegistered;
+	}
+	
+}
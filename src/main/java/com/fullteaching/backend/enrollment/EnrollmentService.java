@@ -0,0 +1,165 @@
+package com.fullteaching.backend.enrollment;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.validator.routines.EmailValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fullteaching.backend.course.CourseRepository;
+import com.fullteaching.backend.user.User;
+import com.fullteaching.backend.user.UserRepository;
+
+/**
+ * Adds attenders to a course by email with a fixed number of queries: emails
+ * are resolved in chunked 'IN' queries, the current attenders are read with a
+ * single query over the join table and only the missing 'course_attenders'
+ * rows are inserted, in one JDBC batch. No Course or User entity is modified.
+ */
+@Service
+public class EnrollmentService {
+	
+	private static final Logger log = LoggerFactory.getLogger(EnrollmentService.class);
+	
+	//Maximum number of parameters of each 'IN' query
+	static final int LOOKUP_CHUNK_SIZE = 500;
+	
+	private static final String INSERT_ATTENDER = "INSERT INTO course_attenders (courses_id, attenders_id) VALUES (?, ?)";
+	
+	private static final String DELETE_ATTENDER = "DELETE FROM course_attenders WHERE courses_id = ? AND attenders_id = ?";
+	
+	@Autowired
+	private UserRepository userRepository;
+	
+	@Autowired
+	private CourseRepository courseRepository;
+	
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	
+	@Transactional
+	public EnrollmentResult enroll(long courseId, Collection<String> emails) {
+		
+		EnrollmentResult result = new EnrollmentResult();
+		
+		//Duplicated emails are only processed once
+		Set<String> emailsValid = new LinkedHashSet<>();
+		EmailValidator emailValidator = EmailValidator.getInstance();
+		for (String email : new LinkedHashSet<>(emails)) {
+			if (emailValidator.isValid(email)) {
+				emailsValid.add(email);
+			} else {
+				result.getEmailsInvalid().add(email);
+			}
+		}
+		
+		Map<String, User> usersByEmail = this.findUsersByEmail(emailsValid);
+		
+		Set<Long> currentAttenderIds = new HashSet<>(courseRepository.findAttenderIds(courseId));
+		
+		List<Object[]> newRows = new ArrayList<>();
+		for (String email : emailsValid) {
+			User u = usersByEmail.get(email);
+			if (u == null) {
+				result.getEmailsValidNotRegistered().add(email);
+			} else if (currentAttenderIds.add(u.getId())) {
+				result.getAttendersAdded().add(u);
+				newRows.add(new Object[] { courseId, u.getId() });
+			} else {
+				result.getAttendersAlreadyAdded().add(u);
+			}
+		}
+		
+		if (!newRows.isEmpty()) {
+			jdbcTemplate.batchUpdate(INSERT_ATTENDER, newRows);
+		}
+		
+		log.info("Course {}: {} attenders added, {} already added, {} invalid emails, {} emails not registered",
+				courseId, result.getAttendersAdded().size(), result.getAttendersAlreadyAdded().size(),
+				result.getEmailsInvalid().size(), result.getEmailsValidNotRegistered().size());
+				
+		return result;
+	}
+	
+	/**
+	 * Adds and removes attenders by user id, touching only the 'course_attenders'
+	 * rows of the given users. Ids of users that are already (or not) attenders,
+	 * or that do not exist, are ignored. Returns the ids actually added/removed.
+	 */
+	@Transactional
+	public AttendersDelta applyDelta(long courseId, AttendersDelta delta) {
+		
+		List<Long> toAdd = new ArrayList<>(new LinkedHashSet<>(delta.getAdd()));
+		List<Long> toRemove = new ArrayList<>(new LinkedHashSet<>(delta.getRemove()));
+		
+		Set<Long> attenderIds = new HashSet<>();
+		for (List<Long> chunk : chunks(toAdd)) {
+			attenderIds.addAll(courseRepository.findAttenderIdsIn(courseId, chunk));
+		}
+		for (List<Long> chunk : chunks(toRemove)) {
+			attenderIds.addAll(courseRepository.findAttenderIdsIn(courseId, chunk));
+		}
+		Set<Long> existingIds = new HashSet<>();
+		for (List<Long> chunk : chunks(toAdd)) {
+			existingIds.addAll(userRepository.findExistingIds(chunk));
+		}
+		
+		List<Long> added = new ArrayList<>();
+		List<Object[]> newRows = new ArrayList<>();
+		for (Long id : toAdd) {
+			if (existingIds.contains(id) && !attenderIds.contains(id)) {
+				added.add(id);
+				newRows.add(new Object[] { courseId, id });
+			}
+		}
+		List<Long> removed = new ArrayList<>();
+		List<Object[]> oldRows = new ArrayList<>();
+		for (Long id : toRemove) {
+			if (attenderIds.contains(id)) {
+				removed.add(id);
+				oldRows.add(new Object[] { courseId, id });
+			}
+		}
+		
+		if (!oldRows.isEmpty()) {
+			jdbcTemplate.batchUpdate(DELETE_ATTENDER, oldRows);
+		}
+		if (!newRows.isEmpty()) {
+			jdbcTemplate.batchUpdate(INSERT_ATTENDER, newRows);
+		}
+		
+		log.info("Course {}: attenders {} added, attenders {} removed", courseId, added, removed);
+		
+		return new AttendersDelta(added, removed);
+	}
+	
+	private Map<String, User> findUsersByEmail(Collection<String> emails) {
+		Map<String, User> usersByEmail = new HashMap<>();
+		for (List<String> chunk : chunks(new ArrayList<>(emails))) {
+			for (User u : userRepository.findWithRolesByNameIn(chunk)) {
+				usersByEmail.put(u.getName(), u);
+			}
+		}
+		return usersByEmail;
+	}
+	
+	private static <T> List<List<T>> chunks(List<T> values) {
+		List<List<T>> chunks = new ArrayList<>();
+		for (int i = 0; i < values.size(); i += LOOKUP_CHUNK_SIZE) {
+			chunks.add(values.subList(i, Math.min(i + LOOKUP_CHUNK_SIZE, values.size())));
+		}
+		return chunks;
+	}
+	
+}
@@ -4,17 +4,22 @@ import java.util.List;
 import java.util.ArrayList;
 
 import javax.persistence.CascadeType;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.OneToMany;
 import javax.persistence.ManyToOne;
+import javax.persistence.Table;
 
 import com.fullteaching.backend.comment.Comment;
 import com.fullteaching.backend.user.User;
 
 @Entity
+//Order of the paged forum listing within each forum (see EntryRepository.findSummariesByForumId)
+@Table(indexes = @Index(name = "idx_entry_forum_date", columnList = "forum_id,date,id"))
 public class Entry {
 
 	@Id
@@ -25,6 +30,19 @@ public class Entry {
 	
 	private long date;
 	
+	//Written through 'Forum.entries' (or ForumRepository.addEntry), only mapped here to query the entries of a forum
+	@Column(name = "forum_id", insertable = false, updatable = false)
+	private Long forumId;
+	
+	//Comments of the entry, replies included, and date of the newest one (or of the entry if it has none).
+	//Kept up to date with every new comment, so listings never read the comments (see ForumPostService).
+	//Inserted with the entry, then only incremented by the database, never updated from memory
+	@Column(updatable = false)
+	private long commentCount;
+	
+	@Column(updatable = false)
+	private long lastActivity;
+	
 	@OneToMany(cascade=CascadeType.ALL)
 	private List<Comment> comments;
 	
@@ -64,6 +82,48 @@ public class Entry {
 		this.date = date;
 	}
 
+	public long getCommentCount() {
+		return commentCount;
+	}
+	
+	public void setCommentCount(long commentCount) {
+		this.commentCount = commentCount;
+	}
+	
+	public long getLastActivity() {
+		return lastActivity;
+	}
+	
+	public void setLastActivity(long lastActivity) {
+		this.lastActivity = lastActivity;
+	}
+	
+	//Counts a new comment of the entry in memory. Not saved once the entry is inserted
+	public void addComment(long date) {
+		this.commentCount++;
+		this.lastActivity = Math.max(this.lastActivity, date);
+	}
+	
+	//Counters computed from the comments in memory, for a new entry
+	public void initCounters() {
+		this.commentCount = 0;
+		this.lastActivity = this.date;
+		if (this.comments != null) {
+			for (Comment comment : this.comments) {
+				this.countThread(comment);
+			}
+		}
+	}
+	
+	private void countThread(Comment comment) {
+		this.addComment(comment.getDate());
+		if (comment.getReplies() != null) {
+			for (Comment reply : comment.getReplies()) {
+				this.countThread(reply);
+			}
+		}
+	}
+	
 	public List<Comment> getComments() {
 		return comments;
 	}
@@ -1,19 +1,30 @@
 package com.fullteaching.backend.entry;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fullteaching.backend.comment.Comment;
 import com.fullteaching.backend.forum.Forum;
+import com.fullteaching.backend.forum.ForumHotEntriesService;
+import com.fullteaching.backend.forum.ForumPostService;
 import com.fullteaching.backend.forum.ForumRepository;
+import com.fullteaching.backend.forum.ForumSearchService;
+import com.fullteaching.backend.forum.ForumUpdatesService;
 import com.fullteaching.backend.security.AuthorizationService;
+import com.fullteaching.backend.course.ContentChange;
+import com.fullteaching.backend.course.CourseCache;
 import com.fullteaching.backend.coursedetails.CourseDetails;
 import com.fullteaching.backend.coursedetails.CourseDetailsRepository;
 import com.fullteaching.backend.user.User;
@@ -37,7 +48,23 @@ public class EntryController {
 	@Autowired
 	private AuthorizationService authorizationService;
 	
+	@Autowired
+	private CourseCache courseCache;
+	
+	@Autowired
+	private ForumPostService forumPostService;
+	
+	@Autowired
+	private ForumUpdatesService forumUpdatesService;
+	
+	@Autowired
+	private ForumSearchService forumSearchService;
+	
+	@Autowired
+	private ForumHotEntriesService forumHotEntriesService;
+	
 	@RequestMapping(value = "/forum/{id}", method = RequestMethod.POST)
+	@Transactional
 	public ResponseEntity<Object> newEntry(@RequestBody Entry entry, @PathVariable(value="id") String courseDetailsId) {
 		
 		log.info("CRUD operation: Adding new entry");
@@ -76,9 +103,18 @@ public class EntryController {
 			entry.setDate(System.currentTimeMillis());
 			
 			forum.getEntries().add(entry);
+			//The counters of the entry are inserted with it. The ones of the forum are only counted
+			//in memory for the response, and incremented by the database once the entry is saved
+			entry.initCounters();
+			forum.addEntry(entry);
 			/*Saving the modified forum: Cascade relationship between forum and entries
 			  will add the new entry to EntryRepository*/
 			forumRepository.save(forum);
+			forumPostService.countEntry(forum.getId(), entry);
+			//The saved copy of the entry replaces it in the forum
+			Entry saved = forum.getEntries().get(forum.getEntries().size() - 1);
+			courseCache.invalidate(cd.getCourse().getId(), this.changes(forum.getId(), saved));
+			this.posted(cd.getCourse().getId(), forum.getId(), saved);
 			
 			log.info("New entry succesfully added: {}", entry.toString());
 			
@@ -87,5 +123,76 @@ public class EntryController {
 			return new ResponseEntity<>(forum, HttpStatus.CREATED);
 		}
 	}
+	
+	//Same as 'newEntry', but only the new entry is returned and the entries of the forum are never loaded
+	@RequestMapping(value = "/append/forum/{id}", method = RequestMethod.POST)
+	@Transactional
+	public ResponseEntity<Object> appendEntry(@RequestBody Entry entry, @PathVariable(value="id") String courseDetailsId) {
+		
+		log.info("CRUD operation: Appending new entry");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_i = -1;
+		try {
+			id_i = Long.parseLong(courseDetailsId);
+		} catch(NumberFormatException e){
+			log.error("CourseDetails ID '{}' is not of type Long", courseDetailsId);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		CourseDetails cd = courseDetailsRepository.findById(id_i).orElse(null);
+		
+		ResponseEntity<Object> userAuthorized = authorizationService.checkAuthorizationUsers(cd, cd != null ? cd.getCourse().getAttenders() : null);
+		if (userAuthorized != null) { // If the user is not an attender of the course
+			return userAuthorized;
+		}
+		
+		//Author and date of the entry and of its first comment are set by the server
+		User userLogged = user.getLoggedUser();
+		long now = System.currentTimeMillis();
+		entry.setId(0);
+		entry.setUser(userLogged);
+		entry.setDate(now);
+		if (entry.getComments() == null) {
+			entry.setComments(new ArrayList<>());
+		}
+		for (Comment comment : entry.getComments()) {
+			comment.setId(0);
+			comment.setUser(userLogged);
+			comment.setDate(now);
+		}
+		
+		entry = forumPostService.postEntry(cd.getForum().getId(), entry);
+		courseCache.invalidate(cd.getCourse().getId(), this.changes(cd.getForum().getId(), entry));
+		this.posted(cd.getCourse().getId(), cd.getForum().getId(), entry);
+		
+		log.info("New entry {} succesfully appended to forum {}", entry.getId(), cd.getForum().getId());
+		
+		return new ResponseEntity<>(entry, HttpStatus.CREATED);
+	}
 
+	// Subscribers, search index and hot entries only learn about the entry once it is committed
+	private void posted(long courseId, long forumId, Entry entry) {
+		ForumPostService.afterCommit(() -> {
+			forumUpdatesService.publishEntry(courseId, entry);
+			forumSearchService.indexEntry(courseId, entry);
+			forumHotEntriesService.entryPosted(forumId, entry);
+		});
+	}
+	
+	// The new entry, its first comments and the counters of its forum
+	private ContentChange[] changes(long forumId, Entry entry) {
+		List<ContentChange> changes = new ArrayList<>();
+		changes.add(ContentChange.created(ContentChange.Type.ENTRY, entry.getId()));
+		for (Comment comment : entry.getComments()) {
+			changes.add(ContentChange.created(ContentChange.Type.COMMENT, comment.getId()));
+		}
+		changes.add(ContentChange.saved(ContentChange.Type.FORUM, forumId));
+		return changes.toArray(new ContentChange[0]);
+	}
+	
 }
@@ -1,7 +1,95 @@
 package com.fullteaching.backend.entry;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import javax.persistence.LockModeType;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface EntryRepository extends JpaRepository<Entry, Long> {
+	
+	//Keyset pagination on (date, id), newest entries first, read in order from the (forum_id, date, id) index.
+	//'pageable' only limits the page size
+	@Query("select new com.fullteaching.backend.entry.EntrySummary(e.id, e.title, e.date, u.nickName, u.picture, e.commentCount, e.lastActivity) "
+			+ "from Entry e left join e.user u "
+			+ "where e.forumId = :forumId and (e.date < :beforeDate or (e.date = :beforeDate and e.id < :beforeId)) "
+			+ "order by e.date desc, e.id desc")
+	public List<EntrySummary> findSummariesByForumId(
+			@Param("forumId") long forumId,
+			@Param("beforeDate") long beforeDate,
+			@Param("beforeId") long beforeId,
+			Pageable pageable);
+			
+	@Query("select new com.fullteaching.backend.entry.EntrySummary(e.id, e.title, e.date, u.nickName, u.picture, e.commentCount, e.lastActivity) "
+			+ "from Entry e left join e.user u where e.forumId = :forumId and e.id in :ids")
+	public List<EntrySummary> findSummariesByForumIdAndIdIn(@Param("forumId") long forumId, @Param("ids") Collection<Long> ids);
+	
+	//[entry id, comments, date of the newest comment] of the entries with comments, replies included.
+	//Only used to repair the counters of the entries (see ForumCountersRepairService)
+	@Query(nativeQuery = true, value = "WITH RECURSIVE entry_comment (entry_id, comment_id, comment_date) AS ("
+			+ "SELECT ec.entry_id, c.id, c.date FROM entry_comments ec JOIN comment c ON c.id = ec.comments_id "
+			+ "WHERE ec.entry_id IN (:entryIds) "
+			+ "UNION ALL "
+			+ "SELECT ecm.entry_id, r.id, r.date FROM entry_comment ecm JOIN comment r ON r.comment_parent_id = ecm.comment_id) "
+			+ "SELECT entry_id, COUNT(*), MAX(comment_date) FROM entry_comment GROUP BY entry_id")
+	public List<Object[]> countComments(@Param("entryIds") Collection<Long> entryIds);
+	
+	//Links an already saved root comment without initializing 'Entry.comments'
+	@Modifying
+	@Query(nativeQuery = true, value = "INSERT INTO entry_comments (entry_id, comments_id) VALUES (:entryId, :commentId)")
+	public int addComment(@Param("entryId") long entryId, @Param("commentId") long commentId);
+	
+	//Counts new comments in the same statement that locks the entry, so concurrent comments are never lost
+	@Modifying
+	@Query("update Entry e set e.commentCount = e.commentCount + :comments, "
+			+ "e.lastActivity = case when e.lastActivity < :date then :date else e.lastActivity end where e.id = :entryId")
+	public int incrementCommentCount(@Param("entryId") long entryId, @Param("comments") long comments, @Param("date") long date);
+	
+	//[id, date] of the next entries after 'afterId', locked until the end of the transaction
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select e.id, e.date from Entry e where e.id > :afterId order by e.id")
+	public List<Object[]> lockNextEntries(@Param("afterId") long afterId, Pageable pageable);
+	
+	//Same as 'lockNextEntries', but only the entries of the forum
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select e.id, e.date from Entry e where e.forumId = :forumId and e.id > :afterId order by e.id")
+	public List<Object[]> lockNextEntriesOfForum(@Param("forumId") long forumId, @Param("afterId") long afterId, Pageable pageable);
+	
+	//[id, title] of the next entries of the forum after 'afterId', to index them (see ForumSearchService)
+	@Query("select e.id, e.title from Entry e where e.forumId = :forumId and e.id > :afterId order by e.id")
+	public List<Object[]> findNextTitlesOfForum(@Param("forumId") long forumId, @Param("afterId") long afterId, Pageable pageable);
+	
+	//[forum id, id, title, date, user nickname] of the entries of the forums posted since 'since', newest first.
+	//Keyset pagination on (date, id) for the feed (see FeedService)
+	@Query("select e.forumId, e.id, e.title, e.date, u.nickName from Entry e left join e.user u "
+			+ "where e.forumId in :forumIds and e.date >= :since and (e.date < :beforeDate or (e.date = :beforeDate and e.id < :beforeId)) "
+			+ "order by e.date desc, e.id desc")
+	public List<Object[]> findFeedRows(
+			@Param("forumIds") Collection<Long> forumIds,
+			@Param("since") long since,
+			@Param("beforeDate") long beforeDate,
+			@Param("beforeId") long beforeId,
+			Pageable pageable);
+			
+	//The given ids that are entries of the forum, resolved on their primary key
+	@Query("select e.id from Entry e where e.forumId = :forumId and e.id in :ids")
+	public List<Long> findIdsOfForumIn(@Param("forumId") long forumId, @Param("ids") Collection<Long> ids);
+	
+	@Query("select e.id from Entry e where e.forumId = :forumId and e.id > :afterId order by e.id")
+	public List<Long> findNextIdsOfForum(@Param("forumId") long forumId, @Param("afterId") long afterId, Pageable pageable);
+	
+	//[id, title, date, user nickname] of the entries found by a search
+	@Query("select e.id, e.title, e.date, u.nickName from Entry e left join e.user u where e.id in :ids")
+	public List<Object[]> findSearchRows(@Param("ids") Collection<Long> ids);
+	
+	@Modifying
+	@Query("update Entry e set e.commentCount = :commentCount, e.lastActivity = :lastActivity where e.id = :entryId")
+	public int setCounters(@Param("entryId") long entryId, @Param("commentCount") long commentCount, @Param("lastActivity") long lastActivity);
 
 }
@@ -0,0 +1,68 @@
+package com.fullteaching.backend.entry;
+
+/**
+ * Summary of an Entry for the listing of a forum. Its comments are never
+ * loaded: only how many there are (replies included) and the date of the
+ * newest one, as counted by the entry itself.
+ */
+public class EntrySummary {
+	
+	private long id;
+	
+	private String title;
+	
+	private long date;
+	
+	private String userNickName;
+	
+	private String userPicture;
+	
+	private long commentCount;
+	
+	//Date of the newest comment, or of the entry itself if it has no comments
+	private long lastActivity;
+	
+	public EntrySummary(long id, String title, long date, String userNickName, String userPicture) {
+		this.id = id;
+		this.title = title;
+		this.date = date;
+		this.userNickName = userNickName;
+		this.userPicture = userPicture;
+		this.lastActivity = date;
+	}
+	
+	public EntrySummary(long id, String title, long date, String userNickName, String userPicture, long commentCount, long lastActivity) {
+		this(id, title, date, userNickName, userPicture);
+		this.commentCount = commentCount;
+		this.lastActivity = lastActivity;
+	}
+	
+	public long getId() {
+		return id;
+	}
+	
+	public String getTitle() {
+		return title;
+	}
+	
+	public long getDate() {
+		return date;
+	}
+	
+	public String getUserNickName() {
+		return userNickName;
+	}
+	
+	public String getUserPicture() {
+		return userPicture;
+	}
+	
+	public long getCommentCount() {
+		return commentCount;
+	}
+	
+	public long getLastActivity() {
+		return lastActivity;
+	}
+	
+}
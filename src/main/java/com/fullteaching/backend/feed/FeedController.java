@@ -0,0 +1,71 @@
+package com.fullteaching.backend.feed;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fullteaching.backend.forum.CommentWriteBehindService;
+import com.fullteaching.backend.security.AuthorizationService;
+import com.fullteaching.backend.user.UserComponent;
+
+@RestController
+@RequestMapping("/api-feed")
+public class FeedController {
+	
+	private static final Logger log = LoggerFactory.getLogger(FeedController.class);
+	
+	private static final int DEFAULT_FEED_PAGE_SIZE = 20;
+	private static final int MAX_FEED_PAGE_SIZE = 100;
+	
+	@Autowired
+	private FeedService feedService;
+	
+	@Autowired
+	private UserComponent user;
+	
+	@Autowired
+	private AuthorizationService authorizationService;
+	
+	@Autowired
+	private CommentWriteBehindService commentWriteBehindService;
+	
+	@RequestMapping(method = RequestMethod.GET)
+	public ResponseEntity<Object> getFeed(
+			@RequestParam(value="after", required=false) String after,
+			@RequestParam(value="size", required=false) Integer size)
+	{
+		
+		log.info("CRUD operation: Getting the activity feed of the logged user");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		//First page: after no item
+		long[] cursor = null;
+		if (after != null) {
+			try {
+				cursor = FeedPage.parseCursor(after);
+			} catch (IllegalArgumentException e) {
+				log.error("Feed cursor '{}' is not valid", after);
+				return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+			}
+		}
+		int pageSize = (size != null) ? Math.max(1, Math.min(size, MAX_FEED_PAGE_SIZE)) : DEFAULT_FEED_PAGE_SIZE;
+		
+		//The user reads the comments they posted even if they are not saved yet
+		if (commentWriteBehindService.isEnabled()) {
+			commentWriteBehindService.awaitSaved(user.getLoggedUser().getId());
+		}
+		
+		return new ResponseEntity<>(feedService.getFeed(user.getLoggedUser().getId(), cursor, pageSize), HttpStatus.OK);
+	}
+	
+}
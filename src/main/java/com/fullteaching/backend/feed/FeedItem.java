@@ -0,0 +1,80 @@
+package com.fullteaching.backend.feed;
+
+import java.util.Comparator;
+
+/**
+ * Something new in one of the courses of a user: an entry or a comment of its
+ * forum, a file or an upcoming session.
+ */
+public class FeedItem {
+	
+	public enum Type { SESSION, ENTRY, COMMENT, FILE }
+	
+	//Order of the feed: newest first, then by type and newest id first
+	static final Comparator<FeedItem> NEWEST_FIRST = Comparator.comparingLong(FeedItem::getDate).reversed()
+			.thenComparing(FeedItem::getType)
+			.thenComparing(Comparator.comparingLong(FeedItem::getId).reversed());
+			
+	private Type type;
+	
+	private long courseId;
+	
+	private String courseTitle;
+	
+	private long id;
+	
+	//Entry of a comment (null for the rest)
+	private Long entryId;
+	
+	//Title of an entry, file or session, or message of a comment
+	private String text;
+	
+	private long date;
+	
+	//Author of an entry or a comment (null for the rest)
+	private String userNickName;
+	
+	public FeedItem(Type type, long courseId, String courseTitle, long id, Long entryId, String text, long date, String userNickName) {
+		this.type = type;
+		this.courseId = courseId;
+		this.courseTitle = courseTitle;
+		this.id = id;
+		this.entryId = entryId;
+		this.text = text;
+		this.date = date;
+		this.userNickName = userNickName;
+	}
+	
+	public Type getType() {
+		return type;
+	}
+	
+	public long getCourseId() {
+		return courseId;
+	}
+	
+	public String getCourseTitle() {
+		return courseTitle;
+	}
+	
+	public long getId() {
+		return id;
+	}
+	
+	public Long getEntryId() {
+		return entryId;
+	}
+	
+	public String getText() {
+		return text;
+	}
+	
+	public long getDate() {
+		return date;
+	}
+	
+	public String getUserNickName() {
+		return userNickName;
+	}
+	
+}
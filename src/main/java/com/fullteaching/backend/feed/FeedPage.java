@@ -0,0 +1,44 @@
+package com.fullteaching.backend.feed;
+
+import java.util.List;
+
+import com.fullteaching.backend.paging.Cursors;
+
+/**
+ * A page of the activity feed of 'GET /api-feed', newest items first.
+ */
+public class FeedPage {
+	
+	private List<FeedItem> items;
+	
+	//Opaque value to pass as 'after' to get the next page (null if this is the last one)
+	private String nextCursor;
+	
+	public FeedPage(List<FeedItem> items, String nextCursor) {
+		this.items = items;
+		this.nextCursor = nextCursor;
+	}
+	
+	public List<FeedItem> getItems() {
+		return items;
+	}
+	
+	public String getNextCursor() {
+		return nextCursor;
+	}
+	
+	//A cursor is the date, type and id of the last item of a page: "{date}:{type}:{id}", Base64 encoded
+	public static String cursor(FeedItem last) {
+		return Cursors.encode(last.getDate(), last.getType().ordinal(), last.getId());
+	}
+	
+	// Returns [date, type, id] of the cursor, or throws IllegalArgumentException if it is not valid
+	public static long[] parseCursor(String cursor) {
+		long[] values = Cursors.decodeLongs(cursor, 3);
+		if (values[1] < 0 || values[1] >= FeedItem.Type.values().length) {
+			throw new IllegalArgumentException("Invalid cursor '" + cursor + "'");
+		}
+		return values;
+	}
+	
+}
@@ -0,0 +1,232 @@
+package com.fullteaching.backend.feed;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import com.fullteaching.backend.cache.ReadThroughCache;
+import com.fullteaching.backend.comment.CommentRepository;
+import com.fullteaching.backend.course.CourseRepository;
+import com.fullteaching.backend.entry.EntryRepository;
+import com.fullteaching.backend.file.FileRepository;
+import com.fullteaching.backend.session.SessionRepository;
+
+/**
+ * Activity feed of a user: the entries, comments and files added to all the
+ * courses the user attends in the last 'feed.max-age-days', and their sessions
+ * in the next 'feed.upcoming-session-days', newest first.
+ *
+ * Each kind of item is read with its own cursor over all the courses at
+ * once, newest first, and the four cursors are merged with a heap. A cursor
+ * reads one more row than the page size at a time, so a page costs one query
+ * per kind of item however many courses there are (the comment query walks the
+ * comment trees of the entries active in the window). Pages are cached for a
+ * few seconds per user and cursor, so they are not rebuilt when the feed is
+ * refreshed repeatedly.
+ */
+@Service
+public class FeedService {
+	
+	@Autowired
+	private CourseRepository courseRepository;
+	
+	@Autowired
+	private EntryRepository entryRepository;
+	
+	@Autowired
+	private CommentRepository commentRepository;
+	
+	@Autowired
+	private FileRepository fileRepository;
+	
+	@Autowired
+	private SessionRepository sessionRepository;
+	
+	@Value("${feed.max-age-days:30}")
+	private int maxAgeDays;
+	
+	@Value("${feed.upcoming-session-days:7}")
+	private int upcomingSessionDays;
+	
+	@Value("${feed.cache.max-entries:1000}")
+	private int cacheMaxEntries;
+	
+	@Value("${feed.cache.ttl-millis:15000}")
+	private long cacheTtlMillis;
+	
+	private ReadThroughCache<String, FeedPage> cache;
+	
+	// Rows of one kind of item of all the courses, newest first, before (beforeDate, beforeId)
+	private interface Rows {
+		List<FeedItem> read(long beforeDate, long beforeId, int size);
+	}
+	
+	private static class KindCursor {
+		
+		private final Rows rows;
+		private final int chunkSize;
+		private List<FeedItem> chunk = new ArrayList<>();
+		private int position;
+		private boolean last;
+		private long beforeDate;
+		private long beforeId;
+		
+		private KindCursor(Rows rows, int chunkSize, long beforeDate, long beforeId) {
+			this.rows = rows;
+			this.chunkSize = chunkSize;
+			this.beforeDate = beforeDate;
+			this.beforeId = beforeId;
+		}
+		
+		private FeedItem head() {
+			return chunk.get(position);
+		}
+		
+		// Moves to the next item, reading the next chunk when needed. Returns false when there are no more
+		private boolean next() {
+			position++;
+			if (position < chunk.size()) {
+				return true;
+			}
+			if (last) {
+				return false;
+			}
+			chunk = rows.read(beforeDate, beforeId, chunkSize);
+			position = 0;
+			last = chunk.size() < chunkSize;
+			if (chunk.isEmpty()) {
+				return false;
+			}
+			FeedItem tail = chunk.get(chunk.size() - 1);
+			beforeDate = tail.getDate();
+			beforeId = tail.getId();
+			return true;
+		}
+	}
+	
+	@PostConstruct
+	public void init() {
+		this.cache = new ReadThroughCache<>(cacheMaxEntries, cacheTtlMillis);
+	}
+	
+	/**
+	 * Page of the feed of the user after the item of 'after' (the [date, type,
+	 * id] of FeedPage.parseCursor, or null for the first page).
+	 */
+	public FeedPage getFeed(long userId, long[] after, int size) {
+		String key = userId + ":" + (after != null ? after[0] + ":" + after[1] + ":" + after[2] : "") + ":" + size;
+		return cache.get(key, k -> this.loadFeed(userId, after, size));
+	}
+	
+	private FeedPage loadFeed(long userId, long[] after, int size) {
+		long now = System.currentTimeMillis();
+		long since = now - TimeUnit.DAYS.toMillis(maxAgeDays);
+		long until = now + TimeUnit.DAYS.toMillis(upcomingSessionDays);
+		//One extra item is merged to know if there is a next page
+		int chunkSize = size + 1;
+		
+		Map<Long, String> titles = new HashMap<>();
+		Map<Long, Long> forumCourses = new HashMap<>();
+		for (Object[] course : courseRepository.findFeedCoursesByAttender(userId)) {
+			long courseId = ((Number) course[0]).longValue();
+			titles.put(courseId, (String) course[1]);
+			if (course[2] != null && Boolean.TRUE.equals(course[3]) && ((Number) course[4]).longValue() >= since) {
+				forumCourses.put(((Number) course[2]).longValue(), courseId);
+			}
+		}
+		if (titles.isEmpty()) {
+			return new FeedPage(new ArrayList<>(), null);
+		}
+		
+		List<KindCursor> cursors = new ArrayList<>();
+		cursors.add(cursor(FeedItem.Type.SESSION, after, chunkSize, (date, id, n) -> {
+			List<FeedItem> items = new ArrayList<>();
+			for (Object[] row : sessionRepository.findFeedRows(titles.keySet(), now, until, date, id, PageRequest.of(0, n))) {
+				long courseId = ((Number) row[0]).longValue();
+				items.add(new FeedItem(FeedItem.Type.SESSION, courseId, titles.get(courseId), ((Number) row[1]).longValue(), null,
+						(String) row[2], ((Number) row[3]).longValue(), null));
+			}
+			return items;
+		}));
+		if (!forumCourses.isEmpty()) {
+			cursors.add(cursor(FeedItem.Type.ENTRY, after, chunkSize, (date, id, n) -> {
+				List<FeedItem> items = new ArrayList<>();
+				for (Object[] row : entryRepository.findFeedRows(forumCourses.keySet(), since, date, id, PageRequest.of(0, n))) {
+					long courseId = forumCourses.get(((Number) row[0]).longValue());
+					items.add(new FeedItem(FeedItem.Type.ENTRY, courseId, titles.get(courseId), ((Number) row[1]).longValue(), null,
+							(String) row[2], ((Number) row[3]).longValue(), (String) row[4]));
+				}
+				return items;
+			}));
+			cursors.add(cursor(FeedItem.Type.COMMENT, after, chunkSize, (date, id, n) -> {
+				List<FeedItem> items = new ArrayList<>();
+				for (Object[] row : commentRepository.findFeedRows(forumCourses.keySet(), since, date, id, PageRequest.of(0, n))) {
+					long courseId = forumCourses.get(((Number) row[0]).longValue());
+					items.add(new FeedItem(FeedItem.Type.COMMENT, courseId, titles.get(courseId), ((Number) row[2]).longValue(), ((Number) row[1]).longValue(),
+							(String) row[3], ((Number) row[4]).longValue(), (String) row[5]));
+				}
+				return items;
+			}));
+		}
+		cursors.add(cursor(FeedItem.Type.FILE, after, chunkSize, (date, id, n) -> {
+			List<FeedItem> items = new ArrayList<>();
+			for (Object[] row : fileRepository.findFeedRows(titles.keySet(), since, date, id, PageRequest.of(0, n))) {
+				long courseId = ((Number) row[0]).longValue();
+				items.add(new FeedItem(FeedItem.Type.FILE, courseId, titles.get(courseId), ((Number) row[1]).longValue(), null,
+						(String) row[2], ((Number) row[3]).longValue(), null));
+			}
+			return items;
+		}));
+		
+		//K-way merge: the cursor with the newest item on top
+		PriorityQueue<KindCursor> heads = new PriorityQueue<>(cursors.size(), (c1, c2) -> FeedItem.NEWEST_FIRST.compare(c1.head(), c2.head()));
+		for (KindCursor cursor : cursors) {
+			if (cursor.next()) {
+				heads.add(cursor);
+			}
+		}
+		List<FeedItem> items = new ArrayList<>();
+		while (items.size() <= size && !heads.isEmpty()) {
+			KindCursor cursor = heads.poll();
+			items.add(cursor.head());
+			if (cursor.next()) {
+				heads.add(cursor);
+			}
+		}
+		
+		String nextCursor = null;
+		if (items.size() > size) {
+			items = new ArrayList<>(items.subList(0, size));
+			nextCursor = FeedPage.cursor(items.get(size - 1));
+		}
+		return new FeedPage(items, nextCursor);
+	}
+	
+	// Cursor over the items of one type after the item of 'after', in the order of FeedItem.NEWEST_FIRST
+	private static KindCursor cursor(FeedItem.Type type, long[] after, int chunkSize, Rows rows) {
+		if (after == null) {
+			return new KindCursor(rows, chunkSize, Long.MAX_VALUE, Long.MAX_VALUE);
+		}
+		//Items of the same date go after it if their type comes later, or if it is its type and their id is lower
+		long beforeId;
+		if (type.ordinal() > after[1]) {
+			beforeId = Long.MAX_VALUE;
+		} else if (type.ordinal() < after[1]) {
+			beforeId = Long.MIN_VALUE;
+		} else {
+			beforeId = after[2];
+		}
+		return new KindCursor(rows, chunkSize, after[0], beforeId);
+	}
+	
+}
@@ -0,0 +1,110 @@
+package com.fullteaching.backend.file;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Range of bytes of a file requested by a 'Range: bytes=...' header, with
+ * both ends included.
+ */
+public class ByteRange {
+	
+	private final long start;
+	
+	private final long end;
+	
+	public ByteRange(long start, long end) {
+		this.start = start;
+		this.end = end;
+	}
+	
+	public long getStart() {
+		return start;
+	}
+	
+	public long getEnd() {
+		return end;
+	}
+	
+	public long getLength() {
+		return end - start + 1;
+	}
+	
+	// Value of the 'Content-Range' header of this range of a file of 'size' bytes
+	public String toContentRange(long size) {
+		return "bytes " + start + "-" + end + "/" + size;
+	}
+	
+	/**
+	 * Satisfiable ranges of a 'Range' header for a file of 'size' bytes, sorted
+	 * and with overlapping or adjacent ones merged, so that a request never
+	 * gets the same bytes twice. Returns null if the header is not a valid
+	 * bytes range (it must be ignored), and an empty list if none of its
+	 * ranges is satisfiable.
+	 */
+	public static List<ByteRange> parse(String header, long size) {
+		if (header == null || !header.startsWith("bytes=")) {
+			return null;
+		}
+		List<ByteRange> ranges = new ArrayList<>();
+		int specs = 0;
+		for (String spec : header.substring("bytes=".length()).split(",")) {
+			spec = spec.trim();
+			if (spec.isEmpty()) {
+				continue;
+			}
+			specs++;
+			int dash = spec.indexOf('-');
+			if (dash < 0) {
+				return null;
+			}
+			long start;
+			long end;
+			try {
+				if (dash == 0) {
+					// Suffix range: the last bytes of the file
+					long suffix = Long.parseLong(spec.substring(1));
+					if (suffix < 0) {
+						return null;
+					}
+					start = Math.max(0, size - suffix);
+					end = size - 1;
+				} else {
+					start = Long.parseLong(spec.substring(0, dash));
+					String last = spec.substring(dash + 1);
+					if (last.isEmpty()) {
+						end = size - 1;
+					} else {
+						long lastPosition = Long.parseLong(last);
+						if (lastPosition < start) {
+							return null;
+						}
+						end = Math.min(lastPosition, size - 1);
+					}
+				}
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			if (start <= end) {
+				ranges.add(new ByteRange(start, end));
+			}
+		}
+		if (specs == 0) {
+			return null;
+		}
+		ranges.sort(Comparator.comparingLong(ByteRange::getStart));
+		List<ByteRange> merged = new ArrayList<>();
+		for (ByteRange range : ranges) {
+			ByteRange last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+			if (last != null && range.start <= last.end + 1) {
+				merged.set(merged.size() - 1, new ByteRange(last.start, Math.max(last.end, range.end)));
+			} else {
+				merged.add(range);
+			}
+		}
+		return Collections.unmodifiableList(merged);
+	}
+	
+}
@@ -24,6 +24,15 @@ public class File {
 	
 	private int indexOrder;
 	
+	//Stored bytes (0 for web links)
+	private long size;
+	
+	//SHA-256 of the stored bytes in hex (null for web links and for files uploaded before it was computed)
+	private String hash;
+	
+	//When the file was added. Entities loaded by Hibernate get the stored value instead
+	private long date = System.currentTimeMillis();
+	
 	public File() {}
 	
 	public File(int type, String name) {
@@ -109,6 +118,30 @@ public class File {
 		return this.nameIdent.substring(this.nameIdent.lastIndexOf('.') + 1);
 	}
 	
+	public long getSize() {
+		return size;
+	}
+	
+	public void setSize(long size) {
+		this.size = size;
+	}
+	
+	public String getHash() {
+		return hash;
+	}
+	
+	public void setHash(String hash) {
+		this.hash = hash;
+	}
+	
+	public long getDate() {
+		return date;
+	}
+	
+	public void setDate(long date) {
+		this.date = date;
+	}
+	
 	//Generates a string which acts as an identifier for the stored file in the system (local, S3...)
 	private String generateNameIdent(String originalName){
 		String s = originalName + (Math.random() * (Integer.MIN_VALUE - Integer.MAX_VALUE));
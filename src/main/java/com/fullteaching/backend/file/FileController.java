@@ -1,32 +1,44 @@
 package com.fullteaching.backend.file;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
 
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.tomcat.util.http.fileupload.IOUtils;
+import org.apache.catalina.connector.ClientAbortException;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadBase.FileSizeLimitExceededException;
+import org.apache.commons.fileupload.FileUploadBase.FileUploadIOException;
+import org.apache.commons.fileupload.FileUploadBase.SizeLimitExceededException;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.multipart.MultipartFile;
-import org.springframework.web.multipart.MultipartHttpServletRequest;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.util.unit.DataSize;
 
+import com.fullteaching.backend.course.ContentChange;
 import com.fullteaching.backend.course.Course;
+import com.fullteaching.backend.course.CourseCache;
 import com.fullteaching.backend.course.CourseRepository;
 import com.fullteaching.backend.filegroup.FileGroup;
 import com.fullteaching.backend.filegroup.FileGroupRepository;
@@ -58,18 +70,40 @@ public class FileController {
 
 	@Autowired
 	private AuthorizationService authorizationService;
+	
+	@Autowired
+	private CourseCache courseCache;
 
 	@Autowired
 	private FileOperationsService fileOperationsService;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	private TransactionTemplate transactionTemplate;
 
 	@Value("${profile.stage}")
 	private String profileStage;
 
+	@Value("${files.upload.max-file-size:512MB}")
+	private DataSize maxFileSize;
+	
+	@Value("${files.upload.max-request-size:1GB}")
+	private DataSize maxRequestSize;
+	
+	@Value("${files.upload.max-picture-size:5MB}")
+	private DataSize maxPictureSize;
+	
 	public static final Path FILES_FOLDER = Paths.get(System.getProperty("user.dir"), "/assets/files");
 	public static final Path PICTURES_FOLDER = Paths.get(System.getProperty("user.dir"), "/assets/pictures");
+	
+	@PostConstruct
+	public void init() {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
 
 	@RequestMapping(value = "/upload/course/{courseId}/file-group/{fileGroupId}", method = RequestMethod.POST)
-	public ResponseEntity<Object> handleFileUpload(MultipartHttpServletRequest request,
+	public ResponseEntity<Object> handleFileUpload(HttpServletRequest request,
 			@PathVariable(value = "courseId") String courseId, @PathVariable(value = "fileGroupId") String fileGroupId)
 			throws IOException {
 
@@ -91,6 +125,11 @@ public class FileController {
 			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
 		}
 
+		if (!ServletFileUpload.isMultipartContent(request)) {
+			log.error("The request is not a multipart upload");
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
 		Course c = courseRepository.findById(id_course).orElse(null);
 
 		ResponseEntity<Object> teacherAuthorized = authorizationService.checkAuthorization(c, c.getTeacher());
@@ -98,66 +137,86 @@ public class FileController {
 			return teacherAuthorized;
 		} else {
 
-			FileGroup fg = null;
-			Iterator<String> i = request.getFileNames();
-			boolean hasNext = true;
-			while (hasNext) {
+			FileGroup fg = fileGroupRepository.findById(id_fileGroup).orElse(null);
 
-				String name = i.next();
+			// Each file is piped from the request body to its storage, measured and hashed on the way
+			List<com.fullteaching.backend.file.File> uploadedFiles = new ArrayList<>();
+			try {
+				FileItemIterator i = fileOperationsService.getUploadedFiles(request, maxFileSize.toBytes(), maxRequestSize.toBytes());
+				while (i.hasNext()) {
 
-				log.info("File name: '{}'", name);
-
-				MultipartFile file = request.getFile(name);
-				String fileName = file.getOriginalFilename();
-
-				log.info("File full name: " + fileName);
-
-				if (file.isEmpty()) {
-					log.error("The file is empty");
-					throw new RuntimeException("The file is empty");
-				}
-
-				if (!Files.exists(FILES_FOLDER)) {
-					log.debug("Creating folder '{}'", FILES_FOLDER);
-					Files.createDirectories(FILES_FOLDER);
-				}
+					FileItemStream item = i.next();
+					if (item.isFormField()) {
+						continue;
+					}
 
-				com.fullteaching.backend.file.File customFile = new com.fullteaching.backend.file.File(1, fileName);
-				File uploadedFile = new File(FILES_FOLDER.toFile(), customFile.getNameIdent());
+					String fileName = item.getName();
 
-				file.transferTo(uploadedFile);
+					log.info("File name: '{}'", item.getFieldName());
+					log.info("File full name: " + fileName);
 
-				if (this.isProductionStage()) {
-					// ONLY ON PRODUCTION
-					try {
-						fileOperationsService.productionFileSaver(customFile.getNameIdent(), "files", uploadedFile);
-					} catch (InterruptedException e) {
-						fileOperationsService.deleteLocalFile(uploadedFile.getName(), FILES_FOLDER);
-						e.printStackTrace();
+					MeasuredInputStream in = this.openUpload(item);
+					if (in == null) {
+						log.error("The file is empty");
+						throw new RuntimeException("The file is empty");
+					}
+					
+					com.fullteaching.backend.file.File customFile = new com.fullteaching.backend.file.File(1, fileName);
+					
+					if (this.isProductionStage()) {
+						// ONLY ON PRODUCTION
+						fileOperationsService.productionStreamSaver(customFile.getNameIdent(), "files", in);
+						customFile.setLink("https://" + FileOperationsService.bucketAWS + ".s3.amazonaws.com/files/"
+								+ customFile.getNameIdent());
+						// ONLY ON PRODUCTION
+					} else {
+						// ONLY ON DEVELOPMENT
+						if (!Files.exists(FILES_FOLDER)) {
+							log.debug("Creating folder '{}'", FILES_FOLDER);
+							Files.createDirectories(FILES_FOLDER);
+						}
+						Path uploadedFile = FILES_FOLDER.resolve(customFile.getNameIdent());
+						fileOperationsService.localFileSaver(in, uploadedFile);
+						customFile.setLink(uploadedFile.toString());
+						// ONLY ON DEVELOPMENT
 					}
-					customFile.setLink("https://" + FileOperationsService.bucketAWS + ".s3.amazonaws.com/files/"
-							+ customFile.getNameIdent());
-					fileOperationsService.deleteLocalFile(uploadedFile.getName(), FILES_FOLDER);
-					// ONLY ON PRODUCTION
-				} else {
-					// ONLY ON DEVELOPMENT
-					customFile.setLink(uploadedFile.getPath());
-					// ONLY ON DEVELOPMENT
+					customFile.setSize(in.getSize());
+					customFile.setHash(in.getHash());
+					uploadedFiles.add(customFile);
+					log.info("File succesfully uploaded to '{}' ({} bytes)", customFile.getLink(), customFile.getSize());
 				}
-				fg = fileGroupRepository.findById(id_fileGroup).orElse(null);
-				fg.getFiles().add(customFile);
-				fg.updateFileIndexOrder();
-				log.info("File succesfully uploaded to path '{}'", uploadedFile.getPath());
+			} catch (FileUploadIOException | FileUploadException e) {
+				this.deleteStoredFiles(uploadedFiles);
+				Throwable cause = (e instanceof FileUploadIOException) ? e.getCause() : e;
+				log.error("Upload rejected: {}", cause.getMessage());
+				return new ResponseEntity<>(
+						(cause instanceof FileSizeLimitExceededException || cause instanceof SizeLimitExceededException)
+								? HttpStatus.PAYLOAD_TOO_LARGE : HttpStatus.BAD_REQUEST);
+			} catch (IOException | RuntimeException e) {
+				this.deleteStoredFiles(uploadedFiles);
+				throw e;
 			}
 
-			fileGroupRepository.save(fg);
+			fg.getFiles().addAll(uploadedFiles);
+			fg.updateFileIndexOrder();
+			//The group and its course changes are saved together, once the files are stored
+			transactionTemplate.execute(status -> {
+				fileGroupRepository.save(fg);
+				//New files replace their unsaved copies in the group, and the indexes of the rest may have changed
+				List<ContentChange> changes = new ArrayList<>();
+				for (com.fullteaching.backend.file.File f : fg.getFiles()) {
+					changes.add(ContentChange.saved(ContentChange.Type.FILE, f.getId()));
+				}
+				courseCache.invalidate(c.getId(), changes.toArray(new ContentChange[0]));
+				return null;
+			});
 			return new ResponseEntity<>(this.getRootFileGroup(fg), HttpStatus.CREATED);
 		}
 	}
 
 	@RequestMapping("/course/{courseId}/download/{fileId}")
 	public void handleFileDownload(@PathVariable String fileId, @PathVariable(value = "courseId") String courseId,
-			HttpServletResponse response) throws FileNotFoundException, IOException {
+			HttpServletRequest request, HttpServletResponse response) throws FileNotFoundException, IOException {
 		
 		log.info("Downloading file...");
 
@@ -192,43 +251,51 @@ public class FileController {
 				
 				log.info("File name: '{}'", f.getName());
 				
-				if (this.isProductionStage()) {
-					// ONLY ON PRODUCTION
-					fileOperationsService.productionFileDownloader(f.getNameIdent(), response);
-					// ONLY ON PRODUCTION
-				} else {
-					// ONLY ON DEVELOPMENT
-					Path file = FILES_FOLDER.resolve(f.getNameIdent());
-
-					if (Files.exists(file)) {
-						try {
-							String fileExt = f.getFileExtension();
-							response.setContentType(MimeTypes.getMimeType(fileExt));
-
-							// get your file as InputStream
-							InputStream is = new FileInputStream(file.toString());
-							// copy it to response's OutputStream
-							IOUtils.copy(is, response.getOutputStream());
-							response.flushBuffer();
-							
-							log.info("File '{}' succesfully downloaded", f.getName());
-						} catch (IOException ex) {
-							throw new RuntimeException("IOError writing file to output stream");
+				try {
+					if (this.isProductionStage()) {
+						// ONLY ON PRODUCTION
+						// Ranges and validators are forwarded to S3, so downloads through the backend can be resumed too
+						if (!fileOperationsService.productionFileDownloader(f.getNameIdent(),
+								MimeTypes.getMimeType(f.getFileExtension()), request, response)) {
+							log.error("File '{}' does not exist in S3 and cannot be downloaded", f.getName());
+							response.sendError(404, "File " + f.getNameIdent() + " does not exist");
+							return;
 						}
-
+						// ONLY ON PRODUCTION
 					} else {
-						log.error("File '{}' does not exist and cannot be downloaded", f.getName());
-						response.sendError(404,
-								"File" + f.getNameIdent() + "(" + file.toAbsolutePath() + ") does not exist");
+						// ONLY ON DEVELOPMENT
+						Path file = FILES_FOLDER.resolve(f.getNameIdent());
+						if (!Files.exists(file)) {
+							log.error("File '{}' does not exist and cannot be downloaded", f.getName());
+							response.sendError(404,
+									"File" + f.getNameIdent() + "(" + file.toAbsolutePath() + ") does not exist");
+							return;
+						}
+						String fileExt = f.getFileExtension();
+						// Ranges let videos be seeked and interrupted downloads be resumed
+						fileOperationsService.localFileDownloader(file, MimeTypes.getMimeType(fileExt), f.getHash(),
+								request, response);
+						// ONLY ON DEVELOPMENT
+					}
+					log.info("File '{}' succesfully downloaded ({})", f.getName(), response.getStatus());
+				} catch (IOException ex) {
+					if (ex instanceof ClientAbortException || response.isCommitted()) {
+						// Players drop their connection whenever they seek
+						log.warn("Download of file '{}' interrupted: {}", f.getName(), ex.getMessage());
+					} else {
+						// Nothing has been sent yet, so the headers of the file are replaced by an error
+						log.error("File '{}' could not be downloaded: {}", f.getName(), ex.getMessage());
+						response.reset();
+						response.sendError(ex instanceof NoSuchFileException ? 404 : 500,
+								"File " + f.getNameIdent() + " could not be read");
 					}
-					// ONLY ON DEVELOPMENT
 				}
 			}
 		}
 	}
 
 	@RequestMapping(value = "/upload/picture/{userId}", method = RequestMethod.POST)
-	public ResponseEntity<Object> handlePictureUpload(MultipartHttpServletRequest request,
+	public ResponseEntity<Object> handlePictureUpload(HttpServletRequest request,
 			@PathVariable(value = "userId") String userId) throws IOException {
 		
 		log.info("Uploading picture...");
@@ -246,6 +313,11 @@ public class FileController {
 			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
 		}
 
+		if (!ServletFileUpload.isMultipartContent(request)) {
+			log.error("The request is not a multipart upload");
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
 		User u = userRepository.findById(id_user).orElse(null);
 
 		ResponseEntity<Object> userAuthorized = authorizationService.checkAuthorization(u, this.user.getLoggedUser());
@@ -253,65 +325,92 @@ public class FileController {
 			return userAuthorized;
 		} else {
 
-			Iterator<String> i = request.getFileNames();
-			while (i.hasNext()) {
-				String name = i.next();
-				
-				log.info("File name: '{}'", name);
-				
-				MultipartFile file = request.getFile(name);
-				
-				log.info("File original name: " + file.getOriginalFilename());
-
-				if (file.isEmpty()) {
-					log.error("File is empty");
-					throw new RuntimeException("The picture is empty");
-				}
-
-				if (!Files.exists(PICTURES_FOLDER)) {
-					log.debug("Creating folder '{}'", PICTURES_FOLDER);
-					Files.createDirectories(PICTURES_FOLDER);
-				}
-
-				String encodedName = fileOperationsService.getEncodedPictureName(file.getOriginalFilename());
-
-				File uploadedPicture = new File(PICTURES_FOLDER.toFile(), encodedName);
-				file.transferTo(uploadedPicture);
-
-				if (this.isProductionStage()) {
-					// ONLY ON PRODUCTION
-					try {
-						fileOperationsService.productionFileSaver(encodedName, "pictures", uploadedPicture);
-					} catch (InterruptedException e) {
-						// TODO Auto-generated catch block
-						fileOperationsService.deleteLocalFile(uploadedPicture.getName(), PICTURES_FOLDER);
-						e.printStackTrace();
+			try {
+				FileItemIterator i = fileOperationsService.getUploadedFiles(request, maxPictureSize.toBytes(),
+						maxPictureSize.toBytes() + FileOperationsService.MULTIPART_OVERHEAD);
+				while (i.hasNext()) {
+					FileItemStream item = i.next();
+					if (item.isFormField()) {
+						continue;
+					}
+					
+					log.info("File name: '{}'", item.getFieldName());
+					log.info("File original name: " + item.getName());
+
+					MeasuredInputStream in = this.openUpload(item);
+					if (in == null) {
+						log.error("File is empty");
+						throw new RuntimeException("The picture is empty");
 					}
-					fileOperationsService.deleteLocalFile(uploadedPicture.getName(), PICTURES_FOLDER);
-					fileOperationsService.productionFileDeletion(
-							fileOperationsService.getFileNameFromURL(u.getPicture()), "/pictures");
-					u.setPicture(
-							"https://" + FileOperationsService.bucketAWS + ".s3.amazonaws.com/pictures/" + encodedName);
-					// ONLY ON PRODUCTION
-				} else {
-					// ONLY ON DEVELOPMENT
-					fileOperationsService.deleteLocalFile(fileOperationsService.getFileNameFromURL(u.getPicture()),
-							PICTURES_FOLDER);
-					u.setPicture("/assets/pictures/" + uploadedPicture.getName());
-
-					log.info("Picture succesfully uploaded to path '{}'", uploadedPicture.getPath());
-					// ONLY ON DEVELOPMENT
+					
+					String encodedName = fileOperationsService.getEncodedPictureName(item.getName());
+					
+					if (this.isProductionStage()) {
+						// ONLY ON PRODUCTION
+						fileOperationsService.productionStreamSaver(encodedName, "pictures", in);
+						fileOperationsService.productionFileDeletion(
+								fileOperationsService.getFileNameFromURL(u.getPicture()), "/pictures");
+						u.setPicture(
+								"https://" + FileOperationsService.bucketAWS + ".s3.amazonaws.com/pictures/" + encodedName);
+						// ONLY ON PRODUCTION
+					} else {
+						// ONLY ON DEVELOPMENT
+						if (!Files.exists(PICTURES_FOLDER)) {
+							log.debug("Creating folder '{}'", PICTURES_FOLDER);
+							Files.createDirectories(PICTURES_FOLDER);
+						}
+						fileOperationsService.localFileSaver(in, PICTURES_FOLDER.resolve(encodedName));
+						fileOperationsService.deleteLocalFile(fileOperationsService.getFileNameFromURL(u.getPicture()),
+								PICTURES_FOLDER);
+						u.setPicture("/assets/pictures/" + encodedName);
+						
+						log.info("Picture succesfully uploaded to path '{}'", PICTURES_FOLDER.resolve(encodedName));
+						// ONLY ON DEVELOPMENT
+					}
+					
+					userRepository.save(u);
+					
+					// Cached courses include the pictures of their teacher and of the authors of their forum
+					for (Course c : u.getCourses()) {
+						courseCache.invalidate(c.getId());
+					}
+					
+					// Update current logged user picture
+					this.user.getLoggedUser().setPicture(u.getPicture());
 				}
-
-				userRepository.save(u);
-
-				// Update current logged user picture
-				this.user.getLoggedUser().setPicture(u.getPicture());
+			} catch (FileUploadIOException | FileUploadException e) {
+				Throwable cause = (e instanceof FileUploadIOException) ? e.getCause() : e;
+				log.error("Upload rejected: {}", cause.getMessage());
+				return new ResponseEntity<>(
+						(cause instanceof FileSizeLimitExceededException || cause instanceof SizeLimitExceededException)
+								? HttpStatus.PAYLOAD_TOO_LARGE : HttpStatus.BAD_REQUEST);
 			}
 
 			return new ResponseEntity<>(u.getPicture(), HttpStatus.CREATED);
 		}
 	}
+	
+	// Stream of an uploaded file, or null if it is empty
+	private MeasuredInputStream openUpload(FileItemStream item) throws IOException {
+		PushbackInputStream in = new PushbackInputStream(item.openStream());
+		int first = in.read();
+		if (first == -1) {
+			return null;
+		}
+		in.unread(first);
+		return new MeasuredInputStream(in);
+	}
+	
+	// Removes from the storage the files of an upload that failed before they were saved
+	private void deleteStoredFiles(List<com.fullteaching.backend.file.File> files) {
+		for (com.fullteaching.backend.file.File f : files) {
+			if (this.isProductionStage()) {
+				fileOperationsService.productionFileDeletion(f.getNameIdent(), "/files");
+			} else {
+				fileOperationsService.deleteLocalFile(f.getNameIdent(), FILES_FOLDER);
+			}
+		}
+	}
 
 	// Method to get the root FileGroup of a FileGroup tree structure, given a FileGroup
 	private FileGroup getRootFileGroup(FileGroup fg) {
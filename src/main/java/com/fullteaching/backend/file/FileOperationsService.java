@@ -1,18 +1,32 @@
 package com.fullteaching.backend.file;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.tomcat.util.http.fileupload.IOUtils;
+import org.apache.catalina.Globals;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,17 +37,28 @@ import org.springframework.stereotype.Service;
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
 import com.amazonaws.services.s3.model.DeleteObjectRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.S3Object;
-import com.amazonaws.services.s3.transfer.TransferManager;
-import com.amazonaws.services.s3.transfer.Upload;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.fullteaching.backend.filegroup.FileGroup;
 
 @Service
 public class FileOperationsService {
 
 	private static final Logger log = LoggerFactory.getLogger(FileOperationsService.class);
+	
+	//Size of the parts of the files streamed to S3 (S3 requires at least 5MB for all but the last one)
+	private static final int UPLOAD_PART_SIZE = 8 * 1024 * 1024;
+	
+	//Room for the boundaries and part headers around the file of a single file upload
+	public static final long MULTIPART_OVERHEAD = 64 * 1024;
 
 	@Autowired
 	public static AmazonS3 amazonS3;
@@ -76,6 +101,23 @@ public class FileOperationsService {
 			log.info("Error Message: " + ace.getMessage());
 		}
 	}
+	
+	/**
+	 * Deletes a stored course file, locally or from the 'files' folder of S3.
+	 * Unlike the other deletions, failures are thrown so the caller can retry
+	 * them; a file that is already missing is not a failure.
+	 */
+	public void purgeCourseFile(String fileName, boolean production) throws IOException {
+		if (production) {
+			try {
+				amazonS3.deleteObject(new DeleteObjectRequest(bucketAWS + "/files", fileName));
+			} catch (AmazonClientException e) {
+				throw new IOException("S3 deletion of file '" + fileName + "' failed: " + e.getMessage(), e);
+			}
+		} else {
+			Files.deleteIfExists(FileController.FILES_FOLDER.resolve(fileName));
+		}
+	}
 
 	// Deletes all the real locally stored files given a list of FileGroups
 	public void recursiveLocallyStoredFileDeletion(List<FileGroup> fileGroup) {
@@ -104,63 +146,335 @@ public class FileOperationsService {
 		return;
 	}
 	
-	public void productionFileSaver(String keyName, String folderName, File f) throws InterruptedException {
+	// Iterator over the parts of a multipart request, read from the request body as they are iterated.
+	// Reading a file over 'maxFileSize' or a body over 'maxRequestSize' throws a FileUploadIOException
+	// (or a SizeLimitExceededException straight away if the request declares a longer body)
+	public FileItemIterator getUploadedFiles(HttpServletRequest request, long maxFileSize, long maxRequestSize) throws FileUploadException, IOException {
+		ServletFileUpload upload = new ServletFileUpload();
+		upload.setFileSizeMax(maxFileSize);
+		upload.setSizeMax(maxRequestSize);
+		return upload.getItemIterator(request);
+	}
+	
+	// Stores the stream in a local file as it is read. The partial file is deleted if the stream fails
+	public void localFileSaver(InputStream in, Path file) throws IOException {
+		try {
+			Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			Files.deleteIfExists(file);
+			throw e;
+		}
+	}
+	
+	// Uploads the stream to S3 as it is read, holding at most one part of it in memory.
+	// The upload is aborted if the stream fails
+	public void productionStreamSaver(String keyName, String folderName, InputStream in) throws IOException {
 		
-		log.info("Uploading an object to S3");
+		log.info("Streaming an object to S3");
 		
-		String bucketName = bucketAWS + "/" + folderName;
-		TransferManager tm = new TransferManager(amazonS3);        
-        // TransferManager processes all transfers asynchronously, so this call will return immediately
-        Upload upload = tm.upload(bucketName, keyName, f);
-        try {
-        	// Or you can block and wait for the upload to finish
-        	upload.waitForCompletion();
-        	log.info("Upload completed");
-        } catch (AmazonClientException amazonClientException) {
-        	log.error("Unable to upload file, upload was aborted.");
-        	amazonClientException.printStackTrace();
-        }
-    }
+		String key = folderName + "/" + keyName;
+		byte[] part = new byte[UPLOAD_PART_SIZE];
+		int length = this.readPart(in, part);
+		try {
+			if (length < part.length) {
+				// Small enough for a single request
+				ObjectMetadata metadata = new ObjectMetadata();
+				metadata.setContentLength(length);
+				amazonS3.putObject(bucketAWS, key, new ByteArrayInputStream(part, 0, length), metadata);
+				log.info("Upload completed");
+				return;
+			}
+			String uploadId = amazonS3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketAWS, key)).getUploadId();
+			try {
+				List<PartETag> partETags = new ArrayList<>();
+				while (length > 0) {
+					partETags.add(amazonS3.uploadPart(new UploadPartRequest().withBucketName(bucketAWS).withKey(key)
+							.withUploadId(uploadId).withPartNumber(partETags.size() + 1)
+							.withInputStream(new ByteArrayInputStream(part, 0, length)).withPartSize(length)).getPartETag());
+					length = this.readPart(in, part);
+				}
+				amazonS3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketAWS, key, uploadId, partETags));
+				log.info("Upload completed in {} parts", partETags.size());
+			} catch (IOException | RuntimeException e) {
+				amazonS3.abortMultipartUpload(new AbortMultipartUploadRequest(bucketAWS, key, uploadId));
+				throw e;
+			}
+		} catch (AmazonClientException amazonClientException) {
+			log.error("Unable to upload file, upload was aborted.");
+			throw new IOException("Unable to upload file '" + key + "' to S3", amazonClientException);
+		}
+	}
 	
-	public void productionFileDownloader(String fileName, HttpServletResponse response) {
-		String bucketName = bucketAWS + "/files";
-        try {
-            log.info("Downloading an object from S3");
-            S3Object s3object = amazonS3.getObject(new GetObjectRequest(bucketName, fileName));
-            log.info("Content-Type: "  + s3object.getObjectMetadata().getContentType());
-            
-            if (s3object != null) {
-    			try {
-    				String fileExt = this.getFileExtension(fileName);
-    				response.setContentType(MimeTypes.getMimeType(fileExt));
-    				InputStream objectData = s3object.getObjectContent();
-    				IOUtils.copy(objectData, response.getOutputStream());
-    				response.flushBuffer();
-    				objectData.close();
-    			} catch (IOException ex) {
-    				throw new RuntimeException("IOError writing file to output stream");
-    			}
-    		}
-            
-        } catch (AmazonServiceException ase) {
-            log.error("Caught an AmazonServiceException, which" +
-            		" means your request made it " +
-                    "to Amazon S3, but was rejected with an error response" +
-                    " for some reason.");
-            log.error("Error Message:    " + ase.getMessage());
-            log.error("HTTP Status Code: " + ase.getStatusCode());
-            log.error("AWS Error Code:   " + ase.getErrorCode());
-            log.error("Error Type:       " + ase.getErrorType());
-            log.error("Request ID:       " + ase.getRequestId());
-        } catch (AmazonClientException ace) {
-        	log.error("Caught an AmazonClientException, which means"+
-            		" the client encountered " +
-                    "an internal error while trying to " +
-                    "communicate with S3, " +
-                    "such as not being able to access the network.");
-        	log.error("Error Message: " + ace.getMessage());
-        }
-    }
+	// Fills 'part' from the stream, returning how many bytes were read (less than its length only at the end of the stream)
+	private int readPart(InputStream in, byte[] part) throws IOException {
+		int length = 0;
+		while (length < part.length) {
+			int n = in.read(part, length, part.length - length);
+			if (n < 0) {
+				break;
+			}
+			length += n;
+		}
+		return length;
+	}
+	
+	/**
+	 * Sends a locally stored file, honoring conditional (If-None-Match,
+	 * If-Modified-Since) and range (Range, If-Range) requests. Full files and
+	 * single ranges are handed to the container to be sent with sendfile when
+	 * it supports it; otherwise, and for multi-range responses, they are
+	 * copied with FileChannel.transferTo. 'hash' (may be null) is used as the
+	 * ETag of the file.
+	 */
+	public void localFileDownloader(Path file, String contentType, String hash, HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+				
+		long size = Files.size(file);
+		// HTTP dates have a precision of seconds
+		long lastModified = Files.getLastModifiedTime(file).toMillis() / 1000 * 1000;
+		// Files without a hash get a weak ETag, which is not valid for If-Range
+		String eTag = (hash != null) ? "\"" + hash + "\"" : "W/\"" + size + "-" + lastModified + "\"";
+		
+		response.setHeader("Accept-Ranges", "bytes");
+		response.setHeader("ETag", eTag);
+		response.setDateHeader("Last-Modified", lastModified);
+		
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if ((ifNoneMatch != null) ? this.eTagMatches(ifNoneMatch, eTag)
+				: this.getDateHeader(request, "If-Modified-Since") >= lastModified) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		
+		List<ByteRange> ranges = null;
+		String ifRange = request.getHeader("If-Range");
+		if ("GET".equals(request.getMethod()) && (ifRange == null || this.ifRangeMatches(request, ifRange, eTag, lastModified))) {
+			ranges = ByteRange.parse(request.getHeader("Range"), size);
+		}
+		if (ranges != null && ranges.isEmpty()) {
+			response.setHeader("Content-Range", "bytes */" + size);
+			response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			return;
+		}
+		
+		if (ranges == null || ranges.size() == 1) {
+			ByteRange range = (ranges == null) ? new ByteRange(0, size - 1) : ranges.get(0);
+			if (ranges != null) {
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader("Content-Range", range.toContentRange(size));
+			}
+			response.setContentType(contentType);
+			response.setContentLengthLong(range.getLength());
+			if (!"GET".equals(request.getMethod()) || range.getLength() == 0) {
+				return;
+			}
+			if (Boolean.TRUE.equals(request.getAttribute(Globals.SENDFILE_SUPPORTED_ATTR))) {
+				// The container sends the file once the request is processed (end excluded)
+				request.setAttribute(Globals.SENDFILE_FILENAME_ATTR, file.toAbsolutePath().toString());
+				request.setAttribute(Globals.SENDFILE_FILE_START_ATTR, range.getStart());
+				request.setAttribute(Globals.SENDFILE_FILE_END_ATTR, range.getEnd() + 1);
+				return;
+			}
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				this.transfer(channel, range, Channels.newChannel(response.getOutputStream()));
+			}
+			return;
+		}
+		
+		// Multi-range response: one part per range, with its own headers
+		String boundary = "FULLTEACHING_" + Long.toHexString(Double.doubleToLongBits(Math.random()));
+		List<byte[]> partHeaders = new ArrayList<>();
+		long length = 0;
+		for (ByteRange range : ranges) {
+			byte[] partHeader = ("\r\n--" + boundary + "\r\nContent-Type: " + contentType + "\r\nContent-Range: "
+					+ range.toContentRange(size) + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+			partHeaders.add(partHeader);
+			length += partHeader.length + range.getLength();
+		}
+		byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+		length += end.length;
+		
+		response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+		response.setContentType("multipart/byteranges; boundary=" + boundary);
+		response.setContentLengthLong(length);
+		
+		OutputStream out = response.getOutputStream();
+		WritableByteChannel target = Channels.newChannel(out);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			for (int i = 0; i < ranges.size(); i++) {
+				out.write(partHeaders.get(i));
+				this.transfer(channel, ranges.get(i), target);
+			}
+		}
+		out.write(end);
+	}
+	
+	private void transfer(FileChannel channel, ByteRange range, WritableByteChannel target) throws IOException {
+		long position = range.getStart();
+		long end = range.getEnd() + 1;
+		while (position < end) {
+			long transferred = channel.transferTo(position, end - position, target);
+			if (transferred <= 0) {
+				throw new EOFException("File truncated while it was being sent");
+			}
+			position += transferred;
+		}
+	}
+	
+	// If an 'If-None-Match' header matches the ETag (weak comparison)
+	private boolean eTagMatches(String header, String eTag) {
+		String opaque = eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+		for (String candidate : header.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.equals("*") || (candidate.startsWith("W/") ? candidate.substring(2) : candidate).equals(opaque)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	// If an 'If-Range' header matches the file: an ETag must be strong and equal, and a date exactly the last modification
+	private boolean ifRangeMatches(HttpServletRequest request, String header, String eTag, long lastModified) {
+		if (header.startsWith("\"") || header.startsWith("W/")) {
+			return !eTag.startsWith("W/") && header.equals(eTag);
+		}
+		return this.getDateHeader(request, "If-Range") == lastModified;
+	}
+	
+	// Value of a date header, or -1 if it is missing or not a valid date
+	private long getDateHeader(HttpServletRequest request, String name) {
+		try {
+			return request.getDateHeader(name);
+		} catch (IllegalArgumentException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * Sends a file of the 'files' folder of S3, forwarding conditional
+	 * (If-None-Match, If-Modified-Since) and range (Range, If-Range) requests
+	 * to S3 and passing its status, length and validators through, so that
+	 * downloads can be resumed and videos seeked as with local files. S3 takes
+	 * a single range with a known start: suffix and multi-range requests get
+	 * the whole file. Returns false if the file does not exist.
+	 */
+	public boolean productionFileDownloader(String fileName, String contentType, HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+				
+		log.info("Downloading an object from S3");
+		
+		boolean isGet = "GET".equals(request.getMethod());
+		String ifRange = request.getHeader("If-Range");
+		long[] range = null;
+		// A weak ETag or a date that is not valid never matches If-Range, so the whole file is sent
+		if (isGet && (ifRange == null || ifRange.startsWith("\"")
+				|| (!ifRange.startsWith("W/") && this.getDateHeader(request, "If-Range") >= 0))) {
+			range = this.parseRange(request.getHeader("Range"));
+		}
+		
+		S3Object object;
+		try {
+			object = amazonS3.getObject(this.s3Request(fileName, request, range));
+			if (object == null && range != null && ifRange != null) {
+				// Changed since the client got its first part: the whole file is sent, unless it is not modified
+				object = amazonS3.getObject(this.s3Request(fileName, request, null));
+			}
+		} catch (AmazonServiceException e) {
+			if (e.getStatusCode() == HttpServletResponse.SC_NOT_FOUND) {
+				return false;
+			}
+			if (e.getStatusCode() == HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+				response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return true;
+			}
+			throw new IOException("S3 download of file '" + fileName + "' failed: " + e.getMessage(), e);
+		} catch (AmazonClientException e) {
+			throw new IOException("S3 download of file '" + fileName + "' failed: " + e.getMessage(), e);
+		}
+		if (object == null) {
+			// Only the If-None-Match or If-Modified-Since conditions are left to fail
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		}
+		
+		S3ObjectInputStream in = object.getObjectContent();
+		try {
+			ObjectMetadata metadata = object.getObjectMetadata();
+			response.setHeader("Accept-Ranges", "bytes");
+			if (metadata.getETag() != null) {
+				response.setHeader("ETag", "\"" + metadata.getETag() + "\"");
+			}
+			if (metadata.getLastModified() != null) {
+				response.setDateHeader("Last-Modified", metadata.getLastModified().getTime());
+			}
+			Long[] contentRange = metadata.getContentRange();
+			if (contentRange != null) {
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader("Content-Range",
+						new ByteRange(contentRange[0], contentRange[1]).toContentRange(metadata.getInstanceLength()));
+			}
+			response.setContentType(contentType);
+			response.setContentLengthLong(metadata.getContentLength());
+			if (!isGet) {
+				// The connection is dropped instead of reading the whole object
+				in.abort();
+				return true;
+			}
+			in.transferTo(response.getOutputStream());
+		} finally {
+			in.close();
+		}
+		return true;
+	}
+	
+	// Request of a file of the 'files' folder of S3 with the conditions of the client, and its range if any
+	private GetObjectRequest s3Request(String fileName, HttpServletRequest request, long[] range) {
+		GetObjectRequest get = new GetObjectRequest(bucketAWS + "/files", fileName);
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		long ifModifiedSince = this.getDateHeader(request, "If-Modified-Since");
+		if (ifNoneMatch != null) {
+			for (String eTag : ifNoneMatch.split(",")) {
+				get.withNonmatchingETagConstraint(eTag.trim());
+			}
+		} else if (ifModifiedSince >= 0) {
+			get.withModifiedSinceConstraint(new Date(ifModifiedSince));
+		}
+		if (range != null) {
+			if (range[1] < 0) {
+				get.withRange(range[0]);
+			} else {
+				get.withRange(range[0], range[1]);
+			}
+			// S3 has no If-Range: the range is only sent if the file has not changed, and nothing otherwise
+			String ifRange = request.getHeader("If-Range");
+			if (ifRange != null && ifRange.startsWith("\"")) {
+				get.withMatchingETagConstraint(ifRange);
+			} else if (ifRange != null) {
+				get.withUnmodifiedSinceConstraint(new Date(this.getDateHeader(request, "If-Range")));
+			}
+		}
+		return get;
+	}
+	
+	// [start, end] of a 'bytes=start-end' or 'bytes=start-' header (end -1 if open), or null for any other range
+	private long[] parseRange(String header) {
+		if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+			return null;
+		}
+		String spec = header.substring("bytes=".length()).trim();
+		int dash = spec.indexOf('-');
+		if (dash <= 0) {
+			return null;
+		}
+		try {
+			long start = Long.parseLong(spec.substring(0, dash));
+			String last = spec.substring(dash + 1);
+			long end = last.isEmpty() ? -1 : Long.parseLong(last);
+			return (last.isEmpty() || end >= start) ? new long[] { start, end } : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
 	
 	public void productionFileDeletion (String fileName, String s3Folder){
 		String bucketName = bucketAWS + s3Folder;
@@ -1,7 +1,39 @@
 package com.fullteaching.backend.file;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface FileRepository extends JpaRepository<File, Long> {
+	
+	//[course id, id, name, date] of the files of the courses (in any file group) added since 'since', newest first.
+	//Keyset pagination on (date, id) for the feed (see FeedService)
+	@Query(nativeQuery = true, value = "WITH RECURSIVE course_group (course_id, id) AS ("
+			+ "SELECT c.id, cdf.files_id FROM course c JOIN course_details_files cdf ON cdf.course_details_id = c.course_details_id "
+			+ "WHERE c.id IN (:courseIds) "
+			+ "UNION ALL "
+			+ "SELECT cg.course_id, g.id FROM course_group cg JOIN file_group g ON g.file_group_parent_id = cg.id) "
+			+ "SELECT cg.course_id, f.id, f.name, f.date FROM course_group cg JOIN file f ON f.files_id = cg.id "
+			+ "WHERE f.date >= :since AND (f.date < :beforeDate OR (f.date = :beforeDate AND f.id < :beforeId)) "
+			+ "ORDER BY f.date DESC, f.id DESC")
+	public List<Object[]> findFeedRows(
+			@Param("courseIds") Collection<Long> courseIds,
+			@Param("since") long since,
+			@Param("beforeDate") long beforeDate,
+			@Param("beforeId") long beforeId,
+			Pageable pageable);
+			
+	//[id, file group id] of the given files that are in any file group of the course
+	@Query(nativeQuery = true, value = "WITH RECURSIVE course_group (id) AS ("
+			+ "SELECT cdf.files_id FROM course c JOIN course_details_files cdf ON cdf.course_details_id = c.course_details_id "
+			+ "WHERE c.id = :courseId "
+			+ "UNION ALL "
+			+ "SELECT g.id FROM course_group cg JOIN file_group g ON g.file_group_parent_id = cg.id) "
+			+ "SELECT f.id, f.files_id FROM course_group cg JOIN file f ON f.files_id = cg.id WHERE f.id IN (:ids)")
+	public List<Object[]> findGroupIdsOfCourseIn(@Param("courseId") long courseId, @Param("ids") Collection<Long> ids);
 
 }
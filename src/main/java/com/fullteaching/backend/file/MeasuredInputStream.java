@@ -0,0 +1,92 @@
+package com.fullteaching.backend.file;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Stream of an uploaded file that counts and hashes (SHA-256) the bytes read
+ * from it, so they are known once the file is stored without reading it
+ * again. Marks are not supported: every byte is read only once.
+ */
+public class MeasuredInputStream extends FilterInputStream {
+	
+	private final MessageDigest digest;
+	
+	private long size;
+	
+	public MeasuredInputStream(InputStream in) {
+		super(in);
+		try {
+			this.digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+	
+	@Override
+	public int read() throws IOException {
+		int b = in.read();
+		if (b != -1) {
+			digest.update((byte) b);
+			size++;
+		}
+		return b;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = in.read(b, off, len);
+		if (n > 0) {
+			digest.update(b, off, n);
+			size += n;
+		}
+		return n;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException {
+		//Skipped bytes must be hashed too
+		byte[] buffer = new byte[(int) Math.min(n, 8192)];
+		long skipped = 0;
+		while (skipped < n) {
+			int read = this.read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+			if (read < 0) {
+				break;
+			}
+			skipped += read;
+		}
+		return skipped;
+	}
+	
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+	
+	@Override
+	public synchronized void mark(int readlimit) {
+	}
+	
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+	
+	// Bytes read so far
+	public long getSize() {
+		return size;
+	}
+	
+	// SHA-256 of the bytes read so far, in hex. Call it once the stream has been read to the end
+	public String getHash() {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+	
+}
@@ -13,6 +13,8 @@ import javax.persistence.OneToMany;
 import javax.persistence.OrderBy;
 import javax.persistence.ManyToOne;
 
+import org.hibernate.annotations.BatchSize;
+
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import com.fullteaching.backend.file.File;
@@ -26,12 +28,15 @@ public class FileGroup {
 	
 	private String title;
 	
+	//Batch fetched: a file tree is loaded with one query per level (see FileGroupRepository.findRootsByCourseId)
 	@OneToMany(cascade=CascadeType.ALL, orphanRemoval=true)
 	@OrderBy("indexOrder ASC")
+	@BatchSize(size = 100)
 	@JoinColumn
 	private List<File> files;
 	
 	@OneToMany(mappedBy="fileGroupParent", cascade=CascadeType.ALL)
+	@BatchSize(size = 100)
 	@JsonManagedReference
 	private List<FileGroup> fileGroups;
 	
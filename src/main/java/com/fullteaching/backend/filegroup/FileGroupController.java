@@ -9,13 +9,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fullteaching.backend.course.ContentChange;
 import com.fullteaching.backend.course.Course;
+import com.fullteaching.backend.course.CourseCache;
 import com.fullteaching.backend.course.CourseRepository;
 import com.fullteaching.backend.coursedetails.CourseDetails;
 import com.fullteaching.backend.coursedetails.CourseDetailsRepository;
@@ -46,6 +49,9 @@ public class FileGroupController {
 	@Autowired
 	private AuthorizationService authorizationService;
 	
+	@Autowired
+	private CourseCache courseCache;
+	
 	@Autowired
 	private FileOperationsService fileOperationsService;
 	
@@ -53,6 +59,7 @@ public class FileGroupController {
     private String profileStage;
 	
 	@RequestMapping(value = "/{id}", method = RequestMethod.POST)
+	@Transactional
 	public ResponseEntity<Object> newFileGroup(@RequestBody FileGroup fileGroup, @PathVariable(value="id") String courseDetailsId) {
 		
 		log.info("CRUD operation: Adding new file group");
@@ -83,6 +90,9 @@ public class FileGroupController {
 				/*Saving the modified courseDetails: Cascade relationship between courseDetails
 				  and fileGroups will add the new fileGroup to FileGroupRepository*/
 				courseDetailsRepository.save(cd);
+				//The saved copy of the file group replaces it in the course details
+				courseCache.invalidate(cd.getCourse().getId(),
+						ContentChange.created(ContentChange.Type.FILE_GROUP, cd.getFiles().get(cd.getFiles().size() - 1).getId()));
 				
 				log.info("New root file group succesfully added: {}", fileGroup.toString());
 				
@@ -98,6 +108,8 @@ public class FileGroupController {
 					/*Saving the modified parent FileGroup: Cascade relationship between FileGroup and 
 					 its FileGroup children will add the new fileGroup to FileGroupRepository*/
 					fileGroupRepository.save(fParent);
+					courseCache.invalidate(cd.getCourse().getId(),
+							ContentChange.created(ContentChange.Type.FILE_GROUP, fParent.getFileGroups().get(fParent.getFileGroups().size() - 1).getId()));
 					CourseDetails cd2 = courseDetailsRepository.findById(id_i).orElse(null);
 					
 					log.info("New file sub-group succesfully added: {}", fileGroup.toString());
@@ -113,6 +125,7 @@ public class FileGroupController {
 	
 	
 	@RequestMapping(value = "/edit/file-group/course/{courseId}", method = RequestMethod.PUT)
+	@Transactional
 	public ResponseEntity<Object> modifyFileGroup(@RequestBody FileGroup fileGroup, @PathVariable(value="courseId") String courseId) {
 		
 		log.info("CRUD operation: Updating filegroup");
@@ -145,6 +158,7 @@ public class FileGroupController {
 				
 				fg.setTitle(fileGroup.getTitle());
 				fileGroupRepository.save(fg);
+				courseCache.invalidate(c.getId(), ContentChange.saved(ContentChange.Type.FILE_GROUP, fg.getId()));
 				
 				log.info("FileGroup succesfully updated. Modified value: {}", fg.toString());
 				
@@ -159,6 +173,7 @@ public class FileGroupController {
 	
 	
 	@RequestMapping(value = "/delete/file-group/{fileGroupId}/course/{courseId}", method = RequestMethod.DELETE)
+	@Transactional
 	public ResponseEntity<Object> deleteFileGroup(
 			@PathVariable(value="fileGroupId") String fileGroupId,
 			@PathVariable(value="courseId") String courseId
@@ -215,6 +230,8 @@ public class FileGroupController {
 				cd.getFiles().remove(fg);
 				courseDetailsRepository.save(cd);
 				fileGroupRepository.delete(fg);
+				//Its files and sub-groups are deleted with it
+				courseCache.invalidate(c.getId(), ContentChange.deleted(ContentChange.Type.FILE_GROUP, fg.getId()));
 				
 				log.info("Filegroup successfully deleted");
 				
@@ -228,6 +245,7 @@ public class FileGroupController {
 	
 	
 	@RequestMapping(value = "/edit/file-order/course/{courseId}/file/{fileId}/from/{sourceID}/to/{targetId}/pos/{position}", method = RequestMethod.PUT)
+	@Transactional
 	public ResponseEntity<Object> editFileOrder(
 			@PathVariable(value="courseId") String courseId,
 			@PathVariable(value="fileId") String fileId,
@@ -283,6 +301,8 @@ public class FileGroupController {
 			l.add(sourceFg);
 			l.add(targetFg);
 			fileGroupRepository.saveAll(l);
+			//The indexes of the files of both groups may have changed
+			courseCache.invalidate(c.getId(), fileChanges(l));
 			
 			log.info("File order succesfully updated");
 			
@@ -293,6 +313,7 @@ public class FileGroupController {
 	
 	
 	@RequestMapping(value = "/edit/file/file-group/{fileGroupId}/course/{courseId}", method = RequestMethod.PUT)
+	@Transactional
 	public ResponseEntity<Object> modifyFile(
 			@RequestBody File file,
 			@PathVariable(value="fileGroupId") String fileGroupId,
@@ -333,6 +354,7 @@ public class FileGroupController {
 						
 						fg.getFiles().get(i).setName(file.getName());
 						fileGroupRepository.save(fg);
+						courseCache.invalidate(c.getId(), ContentChange.saved(ContentChange.Type.FILE, file.getId()));
 						
 						log.info("File succesfully updated. Modified value: {}", fg.getFiles().get(i));
 						
@@ -352,6 +374,7 @@ public class FileGroupController {
 	
 	
 	@RequestMapping(value = "/delete/file/{fileId}/file-group/{fileGroupId}/course/{courseId}", method = RequestMethod.DELETE)
+	@Transactional
 	public ResponseEntity<Object> deleteFile(
 			@PathVariable(value="fileId") String fileId,
 			@PathVariable(value="fileGroupId") String fileGroupId,
@@ -414,6 +437,8 @@ public class FileGroupController {
 					fg.updateFileIndexOrder();
 					
 					fileGroupRepository.save(fg);
+					//The indexes of the rest of the files of the group may have changed
+					courseCache.invalidate(c.getId(), fileChanges(List.of(fg), ContentChange.deleted(ContentChange.Type.FILE, file.getId())));
 					
 					log.info("File successfully deleted");
 					
@@ -440,6 +465,18 @@ public class FileGroupController {
 		return fg;
 	}
 	
+	//Saved changes of all the files of the groups, and then the extra ones
+	private static ContentChange[] fileChanges(List<FileGroup> fileGroups, ContentChange... extra) {
+		List<ContentChange> changes = new ArrayList<>();
+		for (FileGroup fg : fileGroups) {
+			for (File f : fg.getFiles()) {
+				changes.add(ContentChange.saved(ContentChange.Type.FILE, f.getId()));
+			}
+		}
+		changes.addAll(List.of(extra));
+		return changes.toArray(new ContentChange[0]);
+	}
+	
 	private boolean isProductionStage(){
 		return this.profileStage.equals("prod");
 	}
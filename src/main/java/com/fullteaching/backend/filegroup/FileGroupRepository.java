@@ -1,7 +1,22 @@
 package com.fullteaching.backend.filegroup;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface FileGroupRepository extends JpaRepository<FileGroup, Long> {
+	
+	//Files of the root groups are fetched in the same query; nested groups are batch fetched level by level
+	@EntityGraph(attributePaths = "files")
+	@Query("select distinct g from FileGroup g where g in "
+			+ "(select r from Course c join c.courseDetails d join d.files r where c.id = :courseId and c.deleted = false) order by g.id asc")
+	public List<FileGroup> findRootsByCourseId(@Param("courseId") long courseId);
+	
+	@Query("select g.id as id, g.title as title, p.id as parentId from FileGroup g left join g.fileGroupParent p where g.id in :ids")
+	public List<FileGroupSummary> findSummariesByIdIn(@Param("ids") Collection<Long> ids);
 
 }
@@ -0,0 +1,16 @@
+package com.fullteaching.backend.filegroup;
+
+/**
+ * Read-only projection of a FileGroup, loaded without its files or its
+ * nested groups.
+ */
+public interface FileGroupSummary {
+	
+	long getId();
+	
+	String getTitle();
+	
+	//Null for root groups
+	Long getParentId();
+	
+}
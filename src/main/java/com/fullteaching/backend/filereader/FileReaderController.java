@@ -7,22 +7,30 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadBase.FileSizeLimitExceededException;
+import org.apache.commons.fileupload.FileUploadBase.FileUploadIOException;
+import org.apache.commons.fileupload.FileUploadBase.SizeLimitExceededException;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.commons.validator.routines.EmailValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.multipart.MultipartFile;
-import org.springframework.web.multipart.MultipartHttpServletRequest;
 
 import com.fullteaching.backend.course.Course;
 import com.fullteaching.backend.course.CourseRepository;
@@ -63,10 +71,13 @@ public class FileReaderController {
 	@Autowired
 	private FileOperationsService fileOperationsService;
 
+	@Value("${files.upload.max-attenders-file-size:5MB}")
+	private DataSize maxFileSize;
+	
 	FileReader fileReader = new FileReader();
 
 	@RequestMapping(value = "/upload/course/{courseId}", method = RequestMethod.POST)
-	public ResponseEntity<Object> handleFileReaderUpload(MultipartHttpServletRequest request,
+	public ResponseEntity<Object> handleFileReaderUpload(HttpServletRequest request,
 			@PathVariable(value = "courseId") String courseId) throws IOException {
 
 		log.info("Adding attenders from file");
@@ -85,6 +96,11 @@ public class FileReaderController {
 			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
 		}
 
+		if (!ServletFileUpload.isMultipartContent(request)) {
+			log.error("The request is not a multipart upload");
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
 		Course c = courseRepository.findById(id_course).orElse(null);
 
 		ResponseEntity<Object> teacherAuthorized = authorizationService.checkAuthorization(c, c.getTeacher());
@@ -92,42 +108,55 @@ public class FileReaderController {
 			return teacherAuthorized;
 		} else {
 
-			Iterator<String> i = request.getFileNames();
-			while (i.hasNext()) {
-				String name = i.next();
-				MultipartFile file = request.getFile(name);
-
-				if (file.isEmpty()) {
-					log.error("The file is empty");
-					throw new RuntimeException("The file is empty");
-				}
-
-				if (!Files.exists(FileController.FILES_FOLDER)) {
-					log.debug("Creating local directory '{}'", FileController.FILES_FOLDER);
-					Files.createDirectories(FileController.FILES_FOLDER);
-				}
-
-				String fileName = file.getOriginalFilename();
-				File uploadedFile = new File(FileController.FILES_FOLDER.toFile(), fileName);
-
-				file.transferTo(uploadedFile);
-				
-				AddAttendersByFileResponse response = null;
-				
-				try {
-					log.info("Parsing file '{}'", fileName);
-					response = this.addAttendersFromFile(c,
-							this.fileReader.parseToPlainText(uploadedFile));
-				} catch (Exception e) {
-					log.error("Exception while parsing the file: {}", e.getMessage());
+			try {
+				FileItemIterator i = fileOperationsService.getUploadedFiles(request, maxFileSize.toBytes(),
+						maxFileSize.toBytes() + FileOperationsService.MULTIPART_OVERHEAD);
+				while (i.hasNext()) {
+					FileItemStream item = i.next();
+					if (item.isFormField()) {
+						continue;
+					}
+
+					if (!Files.exists(FileController.FILES_FOLDER)) {
+						log.debug("Creating local directory '{}'", FileController.FILES_FOLDER);
+						Files.createDirectories(FileController.FILES_FOLDER);
+					}
+					
+					String fileName = item.getName();
+					File uploadedFile = new File(FileController.FILES_FOLDER.toFile(), fileName);
+					
+					// The parser needs the whole file, so it is stored locally while it is parsed
+					fileOperationsService.localFileSaver(item.openStream(), uploadedFile.toPath());
+					
+					if (uploadedFile.length() == 0) {
+						fileOperationsService.deleteLocalFile(uploadedFile.getName(), FileController.FILES_FOLDER);
+						log.error("The file is empty");
+						throw new RuntimeException("The file is empty");
+					}
+					
+					AddAttendersByFileResponse response = null;
+					
+					try {
+						log.info("Parsing file '{}'", fileName);
+						response = this.addAttendersFromFile(c,
+								this.fileReader.parseToPlainText(uploadedFile));
+					} catch (Exception e) {
+						log.error("Exception while parsing the file: {}", e.getMessage());
+						fileOperationsService.deleteLocalFile(uploadedFile.getName(), FileController.FILES_FOLDER);
+						e.printStackTrace();
+					}
+					
+					log.info("File successfully parsed. Result: {}", response);
+					
 					fileOperationsService.deleteLocalFile(uploadedFile.getName(), FileController.FILES_FOLDER);
-					e.printStackTrace();
+					return new ResponseEntity<>(response, HttpStatus.OK);
 				}
-				
-				log.info("File successfully parsed. Result: {}", response);
-				
-				fileOperationsService.deleteLocalFile(uploadedFile.getName(), FileController.FILES_FOLDER);
-				return new ResponseEntity<>(response, HttpStatus.OK);
+			} catch (FileUploadIOException | FileUploadException e) {
+				Throwable cause = (e instanceof FileUploadIOException) ? e.getCause() : e;
+				log.error("Upload rejected: {}", cause.getMessage());
+				return new ResponseEntity<>(
+						(cause instanceof FileSizeLimitExceededException || cause instanceof SizeLimitExceededException)
+								? HttpStatus.PAYLOAD_TOO_LARGE : HttpStatus.BAD_REQUEST);
 			}
 
 			log.error("Empty file request");
@@ -0,0 +1,430 @@
+package com.fullteaching.backend.forum;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fullteaching.backend.comment.Comment;
+import com.fullteaching.backend.comment.CommentRepository;
+import com.fullteaching.backend.course.ContentChange;
+import com.fullteaching.backend.course.CourseCache;
+import com.fullteaching.backend.user.User;
+import com.fullteaching.backend.user.UserRepository;
+
+/**
+ * Write-behind mode for bursts of comments (enabled with
+ * 'forum.comments.write-behind.enabled'). A comment is acknowledged once it
+ * is in the write-ahead log (see ForumCommentLog): the writer thread appends
+ * all the comments waiting and syncs the file once for all of them. The
+ * flusher thread saves the logged comments every few milliseconds with
+ * ForumPostService.postComments, so each entry is locked once per batch
+ * instead of once per comment. The changes of the course are recorded in the
+ * transaction of each batch, and the subscribers of the course and the search
+ * index are updated after it.
+ *
+ * Comments still in the log when the application stops are saved when it
+ * starts again, and published then. The log must outlive the application, so
+ * 'log-dir' is never a temporary directory. The author of a comment reads it even before it is saved, as
+ * long as the reads call 'awaitSaved' (the comments, forum, search, hot
+ * entries, changes and feed endpoints do). Other reads, like the whole course,
+ * may miss the comments not saved yet, and so may any read if saving them
+ * takes longer than 'read-timeout-ms'.
+ */
+@Service
+public class CommentWriteBehindService {
+	
+	private static final Logger log = LoggerFactory.getLogger(CommentWriteBehindService.class);
+	
+	//Queued by the flusher to truncate the log once every logged comment is saved
+	private static final Append TRUNCATE = new Append(null);
+	
+	//Queued on shutdown: the writer stops once the comments queued before it are logged
+	private static final Append STOP = new Append(null);
+	
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+	
+	@Autowired
+	private ForumPostService forumPostService;
+	
+	@Autowired
+	private CommentRepository commentRepository;
+	
+	@Autowired
+	private CourseCache courseCache;
+	
+	@Autowired
+	private ForumUpdatesService forumUpdatesService;
+	
+	@Autowired
+	private ForumSearchService forumSearchService;
+	
+	@Autowired
+	private ForumHotEntriesService forumHotEntriesService;
+	
+	@Autowired
+	private UserRepository userRepository;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	@Value("${forum.comments.write-behind.enabled:false}")
+	private boolean enabled;
+	
+	@Value("${forum.comments.write-behind.log-dir:${user.dir}/assets/wal}")
+	private String logDir;
+	
+	@Value("${forum.comments.write-behind.flush-interval-ms:5}")
+	private long flushIntervalMs;
+	
+	@Value("${forum.comments.write-behind.batch-size:500}")
+	private int batchSize;
+	
+	@Value("${forum.comments.write-behind.read-timeout-ms:1000}")
+	private long readTimeoutMs;
+	
+	private ForumCommentLog commentLog;
+	
+	private TransactionTemplate transactionTemplate;
+	
+	private ThreadPoolExecutor writer;
+	
+	private ScheduledThreadPoolExecutor flusher;
+	
+	private final LinkedBlockingQueue<Append> appends = new LinkedBlockingQueue<>();
+	
+	//Logged comments not saved yet, in order. Only the writer adds and only the flusher removes
+	private final ConcurrentLinkedQueue<PendingComment> unsaved = new ConcurrentLinkedQueue<>();
+	
+	//Entry of each comment not saved yet, so replies to it are accepted
+	private final Map<Long, Long> unsavedEntries = new ConcurrentHashMap<>();
+	
+	//Last comment (seq) of each author not saved yet
+	private final Map<Long, Long> unsavedAuthors = new ConcurrentHashMap<>();
+	
+	//Only used by the writer thread (and 'init' before it starts)
+	private long loggedSeq;
+	
+	//Guarded by 'this'
+	private long savedSeq;
+	
+	private static class Append {
+		
+		private final PendingComment comment;
+		
+		private final CompletableFuture<Void> logged = new CompletableFuture<>();
+		
+		private Append(PendingComment comment) {
+			this.comment = comment;
+		}
+	}
+	
+	@PostConstruct
+	public void init() throws IOException {
+		if (!enabled) {
+			return;
+		}
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.commentLog = new ForumCommentLog(Paths.get(logDir, "comments.log"), forumSearchService.getDatabaseId());
+		recover();
+		
+		this.writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+			Thread t = new Thread(r, "comment-log-writer");
+			t.setDaemon(true);
+			return t;
+		});
+		this.flusher = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, "comment-flusher");
+			t.setDaemon(true);
+			return t;
+		});
+		writer.execute(this::write);
+		flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+	}
+	
+	@PreDestroy
+	public void shutdown() throws IOException {
+		if (!enabled) {
+			return;
+		}
+		//Comments not saved yet stay in the log. The writer is not interrupted, as that closes the log in the middle of a write
+		flusher.shutdown();
+		awaitTermination(flusher);
+		appends.add(STOP);
+		writer.shutdown();
+		if (!awaitTermination(writer)) {
+			log.warn("Write-ahead log of comments closed while the writer was still running");
+		}
+		List<Append> notLogged = new ArrayList<>();
+		appends.drainTo(notLogged);
+		for (Append append : notLogged) {
+			append.logged.completeExceptionally(new IllegalStateException("Shutting down"));
+		}
+		commentLog.close();
+	}
+	
+	private static boolean awaitTermination(ThreadPoolExecutor executor) {
+		try {
+			return executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	
+	public boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Root comment of the entry if 'parentId' is null, or reply to that
+	 * comment, returned with its id once it is logged. Returns null if the
+	 * parent does not exist or belongs to another entry.
+	 */
+	public Comment postComment(long courseId, long forumId, long entryId, Long parentId, Comment comment) {
+		if (parentId != null) {
+			Long parentEntryId = unsavedEntries.get(parentId);
+			if (parentEntryId == null) {
+				parentEntryId = commentRepository.findEntryId(parentId);
+			}
+			if (parentEntryId == null || parentEntryId != entryId) {
+				return null;
+			}
+		}
+		comment.setId(forumPostService.nextCommentId(comment));
+		PendingComment pending = new PendingComment(courseId, forumId, entryId, parentId, comment.getUser().getId(), comment);
+		
+		unsavedEntries.put(comment.getId(), entryId);
+		Append append = new Append(pending);
+		appends.add(append);
+		try {
+			append.logged.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while logging comment " + comment.getId(), e);
+		} catch (ExecutionException e) {
+			unsavedEntries.remove(comment.getId());
+			throw new IllegalStateException("Comment " + comment.getId() + " could not be logged", e.getCause());
+		}
+		unsavedAuthors.merge(pending.getUserId(), pending.seq, Math::max);
+		return comment;
+	}
+	
+	// Waits (at most 'read-timeout-ms') until the comments of the user acknowledged so far are saved.
+	// After that the read goes on without them
+	public void awaitSaved(long userId) {
+		Long seq = unsavedAuthors.get(userId);
+		if (seq == null) {
+			return;
+		}
+		long deadline = System.currentTimeMillis() + readTimeoutMs;
+		synchronized (this) {
+			while (savedSeq < seq) {
+				long timeout = deadline - System.currentTimeMillis();
+				if (timeout <= 0) {
+					log.warn("Comments of user {} not saved after {} ms", userId, readTimeoutMs);
+					return;
+				}
+				try {
+					this.wait(timeout);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+		//Not removed by the flusher if the comment was saved before it was acknowledged
+		unsavedAuthors.remove(userId, seq);
+	}
+	
+	// Comments logged but not saved before the last stop are saved (and published) by the flusher
+	private void recover() throws IOException {
+		List<PendingComment> logged = commentLog.recover();
+		if (logged.isEmpty()) {
+			return;
+		}
+		Set<Long> saved = new HashSet<>();
+		for (int from = 0; from < logged.size(); from += batchSize) {
+			List<Long> ids = new ArrayList<>();
+			for (PendingComment pending : logged.subList(from, Math.min(from + batchSize, logged.size()))) {
+				ids.add(pending.getComment().getId());
+			}
+			saved.addAll(commentRepository.findExistingIds(ids));
+		}
+		//The log only has the id of the author (null if it was deleted since)
+		Set<Long> authorIds = new HashSet<>();
+		for (PendingComment pending : logged) {
+			authorIds.add(pending.getUserId());
+		}
+		Map<Long, User> authors = new HashMap<>();
+		for (User author : userRepository.findAllById(authorIds)) {
+			authors.put(author.getId(), author);
+		}
+		for (PendingComment pending : logged) {
+			if (!saved.contains(pending.getComment().getId())) {
+				pending.getComment().setUser(authors.get(pending.getUserId()));
+				pending.seq = ++loggedSeq;
+				unsavedEntries.put(pending.getComment().getId(), pending.getEntryId());
+				unsaved.add(pending);
+			}
+		}
+		log.info("{} comments recovered from the write-ahead log, {} of them not saved", logged.size(), unsaved.size());
+	}
+	
+	// Writer thread: appends all the comments waiting, with a single sync
+	private void write() {
+		List<Append> batch = new ArrayList<>();
+		boolean stop = false;
+		while (!stop) {
+			try {
+				batch.add(appends.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+			appends.drainTo(batch);
+			
+			boolean truncate = false;
+			List<PendingComment> comments = new ArrayList<>();
+			for (Append append : batch) {
+				if (append == TRUNCATE) {
+					truncate = true;
+				} else if (append == STOP) {
+					stop = true;
+				} else {
+					append.comment.seq = loggedSeq + comments.size() + 1;
+					comments.add(append.comment);
+				}
+			}
+			try {
+				if (!comments.isEmpty()) {
+					commentLog.append(comments);
+					loggedSeq += comments.size();
+					unsaved.addAll(comments);
+				}
+				for (Append append : batch) {
+					append.logged.complete(null);
+				}
+				if (truncate && commentLog.size() > 0 && loggedSeq == getSavedSeq()) {
+					commentLog.truncate();
+				}
+			} catch (IOException e) {
+				log.error("Write-ahead log of comments could not be written: {}", e.getMessage());
+				for (Append append : batch) {
+					append.logged.completeExceptionally(e);
+				}
+			}
+			batch.clear();
+		}
+	}
+	
+	// Flusher thread: saves the logged comments in batches. A batch that fails is tried again on the next run
+	private void flush() {
+		int saved;
+		do {
+			List<PendingComment> batch = new ArrayList<>();
+			Iterator<PendingComment> it = unsaved.iterator();
+			while (batch.size() < batchSize && it.hasNext()) {
+				batch.add(it.next());
+			}
+			if (batch.isEmpty()) {
+				return;
+			}
+			try {
+				save(batch);
+			} catch (RuntimeException e) {
+				log.error("{} comments could not be saved, trying again: {}", batch.size(), e.getMessage());
+				return;
+			}
+			for (int i = 0; i < batch.size(); i++) {
+				unsaved.poll();
+			}
+			saved(batch);
+			saved = batch.size();
+		} while (saved == batchSize);
+		appends.add(TRUNCATE);
+	}
+	
+	// Comments rejected by the database (e.g. their entry was deleted) are dropped one by one
+	private void save(List<PendingComment> batch) {
+		try {
+			transactionTemplate.execute(status -> {
+				forumPostService.postComments(batch);
+				this.recordChanges(batch);
+				return null;
+			});
+		} catch (DataIntegrityViolationException e) {
+			if (batch.size() == 1) {
+				log.error("Comment {} dropped: {}", batch.get(0).getComment().getId(), e.getMessage());
+				return;
+			}
+			for (PendingComment pending : batch) {
+				save(List.of(pending));
+			}
+		}
+	}
+	
+	// Records the changes of the courses of the comments in the transaction that saves them
+	private void recordChanges(List<PendingComment> batch) {
+		Map<Long, List<ContentChange>> courses = new LinkedHashMap<>();
+		for (PendingComment pending : batch) {
+			List<ContentChange> changes = courses.computeIfAbsent(pending.getCourseId(), course -> new ArrayList<>());
+			changes.add(ContentChange.created(ContentChange.Type.COMMENT, pending.getComment().getId()));
+			if (pending.getParentId() != null) {
+				changes.add(ContentChange.saved(ContentChange.Type.COMMENT, pending.getParentId()));
+			}
+			changes.add(ContentChange.saved(ContentChange.Type.ENTRY, pending.getEntryId()));
+			changes.add(ContentChange.saved(ContentChange.Type.FORUM, pending.getForumId()));
+		}
+		for (Map.Entry<Long, List<ContentChange>> course : courses.entrySet()) {
+			courseCache.invalidate(course.getKey(), course.getValue().toArray(new ContentChange[0]));
+		}
+	}
+	
+	private void saved(List<PendingComment> batch) {
+		//Readers waiting in 'awaitSaved' find the comments in the database and not in the cache
+		synchronized (this) {
+			savedSeq = batch.get(batch.size() - 1).seq;
+			this.notifyAll();
+		}
+		for (PendingComment pending : batch) {
+			unsavedEntries.remove(pending.getComment().getId());
+			unsavedAuthors.remove(pending.getUserId(), pending.seq);
+		}
+		for (PendingComment pending : batch) {
+			forumUpdatesService.publishComment(pending.getCourseId(), pending.getEntryId(), pending.getParentId(), pending.getComment());
+			forumSearchService.indexComment(pending.getCourseId(), pending.getEntryId(), pending.getComment());
+			forumHotEntriesService.commentPosted(pending.getForumId(), pending.getEntryId(), pending.getComment().getDate());
+		}
+	}
+	
+	private synchronized long getSavedSeq() {
+		return savedSeq;
+	}
+	
+}
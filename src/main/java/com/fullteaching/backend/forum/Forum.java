@@ -4,10 +4,12 @@ import java.util.List;
 import java.util.ArrayList;
 
 import javax.persistence.CascadeType;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.JoinColumn;
 import javax.persistence.OneToMany;
 
 import com.fullteaching.backend.comment.Comment;
@@ -22,7 +24,21 @@ public class Forum {
 	
 	private boolean activated;
 	
+	//Entries and comments of the forum, and date of the newest one. Kept up to date with every
+	//new entry or comment, so listings never read them (see ForumPostService). Only incremented
+	//by the database, never updated from memory, so saving the forum cannot lose concurrent posts
+	@Column(updatable = false)
+	private long entryCount;
+	
+	@Column(updatable = false)
+	private long commentCount;
+	
+	@Column(updatable = false)
+	private long lastActivity;
+	
+	//Linked by the 'forum_id' column of the entry (no join table), indexed with the order of the paged listing (see Entry)
 	@OneToMany(cascade=CascadeType.ALL)
+	@JoinColumn(name = "forum_id")
 	private List<Entry> entries;
 	
 	public Forum(){}
@@ -48,6 +64,43 @@ public class Forum {
 		this.activated = activated;
 	}
 
+	public long getEntryCount() {
+		return entryCount;
+	}
+	
+	public void setEntryCount(long entryCount) {
+		this.entryCount = entryCount;
+	}
+	
+	public long getCommentCount() {
+		return commentCount;
+	}
+	
+	public void setCommentCount(long commentCount) {
+		this.commentCount = commentCount;
+	}
+	
+	public long getLastActivity() {
+		return lastActivity;
+	}
+	
+	public void setLastActivity(long lastActivity) {
+		this.lastActivity = lastActivity;
+	}
+	
+	//Counts a new entry in memory, with the counters already set (see Entry.initCounters). Not saved
+	public void addEntry(Entry entry) {
+		this.entryCount++;
+		this.commentCount += entry.getCommentCount();
+		this.lastActivity = Math.max(this.lastActivity, entry.getLastActivity());
+	}
+	
+	//Counts a new comment of any of its entries in memory. Not saved
+	public void addComment(long date) {
+		this.commentCount++;
+		this.lastActivity = Math.max(this.lastActivity, date);
+	}
+	
 	public List<Entry> getEntries() {
 		return entries;
 	}
@@ -0,0 +1,225 @@
+package com.fullteaching.backend.forum;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fullteaching.backend.comment.Comment;
+
+/**
+ * Write-ahead log of the comments acknowledged in write-behind mode. Each
+ * record is its length, its CRC32 and the comment, and 'append' returns once
+ * the records are on disk. A record partially written by a crash is detected
+ * by 'recover' and cut off. Not thread-safe: only the writer thread of
+ * CommentWriteBehindService uses it.
+ *
+ * The file starts with the id of the database (see ForumSearchDatabase). The
+ * comments of a log written for another database, e.g. one created again
+ * since, would be saved in entries that only share their ids: that log is set
+ * aside instead of recovered.
+ */
+class ForumCommentLog implements Closeable {
+	
+	private static final Logger log = LoggerFactory.getLogger(ForumCommentLog.class);
+	
+	//First bytes of the file ("FTW1")
+	private static final int MAGIC = 0x46545731;
+	
+	private static final int HEADER_SIZE = 8;
+	
+	private final Path file;
+	
+	private final byte[] fileHeader;
+	
+	private FileChannel channel;
+	
+	//End of the last complete record
+	private long position;
+	
+	ForumCommentLog(Path file, String databaseId) throws IOException {
+		Files.createDirectories(file.getParent());
+		this.file = file;
+		byte[] id = databaseId.getBytes(StandardCharsets.UTF_8);
+		this.fileHeader = ByteBuffer.allocate(8 + id.length).putInt(MAGIC).putInt(id.length).put(id).array();
+		this.channel = open(file);
+	}
+	
+	// Comments of the complete records, in order. Anything after them is truncated
+	List<PendingComment> recover() throws IOException {
+		List<PendingComment> comments = new ArrayList<>();
+		if (!hasFileHeader()) {
+			//Shorter than the header, it was cut off by a crash while being created
+			if (channel.size() >= fileHeader.length) {
+				//Never replayed here, but kept for whoever has to look into it
+				Path rejected = file.resolveSibling(file.getFileName() + "." + System.currentTimeMillis() + ".rejected");
+				log.error("Write-ahead log {} belongs to another database: moved to {} without recovering it", file, rejected);
+				channel.close();
+				Files.move(file, rejected, StandardCopyOption.ATOMIC_MOVE);
+				this.channel = open(file);
+			}
+			writeFileHeader();
+			this.position = fileHeader.length;
+			return comments;
+		}
+		long size = channel.size();
+		long offset = fileHeader.length;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while (offset + HEADER_SIZE <= size) {
+			header.clear();
+			readFully(header, offset);
+			int length = header.getInt(0);
+			if (length <= 0 || offset + HEADER_SIZE + length > size) {
+				break;
+			}
+			ByteBuffer payload = ByteBuffer.allocate(length);
+			readFully(payload, offset + HEADER_SIZE);
+			CRC32 crc = new CRC32();
+			crc.update(payload.array());
+			if ((int) crc.getValue() != header.getInt(4)) {
+				break;
+			}
+			payload.flip();
+			comments.add(decode(payload));
+			offset += HEADER_SIZE + length;
+		}
+		if (offset < size) {
+			channel.truncate(offset);
+		}
+		this.position = offset;
+		return comments;
+	}
+	
+	void append(List<PendingComment> comments) throws IOException {
+		List<byte[]> payloads = new ArrayList<>();
+		int size = 0;
+		for (PendingComment comment : comments) {
+			byte[] payload = encode(comment);
+			payloads.add(payload);
+			size += HEADER_SIZE + payload.length;
+		}
+		ByteBuffer records = ByteBuffer.allocate(size);
+		for (byte[] payload : payloads) {
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+			records.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+		}
+		records.flip();
+		try {
+			long offset = position;
+			while (records.hasRemaining()) {
+				offset += channel.write(records, offset);
+			}
+			channel.force(false);
+			this.position = offset;
+		} catch (IOException e) {
+			//Nothing may follow a partial record
+			channel.truncate(position);
+			throw e;
+		}
+	}
+	
+	// Size of the records, without the header of the file
+	long size() {
+		return position - fileHeader.length;
+	}
+	
+	// Once every comment is saved
+	void truncate() throws IOException {
+		channel.truncate(fileHeader.length);
+		this.position = fileHeader.length;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	private static FileChannel open(Path file) throws IOException {
+		return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+	
+	// False if the file is new, cut off or written for another database
+	private boolean hasFileHeader() throws IOException {
+		if (channel.size() < fileHeader.length) {
+			return false;
+		}
+		ByteBuffer header = ByteBuffer.allocate(fileHeader.length);
+		readFully(header, 0);
+		header.flip();
+		return ByteBuffer.wrap(fileHeader).equals(header);
+	}
+	
+	private void writeFileHeader() throws IOException {
+		channel.truncate(0);
+		ByteBuffer header = ByteBuffer.wrap(fileHeader);
+		long offset = 0;
+		while (header.hasRemaining()) {
+			offset += channel.write(header, offset);
+		}
+		channel.force(false);
+	}
+	
+	private void readFully(ByteBuffer buffer, long offset) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, offset + buffer.position());
+			if (read < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+	
+	private static byte[] encode(PendingComment pending) {
+		Comment comment = pending.getComment();
+		byte[] message = comment.getMessage() != null ? comment.getMessage().getBytes(StandardCharsets.UTF_8) : null;
+		ByteBuffer buffer = ByteBuffer.allocate(8 * 7 + 1 + 4 + (message != null ? message.length : 0));
+		buffer.putLong(pending.getCourseId());
+		buffer.putLong(pending.getForumId());
+		buffer.putLong(pending.getEntryId());
+		buffer.put((byte) (pending.getParentId() != null ? 1 : 0));
+		buffer.putLong(pending.getParentId() != null ? pending.getParentId() : 0);
+		buffer.putLong(pending.getUserId());
+		buffer.putLong(comment.getId());
+		buffer.putLong(comment.getDate());
+		buffer.putInt(message != null ? message.length : -1);
+		if (message != null) {
+			buffer.put(message);
+		}
+		return buffer.array();
+	}
+	
+	// The comment has no user: only its id is logged
+	private static PendingComment decode(ByteBuffer buffer) {
+		long courseId = buffer.getLong();
+		long forumId = buffer.getLong();
+		long entryId = buffer.getLong();
+		boolean isReply = buffer.get() == 1;
+		long parentId = buffer.getLong();
+		long userId = buffer.getLong();
+		long id = buffer.getLong();
+		long date = buffer.getLong();
+		int length = buffer.getInt();
+		String message = null;
+		if (length >= 0) {
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			message = new String(bytes, StandardCharsets.UTF_8);
+		}
+		Comment comment = new Comment(message, date, null);
+		comment.setId(id);
+		return new PendingComment(courseId, forumId, entryId, isReply ? parentId : null, userId, comment);
+	}
+	
+}
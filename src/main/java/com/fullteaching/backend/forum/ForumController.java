@@ -5,12 +5,15 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fullteaching.backend.course.ContentChange;
+import com.fullteaching.backend.course.CourseCache;
 import com.fullteaching.backend.coursedetails.CourseDetails;
 import com.fullteaching.backend.coursedetails.CourseDetailsRepository;
 import com.fullteaching.backend.security.AuthorizationService;
@@ -24,10 +27,17 @@ public class ForumController {
 	@Autowired
 	private AuthorizationService authorizationService;
 	
+	@Autowired
+	private CourseCache courseCache;
+	
 	@Autowired
 	private CourseDetailsRepository courseDetailsRepository;
 	
+	@Autowired
+	private ForumCountersRepairService forumCountersRepairService;
+	
 	@RequestMapping(value = "/edit/{courseDetailsId}", method = RequestMethod.PUT)
+	@Transactional
 	public ResponseEntity<Object> modifyForum(@RequestBody boolean activated, @PathVariable(value="courseDetailsId") String courseDetailsId) {
 		
 		log.info("CRUD operation: Updating forum");
@@ -58,11 +68,45 @@ public class ForumController {
 			cd.getForum().setActivated(activated);
 			//Saving the modified course
 			courseDetailsRepository.save(cd);
+			courseCache.invalidate(cd.getCourse().getId(), ContentChange.saved(ContentChange.Type.FORUM, cd.getForum().getId()));
 			
 			log.info("Forum succesfully updated. Modified value: {}", cd.getForum());
 			
 			return new ResponseEntity<>(new Boolean(activated), HttpStatus.OK);
 		}
 	}
+	
+	//Recomputes the counters of the forum and its entries. Returns the number of entries repaired
+	@RequestMapping(value = "/edit/{courseDetailsId}/repair-counters", method = RequestMethod.POST)
+	public ResponseEntity<Object> repairForumCounters(@PathVariable(value="courseDetailsId") String courseDetailsId) {
+		
+		log.info("CRUD operation: Repairing forum counters");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_i = -1;
+		try{
+			id_i = Long.parseLong(courseDetailsId);
+		}catch(NumberFormatException e){
+			log.error("CourseDetails ID '{}' is not of type Long", courseDetailsId);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		CourseDetails cd = courseDetailsRepository.findById(id_i).orElse(null);
+		
+		ResponseEntity<Object> teacherAuthorized = authorizationService.checkAuthorization(cd, cd != null ? cd.getCourse().getTeacher() : null);
+		if (teacherAuthorized != null) { // If the user is not the teacher of the course
+			return teacherAuthorized;
+		}
+		
+		long entries = forumCountersRepairService.repairForum(cd.getForum().getId());
+		//Counters of the repaired entries are synced with the entries themselves when they next change
+		courseCache.invalidate(cd.getCourse().getId(), ContentChange.saved(ContentChange.Type.FORUM, cd.getForum().getId()));
+		
+		return new ResponseEntity<>(entries, HttpStatus.OK);
+	}
 
 }
@@ -0,0 +1,144 @@
+package com.fullteaching.backend.forum;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fullteaching.backend.entry.EntryRepository;
+
+/**
+ * Recomputes the counters of entries and forums from their comments, in
+ * chunks of rows: each chunk is locked, counted with a single query and
+ * updated in its own transaction. A comment posted while its entry is being
+ * repaired waits for the chunk to be committed, so it is never lost.
+ *
+ * Only needed if the counters are not trusted: after upgrading a database
+ * created without them, or after writing comments outside this application.
+ */
+@Service
+public class ForumCountersRepairService {
+	
+	private static final Logger log = LoggerFactory.getLogger(ForumCountersRepairService.class);
+	
+	@Autowired
+	private ForumRepository forumRepository;
+	
+	@Autowired
+	private EntryRepository entryRepository;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	@Value("${forum.counters.repair-chunk-size:500}")
+	private int chunkSize;
+	
+	@Value("${forum.counters.repair-on-startup:false}")
+	private boolean repairOnStartup;
+	
+	private TransactionTemplate transactionTemplate;
+	
+	@PostConstruct
+	public void init() {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+	
+	@EventListener(ApplicationReadyEvent.class)
+	public void repairAllOnStartup() {
+		if (repairOnStartup) {
+			this.repairAll();
+		}
+	}
+	
+	//Counters of all the entries and then of all the forums. Returns the number of entries repaired
+	public long repairAll() {
+		long entries = repairInChunks(afterId -> repairEntries(entryRepository.lockNextEntries(afterId, PageRequest.of(0, chunkSize))));
+		long forums = repairInChunks(afterId -> repairForums(forumRepository.lockNextForums(afterId, PageRequest.of(0, chunkSize))));
+		log.info("Counters of {} entries and {} forums repaired", entries, forums);
+		return entries;
+	}
+	
+	//Counters of the entries of the forum and then of the forum. Returns the number of entries repaired
+	public long repairForum(long forumId) {
+		long entries = repairInChunks(afterId -> repairEntries(entryRepository.lockNextEntriesOfForum(forumId, afterId, PageRequest.of(0, chunkSize))));
+		transactionTemplate.execute(status -> repairForums(forumRepository.lockForum(forumId)));
+		log.info("Counters of {} entries of forum {} repaired", entries, forumId);
+		return entries;
+	}
+	
+	// Each chunk returns [rows repaired, id of the last one]. Stops at the first chunk that is not full
+	private long repairInChunks(LongFunction<long[]> chunk) {
+		long total = 0;
+		long afterId = Long.MIN_VALUE;
+		long[] repaired;
+		do {
+			long after = afterId;
+			repaired = transactionTemplate.execute(status -> chunk.apply(after));
+			total += repaired[0];
+			afterId = repaired[1];
+		} while (repaired[0] == chunkSize);
+		return total;
+	}
+	
+	// Rows are [id, date] of locked entries. Returns [entries repaired, last id]
+	private long[] repairEntries(List<Object[]> entries) {
+		if (entries.isEmpty()) {
+			return new long[] { 0, Long.MAX_VALUE };
+		}
+		List<Long> ids = new ArrayList<>();
+		for (Object[] entry : entries) {
+			ids.add(((Number) entry[0]).longValue());
+		}
+		Map<Long, Object[]> counts = new HashMap<>();
+		for (Object[] row : entryRepository.countComments(ids)) {
+			counts.put(((Number) row[0]).longValue(), row);
+		}
+		for (Object[] entry : entries) {
+			long id = ((Number) entry[0]).longValue();
+			long date = ((Number) entry[1]).longValue();
+			Object[] count = counts.get(id);
+			if (count != null) {
+				entryRepository.setCounters(id, ((Number) count[1]).longValue(), Math.max(date, ((Number) count[2]).longValue()));
+			} else {
+				entryRepository.setCounters(id, 0, date);
+			}
+		}
+		return new long[] { entries.size(), ids.get(ids.size() - 1) };
+	}
+	
+	// Counters of the locked forums, from the (already repaired) counters of their entries
+	private long[] repairForums(List<Long> forumIds) {
+		if (forumIds.isEmpty()) {
+			return new long[] { 0, Long.MAX_VALUE };
+		}
+		Map<Long, Object[]> sums = new HashMap<>();
+		for (Object[] row : forumRepository.sumEntryCounters(forumIds)) {
+			sums.put(((Number) row[0]).longValue(), row);
+		}
+		for (Long forumId : forumIds) {
+			Object[] sum = sums.get(forumId);
+			if (sum != null) {
+				forumRepository.setCounters(forumId, ((Number) sum[1]).longValue(), ((Number) sum[2]).longValue(), ((Number) sum[3]).longValue());
+			} else {
+				forumRepository.setCounters(forumId, 0, 0, 0);
+			}
+		}
+		return new long[] { forumIds.size(), Collections.max(forumIds) };
+	}
+	
+}
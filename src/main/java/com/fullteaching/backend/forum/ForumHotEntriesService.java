@@ -0,0 +1,262 @@
+package com.fullteaching.backend.forum;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fullteaching.backend.comment.Comment;
+import com.fullteaching.backend.comment.CommentRepository;
+import com.fullteaching.backend.entry.Entry;
+import com.fullteaching.backend.entry.EntryRepository;
+import com.fullteaching.backend.entry.EntrySummary;
+
+/**
+ * Ranking of the most active entries of each forum. The score of an entry is
+ * the sum of the comments posted to it, each one halved every 'half-life'.
+ * It is kept as its rank log2(sum of 2^(date / half-life)): the scores of all
+ * the entries decay at the same pace, so their order never changes with time
+ * and a new comment only has to update the rank of its entry.
+ *
+ * Each forum keeps the ranks of its recently active entries and its top
+ * 'top-k' in memory. They are built from the database the first time the
+ * forum is asked for, and updated by every comment saved after that. A
+ * comment saved while they are being built may be counted twice. Entries
+ * found deleted when the top is read are forgotten, and the next best ones
+ * take their place.
+ */
+@Service
+public class ForumHotEntriesService {
+	
+	private static final Logger log = LoggerFactory.getLogger(ForumHotEntriesService.class);
+	
+	//Comments older than this many half-lives weigh less than a millionth of a new one, and are left out
+	private static final int HORIZON_HALF_LIVES = 20;
+	
+	@Autowired
+	private CommentRepository commentRepository;
+	
+	@Autowired
+	private EntryRepository entryRepository;
+	
+	@Value("${forum.hot-entries.half-life-millis:86400000}")
+	private long halfLifeMillis;
+	
+	@Value("${forum.hot-entries.top-k:50}")
+	private int topK;
+	
+	private final Map<Long, ForumRanking> rankings = new ConcurrentHashMap<>();
+	
+	private static class Ranked {
+		
+		private final long entryId;
+		private final double rank;
+		
+		private Ranked(long entryId, double rank) {
+			this.entryId = entryId;
+			this.rank = rank;
+		}
+	}
+	
+	private static final Comparator<Ranked> HIGHEST_FIRST = Comparator.<Ranked>comparingDouble(r -> r.rank).reversed()
+			.thenComparing(Comparator.<Ranked>comparingLong(r -> r.entryId).reversed());
+			
+	private static class ForumRanking {
+		
+		private boolean loaded;
+		
+		//Rank of each entry with comments within the horizon
+		private final Map<Long, Double> ranks = new HashMap<>();
+		
+		//The 'topK' best entries, and the same ones by id
+		private final TreeSet<Ranked> top = new TreeSet<>(HIGHEST_FIRST);
+		private final Map<Long, Ranked> topById = new HashMap<>();
+		
+		//Size of 'ranks' after the last time it was pruned
+		private int prunedSize;
+		
+		//Copy of 'top', replaced on every change of it so that it is read without locking
+		private volatile List<Ranked> snapshot = Collections.emptyList();
+	}
+	
+	// A new entry, with the comments it was posted with
+	public void entryPosted(long forumId, Entry entry) {
+		if (entry.getComments() != null) {
+			for (Comment comment : entry.getComments()) {
+				this.commentPosted(forumId, entry.getId(), comment.getDate());
+			}
+		}
+	}
+	
+	public void commentPosted(long forumId, long entryId, long date) {
+		ForumRanking ranking = rankings.get(forumId);
+		if (ranking == null) {
+			//Built from the database, comment included, when the forum is asked for
+			return;
+		}
+		synchronized (ranking) {
+			if (!ranking.loaded) {
+				return;
+			}
+			double commentRank = (double) date / halfLifeMillis;
+			Double rank = ranking.ranks.get(entryId);
+			this.update(ranking, entryId, rank == null ? commentRank : logAdd(rank, commentRank));
+			if (ranking.ranks.size() > 2 * Math.max(ranking.prunedSize, topK)) {
+				this.prune(ranking);
+			}
+		}
+	}
+	
+	// Of a deleted forum, whose entries are gone
+	public void forumDeleted(long forumId) {
+		rankings.remove(forumId);
+	}
+	
+	/**
+	 * Up to 'size' (at most 'top-k') hottest entries of the forum, with their
+	 * current score. The ranking is read from memory; only the summaries of
+	 * the returned entries are queried.
+	 */
+	public List<ForumHotEntry> getHotEntries(long forumId, int size) {
+		ForumRanking ranking = this.load(forumId);
+		List<ForumHotEntry> entries;
+		List<Long> deleted = new ArrayList<>();
+		do {
+			List<Ranked> hottest = ranking.snapshot;
+			hottest = hottest.subList(0, Math.min(size, hottest.size()));
+			entries = this.hydrate(forumId, hottest, deleted);
+			if (!deleted.isEmpty()) {
+				this.evict(ranking, deleted);
+			}
+		} while (!deleted.isEmpty());
+		return entries;
+	}
+	
+	// The entries of 'hottest' with their summary. The ids of the ones not found are added to 'deleted'
+	private List<ForumHotEntry> hydrate(long forumId, List<Ranked> hottest, List<Long> deleted) {
+		deleted.clear();
+		List<ForumHotEntry> entries = new ArrayList<>();
+		if (hottest.isEmpty()) {
+			return entries;
+		}
+		List<Long> ids = new ArrayList<>();
+		for (Ranked ranked : hottest) {
+			ids.add(ranked.entryId);
+		}
+		Map<Long, EntrySummary> summaries = new HashMap<>();
+		for (EntrySummary summary : entryRepository.findSummariesByForumIdAndIdIn(forumId, ids)) {
+			summaries.put(summary.getId(), summary);
+		}
+		double now = (double) System.currentTimeMillis() / halfLifeMillis;
+		for (Ranked ranked : hottest) {
+			EntrySummary summary = summaries.get(ranked.entryId);
+			if (summary != null) {
+				entries.add(new ForumHotEntry(summary, Math.pow(2, ranked.rank - now)));
+			} else {
+				deleted.add(ranked.entryId);
+			}
+		}
+		return entries;
+	}
+	
+	// Forgets deleted entries, and fills the top again with the best of the other ranked ones
+	private void evict(ForumRanking ranking, List<Long> entryIds) {
+		synchronized (ranking) {
+			for (Long entryId : entryIds) {
+				ranking.ranks.remove(entryId);
+				Ranked ranked = ranking.topById.remove(entryId);
+				if (ranked != null) {
+					ranking.top.remove(ranked);
+				}
+			}
+			//Entries out of the top are only pruned beyond the horizon, so every entry active within it is still ranked
+			List<Ranked> candidates = new ArrayList<>();
+			for (Map.Entry<Long, Double> rank : ranking.ranks.entrySet()) {
+				if (!ranking.topById.containsKey(rank.getKey())) {
+					candidates.add(new Ranked(rank.getKey(), rank.getValue()));
+				}
+			}
+			candidates.sort(HIGHEST_FIRST);
+			int missing = Math.min(topK - ranking.top.size(), candidates.size());
+			for (Ranked ranked : candidates.subList(0, missing)) {
+				ranking.top.add(ranked);
+				ranking.topById.put(ranked.entryId, ranked);
+			}
+			ranking.snapshot = Collections.unmodifiableList(new ArrayList<>(ranking.top));
+		}
+	}
+	
+	private ForumRanking load(long forumId) {
+		ForumRanking ranking = rankings.computeIfAbsent(forumId, f -> new ForumRanking());
+		synchronized (ranking) {
+			if (!ranking.loaded) {
+				long now = System.currentTimeMillis();
+				long since = now - HORIZON_HALF_LIVES * halfLifeMillis;
+				//The database sums the scores as of now, which are never above 1 for past comments
+				for (Object[] row : commentRepository.sumDecayedActivity(forumId, since, now, (double) halfLifeMillis)) {
+					double score = ((Number) row[1]).doubleValue();
+					if (score > 0) {
+						this.update(ranking, ((Number) row[0]).longValue(), log2(score) + (double) now / halfLifeMillis);
+					}
+				}
+				ranking.prunedSize = ranking.ranks.size();
+				ranking.loaded = true;
+				log.info("Hot entries of forum {} built from {} active entries", forumId, ranking.ranks.size());
+			}
+		}
+		return ranking;
+	}
+	
+	// Ranks only grow, so an entry that leaves the top only enters it again with a new comment
+	private void update(ForumRanking ranking, long entryId, double rank) {
+		ranking.ranks.put(entryId, rank);
+		Ranked previous = ranking.topById.remove(entryId);
+		if (previous != null) {
+			ranking.top.remove(previous);
+		} else if (ranking.top.size() >= topK && rank <= ranking.top.last().rank) {
+			return;
+		}
+		Ranked ranked = new Ranked(entryId, rank);
+		ranking.top.add(ranked);
+		ranking.topById.put(entryId, ranked);
+		if (ranking.top.size() > topK) {
+			ranking.topById.remove(ranking.top.pollLast().entryId);
+		}
+		ranking.snapshot = Collections.unmodifiableList(new ArrayList<>(ranking.top));
+	}
+	
+	// Forgets the entries out of the top whose comments are all beyond the horizon
+	private void prune(ForumRanking ranking) {
+		double oldest = (double) System.currentTimeMillis() / halfLifeMillis - HORIZON_HALF_LIVES;
+		Iterator<Map.Entry<Long, Double>> it = ranking.ranks.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Long, Double> rank = it.next();
+			if (rank.getValue() < oldest && !ranking.topById.containsKey(rank.getKey())) {
+				it.remove();
+			}
+		}
+		ranking.prunedSize = ranking.ranks.size();
+	}
+	
+	// log2(2^a + 2^b), without computing 2^a or 2^b
+	static double logAdd(double a, double b) {
+		double max = Math.max(a, b);
+		return max + log2(1 + Math.pow(2, Math.min(a, b) - max));
+	}
+	
+	private static double log2(double x) {
+		return Math.log(x) / Math.log(2);
+	}
+	
+}
@@ -0,0 +1,28 @@
+package com.fullteaching.backend.forum;
+
+import com.fullteaching.backend.entry.EntrySummary;
+
+/**
+ * An entry among the most active ones of a forum (see ForumHotEntriesService).
+ */
+public class ForumHotEntry {
+	
+	private EntrySummary entry;
+	
+	//Comments posted to the entry, each one halved every half-life since it was posted
+	private double score;
+	
+	public ForumHotEntry(EntrySummary entry, double score) {
+		this.entry = entry;
+		this.score = score;
+	}
+	
+	public EntrySummary getEntry() {
+		return entry;
+	}
+	
+	public double getScore() {
+		return score;
+	}
+	
+}
@@ -0,0 +1,77 @@
+package com.fullteaching.backend.forum;
+
+import java.util.List;
+
+import com.fullteaching.backend.entry.EntrySummary;
+import com.fullteaching.backend.paging.Cursors;
+
+/**
+ * A page of a forum as returned by 'GET /api-courses/course/{id}/forum': its
+ * entries are summarized, and their comments are requested separately.
+ */
+public class ForumPage {
+	
+	private long id;
+	
+	private boolean activated;
+	
+	private long entryCount;
+	
+	private long commentCount;
+	
+	private long lastActivity;
+	
+	private List<EntrySummary> entries;
+	
+	//Opaque value to pass as 'after' to get the next page (null if this is the last one)
+	private String nextCursor;
+	
+	public ForumPage(Forum forum, List<EntrySummary> entries, String nextCursor) {
+		this.id = forum.getId();
+		this.activated = forum.isActivated();
+		this.entryCount = forum.getEntryCount();
+		this.commentCount = forum.getCommentCount();
+		this.lastActivity = forum.getLastActivity();
+		this.entries = entries;
+		this.nextCursor = nextCursor;
+	}
+	
+	public long getId() {
+		return id;
+	}
+	
+	public boolean isActivated() {
+		return activated;
+	}
+	
+	public long getEntryCount() {
+		return entryCount;
+	}
+	
+	public long getCommentCount() {
+		return commentCount;
+	}
+	
+	public long getLastActivity() {
+		return lastActivity;
+	}
+	
+	public List<EntrySummary> getEntries() {
+		return entries;
+	}
+	
+	public String getNextCursor() {
+		return nextCursor;
+	}
+	
+	//A cursor is the date and the id of the last entry of a page: "{date}:{id}", Base64 encoded
+	public static String cursor(long date, long id) {
+		return Cursors.encode(date, id);
+	}
+	
+	// Returns [date, id] of the cursor, or throws IllegalArgumentException if it is not valid
+	public static long[] parseCursor(String cursor) {
+		return Cursors.decodeLongs(cursor, 2);
+	}
+	
+}
@@ -0,0 +1,171 @@
+package com.fullteaching.backend.forum;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.fullteaching.backend.comment.Comment;
+import com.fullteaching.backend.comment.CommentRepository;
+import com.fullteaching.backend.entry.Entry;
+import com.fullteaching.backend.entry.EntryRepository;
+
+/**
+ * Append-only writes to a forum: new entries and comments are inserted on
+ * their own and linked to their parent with a single row, so the entries of
+ * the forum or the comments of the entry are never loaded. Each post costs
+ * the same whatever the size of the forum.
+ *
+ * The counters of the entry and the forum (see Entry.getCommentCount and
+ * Forum.getEntryCount) are incremented in the same transaction as the insert.
+ */
+@Service
+public class ForumPostService {
+	
+	private static final String INSERT_COMMENT = "INSERT INTO comment (id, message, date, user_id, comment_parent_id) VALUES (?, ?, ?, ?, ?)";
+	
+	private static final String INSERT_ROOT_COMMENT = "INSERT INTO entry_comments (entry_id, comments_id) VALUES (?, ?)";
+	
+	@Autowired
+	private ForumRepository forumRepository;
+	
+	@Autowired
+	private EntryRepository entryRepository;
+	
+	@Autowired
+	private CommentRepository commentRepository;
+	
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+	
+	@PersistenceContext
+	private EntityManager entityManager;
+	
+	//The entry is saved together with its comments (its first one)
+	@Transactional
+	public Entry postEntry(long forumId, Entry entry) {
+		entry.initCounters();
+		//Flushed so the join row below can reference it
+		entry = entryRepository.saveAndFlush(entry);
+		forumRepository.addEntry(forumId, entry.getId());
+		forumRepository.incrementCounters(forumId, 1, entry.getCommentCount(), entry.getLastActivity());
+		return entry;
+	}
+	
+	//Counts an entry the legacy endpoint has saved through its forum, as 'postEntry' does
+	@Transactional
+	public void countEntry(long forumId, Entry entry) {
+		forumRepository.incrementCounters(forumId, 1, entry.getCommentCount(), entry.getLastActivity());
+	}
+	
+	//Counts a comment the legacy endpoint has saved through its entry or parent, as 'postComment' does
+	@Transactional
+	public void countComment(long forumId, long entryId, long date) {
+		entryRepository.incrementCommentCount(entryId, 1, date);
+		forumRepository.incrementCounters(forumId, 0, 1, date);
+	}
+	
+	// Returns false if the entry is not in the forum
+	@Transactional(readOnly = true)
+	public boolean isInForum(long forumId, long entryId) {
+		return forumRepository.countEntry(forumId, entryId) > 0;
+	}
+	
+	//Root comment of the entry (of the forum) if 'parentId' is null, or reply to that comment.
+	//Returns null if the parent does not exist or belongs to another entry
+	@Transactional
+	public Comment postComment(long forumId, long entryId, Long parentId, Comment comment) {
+		if (parentId != null) {
+			Long parentEntryId = commentRepository.findEntryId(parentId);
+			if (parentEntryId == null || parentEntryId != entryId) {
+				return null;
+			}
+			//A reference is enough to set the foreign key: neither the parent nor its replies are loaded
+			comment.setCommentParent(commentRepository.getOne(parentId));
+			comment = commentRepository.save(comment);
+		} else {
+			comment = commentRepository.saveAndFlush(comment);
+			entryRepository.addComment(entryId, comment.getId());
+		}
+		entryRepository.incrementCommentCount(entryId, 1, comment.getDate());
+		forumRepository.incrementCounters(forumId, 0, 1, comment.getDate());
+		return comment;
+	}
+	
+	//Id for a comment saved later by 'postComments', from the same generator as the comments saved by 'postComment'
+	@Transactional
+	public long nextCommentId(Comment comment) {
+		SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+		Serializable id = session.getFactory().getMetamodel().entityPersister(Comment.class).getIdentifierGenerator().generate(session, comment);
+		return ((Number) id).longValue();
+	}
+	
+	/**
+	 * Saves comments that already have an id and a valid parent, in order (a
+	 * reply after its parent), with one JDBC batch for the comments and one for
+	 * the root ones. The counters of each entry and forum are incremented once
+	 * for all its comments, so a burst of comments to one entry locks it once.
+	 */
+	@Transactional
+	public void postComments(List<PendingComment> comments) {
+		List<Object[]> commentRows = new ArrayList<>();
+		List<Object[]> rootRows = new ArrayList<>();
+		//[comments, date of the newest one] of each entry and forum, locked in order of id
+		Map<Long, long[]> entries = new TreeMap<>();
+		Map<Long, long[]> forums = new TreeMap<>();
+		for (PendingComment pending : comments) {
+			Comment comment = pending.getComment();
+			commentRows.add(new Object[] { comment.getId(), comment.getMessage(), comment.getDate(), pending.getUserId(), pending.getParentId() });
+			if (pending.getParentId() == null) {
+				rootRows.add(new Object[] { pending.getEntryId(), comment.getId() });
+			}
+			count(entries, pending.getEntryId(), comment.getDate());
+			count(forums, pending.getForumId(), comment.getDate());
+		}
+		
+		jdbcTemplate.batchUpdate(INSERT_COMMENT, commentRows);
+		if (!rootRows.isEmpty()) {
+			jdbcTemplate.batchUpdate(INSERT_ROOT_COMMENT, rootRows);
+		}
+		for (Map.Entry<Long, long[]> entry : entries.entrySet()) {
+			entryRepository.incrementCommentCount(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+		}
+		for (Map.Entry<Long, long[]> forum : forums.entrySet()) {
+			forumRepository.incrementCounters(forum.getKey(), 0, forum.getValue()[0], forum.getValue()[1]);
+		}
+	}
+	
+	//Runs 'action' once the caller's transaction commits, and never if it is rolled back. Subscribers,
+	//search index and hot entries must only see posts that exist. Outside a transaction it runs right away
+	public static void afterCommit(Runnable action) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					action.run();
+				}
+			});
+		} else {
+			action.run();
+		}
+	}
+	
+	private static void count(Map<Long, long[]> counters, long id, long date) {
+		long[] counter = counters.computeIfAbsent(id, i -> new long[2]);
+		counter[0]++;
+		counter[1] = Math.max(counter[1], date);
+	}
+	
+}
@@ -0,0 +1,39 @@
+package com.fullteaching.backend.forum;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Body of 'PUT /api-courses/course/{id}/forum/read': the entries and comments
+ * of the forum a user has just read.
+ */
+public class ForumReadMarks {
+	
+	private List<Long> entryIds = new ArrayList<>();
+	
+	private List<Long> commentIds = new ArrayList<>();
+	
+	public ForumReadMarks() {}
+	
+	public ForumReadMarks(List<Long> entryIds, List<Long> commentIds) {
+		this.entryIds = entryIds;
+		this.commentIds = commentIds;
+	}
+	
+	public List<Long> getEntryIds() {
+		return entryIds;
+	}
+	
+	public void setEntryIds(List<Long> entryIds) {
+		this.entryIds = entryIds;
+	}
+	
+	public List<Long> getCommentIds() {
+		return commentIds;
+	}
+	
+	public void setCommentIds(List<Long> commentIds) {
+		this.commentIds = commentIds;
+	}
+	
+}
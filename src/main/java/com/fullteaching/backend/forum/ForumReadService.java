@@ -0,0 +1,163 @@
+package com.fullteaching.backend.forum;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fullteaching.backend.comment.CommentRepository;
+import com.fullteaching.backend.entry.EntryRepository;
+
+/**
+ * Entries and comments of the forum of each course read by each user, kept
+ * as one ForumReadState per user and course instead of one row per comment.
+ * Only ids that belong to the forum are marked, so the unread count is the
+ * forum counters minus the ids marked.
+ */
+@Service
+public class ForumReadService {
+	
+	private static final Logger log = LoggerFactory.getLogger(ForumReadService.class);
+	
+	@Autowired
+	private ForumReadStateRepository forumReadStateRepository;
+	
+	@Autowired
+	private EntryRepository entryRepository;
+	
+	@Autowired
+	private CommentRepository commentRepository;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	@Value("${forum.read.chunk-size:500}")
+	private int chunkSize;
+	
+	private TransactionTemplate transactionTemplate;
+	
+	@PostConstruct
+	public void init() {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+	
+	// Unread count of the user in the forum, and which of the given entries and comments are unread
+	public ForumReadSummary getReadState(long userId, long courseId, Forum forum, Collection<Long> entryIds, Collection<Long> commentIds) {
+		ForumReadState state = forumReadStateRepository.findByUserIdAndCourseId(userId, courseId);
+		long readCount = 0;
+		List<Long> unreadEntries = new ArrayList<>(entryIds);
+		List<Long> unreadComments = new ArrayList<>(commentIds);
+		if (state != null) {
+			readCount = state.getReadCount();
+			ReadBitmap entries = ReadBitmap.fromBytes(state.getEntries());
+			ReadBitmap comments = ReadBitmap.fromBytes(state.getComments());
+			unreadEntries.removeIf(entries::contains);
+			unreadComments.removeIf(comments::contains);
+		}
+		return new ForumReadSummary(unreadCount(forum, readCount), unreadEntries, unreadComments);
+	}
+	
+	// Marks the given entries and comments as read. Ids that are not of the forum are ignored
+	public ForumReadSummary markRead(long userId, long courseId, Forum forum, Collection<Long> entryIds, Collection<Long> commentIds) {
+		List<Long> entries = new ArrayList<>();
+		for (List<Long> chunk : chunks(entryIds)) {
+			entries.addAll(entryRepository.findIdsOfForumIn(forum.getId(), chunk));
+		}
+		List<Long> comments = new ArrayList<>();
+		for (List<Long> chunk : chunks(commentIds)) {
+			for (Number id : commentRepository.findIdsOfForumIn(forum.getId(), chunk)) {
+				comments.add(id.longValue());
+			}
+		}
+		long readCount = this.addRead(userId, courseId, entries, comments);
+		return new ForumReadSummary(unreadCount(forum, readCount), new ArrayList<>(), new ArrayList<>());
+	}
+	
+	// Marks every entry and comment of the forum as read, in chunks of entries
+	public ForumReadSummary markAllRead(long userId, long courseId, Forum forum) {
+		List<Long> entries = new ArrayList<>();
+		List<Long> comments = new ArrayList<>();
+		long afterId = Long.MIN_VALUE;
+		List<Long> chunk;
+		do {
+			chunk = entryRepository.findNextIdsOfForum(forum.getId(), afterId, PageRequest.of(0, chunkSize));
+			if (chunk.isEmpty()) {
+				break;
+			}
+			entries.addAll(chunk);
+			for (Number id : commentRepository.findIdsOfEntries(chunk)) {
+				comments.add(id.longValue());
+			}
+			afterId = chunk.get(chunk.size() - 1);
+		} while (chunk.size() == chunkSize);
+		long readCount = this.addRead(userId, courseId, entries, comments);
+		return new ForumReadSummary(unreadCount(forum, readCount), new ArrayList<>(), new ArrayList<>());
+	}
+	
+	// Adds the ids to the read state of the user in the course, creating it if needed. Returns the ids read
+	private long addRead(long userId, long courseId, List<Long> entryIds, List<Long> commentIds) {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return transactionTemplate.execute(status -> {
+					ForumReadState state = forumReadStateRepository.lockByUserIdAndCourseId(userId, courseId);
+					if (state == null) {
+						state = new ForumReadState(userId, courseId);
+					}
+					ReadBitmap entries = ReadBitmap.fromBytes(state.getEntries());
+					ReadBitmap comments = ReadBitmap.fromBytes(state.getComments());
+					boolean changed = false;
+					for (Long id : entryIds) {
+						changed |= entries.add(id);
+					}
+					for (Long id : commentIds) {
+						changed |= comments.add(id);
+					}
+					if (changed) {
+						state.setEntries(entries.toBytes());
+						state.setComments(comments.toBytes());
+						state.setReadCount(entries.cardinality() + comments.cardinality());
+						forumReadStateRepository.save(state);
+					}
+					return state.getReadCount();
+				});
+			} catch (DataIntegrityViolationException | ConcurrencyFailureException e) {
+				//The first marks of the user in the course raced with others that created the state first
+				if (attempt == 3) {
+					throw e;
+				}
+				log.warn("Read state of user {} in course {} modified concurrently, trying again", userId, courseId);
+			}
+		}
+	}
+	
+	private static long unreadCount(Forum forum, long readCount) {
+		return Math.max(0, forum.getEntryCount() + forum.getCommentCount() - readCount);
+	}
+	
+	// Distinct non-null ids in lists of at most 'chunkSize'
+	private List<List<Long>> chunks(Collection<Long> ids) {
+		Set<Long> unique = new LinkedHashSet<>(ids);
+		unique.remove(null);
+		List<Long> distinct = new ArrayList<>(unique);
+		List<List<Long>> chunks = new ArrayList<>();
+		for (int from = 0; from < distinct.size(); from += chunkSize) {
+			chunks.add(distinct.subList(from, Math.min(from + chunkSize, distinct.size())));
+		}
+		return chunks;
+	}
+	
+}
@@ -0,0 +1,85 @@
+package com.fullteaching.backend.forum;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * Entries and comments of the forum of a course read by a user, as two
+ * serialized ReadBitmaps. 'readCount' is the number of ids in both, so the
+ * unread count of a course is its forum counters minus it, without reading
+ * the bitmaps (see CourseRepository.findSummariesByAttender).
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_forum_read_state_user_course", columnNames = { "userId", "courseId" }))
+public class ForumReadState {
+	
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO)
+	private long id;
+	
+	private long userId;
+	
+	private long courseId;
+	
+	@Lob
+	private byte[] entries;
+	
+	@Lob
+	private byte[] comments;
+	
+	private long readCount;
+	
+	public ForumReadState() {}
+	
+	public ForumReadState(long userId, long courseId) {
+		this.userId = userId;
+		this.courseId = courseId;
+	}
+	
+	public long getId() {
+		return id;
+	}
+	
+	public long getUserId() {
+		return userId;
+	}
+	
+	public long getCourseId() {
+		return courseId;
+	}
+	
+	public byte[] getEntries() {
+		return entries;
+	}
+	
+	public void setEntries(byte[] entries) {
+		this.entries = entries;
+	}
+	
+	public byte[] getComments() {
+		return comments;
+	}
+	
+	public void setComments(byte[] comments) {
+		this.comments = comments;
+	}
+	
+	public long getReadCount() {
+		return readCount;
+	}
+	
+	public void setReadCount(long readCount) {
+		this.readCount = readCount;
+	}
+	
+	@Override
+	public String toString() {
+		return "ForumReadState[user: " + this.userId + ", course: " + this.courseId + ", read: " + this.readCount + "]";
+	}
+	
+}
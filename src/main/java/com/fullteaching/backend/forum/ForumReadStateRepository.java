@@ -0,0 +1,19 @@
+package com.fullteaching.backend.forum;
+
+import javax.persistence.LockModeType;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface ForumReadStateRepository extends JpaRepository<ForumReadState, Long> {
+	
+	public ForumReadState findByUserIdAndCourseId(long userId, long courseId);
+	
+	//Concurrent marks of the same user in the same course wait for each other, so none of them is lost
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select s from ForumReadState s where s.userId = :userId and s.courseId = :courseId")
+	public ForumReadState lockByUserIdAndCourseId(@Param("userId") long userId, @Param("courseId") long courseId);
+	
+}
@@ -0,0 +1,35 @@
+package com.fullteaching.backend.forum;
+
+import java.util.List;
+
+/**
+ * How many entries and comments of the forum of a course a user has not read,
+ * and which of the ones asked about are unread.
+ */
+public class ForumReadSummary {
+	
+	private long unreadCount;
+	
+	private List<Long> unreadEntryIds;
+	
+	private List<Long> unreadCommentIds;
+	
+	public ForumReadSummary(long unreadCount, List<Long> unreadEntryIds, List<Long> unreadCommentIds) {
+		this.unreadCount = unreadCount;
+		this.unreadEntryIds = unreadEntryIds;
+		this.unreadCommentIds = unreadCommentIds;
+	}
+	
+	public long getUnreadCount() {
+		return unreadCount;
+	}
+	
+	public List<Long> getUnreadEntryIds() {
+		return unreadEntryIds;
+	}
+	
+	public List<Long> getUnreadCommentIds() {
+		return unreadCommentIds;
+	}
+	
+}
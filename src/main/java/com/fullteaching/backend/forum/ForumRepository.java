@@ -1,7 +1,62 @@
 package com.fullteaching.backend.forum;
 
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.LockModeType;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface ForumRepository extends JpaRepository<Forum, Long> {
+	
+	//Its entries are not loaded
+	@Query("select f from Course c join c.courseDetails d join d.forum f where c.id = :courseId and c.deleted = false")
+	public Forum findByCourseId(@Param("courseId") long courseId);
+	
+	@Query("select f.id as id, f.activated as activated, f.entryCount as entryCount, f.commentCount as commentCount, "
+			+ "f.lastActivity as lastActivity from Course c join c.courseDetails d join d.forum f where c.id = :courseId and c.deleted = false")
+	public ForumSummary findSummaryByCourseId(@Param("courseId") long courseId);
+	
+	//Links an already saved entry without initializing 'Forum.entries'
+	@Modifying
+	@Query(nativeQuery = true, value = "UPDATE entry SET forum_id = :forumId WHERE id = :entryId")
+	public int addEntry(@Param("forumId") long forumId, @Param("entryId") long entryId);
+	
+	//Resolved on the primary key of the entry
+	@Query(nativeQuery = true, value = "SELECT COUNT(*) FROM entry WHERE id = :entryId AND forum_id = :forumId")
+	public int countEntry(@Param("forumId") long forumId, @Param("entryId") long entryId);
+	
+	//Counts new entries and comments in the same statement that locks the forum, so concurrent posts are never lost
+	@Modifying
+	@Query("update Forum f set f.entryCount = f.entryCount + :entries, f.commentCount = f.commentCount + :comments, "
+			+ "f.lastActivity = case when f.lastActivity < :date then :date else f.lastActivity end where f.id = :forumId")
+	public int incrementCounters(@Param("forumId") long forumId, @Param("entries") long entries,
+			@Param("comments") long comments, @Param("date") long date);
+			
+	//Ids of the next forums after 'afterId', locked until the end of the transaction
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select f.id from Forum f where f.id > :afterId order by f.id")
+	public List<Long> lockNextForums(@Param("afterId") long afterId, Pageable pageable);
+	
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select f.id from Forum f where f.id = :forumId")
+	public List<Long> lockForum(@Param("forumId") long forumId);
+	
+	//[forum id, entries, comments, date of the newest entry or comment] from the counters of the entries,
+	//for the forums with entries
+	@Query("select e.forumId, count(e), sum(e.commentCount), max(e.lastActivity) from Entry e "
+			+ "where e.forumId in :forumIds group by e.forumId")
+	public List<Object[]> sumEntryCounters(@Param("forumIds") Collection<Long> forumIds);
+	
+	@Modifying
+	@Query("update Forum f set f.entryCount = :entryCount, f.commentCount = :commentCount, f.lastActivity = :lastActivity "
+			+ "where f.id = :forumId")
+	public int setCounters(@Param("forumId") long forumId, @Param("entryCount") long entryCount,
+			@Param("commentCount") long commentCount, @Param("lastActivity") long lastActivity);
 
 }
@@ -0,0 +1,28 @@
+package com.fullteaching.backend.forum;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Random id of the database, written in every search index file (see
+ * ForumSearchService) and in the write-ahead log of comments (see
+ * ForumCommentLog). A database created again gets a new one, so files left by
+ * the old one are never used for a forum or an entry with the same id.
+ */
+@Entity
+public class ForumSearchDatabase {
+	
+	@Id
+	private String id;
+	
+	public ForumSearchDatabase() {}
+	
+	public ForumSearchDatabase(String id) {
+		this.id = id;
+	}
+	
+	public String getId() {
+		return id;
+	}
+	
+}
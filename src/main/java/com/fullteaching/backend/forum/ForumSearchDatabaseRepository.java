@@ -0,0 +1,10 @@
+package com.fullteaching.backend.forum;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ForumSearchDatabaseRepository extends JpaRepository<ForumSearchDatabase, String> {
+	
+	//Null until the first index is built
+	public ForumSearchDatabase findFirstByOrderByIdAsc();
+	
+}
@@ -0,0 +1,71 @@
+package com.fullteaching.backend.forum;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * An entry title or a comment message found by a search of the forum of a
+ * course (see ForumSearchService).
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ForumSearchHit {
+	
+	public enum Type {
+		ENTRY,
+		COMMENT
+	}
+	
+	private Type type;
+	
+	//Entry of the title, or of the thread of the comment
+	private long entryId;
+	
+	//Null for entry titles
+	private Long commentId;
+	
+	private String text;
+	
+	private long date;
+	
+	private String userNickName;
+	
+	private float score;
+	
+	public ForumSearchHit(Type type, long entryId, Long commentId, String text, long date, String userNickName, float score) {
+		this.type = type;
+		this.entryId = entryId;
+		this.commentId = commentId;
+		this.text = text;
+		this.date = date;
+		this.userNickName = userNickName;
+		this.score = score;
+	}
+	
+	public Type getType() {
+		return type;
+	}
+	
+	public long getEntryId() {
+		return entryId;
+	}
+	
+	public Long getCommentId() {
+		return commentId;
+	}
+	
+	public String getText() {
+		return text;
+	}
+	
+	public long getDate() {
+		return date;
+	}
+	
+	public String getUserNickName() {
+		return userNickName;
+	}
+	
+	public float getScore() {
+		return score;
+	}
+	
+}
@@ -0,0 +1,282 @@
+package com.fullteaching.backend.forum;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index of the entry titles and comment messages of the
+ * forum of one course. Documents are only added, and are numbered in the
+ * order they are added. The postings of each term are the delta-encoded
+ * numbers of its documents and the term frequencies, as variable-length
+ * integers, so each occurrence takes about two bytes.
+ *
+ * Searches rank documents with BM25, entry titles weighing more than
+ * comments. A document already in the index is not added again. Not
+ * thread-safe: see ForumSearchService.
+ */
+class ForumSearchIndex {
+	
+	static final byte ENTRY = 0;
+	static final byte COMMENT = 1;
+	
+	//BM25 parameters
+	private static final float K1 = 1.2f;
+	private static final float B = 0.75f;
+	
+	private static final float TITLE_BOOST = 2.0f;
+	
+	private static final int MIN_TERM_LENGTH = 2;
+	private static final int MAX_TERM_LENGTH = 40;
+	
+	private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+	private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+	
+	private final Map<String, Postings> postings = new HashMap<>();
+	
+	private byte[] types = new byte[64];
+	private long[] ids = new long[64];
+	private long[] entryIds = new long[64];
+	private int[] lengths = new int[64];
+	private int size;
+	private long totalLength;
+	
+	//Open addressing on (type, id): document number + 1 of each slot, 0 if empty
+	private int[] slots = new int[128];
+	
+	static class Hit {
+		
+		final byte type;
+		final long id;
+		final long entryId;
+		final float score;
+		final int doc;
+		
+		Hit(byte type, long id, long entryId, float score, int doc) {
+			this.type = type;
+			this.id = id;
+			this.entryId = entryId;
+			this.score = score;
+			this.doc = doc;
+		}
+	}
+	
+	// Lower case words without accents, so "Café" is found by "cafe"
+	static List<String> tokenize(String text) {
+		List<String> tokens = new ArrayList<>();
+		if (text == null) {
+			return tokens;
+		}
+		String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+		for (String token : SEPARATORS.split(folded)) {
+			if (token.length() >= MIN_TERM_LENGTH && token.length() <= MAX_TERM_LENGTH) {
+				tokens.add(token);
+			}
+		}
+		return tokens;
+	}
+	
+	static Map<String, Integer> termFrequencies(List<String> tokens) {
+		Map<String, Integer> terms = new LinkedHashMap<>();
+		for (String token : tokens) {
+			terms.merge(token, 1, Integer::sum);
+		}
+		return terms;
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	// Returns false if the document was already in the index
+	boolean add(byte type, long id, long entryId, int length, Map<String, Integer> terms) {
+		int slot = slot(type, id);
+		if (slots[slot] != 0) {
+			return false;
+		}
+		if (size == ids.length) {
+			int capacity = size * 2;
+			types = Arrays.copyOf(types, capacity);
+			ids = Arrays.copyOf(ids, capacity);
+			entryIds = Arrays.copyOf(entryIds, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+		}
+		int doc = size++;
+		slots[slot] = doc + 1;
+		types[doc] = type;
+		ids[doc] = id;
+		entryIds[doc] = entryId;
+		lengths[doc] = length;
+		totalLength += length;
+		for (Map.Entry<String, Integer> term : terms.entrySet()) {
+			postings.computeIfAbsent(term.getKey(), t -> new Postings()).add(doc, term.getValue());
+		}
+		//Never more than half full
+		if (size * 2 > slots.length) {
+			slots = new int[slots.length * 2];
+			for (int d = 0; d < size; d++) {
+				slots[slot(types[d], ids[d])] = d + 1;
+			}
+		}
+		return true;
+	}
+	
+	boolean contains(byte type, long id) {
+		return slots[slot(type, id)] != 0;
+	}
+	
+	// Slot of the document, or the empty slot where it would be
+	private int slot(byte type, long id) {
+		long key = id * 2 + type;
+		int mask = slots.length - 1;
+		int slot = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+		while (slots[slot] != 0 && (ids[slots[slot] - 1] != id || types[slots[slot] - 1] != type)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	/**
+	 * Best 'limit' documents with any of the terms, by descending score and
+	 * then by document number. Only documents after the given ones in that
+	 * order are returned (the first page is after Float.MAX_VALUE, -1).
+	 */
+	List<Hit> search(List<String> queryTerms, int limit, float afterScore, int afterDoc) {
+		if (size == 0) {
+			return new ArrayList<>();
+		}
+		float averageLength = Math.max(1f, (float) totalLength / size);
+		float[] scores = new float[size];
+		int[] touched = new int[16];
+		int touchedCount = 0;
+		for (String term : new LinkedHashSet<>(queryTerms)) {
+			Postings p = postings.get(term);
+			if (p == null) {
+				continue;
+			}
+			float idf = (float) Math.log(1 + (size - p.docFreq + 0.5) / (p.docFreq + 0.5));
+			int position = 0;
+			int doc = 0;
+			while (position < p.length) {
+				int value = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = p.data[position++];
+					value |= (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+				doc += value;
+				int tf = 0;
+				shift = 0;
+				do {
+					b = p.data[position++];
+					tf |= (b & 0x7F) << shift;
+					shift += 7;
+				} while (b < 0);
+				
+				float score = idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * lengths[doc] / averageLength));
+				if (types[doc] == ENTRY) {
+					score *= TITLE_BOOST;
+				}
+				if (scores[doc] == 0) {
+					if (touchedCount == touched.length) {
+						touched = Arrays.copyOf(touched, touchedCount * 2);
+					}
+					touched[touchedCount++] = doc;
+				}
+				scores[doc] += score;
+			}
+		}
+		
+		//Worst of the best documents on top
+		PriorityQueue<Integer> best = new PriorityQueue<>(limit + 1, (d1, d2) -> {
+			int byScore = Float.compare(scores[d1], scores[d2]);
+			return byScore != 0 ? byScore : Integer.compare(d2, d1);
+		});
+		for (int i = 0; i < touchedCount; i++) {
+			int doc = touched[i];
+			float score = scores[doc];
+			if (score > afterScore || (score == afterScore && doc <= afterDoc)) {
+				continue;
+			}
+			best.add(doc);
+			if (best.size() > limit) {
+				best.poll();
+			}
+		}
+		List<Hit> hits = new ArrayList<>();
+		while (!best.isEmpty()) {
+			int doc = best.poll();
+			hits.add(new Hit(types[doc], ids[doc], entryIds[doc], scores[doc], doc));
+		}
+		Collections.reverse(hits);
+		return hits;
+	}
+	
+	//One document as stored in the index file: what 'read' needs to add it again
+	static void write(DataOutput out, byte type, long id, long entryId, int length, Map<String, Integer> terms) throws IOException {
+		out.writeByte(type);
+		out.writeLong(id);
+		out.writeLong(entryId);
+		out.writeInt(length);
+		out.writeInt(terms.size());
+		for (Map.Entry<String, Integer> term : terms.entrySet()) {
+			out.writeUTF(term.getKey());
+			out.writeInt(term.getValue());
+		}
+	}
+	
+	// Adds the next document of the index file
+	boolean read(DataInput in) throws IOException {
+		byte type = in.readByte();
+		long id = in.readLong();
+		long entryId = in.readLong();
+		int length = in.readInt();
+		int termCount = in.readInt();
+		Map<String, Integer> terms = new HashMap<>();
+		for (int i = 0; i < termCount; i++) {
+			terms.put(in.readUTF(), in.readInt());
+		}
+		return add(type, id, entryId, length, terms);
+	}
+	
+	private static class Postings {
+		
+		private byte[] data = new byte[8];
+		private int length;
+		private int lastDoc;
+		private int docFreq;
+		
+		private void add(int doc, int tf) {
+			if (length + 10 > data.length) {
+				data = Arrays.copyOf(data, data.length * 2);
+			}
+			writeVarInt(doc - lastDoc);
+			writeVarInt(tf);
+			lastDoc = doc;
+			docFreq++;
+		}
+		
+		private void writeVarInt(int value) {
+			while ((value & ~0x7F) != 0) {
+				data[length++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			data[length++] = (byte) value;
+		}
+	}
+	
+}
@@ -0,0 +1,42 @@
+package com.fullteaching.backend.forum;
+
+import java.util.List;
+
+import com.fullteaching.backend.paging.Cursors;
+
+/**
+ * A page of the results of 'GET /api-courses/course/{id}/forum/search', best
+ * hits first.
+ */
+public class ForumSearchPage {
+	
+	private List<ForumSearchHit> hits;
+	
+	//Opaque value to pass as 'after' to get the next page (null if this is the last one)
+	private String nextCursor;
+	
+	public ForumSearchPage(List<ForumSearchHit> hits, String nextCursor) {
+		this.hits = hits;
+		this.nextCursor = nextCursor;
+	}
+	
+	public List<ForumSearchHit> getHits() {
+		return hits;
+	}
+	
+	public String getNextCursor() {
+		return nextCursor;
+	}
+	
+	//A cursor is the score (as its bits) and the document of the last hit of a page: "{score}:{doc}", Base64 encoded
+	public static String cursor(float score, int doc) {
+		return Cursors.encode(Float.floatToIntBits(score), doc);
+	}
+	
+	// Returns [score bits, doc] of the cursor, or throws IllegalArgumentException if it is not valid
+	public static int[] parseCursor(String cursor) {
+		String[] parts = Cursors.decode(cursor, 2);
+		return new int[] { Integer.parseInt(parts[0]), Integer.parseInt(parts[1]) };
+	}
+	
+}
@@ -0,0 +1,392 @@
+package com.fullteaching.backend.forum;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import com.fullteaching.backend.comment.Comment;
+import com.fullteaching.backend.comment.CommentRepository;
+import com.fullteaching.backend.entry.Entry;
+import com.fullteaching.backend.entry.EntryRepository;
+
+/**
+ * Full-text search over the entry titles and comment messages of the forum of
+ * each course. The index of a course (see ForumSearchIndex) is built from the
+ * database the first time the course is searched, and kept in memory and in a
+ * file of 'forum.search.index-dir'. Entries and comments are added to it once
+ * they are committed, and appended to its file, so it is only built again if
+ * the file is lost or does not match the counters of the forum.
+ *
+ * Every file starts with the id of the database and of the forum it was built
+ * from, so files outliving their database (or their course, if they are not
+ * deleted with it) are built again instead of answering for another forum.
+ */
+@Service
+public class ForumSearchService {
+	
+	private static final Logger log = LoggerFactory.getLogger(ForumSearchService.class);
+	
+	//First bytes of every index file ("FTS2")
+	private static final int MAGIC = 0x46545332;
+	
+	@Autowired
+	private EntryRepository entryRepository;
+	
+	@Autowired
+	private CommentRepository commentRepository;
+	
+	@Autowired
+	private ForumSearchDatabaseRepository databaseRepository;
+	
+	@Value("${forum.search.index-dir:${java.io.tmpdir}/fullteaching-search}")
+	private String indexDir;
+	
+	@Value("${forum.search.rebuild-chunk-size:500}")
+	private int chunkSize;
+	
+	private final Map<Long, CourseIndex> indexes = new ConcurrentHashMap<>();
+	
+	//See ForumSearchDatabase
+	private volatile String databaseId;
+	
+	private static class CourseIndex {
+		
+		private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		
+		//Null until the course is searched
+		private ForumSearchIndex index;
+	}
+	
+	private static class Document {
+		
+		private final byte type;
+		private final long id;
+		private final long entryId;
+		private final int length;
+		private final Map<String, Integer> terms;
+		
+		private Document(byte type, long id, long entryId, String text) {
+			List<String> tokens = ForumSearchIndex.tokenize(text);
+			this.type = type;
+			this.id = id;
+			this.entryId = entryId;
+			this.length = tokens.size();
+			this.terms = ForumSearchIndex.termFrequencies(tokens);
+		}
+	}
+	
+	//A new entry, with the comments it was posted with
+	public void indexEntry(long courseId, Entry entry) {
+		List<Document> documents = new ArrayList<>();
+		documents.add(new Document(ForumSearchIndex.ENTRY, entry.getId(), entry.getId(), entry.getTitle()));
+		if (entry.getComments() != null) {
+			for (Comment comment : entry.getComments()) {
+				addThread(documents, entry.getId(), comment);
+			}
+		}
+		this.add(courseId, documents);
+	}
+	
+	public void indexComment(long courseId, long entryId, Comment comment) {
+		List<Document> documents = new ArrayList<>();
+		addThread(documents, entryId, comment);
+		this.add(courseId, documents);
+	}
+	
+	private static void addThread(List<Document> documents, long entryId, Comment comment) {
+		documents.add(new Document(ForumSearchIndex.COMMENT, comment.getId(), entryId, comment.getMessage()));
+		if (comment.getReplies() != null) {
+			for (Comment reply : comment.getReplies()) {
+				addThread(documents, entryId, reply);
+			}
+		}
+	}
+	
+	private void add(long courseId, List<Document> documents) {
+		CourseIndex course = indexes.computeIfAbsent(courseId, c -> new CourseIndex());
+		Path file = file(courseId);
+		course.lock.writeLock().lock();
+		try {
+			if (course.index != null) {
+				documents.removeIf(d -> !course.index.add(d.type, d.id, d.entryId, d.length, d.terms));
+			}
+			//Without a file the index is built from the database when the course is searched
+			if (documents.isEmpty() || !Files.exists(file)) {
+				return;
+			}
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND)))) {
+				for (Document d : documents) {
+					ForumSearchIndex.write(out, d.type, d.id, d.entryId, d.length, d.terms);
+				}
+			} catch (IOException e) {
+				log.warn("Search index of course {} could not be written: {}", courseId, e.getMessage());
+				deleteQuietly(file);
+			}
+		} finally {
+			course.lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Page of the best hits of the query in the forum of the course, after the
+	 * hit of 'after' (the [score bits, doc] of ForumSearchPage.parseCursor, or
+	 * null for the first page).
+	 */
+	public ForumSearchPage search(long courseId, Forum forum, String query, int[] after, int size) {
+		List<String> terms = ForumSearchIndex.tokenize(query);
+		if (terms.isEmpty()) {
+			return new ForumSearchPage(new ArrayList<>(), null);
+		}
+		float afterScore = (after != null) ? Float.intBitsToFloat(after[0]) : Float.MAX_VALUE;
+		int afterDoc = (after != null) ? after[1] : -1;
+		
+		CourseIndex course = load(courseId, forum);
+		List<ForumSearchIndex.Hit> hits;
+		course.lock.readLock().lock();
+		try {
+			//One extra hit is requested to know if there is a next page
+			hits = course.index.search(terms, size + 1, afterScore, afterDoc);
+		} finally {
+			course.lock.readLock().unlock();
+		}
+		String nextCursor = null;
+		if (hits.size() > size) {
+			hits = hits.subList(0, size);
+			ForumSearchIndex.Hit last = hits.get(size - 1);
+			nextCursor = ForumSearchPage.cursor(last.score, last.doc);
+		}
+		return new ForumSearchPage(hydrate(hits), nextCursor);
+	}
+	
+	private CourseIndex load(long courseId, Forum forum) {
+		CourseIndex course = indexes.computeIfAbsent(courseId, c -> new CourseIndex());
+		course.lock.readLock().lock();
+		try {
+			if (course.index != null) {
+				return course;
+			}
+		} finally {
+			course.lock.readLock().unlock();
+		}
+		course.lock.writeLock().lock();
+		try {
+			if (course.index == null) {
+				ForumSearchIndex index = read(courseId, forum.getId());
+				long documents = forum.getEntryCount() + forum.getCommentCount();
+				if (index == null || index.size() != documents) {
+					index = rebuild(courseId, forum.getId());
+				}
+				course.index = index;
+			}
+			return course;
+		} finally {
+			course.lock.writeLock().unlock();
+		}
+	}
+	
+	//Of a deleted course
+	public void deleteIndex(long courseId) {
+		CourseIndex course = indexes.remove(courseId);
+		if (course != null) {
+			course.lock.writeLock().lock();
+		}
+		try {
+			deleteQuietly(file(courseId));
+		} finally {
+			if (course != null) {
+				course.lock.writeLock().unlock();
+			}
+		}
+	}
+	
+	// Index in the file of the course, or null if there is none, it cannot be read or it belongs to another forum
+	private ForumSearchIndex read(long courseId, long forumId) {
+		Path file = file(courseId);
+		if (!Files.exists(file)) {
+			return null;
+		}
+		ForumSearchIndex index = new ForumSearchIndex();
+		try (BufferedInputStream buffer = new BufferedInputStream(Files.newInputStream(file))) {
+			DataInputStream in = new DataInputStream(buffer);
+			if (in.readInt() != MAGIC) {
+				log.warn("Search index of course {} is not valid", courseId);
+				return null;
+			}
+			if (!in.readUTF().equals(getDatabaseId()) || in.readLong() != forumId) {
+				log.warn("Search index of course {} was built from another database or forum", courseId);
+				return null;
+			}
+			while (true) {
+				buffer.mark(1);
+				if (buffer.read() < 0) {
+					break;
+				}
+				buffer.reset();
+				index.read(in);
+			}
+			return index;
+		} catch (EOFException e) {
+			//Last document partially written
+			log.warn("Search index of course {} is truncated", courseId);
+			return null;
+		} catch (IOException e) {
+			log.warn("Search index of course {} could not be read: {}", courseId, e.getMessage());
+			return null;
+		}
+	}
+	
+	// Index of all the entries and comments of the forum, in chunks of entries. Written to a new file
+	private ForumSearchIndex rebuild(long courseId, long forumId) {
+		log.info("Building the search index of course {}", courseId);
+		ForumSearchIndex index = new ForumSearchIndex();
+		Path file = file(courseId);
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			Files.createDirectories(file.getParent());
+			out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)));
+			out.writeInt(MAGIC);
+			out.writeUTF(getDatabaseId());
+			out.writeLong(forumId);
+		} catch (IOException e) {
+			log.warn("Search index of course {} could not be written: {}", courseId, e.getMessage());
+			out = null;
+		}
+		
+		long afterId = Long.MIN_VALUE;
+		List<Object[]> entries;
+		do {
+			entries = entryRepository.findNextTitlesOfForum(forumId, afterId, PageRequest.of(0, chunkSize));
+			if (entries.isEmpty()) {
+				break;
+			}
+			List<Long> ids = new ArrayList<>();
+			for (Object[] row : entries) {
+				long id = ((Number) row[0]).longValue();
+				ids.add(id);
+				out = add(index, out, new Document(ForumSearchIndex.ENTRY, id, id, (String) row[1]));
+			}
+			for (Object[] row : commentRepository.findMessagesOfEntries(ids)) {
+				long entryId = ((Number) row[0]).longValue();
+				out = add(index, out, new Document(ForumSearchIndex.COMMENT, ((Number) row[1]).longValue(), entryId, (String) row[2]));
+			}
+			afterId = ids.get(ids.size() - 1);
+		} while (entries.size() == chunkSize);
+		
+		if (out != null) {
+			try {
+				out.close();
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				log.warn("Search index of course {} could not be written: {}", courseId, e.getMessage());
+				deleteQuietly(temp);
+			}
+		}
+		log.info("Search index of course {} built with {} documents", courseId, index.size());
+		return index;
+	}
+	
+	// Returns the stream to keep writing to, or null if it failed
+	private DataOutputStream add(ForumSearchIndex index, DataOutputStream out, Document d) {
+		if (!index.add(d.type, d.id, d.entryId, d.length, d.terms) || out == null) {
+			return out;
+		}
+		try {
+			ForumSearchIndex.write(out, d.type, d.id, d.entryId, d.length, d.terms);
+			return out;
+		} catch (IOException e) {
+			log.warn("Search index file could not be written: {}", e.getMessage());
+			try {
+				out.close();
+			} catch (IOException ignored) {
+				//Already failed
+			}
+			return null;
+		}
+	}
+	
+	// The text, date and author of each hit, in the order of the hits. Hits no longer in the database are skipped
+	private List<ForumSearchHit> hydrate(List<ForumSearchIndex.Hit> hits) {
+		List<Long> entryIds = new ArrayList<>();
+		List<Long> commentIds = new ArrayList<>();
+		for (ForumSearchIndex.Hit hit : hits) {
+			(hit.type == ForumSearchIndex.ENTRY ? entryIds : commentIds).add(hit.id);
+		}
+		Map<Long, Object[]> entries = new HashMap<>();
+		if (!entryIds.isEmpty()) {
+			for (Object[] row : entryRepository.findSearchRows(entryIds)) {
+				entries.put(((Number) row[0]).longValue(), row);
+			}
+		}
+		Map<Long, Object[]> comments = new HashMap<>();
+		if (!commentIds.isEmpty()) {
+			for (Object[] row : commentRepository.findSearchRows(commentIds)) {
+				comments.put(((Number) row[0]).longValue(), row);
+			}
+		}
+		
+		List<ForumSearchHit> results = new ArrayList<>();
+		for (ForumSearchIndex.Hit hit : hits) {
+			boolean isEntry = hit.type == ForumSearchIndex.ENTRY;
+			Object[] row = isEntry ? entries.get(hit.id) : comments.get(hit.id);
+			if (row != null) {
+				results.add(new ForumSearchHit(isEntry ? ForumSearchHit.Type.ENTRY : ForumSearchHit.Type.COMMENT,
+						hit.entryId, isEntry ? null : hit.id, (String) row[1], ((Number) row[2]).longValue(), (String) row[3], hit.score));
+			}
+		}
+		return results;
+	}
+	
+	// See ForumSearchDatabase. Created by the first instance that asks for it
+	public String getDatabaseId() {
+		if (databaseId == null) {
+			synchronized (this) {
+				if (databaseId == null) {
+					ForumSearchDatabase database = databaseRepository.findFirstByOrderByIdAsc();
+					if (database == null) {
+						databaseRepository.save(new ForumSearchDatabase(UUID.randomUUID().toString()));
+						//Other instances may have saved theirs at the same time: all of them use the first one
+						database = databaseRepository.findFirstByOrderByIdAsc();
+					}
+					databaseId = database.getId();
+				}
+			}
+		}
+		return databaseId;
+	}
+	
+	private Path file(long courseId) {
+		return Paths.get(indexDir, "forum-" + courseId + ".idx");
+	}
+	
+	private static void deleteQuietly(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			log.warn("{} could not be deleted: {}", file, e.getMessage());
+		}
+	}
+	
+}
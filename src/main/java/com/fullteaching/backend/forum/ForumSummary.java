@@ -0,0 +1,19 @@
+package com.fullteaching.backend.forum;
+
+/**
+ * Read-only projection of the scalar fields of a Forum, loaded without its
+ * entries.
+ */
+public interface ForumSummary {
+	
+	long getId();
+	
+	boolean isActivated();
+	
+	long getEntryCount();
+	
+	long getCommentCount();
+	
+	long getLastActivity();
+	
+}
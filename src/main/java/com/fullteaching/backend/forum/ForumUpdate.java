@@ -0,0 +1,109 @@
+package com.fullteaching.backend.forum;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fullteaching.backend.comment.CommentNode;
+import com.fullteaching.backend.entry.EntrySummary;
+
+/**
+ * A message pushed to the subscribers of the forum of a course (see
+ * ForumUpdatesService). Every new entry or comment gets the next 'seq' of its
+ * course, which clients send back as 'lastSeen' when they reconnect.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ForumUpdate {
+	
+	public enum Type {
+		//First message of a subscription with nothing to replay: 'seq' is the current one
+		HELLO,
+		ENTRY,
+		COMMENT,
+		//Updates missed by the subscriber, all in one message
+		BATCH,
+		//Updates were missed and are no longer available: the forum must be fetched again
+		RESET
+	}
+	
+	private Type type;
+	
+	private long seq;
+	
+	private Long entryId;
+	
+	//Parent of a new reply (null for root comments)
+	private Long parentId;
+	
+	private EntrySummary entry;
+	
+	private CommentNode comment;
+	
+	private List<ForumUpdate> updates;
+	
+	private ForumUpdate(Type type, long seq) {
+		this.type = type;
+		this.seq = seq;
+	}
+	
+	public static ForumUpdate hello(long seq) {
+		return new ForumUpdate(Type.HELLO, seq);
+	}
+	
+	public static ForumUpdate reset(long seq) {
+		return new ForumUpdate(Type.RESET, seq);
+	}
+	
+	public static ForumUpdate batch(long seq, List<ForumUpdate> updates) {
+		ForumUpdate update = new ForumUpdate(Type.BATCH, seq);
+		update.updates = updates;
+		return update;
+	}
+	
+	public static ForumUpdate entry(EntrySummary entry) {
+		ForumUpdate update = new ForumUpdate(Type.ENTRY, 0);
+		update.entryId = entry.getId();
+		update.entry = entry;
+		return update;
+	}
+	
+	public static ForumUpdate comment(long entryId, Long parentId, CommentNode comment) {
+		ForumUpdate update = new ForumUpdate(Type.COMMENT, 0);
+		update.entryId = entryId;
+		update.parentId = parentId;
+		update.comment = comment;
+		return update;
+	}
+	
+	public Type getType() {
+		return type;
+	}
+	
+	public long getSeq() {
+		return seq;
+	}
+	
+	void setSeq(long seq) {
+		this.seq = seq;
+	}
+	
+	public Long getEntryId() {
+		return entryId;
+	}
+	
+	public Long getParentId() {
+		return parentId;
+	}
+	
+	public EntrySummary getEntry() {
+		return entry;
+	}
+	
+	public CommentNode getComment() {
+		return comment;
+	}
+	
+	public List<ForumUpdate> getUpdates() {
+		return updates;
+	}
+	
+}
@@ -0,0 +1,38 @@
+package com.fullteaching.backend.forum;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+/**
+ * WebSocket endpoint of the forum updates of a course. Clients only receive:
+ * the course and the last update they have seen are given in the handshake
+ * (see ForumUpdatesHandshakeInterceptor).
+ */
+@Component
+public class ForumUpdatesHandler extends TextWebSocketHandler {
+	
+	private static final Logger log = LoggerFactory.getLogger(ForumUpdatesHandler.class);
+	
+	@Autowired
+	private ForumUpdatesService forumUpdatesService;
+	
+	@Override
+	public void afterConnectionEstablished(WebSocketSession session) {
+		long courseId = (Long) session.getAttributes().get(ForumUpdatesHandshakeInterceptor.COURSE_ID);
+		Long lastSeen = (Long) session.getAttributes().get(ForumUpdatesHandshakeInterceptor.LAST_SEEN);
+		log.info("WebSocket session {} subscribed to the forum of course {}", session.getId(), courseId);
+		forumUpdatesService.subscribe(courseId, session, lastSeen);
+	}
+	
+	@Override
+	public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+		long courseId = (Long) session.getAttributes().get(ForumUpdatesHandshakeInterceptor.COURSE_ID);
+		forumUpdatesService.unsubscribe(courseId, session);
+	}
+	
+}
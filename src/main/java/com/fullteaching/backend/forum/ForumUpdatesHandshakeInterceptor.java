@@ -0,0 +1,86 @@
+package com.fullteaching.backend.forum;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fullteaching.backend.course.CourseRepository;
+import com.fullteaching.backend.user.User;
+import com.fullteaching.backend.user.UserRepository;
+
+/**
+ * Only attenders of a course can subscribe to the updates of its forum:
+ * 'ws(s)://.../forum-updates?courseId={id}&lastSeen={seq}', with the same
+ * credentials as the REST API. 'lastSeen' is optional.
+ */
+@Component
+public class ForumUpdatesHandshakeInterceptor implements HandshakeInterceptor {
+	
+	private static final Logger log = LoggerFactory.getLogger(ForumUpdatesHandshakeInterceptor.class);
+	
+	static final String COURSE_ID = "courseId";
+	static final String LAST_SEEN = "lastSeen";
+	
+	@Autowired
+	private UserRepository userRepository;
+	
+	@Autowired
+	private CourseRepository courseRepository;
+	
+	@Override
+	public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler,
+			Map<String, Object> attributes) {
+				
+		Principal principal = request.getPrincipal();
+		User user = (principal != null) ? userRepository.findByName(principal.getName()) : null;
+		if (user == null) {
+			log.error("Not user logged");
+			response.setStatusCode(HttpStatus.UNAUTHORIZED);
+			return false;
+		}
+		
+		MultiValueMap<String, String> params = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams();
+		String courseId = params.getFirst(COURSE_ID);
+		String lastSeen = params.getFirst(LAST_SEEN);
+		long id_course = -1;
+		Long seq = null;
+		try {
+			id_course = Long.parseLong(courseId);
+			seq = (lastSeen != null) ? Long.valueOf(lastSeen) : null;
+		} catch(NumberFormatException e) {
+			log.error("Course ID '{}' or last seen update '{}' are not of type Long", courseId, lastSeen);
+			response.setStatusCode(HttpStatus.BAD_REQUEST);
+			return false;
+		}
+		
+		if (courseRepository.findAttenderIdsIn(id_course, Collections.singletonList(user.getId())).isEmpty()) {
+			log.error("User {} is not an attender of course {}", user.getId(), id_course);
+			response.setStatusCode(HttpStatus.UNAUTHORIZED);
+			return false;
+		}
+		
+		attributes.put(COURSE_ID, id_course);
+		if (seq != null) {
+			attributes.put(LAST_SEEN, seq);
+		}
+		return true;
+	}
+	
+	@Override
+	public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler,
+			Exception exception) {
+	}
+	
+}
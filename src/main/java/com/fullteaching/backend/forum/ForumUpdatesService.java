@@ -0,0 +1,276 @@
+package com.fullteaching.backend.forum;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fullteaching.backend.comment.Comment;
+import com.fullteaching.backend.comment.CommentNode;
+import com.fullteaching.backend.entry.Entry;
+import com.fullteaching.backend.entry.EntrySummary;
+import com.fullteaching.backend.user.User;
+
+/**
+ * Pushes the new entries and comments of the forum of a course to the
+ * WebSocket sessions subscribed to it (see ForumUpdatesHandler).
+ *
+ * Publishing never blocks: each subscriber has a bounded queue, sent one
+ * message at a time with the asynchronous API of the session, so a slow
+ * client never holds a thread. A client that has not read a message after
+ * 'send-timeout-ms' is disconnected. When the queue of a subscriber is full,
+ * the following updates are not queued, and once the queue is drained they
+ * are sent all together in one BATCH message. The last updates of each course
+ * are kept while it has subscribers, so a client reconnecting with the 'seq'
+ * of the last update it has seen only receives what it missed, or a RESET if
+ * that is no longer available.
+ */
+@Service
+public class ForumUpdatesService {
+	
+	private static final Logger log = LoggerFactory.getLogger(ForumUpdatesService.class);
+	
+	@Autowired
+	private ObjectMapper objectMapper;
+	
+	@Value("${forum.updates.queue-capacity:64}")
+	private int queueCapacity;
+	
+	@Value("${forum.updates.history-size:256}")
+	private int historySize;
+	
+	@Value("${forum.updates.send-timeout-ms:10000}")
+	private long sendTimeoutMs;
+	
+	//Only courses with subscribers
+	private final Map<Long, Channel> channels = new ConcurrentHashMap<>();
+	
+	public void publishEntry(long courseId, Entry entry) {
+		User author = entry.getUser();
+		EntrySummary summary = new EntrySummary(entry.getId(), entry.getTitle(), entry.getDate(),
+				author != null ? author.getNickName() : null, author != null ? author.getPicture() : null,
+				entry.getCommentCount(), entry.getLastActivity());
+		publish(courseId, ForumUpdate.entry(summary));
+	}
+	
+	public void publishComment(long courseId, long entryId, Long parentId, Comment comment) {
+		User author = comment.getUser();
+		CommentNode node = new CommentNode(comment.getId(), comment.getMessage(), comment.getDate(),
+				author != null ? author.getId() : null, author != null ? author.getNickName() : null,
+				author != null ? author.getPicture() : null, 0);
+		publish(courseId, ForumUpdate.comment(entryId, parentId, node));
+	}
+	
+	/**
+	 * Subscribes the session to the updates of the course. If 'lastSeen' is
+	 * not null, the updates published after it are sent first.
+	 */
+	public void subscribe(long courseId, WebSocketSession session, Long lastSeen) {
+		Subscriber subscriber = new Subscriber(courseId, session, asyncRemote(session));
+		//Atomic with the removal of the channel when its last subscriber leaves
+		Channel channel = channels.compute(courseId, (id, existing) -> {
+			Channel c = (existing != null) ? existing : new Channel();
+			synchronized (c) {
+				ForumUpdate first = (lastSeen != null) ? c.since(lastSeen) : null;
+				subscriber.queue.add(toJson(first != null ? first : ForumUpdate.hello(c.seq)));
+				subscriber.sending = true;
+				c.subscribers.put(session.getId(), subscriber);
+			}
+			return c;
+		});
+		drain(channel, subscriber);
+	}
+	
+	public void unsubscribe(long courseId, WebSocketSession session) {
+		remove(courseId, session.getId());
+	}
+	
+	public int getSubscriberCount(long courseId) {
+		Channel channel = channels.get(courseId);
+		if (channel == null) {
+			return 0;
+		}
+		synchronized (channel) {
+			return channel.subscribers.size();
+		}
+	}
+	
+	private void publish(long courseId, ForumUpdate update) {
+		Channel channel = channels.get(courseId);
+		if (channel == null) {
+			return;
+		}
+		//Sent once the channel is released: a send may complete (or fail) right away
+		List<Subscriber> idle = new ArrayList<>();
+		synchronized (channel) {
+			update.setSeq(++channel.seq);
+			channel.history.addLast(update);
+			if (channel.history.size() > historySize) {
+				channel.history.removeFirst();
+			}
+			String message = toJson(update);
+			for (Subscriber subscriber : channel.subscribers.values()) {
+				if (subscriber.behind) {
+					continue;
+				}
+				if (subscriber.queue.size() >= queueCapacity) {
+					//From now on the subscriber catches up from the history once its queue is drained
+					subscriber.behind = true;
+					subscriber.behindSince = update.getSeq() - 1;
+					continue;
+				}
+				subscriber.queue.add(message);
+				if (!subscriber.sending) {
+					subscriber.sending = true;
+					idle.add(subscriber);
+				}
+			}
+		}
+		for (Subscriber subscriber : idle) {
+			drain(channel, subscriber);
+		}
+	}
+	
+	// Sends the next message of the subscriber, and the following one once it is sent
+	private void drain(Channel channel, Subscriber subscriber) {
+		String message;
+		synchronized (channel) {
+			//Unsubscribed while its last message was being sent
+			if (channel.subscribers.get(subscriber.session.getId()) != subscriber) {
+				subscriber.sending = false;
+				return;
+			}
+			message = subscriber.queue.poll();
+			if (message == null && subscriber.behind) {
+				subscriber.behind = false;
+				ForumUpdate missed = channel.since(subscriber.behindSince);
+				message = (missed != null) ? toJson(missed) : null;
+			}
+			if (message == null) {
+				subscriber.sending = false;
+				return;
+			}
+		}
+		try {
+			subscriber.remote.sendText(message, result -> {
+				if (result.isOK()) {
+					drain(channel, subscriber);
+				} else {
+					failed(subscriber, result.getException());
+				}
+			});
+		} catch (RuntimeException e) {
+			failed(subscriber, e);
+		}
+	}
+	
+	// Also when the client does not read: the send times out
+	private void failed(Subscriber subscriber, Throwable e) {
+		log.warn("Forum updates could not be sent to WebSocket session {}: {}", subscriber.session.getId(),
+				e != null ? e.getMessage() : null);
+		remove(subscriber.courseId, subscriber.session.getId());
+		try {
+			subscriber.session.close(CloseStatus.SESSION_NOT_RELIABLE);
+		} catch (IOException ignored) {
+			//The session is already unusable
+		}
+	}
+	
+	private void remove(long courseId, String sessionId) {
+		channels.computeIfPresent(courseId, (id, channel) -> {
+			synchronized (channel) {
+				channel.subscribers.remove(sessionId);
+				return channel.subscribers.isEmpty() ? null : channel;
+			}
+		});
+	}
+	
+	private RemoteEndpoint.Async asyncRemote(WebSocketSession session) {
+		Session nativeSession = (session instanceof NativeWebSocketSession)
+				? ((NativeWebSocketSession) session).getNativeSession(Session.class) : null;
+		if (nativeSession == null) {
+			throw new IllegalStateException("WebSocket session " + session.getId() + " does not support asynchronous sends");
+		}
+		RemoteEndpoint.Async remote = nativeSession.getAsyncRemote();
+		remote.setSendTimeout(sendTimeoutMs);
+		return remote;
+	}
+	
+	private String toJson(ForumUpdate update) {
+		try {
+			return objectMapper.writeValueAsString(update);
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("Forum update could not be serialized", e);
+		}
+	}
+	
+	private static class Channel {
+		
+		//Seeded with the current time so that the 'seq' seen before a restart is never reused after it
+		private long seq = System.currentTimeMillis() * 1000;
+		
+		private final ArrayDeque<ForumUpdate> history = new ArrayDeque<>();
+		
+		private final Map<String, Subscriber> subscribers = new LinkedHashMap<>();
+		
+		// Updates published after 'lastSeen': null if there are none, RESET if some are no longer kept
+		private ForumUpdate since(long lastSeen) {
+			if (lastSeen == seq) {
+				return null;
+			}
+			if (lastSeen > seq || history.isEmpty() || lastSeen < history.getFirst().getSeq() - 1) {
+				return ForumUpdate.reset(seq);
+			}
+			List<ForumUpdate> missed = new ArrayList<>();
+			for (ForumUpdate update : history) {
+				if (update.getSeq() > lastSeen) {
+					missed.add(update);
+				}
+			}
+			return ForumUpdate.batch(seq, missed);
+		}
+	}
+	
+	private static class Subscriber {
+		
+		private final long courseId;
+		
+		private final WebSocketSession session;
+		
+		private final RemoteEndpoint.Async remote;
+		
+		private final ArrayDeque<String> queue = new ArrayDeque<>();
+		
+		//Whether a message of this subscriber is being sent
+		private boolean sending;
+		
+		//Whether updates after 'behindSince' were skipped because the queue was full
+		private boolean behind;
+		
+		private long behindSince;
+		
+		private Subscriber(long courseId, WebSocketSession session, RemoteEndpoint.Async remote) {
+			this.courseId = courseId;
+			this.session = session;
+			this.remote = remote;
+		}
+	}
+	
+}
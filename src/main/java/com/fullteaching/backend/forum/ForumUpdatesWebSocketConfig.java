@@ -0,0 +1,22 @@
+package com.fullteaching.backend.forum;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+@Configuration
+public class ForumUpdatesWebSocketConfig implements WebSocketConfigurer {
+	
+	@Autowired
+	private ForumUpdatesHandler forumUpdatesHandler;
+	
+	@Autowired
+	private ForumUpdatesHandshakeInterceptor forumUpdatesHandshakeInterceptor;
+	
+	@Override
+	public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+		registry.addHandler(forumUpdatesHandler, "/forum-updates").addInterceptors(forumUpdatesHandshakeInterceptor);
+	}
+	
+}
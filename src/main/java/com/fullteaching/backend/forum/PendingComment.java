@@ -0,0 +1,61 @@
+package com.fullteaching.backend.forum;
+
+import com.fullteaching.backend.comment.Comment;
+
+/**
+ * A comment acknowledged in write-behind mode (see CommentWriteBehindService):
+ * it already has its id and is in the write-ahead log, but may not be saved
+ * to the database yet.
+ */
+public class PendingComment {
+	
+	private final long courseId;
+	
+	private final long forumId;
+	
+	private final long entryId;
+	
+	//Null for root comments
+	private final Long parentId;
+	
+	private final long userId;
+	
+	private final Comment comment;
+	
+	//Position in the write-ahead log since the application started
+	long seq;
+	
+	public PendingComment(long courseId, long forumId, long entryId, Long parentId, long userId, Comment comment) {
+		this.courseId = courseId;
+		this.forumId = forumId;
+		this.entryId = entryId;
+		this.parentId = parentId;
+		this.userId = userId;
+		this.comment = comment;
+	}
+	
+	public long getCourseId() {
+		return courseId;
+	}
+	
+	public long getForumId() {
+		return forumId;
+	}
+	
+	public long getEntryId() {
+		return entryId;
+	}
+	
+	public Long getParentId() {
+		return parentId;
+	}
+	
+	public long getUserId() {
+		return userId;
+	}
+	
+	public Comment getComment() {
+		return comment;
+	}
+	
+}
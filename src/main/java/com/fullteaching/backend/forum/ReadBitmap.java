@@ -0,0 +1,244 @@
+package com.fullteaching.backend.forum;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Compressed set of ids in the style of Roaring bitmaps. Ids are grouped by
+ * their high bits (id >>> 16), and each group keeps the low 16 bits of its
+ * ids in a sorted array while it has up to 4096 of them (2 bytes per id), or
+ * in a bitmap of 65536 bits (8 KB) once it has more. Both kinds answer
+ * 'contains' without decoding anything.
+ *
+ * The serialized form stores the arrays as variable-length deltas, so ids
+ * close to each other take about one byte each. Not thread-safe.
+ */
+class ReadBitmap {
+	
+	private static final byte VERSION = 1;
+	
+	private static final byte ARRAY = 0;
+	private static final byte BITMAP = 1;
+	
+	//Largest array container: beyond it a bitmap container is smaller
+	private static final int MAX_ARRAY_SIZE = 4096;
+	
+	private long[] keys = new long[4];
+	private Container[] containers = new Container[4];
+	private int size;
+	private long cardinality;
+	
+	private abstract static class Container {
+		
+		int cardinality;
+		
+		// Returns the container holding the value: this one or a bigger one
+		abstract Container add(char low);
+		
+		abstract boolean contains(char low);
+	}
+	
+	private static class ArrayContainer extends Container {
+		
+		private char[] values;
+		
+		private ArrayContainer(int capacity) {
+			this.values = new char[capacity];
+		}
+		
+		@Override
+		Container add(char low) {
+			int i = Arrays.binarySearch(values, 0, cardinality, low);
+			if (i >= 0) {
+				return this;
+			}
+			if (cardinality == MAX_ARRAY_SIZE) {
+				BitmapContainer bitmap = new BitmapContainer();
+				for (int v = 0; v < cardinality; v++) {
+					bitmap.add(values[v]);
+				}
+				return bitmap.add(low);
+			}
+			i = -i - 1;
+			if (cardinality == values.length) {
+				values = Arrays.copyOf(values, Math.min(MAX_ARRAY_SIZE, Math.max(4, cardinality * 2)));
+			}
+			System.arraycopy(values, i, values, i + 1, cardinality - i);
+			values[i] = low;
+			cardinality++;
+			return this;
+		}
+		
+		@Override
+		boolean contains(char low) {
+			return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+		}
+	}
+	
+	private static class BitmapContainer extends Container {
+		
+		private final long[] words = new long[1024];
+		
+		@Override
+		Container add(char low) {
+			long bit = 1L << low;
+			if ((words[low >>> 6] & bit) == 0) {
+				words[low >>> 6] |= bit;
+				cardinality++;
+			}
+			return this;
+		}
+		
+		@Override
+		boolean contains(char low) {
+			return (words[low >>> 6] & (1L << low)) != 0;
+		}
+	}
+	
+	long cardinality() {
+		return cardinality;
+	}
+	
+	// Returns false if the id was already in the set
+	boolean add(long id) {
+		if (id < 0) {
+			throw new IllegalArgumentException("Negative id " + id);
+		}
+		long key = id >>> 16;
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		if (i < 0) {
+			i = -i - 1;
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				containers = Arrays.copyOf(containers, size * 2);
+			}
+			System.arraycopy(keys, i, keys, i + 1, size - i);
+			System.arraycopy(containers, i, containers, i + 1, size - i);
+			keys[i] = key;
+			containers[i] = new ArrayContainer(4);
+			size++;
+		}
+		Container container = containers[i];
+		int before = container.cardinality;
+		containers[i] = container.add((char) id);
+		if (containers[i].cardinality == before) {
+			return false;
+		}
+		cardinality++;
+		return true;
+	}
+	
+	boolean contains(long id) {
+		if (id < 0) {
+			return false;
+		}
+		int i = Arrays.binarySearch(keys, 0, size, id >>> 16);
+		return i >= 0 && containers[i].contains((char) id);
+	}
+	
+	/*
+	 * Version, number of containers and then each container: its key (as a
+	 * delta from the previous one), its kind and its values. Arrays are their
+	 * cardinality and the deltas of their values, bitmaps their 1024 words.
+	 */
+	byte[] toBytes() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(VERSION);
+		writeVarLong(out, size);
+		long previousKey = 0;
+		for (int i = 0; i < size; i++) {
+			writeVarLong(out, keys[i] - previousKey);
+			previousKey = keys[i];
+			if (containers[i] instanceof ArrayContainer) {
+				ArrayContainer array = (ArrayContainer) containers[i];
+				out.write(ARRAY);
+				writeVarLong(out, array.cardinality);
+				int previous = 0;
+				for (int v = 0; v < array.cardinality; v++) {
+					writeVarLong(out, array.values[v] - previous);
+					previous = array.values[v];
+				}
+			} else {
+				out.write(BITMAP);
+				for (long word : ((BitmapContainer) containers[i]).words) {
+					for (int b = 0; b < 8; b++) {
+						out.write((int) (word >>> (8 * b)));
+					}
+				}
+			}
+		}
+		return out.toByteArray();
+	}
+	
+	// Empty set for null. Throws IllegalArgumentException if the bytes are not a serialized set
+	static ReadBitmap fromBytes(byte[] bytes) {
+		ReadBitmap bitmap = new ReadBitmap();
+		if (bytes == null || bytes.length == 0) {
+			return bitmap;
+		}
+		int[] position = { 0 };
+		try {
+			if (bytes[position[0]++] != VERSION) {
+				throw new IllegalArgumentException("Unknown read bitmap version " + bytes[0]);
+			}
+			int count = (int) readVarLong(bytes, position);
+			bitmap.keys = new long[Math.max(4, count)];
+			bitmap.containers = new Container[Math.max(4, count)];
+			long key = 0;
+			for (int i = 0; i < count; i++) {
+				key += readVarLong(bytes, position);
+				Container container;
+				if (bytes[position[0]++] == ARRAY) {
+					int cardinality = (int) readVarLong(bytes, position);
+					ArrayContainer array = new ArrayContainer(Math.max(4, cardinality));
+					int value = 0;
+					for (int v = 0; v < cardinality; v++) {
+						value += (int) readVarLong(bytes, position);
+						array.values[v] = (char) value;
+					}
+					array.cardinality = cardinality;
+					container = array;
+				} else {
+					BitmapContainer words = new BitmapContainer();
+					for (int w = 0; w < words.words.length; w++) {
+						long word = 0;
+						for (int b = 0; b < 8; b++) {
+							word |= (bytes[position[0]++] & 0xFFL) << (8 * b);
+						}
+						words.words[w] = word;
+						words.cardinality += Long.bitCount(word);
+					}
+					container = words;
+				}
+				bitmap.keys[i] = key;
+				bitmap.containers[i] = container;
+				bitmap.cardinality += container.cardinality;
+			}
+			bitmap.size = count;
+			return bitmap;
+		} catch (ArrayIndexOutOfBoundsException | NegativeArraySizeException e) {
+			throw new IllegalArgumentException("Truncated read bitmap", e);
+		}
+	}
+	
+	private static void writeVarLong(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+	
+	private static long readVarLong(byte[] bytes, int[] position) {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = bytes[position[0]++];
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+	
+}
@@ -0,0 +1,50 @@
+package com.fullteaching.backend.paging;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Codec of the opaque cursors of the keyset paginated endpoints. A cursor is
+ * the sort key of the last item of a page, its values joined by ':' and
+ * Base64 (URL safe) encoded, so clients only ever send it back. Every page
+ * class documents the values of its own cursors.
+ */
+public final class Cursors {
+	
+	private Cursors() {}
+	
+	public static String encode(Object... values) {
+		StringBuilder cursor = new StringBuilder();
+		for (Object value : values) {
+			if (cursor.length() > 0) {
+				cursor.append(':');
+			}
+			cursor.append(value);
+		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.toString().getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * The 'count' values of the cursor. Only the last one may contain ':', so
+	 * free text must go last. Throws IllegalArgumentException if the cursor is
+	 * not valid.
+	 */
+	public static String[] decode(String cursor, int count) {
+		String[] values = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", count);
+		if (values.length != count) {
+			throw new IllegalArgumentException("Invalid cursor '" + cursor + "'");
+		}
+		return values;
+	}
+	
+	// The 'count' numeric values of the cursor, or throws IllegalArgumentException if it is not valid
+	public static long[] decodeLongs(String cursor, int count) {
+		String[] values = decode(cursor, count);
+		long[] numbers = new long[count];
+		for (int i = 0; i < count; i++) {
+			numbers[i] = Long.parseLong(values[i]);
+		}
+		return numbers;
+	}
+	
+}
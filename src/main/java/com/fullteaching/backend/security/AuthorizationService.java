@@ -8,6 +8,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
+import com.fullteaching.backend.course.Course;
+import com.fullteaching.backend.coursedetails.CourseDetails;
+import com.fullteaching.backend.session.Session;
 import com.fullteaching.backend.user.User;
 import com.fullteaching.backend.user.UserComponent;
 
@@ -34,6 +37,11 @@ public class AuthorizationService {
 			log.error("Element not found");
 			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
 		}
+		if(this.isOfDeletedCourse(o)){
+			// The course is being deleted: it is hidden and its content cannot change
+			log.error("Element of a deleted course");
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
 		if(!this.user.getLoggedUser().equals(u)){
 			// The user does not match the logged one
 			log.warn("The user is not authorized");
@@ -49,6 +57,11 @@ public class AuthorizationService {
 			log.error("Element not found");
 			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
 		}
+		if(this.isOfDeletedCourse(o)){
+			// The course is being deleted: it is hidden and its content cannot change
+			log.error("Element of a deleted course");
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
 		if(!users.contains(this.user.getLoggedUser())){
 			//The user is not authorized to edit if it is not an attender of the Course
 			log.error("User not authorized. Must be a participant of the course");
@@ -56,5 +69,17 @@ public class AuthorizationService {
 		}
 		return null;
 	}
+	
+	private boolean isOfDeletedCourse(Object o){
+		Course course = null;
+		if(o instanceof Course){
+			course = (Course) o;
+		} else if(o instanceof CourseDetails){
+			course = ((CourseDetails) o).getCourse();
+		} else if(o instanceof Session){
+			course = ((Session) o).getCourse();
+		}
+		return course != null && course.isDeleted();
+	}
 
 }
@@ -4,7 +4,10 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.Version;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonView;
@@ -12,6 +15,7 @@ import com.fullteaching.backend.course.Course;
 import com.fullteaching.backend.course.Course.SimpleCourseList;
 
 @Entity
+@Table(indexes = @Index(name = "idx_session_course_date", columnList = "course_id,date"))
 public class Session {
 	
 	@JsonView(SimpleCourseList.class)
@@ -32,6 +36,11 @@ public class Session {
 	@ManyToOne
 	private Course course;
 	
+	//Optimistic locking: expected by 'PATCH /api-sessions/edit/{id}'
+	@JsonView(SimpleCourseList.class)
+	@Version
+	private long version;
+	
 	public Session() {}
 	
 	public Session(String title, String description, long date) {
@@ -72,6 +81,10 @@ public class Session {
 		this.description = description;
 	}
 
+	public long getVersion() {
+		return version;
+	}
+	
 	public long getDate() {
 		return date;
 	}
@@ -1,19 +1,28 @@
 package com.fullteaching.backend.session;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fullteaching.backend.course.ContentChange;
 import com.fullteaching.backend.course.Course;
+import com.fullteaching.backend.course.CourseCache;
 import com.fullteaching.backend.course.CourseRepository;
 import com.fullteaching.backend.security.AuthorizationService;
+import com.fullteaching.backend.user.User;
 
 @RestController
 @RequestMapping("/api-sessions")
@@ -30,7 +39,11 @@ public class SessionController {
 	@Autowired
 	private AuthorizationService authorizationService;
 	
+	@Autowired
+	private CourseCache courseCache;
+	
 	@RequestMapping(value = "/course/{id}", method = RequestMethod.POST)
+	@Transactional
 	public ResponseEntity<Object> newSession(@RequestBody Session session, @PathVariable(value="id") String id) {
 		
 		log.info("CRUD operation: Adding new session");
@@ -54,13 +67,26 @@ public class SessionController {
 		if (teacherAuthorized != null) { // If the user is not the teacher of the course
 			return teacherAuthorized;
 		} else {
+			Set<Long> sessionIds = new HashSet<>();
+			for (Session s : course.getSessions()) {
+				sessionIds.add(s.getId());
+			}
+			
 			//Bi-directional saving
 			session.setCourse(course);
 			course.getSessions().add(session);
 			
 			//Saving the modified course: Cascade relationship between course and sessions
 			//will add the new session to SessionRepository
-			courseRepository.save(course);
+			Course saved = courseRepository.save(course);
+			//The saved copy of the session is the only one whose id was not there before
+			List<ContentChange> changes = new ArrayList<>();
+			for (Session s : (saved != null ? saved : course).getSessions()) {
+				if (!sessionIds.contains(s.getId())) {
+					changes.add(ContentChange.created(ContentChange.Type.SESSION, s.getId()));
+				}
+			}
+			courseCache.invalidate(course.getId(), changes.toArray(new ContentChange[0]));
 			
 			log.info("New session succesfully added: {}", session.toString());
 			
@@ -71,6 +97,7 @@ public class SessionController {
 	
 	
 	@RequestMapping(value = "/edit", method = RequestMethod.PUT)
+	@Transactional
 	public ResponseEntity<Object> modifySession(@RequestBody Session session) {
 		
 		log.info("CRUD operation: Updating session");
@@ -93,6 +120,7 @@ public class SessionController {
 			s.setDate(session.getDate());
 			//Saving the modified session
 			sessionRepository.save(s);
+			courseCache.invalidate(s.getCourse().getId(), ContentChange.saved(ContentChange.Type.SESSION, s.getId()));
 			
 			log.info("Session succesfully updated. Modified value: {}", session.toString());
 			
@@ -101,7 +129,54 @@ public class SessionController {
 	}
 	
 	
+	@RequestMapping(value = "/edit/{id}", method = RequestMethod.PATCH)
+	@Transactional
+	public ResponseEntity<Object> patchSession(@RequestBody SessionPatch patch, @PathVariable(value="id") String id) {
+		
+		log.info("CRUD operation: Patching session");
+		
+		ResponseEntity<Object> authorized = authorizationService.checkBackendLogged();
+		if (authorized != null){
+			return authorized;
+		};
+		
+		long id_i = -1;
+		try{
+			id_i = Long.parseLong(id);
+		}catch(NumberFormatException e){
+			log.error("Session ID '{}' is not of type Long", id);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		if (patch.getVersion() == null) {
+			log.error("The expected version of session {} is missing", id_i);
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		
+		Long courseId = sessionRepository.findCourseId(id_i);
+		User teacher = courseId != null ? courseRepository.findTeacher(courseId) : null;
+		
+		ResponseEntity<Object> teacherAuthorized = authorizationService.checkAuthorization(teacher, teacher);
+		if (teacherAuthorized != null) { // If the user is not the teacher of the course
+			return teacherAuthorized;
+		}
+		
+		if (sessionRepository.patch(id_i, patch.getVersion(), patch.getTitle(), patch.getDescription(), patch.getDate()) == 0) {
+			log.warn("Session {} is not at version {} anymore", id_i, patch.getVersion());
+			return new ResponseEntity<>(HttpStatus.CONFLICT);
+		}
+		courseCache.invalidate(courseId, ContentChange.saved(ContentChange.Type.SESSION, id_i));
+		
+		SessionPatch applied = new SessionPatch(id_i, patch.getVersion() + 1, patch.getTitle(), patch.getDescription(), patch.getDate());
+		
+		log.info("Session succesfully patched: {}", applied);
+		
+		return new ResponseEntity<>(applied, HttpStatus.OK);
+	}
+	
+	
 	@RequestMapping(value = "/delete/{id}", method = RequestMethod.DELETE)
+	@Transactional
 	public ResponseEntity<Object> deleteSession(@PathVariable(value="id") String id) {
 		
 		log.info("CRUD operation: Deleting session");
@@ -134,6 +209,7 @@ public class SessionController {
 				course.getSessions().remove(session);
 				sessionRepository.deleteById(id_i);
 				courseRepository.save(course);
+				courseCache.invalidate(course.getId(), ContentChange.deleted(ContentChange.Type.SESSION, id_i));
 				
 				log.info("Session successfully deleted");
 				
@@ -0,0 +1,78 @@
+package com.fullteaching.backend.session;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Partial update of a session: only non-null fields are modified, and only if
+ * the session is still at 'version'. The applied changes are answered with the
+ * same document, holding the new version and only the modified fields.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SessionPatch {
+	
+	private Long id;
+	
+	private Long version;
+	
+	private String title;
+	
+	private String description;
+	
+	private Long date;
+	
+	public SessionPatch() {}
+	
+	public SessionPatch(Long id, Long version, String title, String description, Long date) {
+		this.id = id;
+		this.version = version;
+		this.title = title;
+		this.description = description;
+		this.date = date;
+	}
+	
+	public Long getId() {
+		return id;
+	}
+	
+	public void setId(Long id) {
+		this.id = id;
+	}
+	
+	public Long getVersion() {
+		return version;
+	}
+	
+	public void setVersion(Long version) {
+		this.version = version;
+	}
+	
+	public String getTitle() {
+		return title;
+	}
+	
+	public void setTitle(String title) {
+		this.title = title;
+	}
+	
+	public String getDescription() {
+		return description;
+	}
+	
+	public void setDescription(String description) {
+		this.description = description;
+	}
+	
+	public Long getDate() {
+		return date;
+	}
+	
+	public void setDate(Long date) {
+		this.date = date;
+	}
+	
+	@Override
+	public String toString() {
+		return "SessionPatch[id: " + this.id + ", version: " + this.version + ", title: " + this.title + ", date: " + this.date + "]";
+	}
+	
+}
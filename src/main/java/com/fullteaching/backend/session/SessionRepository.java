@@ -1,7 +1,55 @@
 package com.fullteaching.backend.session;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface SessionRepository extends JpaRepository<Session, Long> {
+	
+	//The first 'limit' sessions from 'now' of each course, numbered per course by the database so that
+	//courses with many sessions send no more rows than the others
+	@Query(nativeQuery = true, value = "SELECT id, course_id AS courseId, title, description, date, version FROM ("
+			+ "SELECT s.id, s.course_id, s.title, s.description, s.date, s.version, "
+			+ "ROW_NUMBER() OVER (PARTITION BY s.course_id ORDER BY s.date ASC, s.id ASC) AS course_position "
+			+ "FROM session s WHERE s.course_id IN (:courseIds) AND s.date >= :now) upcoming "
+			+ "WHERE course_position <= :limit ORDER BY course_id ASC, date ASC, id ASC")
+	public List<SessionSummary> findUpcomingByCourseIds(@Param("courseIds") Collection<Long> courseIds, @Param("now") long now, @Param("limit") int limit);
+	
+	@Query("select s.id as id, s.course.id as courseId, s.title as title, s.description as description, s.date as date, s.version as version "
+			+ "from Session s where s.course.id = :courseId order by s.date asc, s.id asc")
+	public List<SessionSummary> findSummariesByCourseId(@Param("courseId") long courseId);
+	
+	@Query("select s.id as id, s.course.id as courseId, s.title as title, s.description as description, s.date as date, s.version as version "
+			+ "from Session s where s.course.id = :courseId and s.id in :ids")
+	public List<SessionSummary> findSummariesByCourseIdAndIdIn(@Param("courseId") long courseId, @Param("ids") Collection<Long> ids);
+	
+	//[course id, id, title, date] of the sessions of the courses between 'since' and 'until', latest first.
+	//Keyset pagination on (date, id) for the feed (see FeedService)
+	@Query("select s.course.id, s.id, s.title, s.date from Session s where s.course.id in :courseIds and s.date >= :since and s.date <= :until "
+			+ "and (s.date < :beforeDate or (s.date = :beforeDate and s.id < :beforeId)) order by s.date desc, s.id desc")
+	public List<Object[]> findFeedRows(
+			@Param("courseIds") Collection<Long> courseIds,
+			@Param("since") long since,
+			@Param("until") long until,
+			@Param("beforeDate") long beforeDate,
+			@Param("beforeId") long beforeId,
+			Pageable pageable);
+			
+	@Query("select s.course.id from Session s where s.id = :sessionId")
+	public Long findCourseId(@Param("sessionId") long sessionId);
+	
+	//Null arguments leave their field untouched. Returns 0 if the session is not at 'version' anymore
+	@Transactional
+	@Modifying
+	@Query("update Session s set s.title = coalesce(:title, s.title), s.description = coalesce(:description, s.description), "
+			+ "s.date = coalesce(:date, s.date), s.version = s.version + 1 where s.id = :sessionId and s.version = :version")
+	public int patch(@Param("sessionId") long sessionId, @Param("version") long version,
+			@Param("title") String title, @Param("description") String description, @Param("date") Long date);
 
 }
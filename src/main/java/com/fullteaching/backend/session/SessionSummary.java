@@ -0,0 +1,21 @@
+package com.fullteaching.backend.session;
+
+/**
+ * Read-only projection of a Session, used when sessions are listed alongside
+ * other resources and the owning Course must not be loaded.
+ */
+public interface SessionSummary {
+	
+	long getId();
+	
+	long getCourseId();
+	
+	String getTitle();
+	
+	String getDescription();
+	
+	long getDate();
+	
+	long getVersion();
+	
+}
@@ -12,7 +12,9 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.ElementCollection;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.ManyToMany;
+import javax.persistence.Table;
 
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
@@ -21,6 +23,10 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fullteaching.backend.course.Course;
 
 @Entity
+//Sort orders of the course roster (see CourseRepository.findAttendersByNickName)
+@Table(indexes = {
+	@Index(name = "idx_user_nick_name", columnList = "nickName,id"),
+	@Index(name = "idx_user_name", columnList = "name,id") })
 public class User {
 	
 	@Id
@@ -1,8 +1,11 @@
 package com.fullteaching.backend.user;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.fullteaching.backend.course.Course;
 
@@ -12,6 +15,13 @@ public interface UserRepository extends JpaRepository<User, Long>{
 	
 	public Collection<User> findByNameIn(Collection<String> names);
 	
+	//Same as 'findByNameIn', but roles are fetched in the same query
+	@Query("select distinct u from User u left join fetch u.roles where u.name in :names")
+	public Collection<User> findWithRolesByNameIn(@Param("names") Collection<String> names);
+	
 	public Collection<User> findByCourses(Collection<Course> courses);
+	
+	@Query("select u.id from User u where u.id in :ids")
+	public List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
 
 }
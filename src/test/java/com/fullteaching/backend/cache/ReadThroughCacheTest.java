@@ -0,0 +1,212 @@
+package com.fullteaching.backend.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadThroughCacheTest {
+
+    @Test
+    void testGet_LoadsOnceAndHits() {
+        var loads = new AtomicInteger();
+        var cache = new ReadThroughCache<Long, String>(10, 60000);
+
+        assertEquals("course-1", cache.get(1L, id -> "course-" + id + (loads.incrementAndGet() > 1 ? "!" : "")));
+        assertEquals("course-1", cache.get(1L, id -> "course-" + id + (loads.incrementAndGet() > 1 ? "!" : "")));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getStats().getHits());
+        assertEquals(1, cache.getStats().getMisses());
+    }
+
+    @Test
+    void testGet_ExpiresAfterTtl() {
+        var now = new AtomicLong();
+        var loads = new AtomicInteger();
+        var cache = new ReadThroughCache<Long, String>(10, 1000, now::get);
+
+        cache.get(1L, id -> "v" + loads.incrementAndGet());
+        now.addAndGet(999_000_000L);
+        assertEquals("v1", cache.get(1L, id -> "v" + loads.incrementAndGet()));
+        now.addAndGet(2_000_000L);
+        assertEquals("v2", cache.get(1L, id -> "v" + loads.incrementAndGet()));
+    }
+
+    @Test
+    void testGet_BoundedSize() {
+        var cache = new ReadThroughCache<Long, String>(2, 60000);
+
+        cache.get(1L, String::valueOf);
+        cache.get(2L, String::valueOf);
+        cache.get(1L, String::valueOf);
+        cache.get(3L, String::valueOf);
+
+        assertEquals(2, cache.size());
+        //2 was the least recently used entry
+        assertEquals("1", cache.get(1L, id -> "new"));
+        assertEquals("3", cache.get(3L, id -> "new"));
+        assertEquals("new", cache.get(2L, id -> "new"));
+    }
+
+    @Test
+    void testGet_NullIsNotCached() {
+        var loads = new AtomicInteger();
+        var cache = new ReadThroughCache<Long, String>(10, 60000);
+
+        assertNull(cache.get(1L, id -> { loads.incrementAndGet(); return null; }));
+        assertNull(cache.get(1L, id -> { loads.incrementAndGet(); return null; }));
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testInvalidate() {
+        var cache = new ReadThroughCache<Long, String>(10, 60000);
+
+        cache.get(1L, id -> "old");
+        cache.invalidate(1L);
+
+        assertEquals("new", cache.get(1L, id -> "new"));
+        assertEquals(1, cache.getStats().getInvalidations());
+    }
+
+    @Test
+    void testGet_ConcurrentMissesAreCoalesced() throws Exception {
+        var loads = new AtomicInteger();
+        var loadStarted = new CountDownLatch(1);
+        var releaseLoad = new CountDownLatch(1);
+        var cache = new ReadThroughCache<Long, String>(10, 60000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            var first = executor.submit(() -> cache.get(1L, id -> {
+                loads.incrementAndGet();
+                loadStarted.countDown();
+                try {
+                    releaseLoad.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return "course";
+            }));
+            assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+
+            var others = new ArrayList<Future<String>>();
+            for (int i = 0; i < 7; i++) {
+                others.add(executor.submit(() -> cache.get(1L, id -> {
+                    loads.incrementAndGet();
+                    return "other";
+                })));
+            }
+            while (cache.getStats().getCoalesced() < 7) {
+                Thread.sleep(1);
+            }
+            releaseLoad.countDown();
+
+            assertEquals("course", first.get(5, TimeUnit.SECONDS));
+            for (var f : others) {
+                assertEquals("course", f.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testGet_InvalidatedDuringLoadIsNotStored() {
+        var cache = new ReadThroughCache<Long, String>(10, 60000);
+
+        cache.get(1L, id -> {
+            cache.invalidate(1L);
+            return "stale";
+        });
+
+        assertEquals("fresh", cache.get(1L, id -> "fresh"));
+    }
+
+    @Test
+    void testGet_LoadFailure() {
+        var cache = new ReadThroughCache<Long, String>(10, 60000);
+
+        assertThrows(IllegalStateException.class, () -> cache.get(1L, id -> { throw new IllegalStateException(); }));
+
+        assertEquals("ok", cache.get(1L, id -> "ok"));
+        assertEquals(1, cache.getStats().getLoadFailures());
+    }
+
+    @Test
+    void testGet_LoadErrorReleasesWaitingCallers() throws Exception {
+        var loadStarted = new CountDownLatch(1);
+        var releaseLoad = new CountDownLatch(1);
+        var cache = new ReadThroughCache<Long, String>(10, 60000);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            var first = executor.submit(() -> cache.get(1L, id -> {
+                loadStarted.countDown();
+                try {
+                    releaseLoad.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                throw new OutOfMemoryError();
+            }));
+            assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+            var waiting = executor.submit(() -> cache.get(1L, id -> "other"));
+            while (cache.getStats().getCoalesced() < 1) {
+                Thread.sleep(1);
+            }
+            releaseLoad.countDown();
+
+            var e = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof OutOfMemoryError);
+            assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+            assertEquals("ok", cache.get(1L, id -> "ok"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testGetAll_LoadsMissingKeysTogether() {
+        var loadedKeys = new ArrayList<List<Long>>();
+        var cache = new ReadThroughCache<Long, String>(10, 60000);
+        cache.get(1L, id -> "cached");
+
+        Map<Long, String> values = cache.getAll(List.of(1L, 2L, 3L), ids -> {
+            loadedKeys.add(new ArrayList<>(ids));
+            var loaded = new HashMap<Long, String>();
+            for (Long id : ids) {
+                loaded.put(id, "loaded-" + id);
+            }
+            return loaded;
+        });
+
+        assertEquals(Map.of(1L, "cached", 2L, "loaded-2", 3L, "loaded-3"), values);
+        assertEquals(List.of(List.of(2L, 3L)), loadedKeys);
+        assertEquals("loaded-2", cache.get(2L, id -> "new"));
+    }
+
+    @Test
+    void testGetAll_MissingValuesAreNotCached() {
+        var cache = new ReadThroughCache<Long, String>(10, 60000);
+
+        Map<Long, String> values = cache.getAll(List.of(1L, 2L), ids -> Map.of(1L, "one"));
+
+        assertEquals(Map.of(1L, "one"), values);
+        assertEquals(1, cache.size());
+    }
+}
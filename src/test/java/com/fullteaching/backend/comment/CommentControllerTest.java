@@ -1,10 +1,18 @@
 package com.fullteaching.backend.comment;
 
+import com.fullteaching.backend.course.ContentChange;
 import com.fullteaching.backend.course.Course;
+import com.fullteaching.backend.course.CourseCache;
 import com.fullteaching.backend.coursedetails.CourseDetails;
 import com.fullteaching.backend.coursedetails.CourseDetailsRepository;
 import com.fullteaching.backend.entry.Entry;
 import com.fullteaching.backend.entry.EntryRepository;
+import com.fullteaching.backend.forum.Forum;
+import com.fullteaching.backend.forum.CommentWriteBehindService;
+import com.fullteaching.backend.forum.ForumPostService;
+import com.fullteaching.backend.forum.ForumHotEntriesService;
+import com.fullteaching.backend.forum.ForumSearchService;
+import com.fullteaching.backend.forum.ForumUpdatesService;
 import com.fullteaching.backend.security.AuthorizationService;
 import com.fullteaching.backend.user.User;
 import com.fullteaching.backend.user.UserComponent;
@@ -18,6 +26,7 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.util.ArrayList;
 import java.util.Optional;
@@ -44,17 +53,111 @@ class CommentControllerTest {
     @Mock
     private AuthorizationService authorizationService;
 
+    @Mock
+    private CourseCache courseCache;
+
+    @Mock
+    private CommentThreadService commentThreadService;
+
+    @Mock
+    private ForumPostService forumPostService;
+
+    @Mock
+    private ForumUpdatesService forumUpdatesService;
+
+    @Mock
+    private ForumSearchService forumSearchService;
+
+    @Mock
+    private ForumHotEntriesService forumHotEntriesService;
+
+    @Mock
+    private CommentWriteBehindService commentWriteBehindService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     private User loggedUser;
 
     @BeforeEach
     public void init() {
         MockitoAnnotations.initMocks(this);
+        commentController.init();
         loggedUser = new User("Flavia", "123", "Flavinha", "flavinha.jpg");
         loggedUser.setId(1L);
         Mockito.when(authorizationService.checkBackendLogged()).thenReturn(null);
     }
 
 
+    @Test
+    void testGetComments_Success() {
+        var thread = new CommentThread(1L, new ArrayList<>(), null);
+        Mockito.when(entryRepository.existsById(1L)).thenReturn(true);
+        Mockito.when(commentThreadService.getThread(1L, 5L, 3L, 100, 0, 100)).thenReturn(thread);
+
+        var resp = commentController.getComments("1", CommentThread.cursor(5L, 3L), 1000, -1, 1000);
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(thread, resp.getBody());
+    }
+
+    @Test
+    void testGetComments_Defaults() {
+        Mockito.when(entryRepository.existsById(1L)).thenReturn(true);
+
+        commentController.getComments("1", null, null, null, null);
+
+        Mockito.verify(commentThreadService).getThread(1L, Long.MIN_VALUE, Long.MIN_VALUE, 20, 10, 10);
+    }
+
+    @Test
+    void testGetComments_WaitsForOwnUnsavedComments() {
+        Mockito.when(commentWriteBehindService.isEnabled()).thenReturn(true);
+        Mockito.when(user.getLoggedUser()).thenReturn(loggedUser);
+        Mockito.when(entryRepository.existsById(1L)).thenReturn(true);
+
+        commentController.getComments("1", null, null, null, null);
+
+        var inOrder = Mockito.inOrder(commentWriteBehindService, commentThreadService);
+        inOrder.verify(commentWriteBehindService).awaitSaved(1L);
+        inOrder.verify(commentThreadService).getThread(1L, Long.MIN_VALUE, Long.MIN_VALUE, 20, 10, 10);
+    }
+
+    @Test
+    void testGetComments_EntryNotFound() {
+        var resp = commentController.getComments("1", null, null, null, null);
+
+        assertEquals(HttpStatus.NOT_FOUND, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(commentThreadService);
+    }
+
+    @Test
+    void testGetComments_InvalidCursor() {
+        var resp = commentController.getComments("1", "x", null, null, null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
+    }
+
+    @Test
+    void testGetReplies_Success() {
+        var replies = new CommentReplies(2L, new ArrayList<>(), null);
+        Mockito.when(commentRepository.existsById(2L)).thenReturn(true);
+        Mockito.when(commentThreadService.getReplies(2L, 5L, 3L, 20, 10, 0)).thenReturn(replies);
+
+        var resp = commentController.getReplies("2", CommentThread.cursor(5L, 3L), null, null, -1);
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(replies, resp.getBody());
+    }
+
+    @Test
+    void testGetReplies_CommentNotFound() {
+        var resp = commentController.getReplies("2", null, null, null, null);
+
+        assertEquals(HttpStatus.NOT_FOUND, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(commentThreadService);
+    }
+
     @Test
     void testNewComment_saveSuccess() {
         var course = new Course("prog", "prog.jpg", loggedUser);
@@ -93,6 +196,11 @@ class CommentControllerTest {
 
         assertEquals(loggedUser, newComments.get(0).getUser());
         assertNotEquals(0L, newComments.get(0).getDate());
+        assertEquals(1, newEntry.getCommentCount());
+        assertEquals(newComments.get(0).getDate(), newEntry.getLastActivity());
+        assertEquals(1, courseDetails.getForum().getCommentCount());
+        Mockito.verify(forumPostService).countComment(courseDetails.getForum().getId(), 1L, newComments.get(0).getDate());
+        Mockito.verify(forumHotEntriesService).commentPosted(courseDetails.getForum().getId(), 1L, newComments.get(0).getDate());
     }
 
     @Test
@@ -299,4 +407,86 @@ class CommentControllerTest {
 
         assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
     }
-}
\ No newline at end of file
+
+    private CourseDetails appendCourseDetails() {
+        var course = new Course("prog", "prog.jpg", loggedUser);
+        course.setId(1L);
+        var forum = new Forum(true);
+        forum.setId(3L);
+        var courseDetails = new CourseDetails();
+        courseDetails.setId(1L);
+        courseDetails.setCourse(course);
+        courseDetails.setForum(forum);
+        Mockito.when(courseDetailsRepository.findById(1L)).thenReturn(Optional.of(courseDetails));
+        Mockito.when(user.getLoggedUser()).thenReturn(loggedUser);
+        return courseDetails;
+    }
+
+    @Test
+    void testAppendComment_Reply() {
+        appendCourseDetails();
+        var comment = new Comment("Nice", 1L, null);
+        Mockito.when(forumPostService.isInForum(3L, 2L)).thenReturn(true);
+        Mockito.when(forumPostService.postComment(3L, 2L, 5L, comment)).thenReturn(comment);
+
+        var resp = commentController.appendComment(comment, "2", "1", 5L);
+
+        assertEquals(HttpStatus.CREATED, resp.getStatusCode());
+        assertEquals(comment, resp.getBody());
+        assertEquals(loggedUser, comment.getUser());
+        assertNotEquals(1L, comment.getDate());
+        Mockito.verify(entryRepository, Mockito.never()).findById(Mockito.anyLong());
+        Mockito.verify(commentRepository, Mockito.never()).save(Mockito.any());
+        Mockito.verify(courseCache).invalidate(1L, ContentChange.created(ContentChange.Type.COMMENT, 0L),
+                ContentChange.saved(ContentChange.Type.COMMENT, 5L), ContentChange.saved(ContentChange.Type.ENTRY, 2L),
+                ContentChange.saved(ContentChange.Type.FORUM, 3L));
+        Mockito.verify(forumUpdatesService).publishComment(1L, 2L, 5L, comment);
+        Mockito.verify(forumSearchService).indexComment(1L, 2L, comment);
+        //The comment and its course changes are committed together
+        var order = Mockito.inOrder(transactionManager, forumPostService, courseCache);
+        order.verify(transactionManager).getTransaction(Mockito.any());
+        order.verify(forumPostService).postComment(3L, 2L, 5L, comment);
+        order.verify(courseCache).invalidate(Mockito.eq(1L), Mockito.any());
+        order.verify(transactionManager).commit(Mockito.any());
+    }
+
+    @Test
+    void testAppendComment_EntryNotInForum() {
+        appendCourseDetails();
+
+        var resp = commentController.appendComment(new Comment(), "2", "1", null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
+        Mockito.verify(forumPostService, Mockito.never()).postComment(Mockito.anyLong(), Mockito.anyLong(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void testAppendComment_ParentNotFound() {
+        appendCourseDetails();
+        Mockito.when(forumPostService.isInForum(3L, 2L)).thenReturn(true);
+
+        var resp = commentController.appendComment(new Comment(), "2", "1", 5L);
+
+        assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(courseCache);
+        Mockito.verifyZeroInteractions(forumUpdatesService, forumSearchService);
+    }
+
+    @Test
+    void testAppendComment_WriteBehind() {
+        appendCourseDetails();
+        var comment = new Comment("Nice", 1L, null);
+        Mockito.when(forumPostService.isInForum(3L, 2L)).thenReturn(true);
+        Mockito.when(commentWriteBehindService.isEnabled()).thenReturn(true);
+        Mockito.when(commentWriteBehindService.postComment(1L, 3L, 2L, null, comment)).thenReturn(comment);
+
+        var resp = commentController.appendComment(comment, "2", "1", null);
+
+        assertEquals(HttpStatus.ACCEPTED, resp.getStatusCode());
+        assertEquals(comment, resp.getBody());
+        assertEquals(loggedUser, comment.getUser());
+        Mockito.verify(forumPostService, Mockito.never()).postComment(Mockito.anyLong(), Mockito.anyLong(), Mockito.any(), Mockito.any());
+        //Updated once the comment is saved
+        Mockito.verifyZeroInteractions(courseCache, forumUpdatesService, forumSearchService);
+    }
+}
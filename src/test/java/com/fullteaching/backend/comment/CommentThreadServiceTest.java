@@ -0,0 +1,149 @@
+package com.fullteaching.backend.comment;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@RunWith(MockitoJUnitRunner.class)
+class CommentThreadServiceTest {
+
+    @InjectMocks
+    private CommentThreadService commentThreadService;
+
+    @Mock
+    private CommentRepository commentRepository;
+
+    @BeforeEach
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(commentThreadService, "maxNodes", 500);
+    }
+
+    private static Object[] row(long id, Long parentId, long date, long replies, int depth) {
+        return new Object[] { id, parentId, "message " + id, date, 1L, "nick", "pic.jpg", replies, depth };
+    }
+
+    @Test
+    void testGetThread_AssemblesTrees() {
+        Mockito.when(commentRepository.findRootKeys(Mockito.eq(7L), Mockito.eq(Long.MIN_VALUE), Mockito.eq(Long.MIN_VALUE), Mockito.any()))
+                .thenReturn(List.of(new Object[] { 1L, 10L }, new Object[] { 2L, 20L }, new Object[] { 3L, 30L }));
+        Mockito.when(commentRepository.findThreadRows(List.of(1L, 2L), 1, 10, 500)).thenReturn(List.of(
+                row(1L, null, 10L, 2L, 0),
+                row(2L, null, 20L, 0L, 0),
+                row(4L, 1L, 15L, 1L, 1),
+                row(5L, 1L, 25L, 0L, 1)));
+
+        var thread = commentThreadService.getThread(7L, Long.MIN_VALUE, Long.MIN_VALUE, 2, 1, 10);
+
+        assertEquals(7L, thread.getEntryId());
+        assertEquals(2, thread.getComments().size());
+        var first = thread.getComments().get(0);
+        assertEquals(1L, first.getId());
+        assertEquals(2, first.getReplies().size());
+        assertEquals(4L, first.getReplies().get(0).getId());
+        assertEquals(5L, first.getReplies().get(1).getId());
+        assertNull(first.getRepliesCursor());
+        //Cut at the maximum depth: its reply is only counted, and can be loaded from the start
+        var cut = first.getReplies().get(0);
+        assertEquals(1L, cut.getRepliesCount());
+        assertTrue(cut.getReplies().isEmpty());
+        assertArrayEquals(new long[] { Long.MIN_VALUE, Long.MIN_VALUE }, CommentThread.parseCursor(cut.getRepliesCursor()));
+        assertEquals(2L, thread.getComments().get(1).getId());
+        assertArrayEquals(new long[] { 20L, 2L }, CommentThread.parseCursor(thread.getNextCursor()));
+        //All the levels in a single query
+        Mockito.verify(commentRepository, Mockito.times(1)).findThreadRows(Mockito.any(), Mockito.anyInt(), Mockito.anyInt(), Mockito.anyInt());
+    }
+
+    @Test
+    void testGetThread_CutAtBreadth() {
+        Mockito.when(commentRepository.findRootKeys(Mockito.eq(7L), Mockito.anyLong(), Mockito.anyLong(), Mockito.any()))
+                .thenReturn(List.<Object[]>of(new Object[] { 1L, 10L }));
+        Mockito.when(commentRepository.findThreadRows(List.of(1L), 10, 2, 500)).thenReturn(List.of(
+                row(1L, null, 10L, 50L, 0),
+                row(4L, 1L, 15L, 1L, 1),
+                row(5L, 1L, 25L, 0L, 1),
+                row(6L, 4L, 30L, 0L, 2)));
+
+        var thread = commentThreadService.getThread(7L, Long.MIN_VALUE, Long.MIN_VALUE, 20, 10, 2);
+
+        var root = thread.getComments().get(0);
+        assertEquals(2, root.getReplies().size());
+        assertEquals(50L, root.getRepliesCount());
+        //The rest of the replies continue after the last one shown
+        assertArrayEquals(new long[] { 25L, 5L }, CommentThread.parseCursor(root.getRepliesCursor()));
+        assertEquals(6L, root.getReplies().get(0).getReplies().get(0).getId());
+        assertNull(root.getReplies().get(0).getRepliesCursor());
+    }
+
+    @Test
+    void testGetThread_StopsAtMaxNodes() {
+        ReflectionTestUtils.setField(commentThreadService, "maxNodes", 4);
+        Mockito.when(commentRepository.findRootKeys(Mockito.eq(7L), Mockito.anyLong(), Mockito.anyLong(), Mockito.any()))
+                .thenReturn(List.of(new Object[] { 1L, 10L }, new Object[] { 2L, 20L }));
+        //The query returns the first 4 comments, breadth first: two of the replies of the first root fit
+        Mockito.when(commentRepository.findThreadRows(List.of(1L, 2L), 10, 10, 4)).thenReturn(List.of(
+                row(1L, null, 10L, 3L, 0),
+                row(2L, null, 20L, 3L, 0),
+                row(4L, 1L, 15L, 5L, 1),
+                row(5L, 1L, 16L, 0L, 1)));
+
+        var thread = commentThreadService.getThread(7L, Long.MIN_VALUE, Long.MIN_VALUE, 20, 10, 10);
+
+        assertEquals(2, thread.getComments().get(0).getReplies().size());
+        assertNotNull(thread.getComments().get(0).getRepliesCursor());
+        assertTrue(thread.getComments().get(1).getReplies().isEmpty());
+        assertNotNull(thread.getComments().get(1).getRepliesCursor());
+        assertNotNull(thread.getComments().get(0).getReplies().get(0).getRepliesCursor());
+    }
+
+    @Test
+    void testGetThread_RootsAboveMaxNodes() {
+        ReflectionTestUtils.setField(commentThreadService, "maxNodes", 1);
+        Mockito.when(commentRepository.findRootKeys(Mockito.eq(7L), Mockito.anyLong(), Mockito.anyLong(), Mockito.any()))
+                .thenReturn(List.of(new Object[] { 1L, 10L }, new Object[] { 2L, 20L }));
+        Mockito.when(commentRepository.findThreadRows(List.of(1L, 2L), 10, 10, 2)).thenReturn(List.of(
+                row(1L, null, 10L, 0L, 0),
+                row(2L, null, 20L, 0L, 0)));
+
+        var thread = commentThreadService.getThread(7L, Long.MIN_VALUE, Long.MIN_VALUE, 20, 10, 10);
+
+        //The roots of the page are always returned
+        assertEquals(2, thread.getComments().size());
+    }
+
+    @Test
+    void testGetThread_NoComments() {
+        Mockito.when(commentRepository.findRootKeys(Mockito.eq(7L), Mockito.anyLong(), Mockito.anyLong(), Mockito.any())).thenReturn(List.of());
+
+        var thread = commentThreadService.getThread(7L, 10L, 1L, 20, 10, 10);
+
+        assertTrue(thread.getComments().isEmpty());
+        assertNull(thread.getNextCursor());
+        Mockito.verify(commentRepository, Mockito.never()).findThreadRows(Mockito.any(), Mockito.anyInt(), Mockito.anyInt(), Mockito.anyInt());
+    }
+
+    @Test
+    void testGetReplies_PagesDirectReplies() {
+        Mockito.when(commentRepository.findReplyKeys(Mockito.eq(1L), Mockito.eq(25L), Mockito.eq(5L), Mockito.any()))
+                .thenReturn(List.of(new Object[] { 6L, 30L }, new Object[] { 7L, 40L }));
+        //The replies are the roots of the query, although they have a parent
+        Mockito.when(commentRepository.findThreadRows(List.of(6L), 10, 10, 500)).thenReturn(List.<Object[]>of(row(6L, 1L, 30L, 0L, 0)));
+
+        var replies = commentThreadService.getReplies(1L, 25L, 5L, 1, 10, 10);
+
+        assertEquals(1L, replies.getCommentId());
+        assertEquals(1, replies.getReplies().size());
+        assertEquals(6L, replies.getReplies().get(0).getId());
+        assertArrayEquals(new long[] { 30L, 6L }, CommentThread.parseCursor(replies.getNextCursor()));
+    }
+}
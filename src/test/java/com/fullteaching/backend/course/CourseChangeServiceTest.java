@@ -0,0 +1,170 @@
+package com.fullteaching.backend.course;
+
+import com.fullteaching.backend.comment.CommentRepository;
+import com.fullteaching.backend.coursedetails.CourseDetailsRepository;
+import com.fullteaching.backend.entry.EntryRepository;
+import com.fullteaching.backend.file.FileRepository;
+import com.fullteaching.backend.filegroup.FileGroupRepository;
+import com.fullteaching.backend.forum.ForumRepository;
+import com.fullteaching.backend.session.SessionRepository;
+import com.fullteaching.backend.session.SessionSummary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@RunWith(MockitoJUnitRunner.class)
+class CourseChangeServiceTest {
+
+    @InjectMocks
+    private CourseChangeService courseChangeService;
+
+    @Mock
+    private CourseChangeRepository courseChangeRepository;
+
+    @Mock
+    private CourseRepository courseRepository;
+
+    @Mock
+    private CourseDetailsRepository courseDetailsRepository;
+
+    @Mock
+    private ForumRepository forumRepository;
+
+    @Mock
+    private EntryRepository entryRepository;
+
+    @Mock
+    private CommentRepository commentRepository;
+
+    @Mock
+    private FileGroupRepository fileGroupRepository;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private SessionRepository sessionRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(courseChangeService, "transactionTemplate", new TransactionTemplate(transactionManager));
+    }
+
+    private static CourseChange row(long id, ContentChange.Type type, long objectId, long createdSequence, long sequence, boolean deleted) {
+        var row = new CourseChange(1L, type, objectId, sequence, createdSequence);
+        ReflectionTestUtils.setField(row, "id", id);
+        row.setSequence(sequence);
+        row.setDeleted(deleted);
+        return row;
+    }
+
+    private static SessionSummary session(long id) {
+        var session = Mockito.mock(SessionSummary.class);
+        Mockito.when(session.getId()).thenReturn(id);
+        return session;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRecord_MovesRowsToTheNewVersion() {
+        var existing = row(1L, ContentChange.Type.SESSION, 5L, 2L, 2L, false);
+        Mockito.when(courseRepository.findVersion(1L)).thenReturn(7L);
+        Mockito.when(courseChangeRepository.findByCourseIdAndTypeAndObjectIdIn(1L, ContentChange.Type.SESSION, Set.of(5L, 6L, 7L)))
+                .thenReturn(List.of(existing));
+
+        courseChangeService.record(1L, List.of(ContentChange.saved(ContentChange.Type.SESSION, 5L),
+                ContentChange.created(ContentChange.Type.SESSION, 6L), ContentChange.saved(ContentChange.Type.SESSION, 7L),
+                ContentChange.deleted(ContentChange.Type.SESSION, 5L)));
+
+        Mockito.verify(courseRepository).incrementVersion(1L);
+        ArgumentCaptor<List<CourseChange>> saved = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(courseChangeRepository).saveAll(saved.capture());
+        assertEquals(3, saved.getValue().size());
+        //Only the last change of the session counts, and it keeps the sequence it was created in
+        assertSame(existing, saved.getValue().get(0));
+        assertEquals(7L, existing.getSequence());
+        assertEquals(2L, existing.getCreatedSequence());
+        assertTrue(existing.isDeleted());
+        assertEquals(6L, saved.getValue().get(1).getObjectId());
+        assertEquals(7L, saved.getValue().get(1).getCreatedSequence());
+        assertFalse(saved.getValue().get(1).isDeleted());
+        //Objects first recorded by an update existed before any client synced
+        assertEquals(7L, saved.getValue().get(2).getObjectId());
+        assertEquals(7L, saved.getValue().get(2).getSequence());
+        assertEquals(0L, saved.getValue().get(2).getCreatedSequence());
+        Mockito.verify(transactionManager).commit(Mockito.any());
+    }
+
+    @Test
+    void testRecord_DeletedCourse() {
+        Mockito.when(courseRepository.findVersion(1L)).thenReturn(null);
+
+        courseChangeService.record(1L, List.of(ContentChange.saved(ContentChange.Type.SESSION, 5L)));
+
+        Mockito.verifyZeroInteractions(courseChangeRepository);
+    }
+
+    @Test
+    void testGetChanges_Operations() {
+        var s5 = session(5L);
+        var s6 = session(6L);
+        Mockito.when(courseChangeRepository.findPage(Mockito.eq(1L), Mockito.eq(4L), Mockito.eq(Long.MAX_VALUE), Mockito.any()))
+                .thenReturn(List.of(
+                        row(1L, ContentChange.Type.SESSION, 5L, 2L, 5L, false),
+                        row(2L, ContentChange.Type.SESSION, 6L, 5L, 5L, false),
+                        row(3L, ContentChange.Type.SESSION, 7L, 3L, 6L, true),
+                        row(4L, ContentChange.Type.SESSION, 8L, 6L, 6L, true),
+                        row(5L, ContentChange.Type.SESSION, 9L, 1L, 8L, false)));
+        Mockito.when(sessionRepository.findSummariesByCourseIdAndIdIn(1L, List.of(5L, 6L, 9L))).thenReturn(List.of(s5, s6));
+
+        var changes = courseChangeService.getChanges(1L, 7L, 4L, 4L, Long.MAX_VALUE, 10);
+
+        var operations = new ArrayList<String>();
+        for (CourseChangeItem item : changes.getChanges()) {
+            operations.add(item.getId() + ":" + item.getOperation());
+        }
+        //Session 8 was created and deleted after 4, and session 9 is no longer found
+        assertEquals(List.of("5:UPDATE", "6:INSERT", "7:DELETE", "9:DELETE"), operations);
+        assertSame(s5, changes.getChanges().get(0).getData());
+        assertNull(changes.getChanges().get(2).getData());
+        assertEquals(8L, changes.getSequence());
+        assertNull(changes.getNextCursor());
+    }
+
+    @Test
+    void testGetChanges_NextPage() {
+        Mockito.when(courseChangeRepository.findPage(Mockito.eq(1L), Mockito.eq(4L), Mockito.eq(Long.MAX_VALUE), Mockito.any()))
+                .thenReturn(List.of(
+                        row(1L, ContentChange.Type.SESSION, 5L, 5L, 5L, true),
+                        row(2L, ContentChange.Type.SESSION, 6L, 2L, 6L, true),
+                        row(3L, ContentChange.Type.SESSION, 7L, 2L, 6L, true)));
+
+        var changes = courseChangeService.getChanges(1L, 9L, 4L, 4L, Long.MAX_VALUE, 2);
+
+        assertEquals(1, changes.getChanges().size());
+        assertEquals(6L, changes.getChanges().get(0).getId());
+        //The rest of the changes of sequence 6 are in the next page
+        assertEquals(5L, changes.getSequence());
+        assertArrayEquals(new long[] { 4L, 6L, 2L }, CourseChanges.parseCursor(changes.getNextCursor()));
+        Mockito.verifyZeroInteractions(sessionRepository);
+    }
+}
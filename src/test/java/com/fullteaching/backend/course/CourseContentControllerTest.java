@@ -0,0 +1,445 @@
+package com.fullteaching.backend.course;
+
+import com.fullteaching.backend.coursedetails.CourseDetailsInfo;
+import com.fullteaching.backend.coursedetails.CourseDetailsRepository;
+import com.fullteaching.backend.entry.EntryRepository;
+import com.fullteaching.backend.entry.EntrySummary;
+import com.fullteaching.backend.filegroup.FileGroup;
+import com.fullteaching.backend.filegroup.FileGroupRepository;
+import com.fullteaching.backend.forum.CommentWriteBehindService;
+import com.fullteaching.backend.forum.Forum;
+import com.fullteaching.backend.forum.ForumHotEntriesService;
+import com.fullteaching.backend.forum.ForumHotEntry;
+import com.fullteaching.backend.forum.ForumPage;
+import com.fullteaching.backend.forum.ForumReadMarks;
+import com.fullteaching.backend.forum.ForumReadService;
+import com.fullteaching.backend.forum.ForumReadSummary;
+import com.fullteaching.backend.forum.ForumRepository;
+import com.fullteaching.backend.forum.ForumSearchPage;
+import com.fullteaching.backend.forum.ForumSearchService;
+import com.fullteaching.backend.security.AuthorizationService;
+import com.fullteaching.backend.session.SessionRepository;
+import com.fullteaching.backend.session.SessionSummary;
+import com.fullteaching.backend.user.User;
+import com.fullteaching.backend.user.UserComponent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@RunWith(MockitoJUnitRunner.class)
+class CourseContentControllerTest {
+
+    @InjectMocks
+    private CourseContentController courseContentController;
+
+    @Mock
+    private CourseRepository courseRepository;
+
+    @Mock
+    private CourseDetailsRepository courseDetailsRepository;
+
+    @Mock
+    private SessionRepository sessionRepository;
+
+    @Mock
+    private ForumRepository forumRepository;
+
+    @Mock
+    private EntryRepository entryRepository;
+
+    @Mock
+    private FileGroupRepository fileGroupRepository;
+
+    @Mock
+    private CourseChangeService courseChangeService;
+
+    @Mock
+    private ForumSearchService forumSearchService;
+
+    @Mock
+    private ForumHotEntriesService forumHotEntriesService;
+
+    @Mock
+    private ForumReadService forumReadService;
+
+    @Mock
+    private CommentWriteBehindService commentWriteBehindService;
+
+    @Mock
+    private AuthorizationService authorizationService;
+
+    @Mock
+    private UserComponent user;
+
+    @BeforeEach
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        Mockito.when(authorizationService.checkBackendLogged()).thenReturn(null);
+        User logged = Mockito.mock(User.class);
+        Mockito.when(logged.getId()).thenReturn(7L);
+        Mockito.when(user.getLoggedUser()).thenReturn(logged);
+    }
+
+    @Test
+    void testGetCourseInfo_Success() {
+        var info = Mockito.mock(CourseDetailsInfo.class);
+        Mockito.when(courseDetailsRepository.findInfoByCourseId(1L)).thenReturn(info);
+
+        var resp = courseContentController.getCourseInfo("1");
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(info, resp.getBody());
+    }
+
+    @Test
+    void testGetCourseInfo_NotFound() {
+        var resp = courseContentController.getCourseInfo("1");
+
+        assertEquals(HttpStatus.NOT_FOUND, resp.getStatusCode());
+    }
+
+    @Test
+    void testGetCourseInfo_InvalidNumber() {
+        var resp = courseContentController.getCourseInfo("a");
+
+        assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
+    }
+
+    @Test
+    void testGetCourseSessions_Success() {
+        var sessions = List.of(Mockito.mock(SessionSummary.class));
+        Mockito.when(courseRepository.findVersion(1L)).thenReturn(0L);
+        Mockito.when(sessionRepository.findSummariesByCourseId(1L)).thenReturn(sessions);
+
+        var resp = courseContentController.getCourseSessions("1");
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(sessions, resp.getBody());
+    }
+
+    @Test
+    void testGetCourseSessions_NotFound() {
+        Mockito.when(courseRepository.findVersion(1L)).thenReturn(null);
+
+        var resp = courseContentController.getCourseSessions("1");
+
+        assertEquals(HttpStatus.NOT_FOUND, resp.getStatusCode());
+        Mockito.verify(sessionRepository, Mockito.never()).findSummariesByCourseId(Mockito.anyLong());
+    }
+
+    @Test
+    void testGetCourseForum_Success() {
+        var forum = new Forum(true);
+        forum.setId(5L);
+        forum.setEntryCount(3);
+        forum.setCommentCount(4);
+        forum.setLastActivity(500L);
+        var entries = new ArrayList<EntrySummary>();
+        for (long i = 1; i <= 3; i++) {
+            entries.add(new EntrySummary(i, "Entry " + i, 100 - i, "nick", "pic.jpg", i == 2 ? 4 : 0, i == 2 ? 500L : 100 - i));
+        }
+        Mockito.when(forumRepository.findByCourseId(1L)).thenReturn(forum);
+        Mockito.when(entryRepository.findSummariesByForumId(Mockito.eq(5L), Mockito.eq(Long.MAX_VALUE), Mockito.eq(Long.MAX_VALUE), Mockito.any())).thenReturn(entries);
+
+        var resp = courseContentController.getCourseForum("1", null, 2);
+        var page = (ForumPage) resp.getBody();
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertNotNull(page);
+        assertEquals(5L, page.getId());
+        assertTrue(page.isActivated());
+        assertEquals(entries.subList(0, 2), page.getEntries());
+        assertArrayEquals(new long[] { 98L, 2L }, ForumPage.parseCursor(page.getNextCursor()));
+        assertEquals(3, page.getEntryCount());
+        assertEquals(4, page.getCommentCount());
+        assertEquals(500L, page.getLastActivity());
+        //Counters are read from the entries: their comments are never queried
+        Mockito.verify(entryRepository, Mockito.never()).countComments(Mockito.any());
+    }
+
+    @Test
+    void testGetCourseForum_WaitsForOwnComments() {
+        var forum = new Forum(true);
+        forum.setId(5L);
+        Mockito.when(commentWriteBehindService.isEnabled()).thenReturn(true);
+        Mockito.when(forumRepository.findByCourseId(1L)).thenReturn(forum);
+        Mockito.when(entryRepository.findSummariesByForumId(Mockito.eq(5L), Mockito.eq(Long.MAX_VALUE), Mockito.eq(Long.MAX_VALUE), Mockito.any())).thenReturn(List.of());
+
+        courseContentController.getCourseForum("1", null, null);
+
+        //The comments of the user not saved yet are saved before the forum is read
+        var order = Mockito.inOrder(commentWriteBehindService, forumRepository);
+        order.verify(commentWriteBehindService).awaitSaved(7L);
+        order.verify(forumRepository).findByCourseId(1L);
+    }
+
+    @Test
+    void testGetCourseForum_AfterCursor() {
+        var forum = new Forum(true);
+        forum.setId(5L);
+        Mockito.when(forumRepository.findByCourseId(1L)).thenReturn(forum);
+        Mockito.when(entryRepository.findSummariesByForumId(Mockito.eq(5L), Mockito.eq(98L), Mockito.eq(2L), Mockito.any())).thenReturn(List.of());
+
+        var resp = courseContentController.getCourseForum("1", ForumPage.cursor(98L, 2L), null);
+        var page = (ForumPage) resp.getBody();
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertNotNull(page);
+        assertTrue(page.getEntries().isEmpty());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void testGetCourseForum_InvalidCursor() {
+        var resp = courseContentController.getCourseForum("1", "98", null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(forumRepository);
+    }
+
+    @Test
+    void testGetCourseForum_Unauthorized() {
+        Mockito.when(authorizationService.checkBackendLogged()).thenReturn(new ResponseEntity<>(HttpStatus.UNAUTHORIZED));
+
+        var resp = courseContentController.getCourseForum("1", null, null);
+
+        assertEquals(HttpStatus.UNAUTHORIZED, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(forumRepository);
+    }
+
+    @Test
+    void testSearchCourseForum_Success() {
+        var forum = new Forum(true);
+        forum.setId(5L);
+        var page = new ForumSearchPage(new ArrayList<>(), null);
+        Mockito.when(forumRepository.findByCourseId(1L)).thenReturn(forum);
+        Mockito.when(forumSearchService.search(Mockito.eq(1L), Mockito.eq(forum), Mockito.eq("exam date"), Mockito.any(), Mockito.eq(100)))
+                .thenReturn(page);
+
+        var resp = courseContentController.searchCourseForum("1", "exam date", ForumSearchPage.cursor(1.5f, 7), 500);
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertSame(page, resp.getBody());
+        Mockito.verify(forumSearchService).search(Mockito.eq(1L), Mockito.eq(forum), Mockito.eq("exam date"),
+                Mockito.eq(new int[] { Float.floatToIntBits(1.5f), 7 }), Mockito.eq(100));
+    }
+
+    @Test
+    void testSearchCourseForum_MissingQuery() {
+        var resp = courseContentController.searchCourseForum("1", " ", null, null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(forumRepository, forumSearchService);
+    }
+
+    @Test
+    void testSearchCourseForum_InvalidCursor() {
+        var resp = courseContentController.searchCourseForum("1", "exam", "98", null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(forumRepository, forumSearchService);
+    }
+
+    @Test
+    void testSearchCourseForum_ForumNotFound() {
+        Mockito.when(forumRepository.findByCourseId(1L)).thenReturn(null);
+
+        var resp = courseContentController.searchCourseForum("1", "exam", null, null);
+
+        assertEquals(HttpStatus.NOT_FOUND, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(forumSearchService);
+    }
+
+    @Test
+    void testGetCourseForumHotEntries_Success() {
+        Forum forum = new Forum(true);
+        forum.setId(3L);
+        var hot = List.of(Mockito.mock(ForumHotEntry.class));
+        Mockito.when(forumRepository.findByCourseId(1L)).thenReturn(forum);
+        Mockito.when(forumHotEntriesService.getHotEntries(3L, 50)).thenReturn(hot);
+
+        var resp = courseContentController.getCourseForumHotEntries("1", 500);
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(hot, resp.getBody());
+    }
+
+    @Test
+    void testGetCourseForumHotEntries_ForumNotFound() {
+        Mockito.when(forumRepository.findByCourseId(1L)).thenReturn(null);
+
+        var resp = courseContentController.getCourseForumHotEntries("1", null);
+
+        assertEquals(HttpStatus.NOT_FOUND, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(forumHotEntriesService);
+    }
+
+    @Test
+    void testGetCourseForumReadState_Success() {
+        Forum forum = new Forum(true);
+        var summary = new ForumReadSummary(3, List.of(10L), List.of());
+        Mockito.when(forumRepository.findByCourseId(1L)).thenReturn(forum);
+        Mockito.when(courseRepository.findAttenderIdsIn(1L, List.of(7L))).thenReturn(List.of(7L));
+        Mockito.when(forumReadService.getReadState(7L, 1L, forum, List.of(10L, 11L), List.of())).thenReturn(summary);
+
+        var resp = courseContentController.getCourseForumReadState("1", List.of(10L, 11L), null);
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(summary, resp.getBody());
+    }
+
+    @Test
+    void testGetCourseForumReadState_NotAttender() {
+        Mockito.when(forumRepository.findByCourseId(1L)).thenReturn(new Forum(true));
+        Mockito.when(courseRepository.findAttenderIdsIn(1L, List.of(7L))).thenReturn(List.of());
+
+        var resp = courseContentController.getCourseForumReadState("1", List.of(10L), null);
+
+        assertEquals(HttpStatus.UNAUTHORIZED, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(forumReadService);
+    }
+
+    @Test
+    void testMarkCourseForumRead_Success() {
+        Forum forum = new Forum(true);
+        var summary = new ForumReadSummary(1, List.of(), List.of());
+        Mockito.when(forumRepository.findByCourseId(1L)).thenReturn(forum);
+        Mockito.when(courseRepository.findAttenderIdsIn(1L, List.of(7L))).thenReturn(List.of(7L));
+        Mockito.when(forumReadService.markRead(7L, 1L, forum, List.of(10L), List.of(20L, 21L))).thenReturn(summary);
+
+        var resp = courseContentController.markCourseForumRead("1", false, new ForumReadMarks(List.of(10L), List.of(20L, 21L)));
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(summary, resp.getBody());
+    }
+
+    @Test
+    void testMarkCourseForumRead_All() {
+        Forum forum = new Forum(true);
+        var summary = new ForumReadSummary(0, List.of(), List.of());
+        Mockito.when(forumRepository.findByCourseId(1L)).thenReturn(forum);
+        Mockito.when(courseRepository.findAttenderIdsIn(1L, List.of(7L))).thenReturn(List.of(7L));
+        Mockito.when(forumReadService.markAllRead(7L, 1L, forum)).thenReturn(summary);
+
+        var resp = courseContentController.markCourseForumRead("1", true, null);
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(summary, resp.getBody());
+    }
+
+    @Test
+    void testMarkCourseForumRead_TooManyIds() {
+        List<Long> ids = new ArrayList<>();
+        for (long i = 0; i < 1001; i++) {
+            ids.add(i);
+        }
+
+        var resp = courseContentController.markCourseForumRead("1", false, new ForumReadMarks(ids, List.of()));
+
+        assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(forumRepository, forumReadService);
+    }
+
+    @Test
+    void testMarkCourseForumRead_ForumNotFound() {
+        Mockito.when(forumRepository.findByCourseId(1L)).thenReturn(null);
+
+        var resp = courseContentController.markCourseForumRead("1", true, null);
+
+        assertEquals(HttpStatus.NOT_FOUND, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(forumReadService);
+    }
+
+    @Test
+    void testGetCourseFiles_Success() {
+        var fileGroups = List.of(new FileGroup("Slides"));
+        Mockito.when(courseRepository.findVersion(1L)).thenReturn(0L);
+        Mockito.when(fileGroupRepository.findRootsByCourseId(1L)).thenReturn(fileGroups);
+
+        var resp = courseContentController.getCourseFiles("1");
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(fileGroups, resp.getBody());
+    }
+
+    @Test
+    void testGetCourseFiles_NotFound() {
+        Mockito.when(courseRepository.findVersion(1L)).thenReturn(null);
+
+        var resp = courseContentController.getCourseFiles("1");
+
+        assertEquals(HttpStatus.NOT_FOUND, resp.getStatusCode());
+    }
+
+    @Test
+    void testGetCourseChanges_Since() {
+        var changes = new CourseChanges(1L, 9L, List.of(), null);
+        Mockito.when(courseRepository.findVersion(1L)).thenReturn(9L);
+        Mockito.when(courseChangeService.getChanges(1L, 9L, 4L, 4L, Long.MAX_VALUE, 500)).thenReturn(changes);
+
+        var resp = courseContentController.getCourseChanges("1", 4L, null, null);
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(changes, resp.getBody());
+    }
+
+    @Test
+    void testGetCourseChanges_After() {
+        var changes = new CourseChanges(1L, 9L, List.of(), null);
+        Mockito.when(courseRepository.findVersion(1L)).thenReturn(9L);
+        Mockito.when(courseChangeService.getChanges(1L, 9L, 4L, 6L, 12L, 1000)).thenReturn(changes);
+
+        var resp = courseContentController.getCourseChanges("1", null, CourseChanges.cursor(4L, 6L, 12L), 5000);
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(changes, resp.getBody());
+    }
+
+    @Test
+    void testGetCourseChanges_SinceAndAfter() {
+        var resp = courseContentController.getCourseChanges("1", 4L, CourseChanges.cursor(4L, 6L, 12L), null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(courseRepository, courseChangeService);
+    }
+
+    @Test
+    void testGetCourseChanges_InvalidCursor() {
+        var resp = courseContentController.getCourseChanges("1", null, "not-a-cursor", null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(courseRepository, courseChangeService);
+    }
+
+    @Test
+    void testGetCourseChanges_NotFound() {
+        Mockito.when(courseRepository.findVersion(1L)).thenReturn(null);
+
+        var resp = courseContentController.getCourseChanges("1", 4L, null, null);
+
+        assertEquals(HttpStatus.NOT_FOUND, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(courseChangeService);
+    }
+
+    @Test
+    void testGetCourseChanges_SinceAhead() {
+        Mockito.when(courseRepository.findVersion(1L)).thenReturn(3L);
+
+        var resp = courseContentController.getCourseChanges("1", 4L, null, null);
+
+        assertEquals(HttpStatus.GONE, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(courseChangeService);
+    }
+}
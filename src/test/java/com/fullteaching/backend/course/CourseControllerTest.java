@@ -1,7 +1,12 @@
 package com.fullteaching.backend.course;
 
 import com.fullteaching.backend.coursedetails.CourseDetails;
+import com.fullteaching.backend.enrollment.AttendersDelta;
+import com.fullteaching.backend.enrollment.EnrollmentResult;
+import com.fullteaching.backend.enrollment.EnrollmentService;
 import com.fullteaching.backend.security.AuthorizationService;
+import com.fullteaching.backend.session.SessionRepository;
+import com.fullteaching.backend.session.SessionSummary;
 import com.fullteaching.backend.user.User;
 import com.fullteaching.backend.user.UserComponent;
 import com.fullteaching.backend.user.UserRepository;
@@ -14,10 +19,13 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -33,12 +41,33 @@ class CourseControllerTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private SessionRepository sessionRepository;
+
     @Mock
     private UserComponent user;
 
     @Mock
     private AuthorizationService authorizationService;
 
+    @Mock
+    private CourseCache courseCache;
+
+    @Mock
+    private EnrollmentService enrollmentService;
+
+    @Mock
+    private CourseDeletionService courseDeletionService;
+
+    @Mock
+    private CoursePatchService coursePatchService;
+
+    @Mock
+    private CourseStatisticsService courseStatisticsService;
+
+    @Mock
+    private CourseFieldsService courseFieldsService;
+
     private User loggedUser;
 
     @BeforeEach
@@ -120,19 +149,153 @@ class CourseControllerTest {
     }
 
 
+    @Test
+    void testGetCourseSummaries_Success() {
+        var summaries = new ArrayList<CourseSummary>();
+        for (long i = 1; i <= 3; i++) {
+            var summary = Mockito.mock(CourseSummary.class);
+            Mockito.when(summary.getId()).thenReturn(i);
+            summaries.add(summary);
+        }
+
+        var session1 = Mockito.mock(SessionSummary.class);
+        Mockito.when(session1.getCourseId()).thenReturn(1L);
+        var session2 = Mockito.mock(SessionSummary.class);
+        Mockito.when(session2.getCourseId()).thenReturn(2L);
+
+        Mockito.when(courseRepository.findSummariesByAttender(Mockito.eq(loggedUser.getId()), Mockito.eq(-1L), Mockito.anyLong(), Mockito.any())).thenReturn(summaries);
+        //The sessions are bounded per course by the query
+        Mockito.when(sessionRepository.findUpcomingByCourseIds(Mockito.eq(List.of(1L, 2L)), Mockito.anyLong(), Mockito.eq(1))).thenReturn(List.of(session1, session2));
+
+        var resp = courseController.getCourseSummaries(String.valueOf(loggedUser.getId()), null, 2, 1);
+
+        Mockito.verify(userRepository, Mockito.never()).findAllById(Mockito.any());
+        Mockito.verify(courseRepository, Mockito.never()).findByAttenders(Mockito.any());
+
+        var page = (CourseSummaryPage) resp.getBody();
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertNotNull(page);
+        assertEquals(2, page.getCourses().size());
+        assertEquals(Long.valueOf(2L), page.getNextCursor());
+        assertEquals(List.of(session1), page.getSessions().get(1L));
+        assertEquals(List.of(session2), page.getSessions().get(2L));
+    }
+
+    @Test
+    void testGetCourseSummaries_LastPage() {
+        var summary = Mockito.mock(CourseSummary.class);
+        Mockito.when(summary.getId()).thenReturn(7L);
+
+        Mockito.when(courseRepository.findSummariesByAttender(Mockito.eq(loggedUser.getId()), Mockito.eq(5L), Mockito.anyLong(), Mockito.any())).thenReturn(List.of(summary));
+
+        var resp = courseController.getCourseSummaries(String.valueOf(loggedUser.getId()), 5L, null, null);
+
+        Mockito.verify(sessionRepository, Mockito.never()).findUpcomingByCourseIds(Mockito.any(), Mockito.anyLong(), Mockito.anyInt());
+
+        var page = (CourseSummaryPage) resp.getBody();
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(1, page.getCourses().size());
+        assertNull(page.getNextCursor());
+        assertTrue(page.getSessions().isEmpty());
+    }
+
+    @Test
+    void testGetCourseSummaries_InvalidNumber() {
+        var resp = courseController.getCourseSummaries("a", null, null, null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
+    }
+
+    @Test
+    void testGetCourseStatistics_Success() {
+        var statistics = List.of(new CourseStatistics(1L, "Course", 0L));
+        Mockito.when(courseStatisticsService.getTaughtCourseStatistics(loggedUser.getId())).thenReturn(statistics);
+
+        var resp = courseController.getCourseStatistics();
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(statistics, resp.getBody());
+    }
+
+    @Test
+    void testGetCourseStatistics_Unauthorized() {
+        Mockito.when(authorizationService.checkBackendLogged()).thenReturn(new ResponseEntity<>(HttpStatus.UNAUTHORIZED));
+
+        var resp = courseController.getCourseStatistics();
+
+        assertEquals(HttpStatus.UNAUTHORIZED, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(courseStatisticsService);
+    }
+
     @Test
     void testGetCourse_Success() {
         var course = new Course("prog", "prog.jpg", loggedUser);
         course.setId(1L);
 
-        Mockito.when(courseRepository.findById(course.getId())).thenReturn(java.util.Optional.of(course));
+        var courseJson = "{\"id\":1}".getBytes();
+
+        Mockito.when(courseRepository.findVersion(course.getId())).thenReturn(4L);
+        Mockito.when(courseCache.getCourse(course.getId())).thenReturn(new CachedCourse(4L, courseJson));
 
-        var resp = courseController.getCourse(String.valueOf(course.getId()));
+        var resp = courseController.getCourse(String.valueOf(course.getId()), null, null);
 
-        Mockito.verify(courseRepository, Mockito.times(1)).findById(course.getId());
+        Mockito.verify(courseCache, Mockito.times(1)).getCourse(course.getId());
+        Mockito.verify(courseRepository, Mockito.never()).findById(course.getId());
 
         assertEquals(HttpStatus.OK, resp.getStatusCode());
-        assertEquals(course, resp.getBody());
+        assertEquals(MediaType.APPLICATION_JSON_UTF8, resp.getHeaders().getContentType());
+        assertEquals("\"4\"", resp.getHeaders().getETag());
+        assertEquals(courseJson, resp.getBody());
+    }
+
+    @Test
+    void testGetCourse_NotModified() {
+        Mockito.when(courseRepository.findVersion(1L)).thenReturn(4L);
+
+        var resp = courseController.getCourse("1", null, "\"3\", W/\"4\"");
+
+        Mockito.verifyZeroInteractions(courseCache);
+        assertEquals(HttpStatus.NOT_MODIFIED, resp.getStatusCode());
+        assertEquals("\"4\"", resp.getHeaders().getETag());
+        assertNull(resp.getBody());
+    }
+
+    @Test
+    void testGetCourse_Modified() {
+        var courseJson = "{\"id\":1}".getBytes();
+        Mockito.when(courseRepository.findVersion(1L)).thenReturn(5L);
+        Mockito.when(courseCache.getCourse(1L)).thenReturn(new CachedCourse(5L, courseJson));
+
+        var resp = courseController.getCourse("1", null, "\"4\"");
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals("\"5\"", resp.getHeaders().getETag());
+        assertEquals(courseJson, resp.getBody());
+    }
+
+    @Test
+    void testGetCourse_Fields() {
+        var values = new java.util.LinkedHashMap<String, Object>();
+        values.put("title", "prog");
+        Mockito.when(courseRepository.findVersion(1L)).thenReturn(4L);
+        Mockito.when(courseFieldsService.getFields(1L, java.util.Set.of("title", "sessions"))).thenReturn(new CourseFieldsService.CourseFields(4L, values));
+
+        var resp = courseController.getCourse("1", "title, sessions", null);
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals("\"4\"", resp.getHeaders().getETag());
+        assertEquals(values, resp.getBody());
+        Mockito.verify(courseCache, Mockito.never()).getCourse(Mockito.anyLong());
+    }
+
+    @Test
+    void testGetCourse_UnknownField() {
+        var resp = courseController.getCourse("1", "title,attenders", null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(courseFieldsService);
     }
 
     @Test
@@ -143,7 +306,7 @@ class CourseControllerTest {
         Mockito.when(courseRepository.findById(course.getId())).thenReturn(java.util.Optional.of(course));
         Mockito.when(authorizationService.checkBackendLogged()).thenReturn(new ResponseEntity<>(HttpStatus.UNAUTHORIZED));
 
-        var resp = courseController.getCourse(String.valueOf(course.getId()));
+        var resp = courseController.getCourse(String.valueOf(course.getId()), null, null);
 
         assertEquals(HttpStatus.UNAUTHORIZED, resp.getStatusCode());
     }
@@ -157,11 +320,82 @@ class CourseControllerTest {
         Mockito.when(authorizationService.checkBackendLogged()).thenReturn(null);
 
 
-        var resp = courseController.getCourse("a");
+        var resp = courseController.getCourse("a", null, null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
+    }
+
+    @Test
+    void testGetCourseAttenders_Success() {
+        var course = new Course("prog", "prog.jpg", loggedUser);
+        course.setId(1L);
+        var attenders = new ArrayList<CourseAttender>();
+        for (long i = 1; i <= 3; i++) {
+            var attender = Mockito.mock(CourseAttender.class);
+            Mockito.when(attender.getId()).thenReturn(i);
+            Mockito.when(attender.getNickName()).thenReturn("nick" + i);
+            attenders.add(attender);
+        }
+
+        Mockito.when(courseRepository.findById(1L)).thenReturn(java.util.Optional.of(course));
+        Mockito.when(courseRepository.findAttendersByNickName(Mockito.eq(1L), Mockito.eq("fl!_a%"), Mockito.eq(""), Mockito.eq(-1L), Mockito.any())).thenReturn(attenders);
+
+        var resp = courseController.getCourseAttenders("1", null, "fl_a", null, 2);
+        var page = (CourseAttenderPage) resp.getBody();
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertNotNull(page);
+        assertEquals(attenders.subList(0, 2), page.getAttenders());
+        assertEquals(2L, CourseAttenderPage.cursorId(page.getNextCursor()));
+        assertEquals("nick2", CourseAttenderPage.cursorKey(page.getNextCursor()));
+    }
+
+    @Test
+    void testGetCourseAttenders_ByEmailAfterCursor() {
+        var course = new Course("prog", "prog.jpg", loggedUser);
+        course.setId(1L);
+
+        Mockito.when(courseRepository.findById(1L)).thenReturn(java.util.Optional.of(course));
+        Mockito.when(courseRepository.findAttendersByName(Mockito.eq(1L), Mockito.eq("%"), Mockito.eq("a@gmail.com"), Mockito.eq(7L), Mockito.any())).thenReturn(List.of());
+
+        var resp = courseController.getCourseAttenders("1", "email", null, CourseAttenderPage.cursor("a@gmail.com", 7L), null);
+        var page = (CourseAttenderPage) resp.getBody();
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertNotNull(page);
+        assertTrue(page.getAttenders().isEmpty());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void testGetCourseAttenders_InvalidCursor() {
+        var resp = courseController.getCourseAttenders("1", null, null, "not-a-cursor", null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
+        Mockito.verify(courseRepository, Mockito.never()).findById(Mockito.anyLong());
+    }
+
+    @Test
+    void testGetCourseAttenders_InvalidSort() {
+        var resp = courseController.getCourseAttenders("1", "date", null, null, null);
 
         assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
     }
 
+    @Test
+    void testGetCourseAttenders_NotAttender() {
+        var course = new Course("prog", "prog.jpg", loggedUser);
+        course.setId(1L);
+
+        Mockito.when(courseRepository.findById(1L)).thenReturn(java.util.Optional.of(course));
+        Mockito.when(authorizationService.checkAuthorizationUsers(course, course.getAttenders())).thenReturn(new ResponseEntity<>(HttpStatus.UNAUTHORIZED));
+
+        var resp = courseController.getCourseAttenders("1", null, null, null, null);
+
+        assertEquals(HttpStatus.UNAUTHORIZED, resp.getStatusCode());
+        Mockito.verify(courseRepository, Mockito.never()).findAttendersByNickName(Mockito.anyLong(), Mockito.any(), Mockito.any(), Mockito.anyLong(), Mockito.any());
+    }
+
     @Test
     void testNewCourse_Success() {
         var user1 = new User("Victoria", "123", "Vic", "vic.jpg");
@@ -214,6 +448,7 @@ class CourseControllerTest {
         var resp = courseController.modifyCourse(modifiedCourse);
 
         Mockito.verify(courseRepository, Mockito.times(1)).save(modifiedCourse);
+        Mockito.verify(courseCache, Mockito.times(1)).invalidate(courseID, ContentChange.saved(ContentChange.Type.COURSE, courseID));
 
         var savedCourse = (Course) resp.getBody();
 
@@ -279,6 +514,52 @@ class CourseControllerTest {
         var resp = courseController.modifyCourse(modifiedCourse);
 
         assertEquals(HttpStatus.OK, resp.getStatusCode());
+        Mockito.verify(courseRepository).incrementHeaderVersion(courseID);
+    }
+
+    @Test
+    void testPatchCourse_Success() {
+        var patch = new CoursePatch(null, 2L, null, "New title", null, null);
+        var applied = new CoursePatch(1L, 3L, 8L, "New title", null, null);
+
+        Mockito.when(courseRepository.findTeacher(1L)).thenReturn(loggedUser);
+        Mockito.when(authorizationService.checkAuthorization(loggedUser, loggedUser)).thenReturn(null);
+        Mockito.when(coursePatchService.patch(1L, patch)).thenReturn(applied);
+
+        var resp = courseController.patchCourse(patch, "1");
+
+        Mockito.verify(courseRepository, Mockito.never()).findById(Mockito.anyLong());
+        Mockito.verify(courseCache).evict(1L);
+        Mockito.verify(courseCache, Mockito.never()).invalidate(Mockito.anyLong(), Mockito.any());
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(applied, resp.getBody());
+    }
+
+    @Test
+    void testPatchCourse_Conflict() {
+        var patch = new CoursePatch(null, 2L, null, "New title", null, null);
+
+        Mockito.when(courseRepository.findTeacher(1L)).thenReturn(loggedUser);
+        Mockito.when(authorizationService.checkAuthorization(loggedUser, loggedUser)).thenReturn(null);
+        Mockito.when(coursePatchService.patch(1L, patch)).thenReturn(null);
+
+        var resp = courseController.patchCourse(patch, "1");
+
+        Mockito.verifyZeroInteractions(courseCache);
+        assertEquals(HttpStatus.CONFLICT, resp.getStatusCode());
+    }
+
+    @Test
+    void testPatchCourse_TeacherUnauthorized() {
+        var teacher = new User("Victoria", "123", "Vic", "vic.jpg");
+
+        Mockito.when(courseRepository.findTeacher(1L)).thenReturn(teacher);
+        Mockito.when(authorizationService.checkAuthorization(teacher, teacher)).thenReturn(new ResponseEntity<>(HttpStatus.UNAUTHORIZED));
+
+        var resp = courseController.patchCourse(new CoursePatch(null, 2L, null, "New title", null, null), "1");
+
+        Mockito.verifyZeroInteractions(coursePatchService);
+        assertEquals(HttpStatus.UNAUTHORIZED, resp.getStatusCode());
     }
 
     @Test
@@ -289,14 +570,63 @@ class CourseControllerTest {
         Mockito.when(authorizationService.checkAuthorization(course, course.getTeacher())).thenReturn(null);
         Mockito.when(courseRepository.findById(course.getId())).thenReturn(java.util.Optional.of(course));
 
+        var deletion = new CourseDeletion(course.getId(), loggedUser.getId());
+        deletion.setId(5L);
+        Mockito.when(courseDeletionService.delete(course, loggedUser.getId())).thenReturn(deletion);
+
         var resp = courseController.deleteCourse(String.valueOf(course.getId()));
 
-        Mockito.verify(courseRepository).delete(course);
+        Mockito.verify(courseDeletionService).delete(course, loggedUser.getId());
+        Mockito.verify(courseRepository, Mockito.never()).delete(Mockito.any());
+        Mockito.verify(userRepository, Mockito.never()).saveAll(Mockito.any());
 
-        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(HttpStatus.ACCEPTED, resp.getStatusCode());
+        assertEquals("/api-courses/delete/jobs/5", resp.getHeaders().getLocation().toString());
         assertEquals(course, resp.getBody());
     }
 
+    @Test
+    void testDeleteCourse_AlreadyDeleted() {
+        var course = new Course("prog", "prog.jpg", loggedUser);
+        course.setId(1L);
+        ReflectionTestUtils.setField(course, "deleted", true);
+        Mockito.when(courseRepository.findById(course.getId())).thenReturn(java.util.Optional.of(course));
+
+        var deletion = new CourseDeletion(course.getId(), loggedUser.getId());
+        deletion.setId(5L);
+        Mockito.when(courseDeletionService.delete(course, loggedUser.getId())).thenReturn(deletion);
+
+        //The teacher can retry the deletion, though other checks hide the course
+        var resp = courseController.deleteCourse(String.valueOf(course.getId()));
+
+        assertEquals(HttpStatus.ACCEPTED, resp.getStatusCode());
+        Mockito.verify(courseDeletionService).delete(course, loggedUser.getId());
+        Mockito.verify(authorizationService, Mockito.never()).checkAuthorization(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void testGetCourseDeletion_Success() {
+        var deletion = new CourseDeletion(1L, loggedUser.getId());
+        deletion.setId(5L);
+        Mockito.when(courseDeletionService.getDeletion(5L)).thenReturn(deletion);
+
+        var resp = courseController.getCourseDeletion("5");
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(deletion, resp.getBody());
+    }
+
+    @Test
+    void testGetCourseDeletion_OtherTeacher() {
+        var deletion = new CourseDeletion(1L, 2L);
+        deletion.setId(5L);
+        Mockito.when(courseDeletionService.getDeletion(5L)).thenReturn(deletion);
+
+        var resp = courseController.getCourseDeletion("5");
+
+        assertEquals(HttpStatus.UNAUTHORIZED, resp.getStatusCode());
+    }
+
     @Test
     void testDeleteCourse_TeacherUnauthorized() {
         var course = new Course("prog", "prog.jpg", loggedUser);
@@ -348,16 +678,47 @@ class CourseControllerTest {
 
         var attenders = new String[]{user.getName()};
 
+        var result = new EnrollmentResult();
+        result.getAttendersAdded().addAll(users);
+
         Mockito.when(authorizationService.checkAuthorization(course, course.getTeacher())).thenReturn(null);
         Mockito.when(courseRepository.findById(course.getId())).thenReturn(java.util.Optional.of(course));
-        Mockito.when(userRepository.findByNameIn(Mockito.anyCollection())).thenReturn(users);
+        Mockito.when(enrollmentService.enroll(course.getId(), List.of(attenders))).thenReturn(result);
 
         var resp = courseController.addAttenders(attenders, String.valueOf(course.getId()));
 
-        Mockito.verify(courseRepository, Mockito.times(1)).save(course);
-        Mockito.verify(userRepository, Mockito.times(1)).saveAll(users);
+        Mockito.verify(enrollmentService, Mockito.times(1)).enroll(course.getId(), List.of(attenders));
+        Mockito.verify(courseCache, Mockito.times(1)).invalidate(course.getId());
+        Mockito.verify(userRepository, Mockito.never()).saveAll(Mockito.any());
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+    }
+
+    @Test
+    void testModifyAttenders_Success() {
+        var course = new Course("prog", "prog.jpg", loggedUser);
+        course.setId(1L);
+        var delta = new AttendersDelta(List.of(2L), List.of(3L));
+        var applied = new AttendersDelta(List.of(), List.of(3L));
+
+        Mockito.when(authorizationService.checkAuthorization(course, course.getTeacher())).thenReturn(null);
+        Mockito.when(courseRepository.findById(course.getId())).thenReturn(java.util.Optional.of(course));
+        Mockito.when(enrollmentService.applyDelta(course.getId(), delta)).thenReturn(applied);
+
+        var resp = courseController.modifyAttenders(delta, String.valueOf(course.getId()));
 
+        Mockito.verify(courseCache).invalidate(course.getId());
+        Mockito.verify(userRepository, Mockito.never()).findByCourses(Mockito.any());
         assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(applied, resp.getBody());
+    }
+
+    @Test
+    void testModifyAttenders_SameIdAddedAndRemoved() {
+        var resp = courseController.modifyAttenders(new AttendersDelta(List.of(2L), List.of(2L)), "1");
+
+        Mockito.verifyZeroInteractions(enrollmentService);
+        assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
     }
 
     @Test
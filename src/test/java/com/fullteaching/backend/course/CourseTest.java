@@ -1,5 +1,6 @@
 package com.fullteaching.backend.course;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fullteaching.backend.comment.Comment;
 import com.fullteaching.backend.coursedetails.CourseDetails;
 import com.fullteaching.backend.user.User;
@@ -40,4 +41,26 @@ class CourseTest {
         assertEquals(courseDetails, course.getCourseDetails());
     }
 
-}
\ No newline at end of file
+    @Test
+    void testAttendersCount() {
+        var course = new Course("title", "image", new User());
+        course.getAttenders().add(new User("a@gmail.com", "pass", "a", null));
+        course.getAttenders().add(new User("b@gmail.com", "pass", "b", null));
+
+        assertEquals(2, course.getAttendersCount());
+        course.setAttenders(null);
+        assertEquals(0, course.getAttendersCount());
+    }
+
+    @Test
+    void testAttendersNotSerialized() throws Exception {
+        var course = new Course("title", "image", new User("t@gmail.com", "pass", "t", null));
+        course.getAttenders().add(new User("a@gmail.com", "pass", "a", null));
+
+        var json = new ObjectMapper().readTree(new ObjectMapper().writeValueAsString(course));
+
+        //Only the count: clients read the roster from its paged endpoint
+        assertNull(json.get("attenders"));
+        assertEquals(1, json.get("attendersCount").asInt());
+    }
+}
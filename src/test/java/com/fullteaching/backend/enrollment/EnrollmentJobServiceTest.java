@@ -0,0 +1,126 @@
+package com.fullteaching.backend.enrollment;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fullteaching.backend.course.CourseCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@RunWith(MockitoJUnitRunner.class)
+class EnrollmentJobServiceTest {
+
+    @InjectMocks
+    private EnrollmentJobService enrollmentJobService;
+
+    @Mock
+    private EnrollmentJobRepository jobRepository;
+
+    @Mock
+    private EnrollmentService enrollmentService;
+
+    @Mock
+    private CourseCache courseCache;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private EnrollmentJob job;
+
+    @BeforeEach
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(enrollmentJobService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(enrollmentJobService, "transactionTemplate", new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(enrollmentJobService, "chunkSize", 2);
+
+        job = new EnrollmentJob(1L, 1L, new EnrollmentJobRoster("[\"a@gmail.com\",\"b@gmail.com\",\"c@gmail.com\",\"d@gmail.com\",\"e@gmail.com\"]"), 5);
+        job.setId(7L);
+        Mockito.when(jobRepository.findById(7L)).thenReturn(Optional.of(job));
+        Mockito.when(jobRepository.save(Mockito.any(EnrollmentJob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRun_ProcessesAllChunks() {
+        Mockito.when(enrollmentService.enroll(Mockito.eq(1L), Mockito.anyCollection())).thenReturn(new EnrollmentResult());
+
+        enrollmentJobService.run(7L);
+
+        ArgumentCaptor<Collection<String>> chunks = ArgumentCaptor.forClass(Collection.class);
+        Mockito.verify(enrollmentService, Mockito.times(3)).enroll(Mockito.eq(1L), chunks.capture());
+        assertEquals(List.of(List.of("a@gmail.com", "b@gmail.com"), List.of("c@gmail.com", "d@gmail.com"), List.of("e@gmail.com")), chunks.getAllValues());
+        Mockito.verify(courseCache, Mockito.times(3)).invalidate(1L);
+        assertEquals(EnrollmentJob.Status.COMPLETED, job.getStatus());
+        assertEquals(5, job.getProcessed());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRun_ResumesFromProcessedEmails() {
+        job.addChunkResult(4, new EnrollmentResult());
+        job.setStatus(EnrollmentJob.Status.RUNNING);
+        Mockito.when(enrollmentService.enroll(Mockito.eq(1L), Mockito.anyCollection())).thenReturn(new EnrollmentResult());
+
+        enrollmentJobService.run(7L);
+
+        Mockito.verify(enrollmentService).enroll(1L, List.of("e@gmail.com"));
+        Mockito.verifyNoMoreInteractions(enrollmentService);
+        assertEquals(EnrollmentJob.Status.COMPLETED, job.getStatus());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRun_Failure() {
+        Mockito.when(enrollmentService.enroll(Mockito.eq(1L), Mockito.anyCollection()))
+                .thenReturn(new EnrollmentResult())
+                .thenThrow(new IllegalStateException("Database down"));
+
+        enrollmentJobService.run(7L);
+
+        assertEquals(EnrollmentJob.Status.FAILED, job.getStatus());
+        assertEquals("Database down", job.getError());
+        assertEquals(2, job.getProcessed());
+    }
+
+
+    @Test
+    void testSubmit_QueueFull() {
+        ReflectionTestUtils.setField(enrollmentJobService, "threads", 1);
+        ReflectionTestUtils.setField(enrollmentJobService, "queueCapacity", 1);
+        enrollmentJobService.init();
+        var executor = (ThreadPoolExecutor) ReflectionTestUtils.getField(enrollmentJobService, "executor");
+        var release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        executor.execute(() -> {});
+
+        //Nothing is stored, so a retry does not duplicate the job
+        assertThrows(RejectedExecutionException.class, () -> enrollmentJobService.submit(1L, List.of("a@gmail.com"), 1L));
+        Mockito.verify(jobRepository, Mockito.never()).save(Mockito.any(EnrollmentJob.class));
+        release.countDown();
+        enrollmentJobService.shutdown();
+    }
+}
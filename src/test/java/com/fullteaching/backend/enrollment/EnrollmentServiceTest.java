@@ -0,0 +1,125 @@
+package com.fullteaching.backend.enrollment;
+
+import com.fullteaching.backend.course.CourseRepository;
+import com.fullteaching.backend.user.User;
+import com.fullteaching.backend.user.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@RunWith(MockitoJUnitRunner.class)
+class EnrollmentServiceTest {
+
+    @InjectMocks
+    private EnrollmentService enrollmentService;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private CourseRepository courseRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private User newStudent;
+
+    private User oldStudent;
+
+    @BeforeEach
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        newStudent = new User("new@gmail.com", "123", "New", "new.jpg");
+        newStudent.setId(2L);
+        oldStudent = new User("old@gmail.com", "123", "Old", "old.jpg");
+        oldStudent.setId(3L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testEnroll_InsertsOnlyMissingRows() {
+        Mockito.when(userRepository.findWithRolesByNameIn(Mockito.anyCollection())).thenReturn(List.of(newStudent, oldStudent));
+        Mockito.when(courseRepository.findAttenderIds(1L)).thenReturn(List.of(1L, oldStudent.getId()));
+
+        var result = enrollmentService.enroll(1L, List.of("new@gmail.com", "old@gmail.com", "new@gmail.com", "nobody@gmail.com", "not-an-email"));
+
+        assertEquals(List.of(newStudent), new ArrayList<>(result.getAttendersAdded()));
+        assertEquals(List.of(oldStudent), new ArrayList<>(result.getAttendersAlreadyAdded()));
+        assertEquals(List.of("nobody@gmail.com"), new ArrayList<>(result.getEmailsValidNotRegistered()));
+        assertEquals(List.of("not-an-email"), new ArrayList<>(result.getEmailsInvalid()));
+
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(jdbcTemplate, Mockito.times(1)).batchUpdate(Mockito.anyString(), rows.capture());
+        assertEquals(1, rows.getValue().size());
+        assertArrayEquals(new Object[]{1L, newStudent.getId()}, rows.getValue().get(0));
+        Mockito.verify(userRepository, Mockito.never()).saveAll(Mockito.any());
+    }
+
+    @Test
+    void testEnroll_NothingToInsert() {
+        Mockito.when(userRepository.findWithRolesByNameIn(Mockito.anyCollection())).thenReturn(List.of(oldStudent));
+        Mockito.when(courseRepository.findAttenderIds(1L)).thenReturn(List.of(oldStudent.getId()));
+
+        var result = enrollmentService.enroll(1L, List.of("old@gmail.com"));
+
+        assertTrue(result.getAttendersAdded().isEmpty());
+        assertEquals(1, result.getAttendersAlreadyAdded().size());
+        Mockito.verifyZeroInteractions(jdbcTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testEnroll_EmailsAreLookedUpInChunks() {
+        var emails = new ArrayList<String>();
+        for (int i = 0; i < EnrollmentService.LOOKUP_CHUNK_SIZE * 2 + 1; i++) {
+            emails.add("student" + i + "@gmail.com");
+        }
+        Mockito.when(userRepository.findWithRolesByNameIn(Mockito.anyCollection())).thenReturn(List.of());
+
+        var result = enrollmentService.enroll(1L, emails);
+
+        ArgumentCaptor<Collection<String>> chunks = ArgumentCaptor.forClass(Collection.class);
+        Mockito.verify(userRepository, Mockito.times(3)).findWithRolesByNameIn(chunks.capture());
+        for (var chunk : chunks.getAllValues()) {
+            assertTrue(chunk.size() <= EnrollmentService.LOOKUP_CHUNK_SIZE);
+        }
+        assertEquals(emails.size(), result.getEmailsValidNotRegistered().size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testApplyDelta_OnlyChangedIds() {
+        // 2 is a new attender, 3 already is one, 9 does not exist; 3 is removed, 4 is not an attender
+        Mockito.when(courseRepository.findAttenderIdsIn(Mockito.eq(1L), Mockito.anyCollection())).thenReturn(List.of(3L));
+        Mockito.when(userRepository.findExistingIds(Mockito.anyCollection())).thenReturn(List.of(2L, 3L));
+
+        var applied = enrollmentService.applyDelta(1L, new AttendersDelta(List.of(2L, 3L, 9L), List.of(4L)));
+        assertEquals(List.of(2L), applied.getAdd());
+        assertTrue(applied.getRemove().isEmpty());
+
+        applied = enrollmentService.applyDelta(1L, new AttendersDelta(List.of(), List.of(3L, 4L)));
+        assertTrue(applied.getAdd().isEmpty());
+        assertEquals(List.of(3L), applied.getRemove());
+
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(jdbcTemplate).batchUpdate(Mockito.startsWith("INSERT"), rows.capture());
+        assertArrayEquals(new Object[]{1L, 2L}, rows.getValue().get(0));
+        Mockito.verify(jdbcTemplate).batchUpdate(Mockito.startsWith("DELETE"), rows.capture());
+        assertEquals(1, rows.getValue().size());
+        assertArrayEquals(new Object[]{1L, 3L}, rows.getValue().get(0));
+        Mockito.verify(userRepository, Mockito.never()).saveAll(Mockito.any());
+    }
+}
@@ -1,10 +1,16 @@
 package com.fullteaching.backend.entry;
 
 import com.fullteaching.backend.comment.Comment;
+import com.fullteaching.backend.course.ContentChange;
 import com.fullteaching.backend.course.Course;
+import com.fullteaching.backend.course.CourseCache;
 import com.fullteaching.backend.coursedetails.CourseDetails;
 import com.fullteaching.backend.coursedetails.CourseDetailsRepository;
 import com.fullteaching.backend.forum.Forum;
+import com.fullteaching.backend.forum.ForumPostService;
+import com.fullteaching.backend.forum.ForumHotEntriesService;
+import com.fullteaching.backend.forum.ForumSearchService;
+import com.fullteaching.backend.forum.ForumUpdatesService;
 import com.fullteaching.backend.forum.ForumRepository;
 import com.fullteaching.backend.security.AuthorizationService;
 import com.fullteaching.backend.user.User;
@@ -19,6 +25,8 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.ArrayList;
 
@@ -42,6 +50,21 @@ class EntryControllerTest {
     @Mock
     private AuthorizationService authorizationService;
 
+    @Mock
+    private CourseCache courseCache;
+
+    @Mock
+    private ForumPostService forumPostService;
+
+    @Mock
+    private ForumUpdatesService forumUpdatesService;
+
+    @Mock
+    private ForumSearchService forumSearchService;
+
+    @Mock
+    private ForumHotEntriesService forumHotEntriesService;
+
     private User loggedUser;
 
 
@@ -83,6 +106,7 @@ class EntryControllerTest {
         var resp = entryController.newEntry(entry, String.valueOf(courseDetails.getId()));
 
         Mockito.verify(forumRepository, Mockito.times(1)).save(forum);
+        Mockito.verify(forumPostService).countEntry(forum.getId(), entry);
 
         var newForum = (Forum) resp.getBody();
 
@@ -98,6 +122,10 @@ class EntryControllerTest {
         assertEquals(loggedUser, newForum.getEntries().get(0).getUser());
         assertNotEquals(0L, newForum.getEntries().get(0).getDate());
         assertEquals(1, newForum.getEntries().get(0).getComments().size());
+        assertEquals(1, newForum.getEntries().get(0).getCommentCount());
+        assertEquals(1, newForum.getEntryCount());
+        assertEquals(1, newForum.getCommentCount());
+        assertEquals(newForum.getEntries().get(0).getDate(), newForum.getLastActivity());
         assertEquals(loggedUser, newForum.getEntries().get(0).getComments().get(0).getUser());
         assertNotEquals(0L, newForum.getEntries().get(0).getComments().get(0).getDate());
     }
@@ -193,4 +221,88 @@ class EntryControllerTest {
 
         assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testAppendEntry_Success() {
+        var course = new Course("prog", "prog.jpg", loggedUser);
+        course.setId(1L);
+
+        var forum = new Forum();
+        forum.setId(3L);
+
+        var courseDetails = new CourseDetails();
+        courseDetails.setId(1L);
+        courseDetails.setCourse(course);
+        courseDetails.setForum(forum);
+
+        var comments = new ArrayList<Comment>();
+        comments.add(new Comment());
+        var entry = new Entry("Meu trabalho", 2021L, new User("Victoria", "123", "Vic", "vic.jpg"));
+        entry.setComments(comments);
+
+        Mockito.when(courseDetailsRepository.findById(1L)).thenReturn(java.util.Optional.of(courseDetails));
+        Mockito.when(forumPostService.postEntry(3L, entry)).thenAnswer(invocation -> {
+            entry.setId(9L);
+            return entry;
+        });
+
+        var resp = entryController.appendEntry(entry, "1");
+
+        assertEquals(HttpStatus.CREATED, resp.getStatusCode());
+        assertEquals(entry, resp.getBody());
+        assertEquals(9L, entry.getId());
+        assertEquals(loggedUser, entry.getUser());
+        assertNotEquals(2021L, entry.getDate());
+        assertEquals(loggedUser, entry.getComments().get(0).getUser());
+        assertEquals(entry.getDate(), entry.getComments().get(0).getDate());
+        Mockito.verify(forumRepository, Mockito.never()).save(Mockito.any());
+        Mockito.verify(courseCache).invalidate(1L, ContentChange.created(ContentChange.Type.ENTRY, 9L),
+                ContentChange.created(ContentChange.Type.COMMENT, 0L), ContentChange.saved(ContentChange.Type.FORUM, 3L));
+        Mockito.verify(forumUpdatesService).publishEntry(1L, entry);
+        Mockito.verify(forumSearchService).indexEntry(1L, entry);
+    }
+
+    @Test
+    void testAppendEntry_PublishedAfterCommit() {
+        var course = new Course("prog", "prog.jpg", loggedUser);
+        course.setId(1L);
+
+        var forum = new Forum();
+        forum.setId(3L);
+
+        var courseDetails = new CourseDetails();
+        courseDetails.setId(1L);
+        courseDetails.setCourse(course);
+        courseDetails.setForum(forum);
+
+        var entry = new Entry("Meu trabalho", 2021L, loggedUser);
+
+        Mockito.when(courseDetailsRepository.findById(1L)).thenReturn(java.util.Optional.of(courseDetails));
+        Mockito.when(forumPostService.postEntry(3L, entry)).thenReturn(entry);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            entryController.appendEntry(entry, "1");
+
+            Mockito.verifyZeroInteractions(forumUpdatesService, forumSearchService, forumHotEntriesService);
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        Mockito.verify(forumUpdatesService).publishEntry(1L, entry);
+        Mockito.verify(forumSearchService).indexEntry(1L, entry);
+        Mockito.verify(forumHotEntriesService).entryPosted(3L, entry);
+    }
+
+    @Test
+    void testAppendEntry_Unauthorized() {
+        Mockito.when(authorizationService.checkAuthorizationUsers(null, null)).thenReturn(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+
+        var resp = entryController.appendEntry(new Entry(), "1");
+
+        assertEquals(HttpStatus.NOT_FOUND, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(forumPostService);
+        Mockito.verifyZeroInteractions(forumUpdatesService, forumSearchService);
+    }
+}
@@ -0,0 +1,91 @@
+package com.fullteaching.backend.feed;
+
+import com.fullteaching.backend.forum.CommentWriteBehindService;
+import com.fullteaching.backend.security.AuthorizationService;
+import com.fullteaching.backend.user.User;
+import com.fullteaching.backend.user.UserComponent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@RunWith(MockitoJUnitRunner.class)
+class FeedControllerTest {
+
+    @InjectMocks
+    private FeedController feedController;
+
+    @Mock
+    private FeedService feedService;
+
+    @Mock
+    private UserComponent user;
+
+    @Mock
+    private AuthorizationService authorizationService;
+
+    @Mock
+    private CommentWriteBehindService commentWriteBehindService;
+
+    @BeforeEach
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        Mockito.when(authorizationService.checkBackendLogged()).thenReturn(null);
+        User logged = Mockito.mock(User.class);
+        Mockito.when(logged.getId()).thenReturn(7L);
+        Mockito.when(user.getLoggedUser()).thenReturn(logged);
+    }
+
+    @Test
+    void testGetFeed_FirstPage() {
+        FeedPage page = new FeedPage(List.of(), null);
+        Mockito.when(feedService.getFeed(7L, null, 20)).thenReturn(page);
+
+        var resp = feedController.getFeed(null, null);
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertSame(page, resp.getBody());
+    }
+
+    @Test
+    void testGetFeed_NextPageWithMaxSize() {
+        FeedItem last = new FeedItem(FeedItem.Type.ENTRY, 1L, "Maths", 100L, null, "Exam date", 5000L, "Ana");
+        FeedPage page = new FeedPage(List.of(), null);
+        Mockito.when(feedService.getFeed(Mockito.eq(7L), Mockito.eq(new long[] { 5000L, FeedItem.Type.ENTRY.ordinal(), 100L }), Mockito.eq(100)))
+                .thenReturn(page);
+
+        var resp = feedController.getFeed(FeedPage.cursor(last), 1000);
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertSame(page, resp.getBody());
+    }
+
+    @Test
+    void testGetFeed_BadCursor() {
+        var resp = feedController.getFeed("###", null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(feedService);
+    }
+
+    @Test
+    void testGetFeed_NotLogged() {
+        Mockito.when(authorizationService.checkBackendLogged()).thenReturn(new ResponseEntity<>(HttpStatus.UNAUTHORIZED));
+
+        var resp = feedController.getFeed(null, null);
+
+        assertEquals(HttpStatus.UNAUTHORIZED, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(feedService);
+    }
+
+}
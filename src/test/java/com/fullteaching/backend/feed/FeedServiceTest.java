@@ -0,0 +1,205 @@
+package com.fullteaching.backend.feed;
+
+import com.fullteaching.backend.comment.CommentRepository;
+import com.fullteaching.backend.course.CourseRepository;
+import com.fullteaching.backend.entry.EntryRepository;
+import com.fullteaching.backend.file.FileRepository;
+import com.fullteaching.backend.session.SessionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@RunWith(MockitoJUnitRunner.class)
+class FeedServiceTest {
+
+    @InjectMocks
+    private FeedService feedService;
+
+    @Mock
+    private CourseRepository courseRepository;
+
+    @Mock
+    private EntryRepository entryRepository;
+
+    @Mock
+    private CommentRepository commentRepository;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private SessionRepository sessionRepository;
+
+    @BeforeEach
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(feedService, "maxAgeDays", 30);
+        ReflectionTestUtils.setField(feedService, "upcomingSessionDays", 7);
+        ReflectionTestUtils.setField(feedService, "cacheMaxEntries", 100);
+        ReflectionTestUtils.setField(feedService, "cacheTtlMillis", 60000L);
+        feedService.init();
+
+        long now = System.currentTimeMillis();
+        //Course 1 with an active forum (10), course 2 with a deactivated one (20)
+        Mockito.when(courseRepository.findFeedCoursesByAttender(7L)).thenReturn(List.of(
+                new Object[] { 1L, "Maths", 10L, true, now },
+                new Object[] { 2L, "Physics", 20L, false, now }));
+
+        Mockito.when(entryRepository.findFeedRows(Mockito.anyCollection(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.any()))
+                .thenAnswer(keyset(3, 1, List.of(
+                        new Object[] { 10L, 100L, "Exam date", now - 5000, "Ana" },
+                        new Object[] { 10L, 101L, "Groups", now - 1000, "Bob" },
+                        new Object[] { 20L, 102L, "Hidden", now - 500, "Bob" })));
+        Mockito.when(commentRepository.findFeedRows(Mockito.anyCollection(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.any()))
+                .thenAnswer(keyset(4, 2, List.of(
+                        new Object[] { 10L, 100L, 200L, "Monday", now - 4000, "Bob" },
+                        new Object[] { 10L, 100L, 201L, "Thanks", now - 3000, "Ana" })));
+        Mockito.when(fileRepository.findFeedRows(Mockito.anyCollection(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.any()))
+                .thenAnswer(keyset(3, 1, List.of(
+                        new Object[] { 1L, 300L, "notes.pdf", now - 3000 },
+                        new Object[] { 2L, 301L, "lab.pdf", now - 2000 },
+                        new Object[] { 2L, 302L, "old.pdf", now - 6000 })));
+        Mockito.when(sessionRepository.findFeedRows(Mockito.anyCollection(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.any()))
+                .thenAnswer(keyset(3, 1, List.<Object[]>of(new Object[] { 2L, 400L, "Lab session", now + 86400000L })));
+    }
+
+    // Rows of the courses or forums of the first argument before (beforeDate, beforeId) of the last three arguments,
+    // newest first, as the repository queries return them
+    private static Answer<List<Object[]>> keyset(int dateColumn, int idColumn, List<Object[]> rows) {
+        return (InvocationOnMock invocation) -> {
+            Object[] args = invocation.getArguments();
+            Collection<?> owners = (Collection<?>) args[0];
+            long beforeDate = (Long) args[args.length - 3];
+            long beforeId = (Long) args[args.length - 2];
+            Pageable pageable = (Pageable) args[args.length - 1];
+            List<Object[]> page = new ArrayList<>();
+            for (Object[] row : rows) {
+                long date = (Long) row[dateColumn];
+                long id = (Long) row[idColumn];
+                if (owners.contains(row[0]) && (date < beforeDate || (date == beforeDate && id < beforeId))) {
+                    page.add(row);
+                }
+            }
+            page.sort(Comparator.<Object[]>comparingLong(row -> (Long) row[dateColumn]).thenComparingLong(row -> (Long) row[idColumn]).reversed());
+            return new ArrayList<>(page.subList(0, Math.min(page.size(), pageable.getPageSize())));
+        };
+    }
+
+    private static List<Long> ids(FeedPage page) {
+        List<Long> ids = new ArrayList<>();
+        for (FeedItem item : page.getItems()) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    void testGetFeed_MergesAllCoursesNewestFirst() {
+        FeedPage page = feedService.getFeed(7L, null, 20);
+
+        assertEquals(List.of(400L, 101L, 301L, 201L, 300L, 200L, 100L, 302L), ids(page));
+        assertNull(page.getNextCursor());
+        FeedItem comment = page.getItems().get(3);
+        assertEquals(FeedItem.Type.COMMENT, comment.getType());
+        assertEquals(Long.valueOf(100L), comment.getEntryId());
+        assertEquals("Maths", comment.getCourseTitle());
+        assertEquals("Ana", comment.getUserNickName());
+        //The deactivated forum is not read
+        Mockito.verify(entryRepository, Mockito.never()).findFeedRows(Mockito.argThat(forums -> forums.contains(20L)), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.any());
+        Mockito.verify(commentRepository, Mockito.never()).findFeedRows(Mockito.argThat(forums -> forums.contains(20L)), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    void testGetFeed_OneQueryPerKindOfItem() {
+        feedService.getFeed(7L, null, 20);
+
+        //All the courses are read at once
+        Mockito.verify(sessionRepository, Mockito.times(1)).findFeedRows(Mockito.eq(Set.of(1L, 2L)), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.any());
+        Mockito.verify(fileRepository, Mockito.times(1)).findFeedRows(Mockito.eq(Set.of(1L, 2L)), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.any());
+        Mockito.verify(entryRepository, Mockito.times(1)).findFeedRows(Mockito.eq(Set.of(10L)), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.any());
+        Mockito.verify(commentRepository, Mockito.times(1)).findFeedRows(Mockito.eq(Set.of(10L)), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    void testGetFeed_PagesFollowTheCursor() {
+        List<Long> ids = new ArrayList<>();
+        List<String> cursors = new ArrayList<>();
+        long[] after = null;
+        do {
+            FeedPage page = feedService.getFeed(7L, after, 3);
+            assertTrue(page.getItems().size() <= 3);
+            ids.addAll(ids(page));
+            cursors.add(page.getNextCursor());
+            after = (page.getNextCursor() != null) ? FeedPage.parseCursor(page.getNextCursor()) : null;
+        } while (after != null);
+
+        assertEquals(List.of(400L, 101L, 301L, 201L, 300L, 200L, 100L, 302L), ids);
+        assertEquals(3, cursors.size());
+    }
+
+    @Test
+    void testGetFeed_SameDateOrderedByTypeThenId() {
+        long date = System.currentTimeMillis() - 1000;
+        Mockito.when(courseRepository.findFeedCoursesByAttender(8L)).thenReturn(List.<Object[]>of(new Object[] { 3L, "Art", 30L, true, date }));
+        Mockito.doAnswer(keyset(3, 1, List.of(new Object[] { 30L, 500L, "A", date, "Ana" }, new Object[] { 30L, 502L, "B", date, "Ana" }))).when(entryRepository)
+                .findFeedRows(Mockito.anyCollection(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.any());
+        Mockito.doAnswer(keyset(4, 2, List.<Object[]>of(new Object[] { 30L, 500L, 501L, "C", date, "Bob" }))).when(commentRepository)
+                .findFeedRows(Mockito.anyCollection(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.any());
+        Mockito.doAnswer(keyset(3, 1, List.<Object[]>of(new Object[] { 3L, 503L, "d.pdf", date }))).when(fileRepository)
+                .findFeedRows(Mockito.anyCollection(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong(), Mockito.any());
+
+        FeedPage first = feedService.getFeed(8L, null, 2);
+        FeedPage second = feedService.getFeed(8L, FeedPage.parseCursor(first.getNextCursor()), 2);
+
+        assertEquals(List.of(502L, 500L), ids(first));
+        assertEquals(List.of(501L, 503L), ids(second));
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void testGetFeed_CachedPerUserAndCursor() {
+        FeedPage first = feedService.getFeed(7L, null, 20);
+        FeedPage again = feedService.getFeed(7L, null, 20);
+
+        assertSame(first, again);
+        Mockito.verify(courseRepository, Mockito.times(1)).findFeedCoursesByAttender(7L);
+
+        feedService.getFeed(7L, null, 5);
+        Mockito.verify(courseRepository, Mockito.times(2)).findFeedCoursesByAttender(7L);
+    }
+
+    @Test
+    void testGetFeed_NoCourses() {
+        Mockito.when(courseRepository.findFeedCoursesByAttender(9L)).thenReturn(List.of());
+
+        FeedPage page = feedService.getFeed(9L, null, 20);
+
+        assertTrue(page.getItems().isEmpty());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void testParseCursor_Invalid() {
+        assertThrows(IllegalArgumentException.class, () -> FeedPage.parseCursor("not a cursor"));
+        assertThrows(IllegalArgumentException.class, () -> FeedPage.parseCursor(FeedPage.cursor(
+                new FeedItem(FeedItem.Type.FILE, 1L, "Maths", 2L, null, "a.pdf", 3L, null)).substring(2)));
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.fullteaching.backend.file;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ByteRangeTest {
+
+    private static List<String> parse(String header, long size) {
+        var ranges = ByteRange.parse(header, size);
+        if (ranges == null) {
+            return null;
+        }
+        var parsed = new ArrayList<String>();
+        for (ByteRange range : ranges) {
+            parsed.add(range.getStart() + "-" + range.getEnd());
+        }
+        return parsed;
+    }
+
+    @Test
+    void testParse_Forms() {
+        assertEquals(List.of("0-99"), parse("bytes=0-99", 1000));
+        assertEquals(List.of("500-999"), parse("bytes=500-", 1000));
+        assertEquals(List.of("900-999"), parse("bytes=-100", 1000));
+        //Ranges past the end are cut to the size of the file
+        assertEquals(List.of("990-999"), parse("bytes=990-2000", 1000));
+        assertEquals(List.of("0-999"), parse("bytes=-2000", 1000));
+    }
+
+    @Test
+    void testParse_SortedAndMerged() {
+        assertEquals(List.of("0-199", "500-599"), parse("bytes=500-599, 100-199,0-99, 150-160", 1000));
+        //Empty elements of the list are allowed
+        assertEquals(List.of("0-10"), parse("bytes=0-10, ,", 1000));
+    }
+
+    @Test
+    void testParse_Invalid() {
+        assertNull(parse(null, 1000));
+        assertNull(parse("items=0-10", 1000));
+        assertNull(parse("bytes=10-5", 1000));
+        assertNull(parse("bytes=a-5", 1000));
+        assertNull(parse("bytes=5", 1000));
+        assertNull(parse("bytes=", 1000));
+        assertNull(parse("bytes=0-10,x", 1000));
+    }
+
+    @Test
+    void testParse_NotSatisfiable() {
+        assertEquals(List.of(), parse("bytes=1000-", 1000));
+        assertEquals(List.of(), parse("bytes=-0", 1000));
+        assertEquals(List.of("0-0"), parse("bytes=1000-,0-0", 1000));
+    }
+}
@@ -0,0 +1,482 @@
+package com.fullteaching.backend.file;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.fullteaching.backend.course.Course;
+import com.fullteaching.backend.course.CourseCache;
+import com.fullteaching.backend.course.CourseRepository;
+import com.fullteaching.backend.filegroup.FileGroup;
+import com.fullteaching.backend.filegroup.FileGroupRepository;
+import com.fullteaching.backend.security.AuthorizationService;
+import com.fullteaching.backend.user.User;
+import org.apache.catalina.connector.ClientAbortException;
+import org.apache.http.client.methods.HttpGet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@RunWith(MockitoJUnitRunner.class)
+class FileControllerTest {
+
+    private static final String BOUNDARY = "----upload";
+
+    @InjectMocks
+    private FileController fileController;
+
+    @Mock
+    private FileGroupRepository fileGroupRepository;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private CourseRepository courseRepository;
+
+    @Mock
+    private AuthorizationService authorizationService;
+
+    @Mock
+    private CourseCache courseCache;
+
+    @Spy
+    private FileOperationsService fileOperationsService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private FileGroup fileGroup;
+
+    private final List<String> storedFiles = new ArrayList<>();
+
+    @BeforeEach
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        fileController.init();
+        ReflectionTestUtils.setField(fileController, "profileStage", "dev");
+        ReflectionTestUtils.setField(fileController, "maxFileSize", DataSize.ofBytes(1000));
+        ReflectionTestUtils.setField(fileController, "maxRequestSize", DataSize.ofBytes(2500));
+
+        var teacher = new User("Flavia", "123", "Flavinha", "flavinha.jpg");
+        var course = new Course("prog", "prog.jpg", teacher);
+        course.setId(1L);
+        fileGroup = new FileGroup("Slides");
+        Mockito.when(authorizationService.checkBackendLogged()).thenReturn(null);
+        Mockito.when(courseRepository.findById(1L)).thenReturn(Optional.of(course));
+        Mockito.when(authorizationService.checkAuthorization(course, teacher)).thenReturn(null);
+        Mockito.when(fileGroupRepository.findById(2L)).thenReturn(Optional.of(fileGroup));
+    }
+
+    @AfterEach
+    public void cleanUp() throws Exception {
+        for (String name : storedFiles) {
+            Files.deleteIfExists(FileController.FILES_FOLDER.resolve(name));
+        }
+        FileOperationsService.amazonS3 = null;
+    }
+
+    // Multipart body with a file part for each of 'contents'
+    private static MockHttpServletRequest upload(byte[]... contents) throws Exception {
+        var body = new ByteArrayOutputStream();
+        for (int i = 0; i < contents.length; i++) {
+            body.write(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"slides" + i
+                    + ".pdf\"\r\nContent-Type: application/pdf\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            body.write(contents[i]);
+            body.write("\r\n".getBytes(StandardCharsets.UTF_8));
+        }
+        body.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        var request = new MockHttpServletRequest("POST", "/api-load-files/upload/course/1/file-group/2");
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+        request.setContent(body.toByteArray());
+        return request;
+    }
+
+    private static String sha256(byte[] content) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    @Test
+    void testHandleFileUpload_StreamedToStorage() throws Exception {
+        byte[] content = new byte[1000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+
+        var resp = fileController.handleFileUpload(upload(content), "1", "2");
+
+        assertEquals(HttpStatus.CREATED, resp.getStatusCode());
+        assertEquals(1, fileGroup.getFiles().size());
+        File file = fileGroup.getFiles().get(0);
+        storedFiles.add(file.getNameIdent());
+        assertEquals("slides0.pdf", file.getName());
+        assertEquals(1000, file.getSize());
+        assertEquals(sha256(content), file.getHash());
+        assertArrayEquals(content, Files.readAllBytes(Paths.get(file.getLink())));
+        Mockito.verify(fileGroupRepository).save(fileGroup);
+    }
+
+    @Test
+    void testHandleFileUpload_TooLarge() throws Exception {
+        var resp = fileController.handleFileUpload(upload("first".getBytes(StandardCharsets.UTF_8), new byte[1001]), "1", "2");
+
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, resp.getStatusCode());
+        //The file stored before the one over the limit is removed
+        ArgumentCaptor<Path> stored = ArgumentCaptor.forClass(Path.class);
+        Mockito.verify(fileOperationsService, Mockito.times(2)).localFileSaver(Mockito.any(), stored.capture());
+        String first = stored.getAllValues().get(0).getFileName().toString();
+        Mockito.verify(fileOperationsService).deleteLocalFile(first, FileController.FILES_FOLDER);
+        assertFalse(Files.exists(stored.getAllValues().get(0)));
+        assertFalse(Files.exists(stored.getAllValues().get(1)));
+        assertTrue(fileGroup.getFiles().isEmpty());
+        Mockito.verify(fileGroupRepository, Mockito.never()).save(Mockito.any());
+        Mockito.verifyZeroInteractions(courseCache);
+    }
+
+    @Test
+    void testHandleFileUpload_RequestTooLarge() throws Exception {
+        var resp = fileController.handleFileUpload(upload(new byte[1000], new byte[1000], new byte[1000]), "1", "2");
+
+        //The declared length is over the limit: nothing is read
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, resp.getStatusCode());
+        Mockito.verify(fileOperationsService, Mockito.never()).localFileSaver(Mockito.any(), Mockito.any());
+        assertTrue(fileGroup.getFiles().isEmpty());
+    }
+
+    @Test
+    void testHandleFileUpload_StreamedRequestTooLarge() throws Exception {
+        //Files larger than the buffer of the multipart parser, so the first ones are stored before the limit is reached
+        ReflectionTestUtils.setField(fileController, "maxFileSize", DataSize.ofBytes(5000));
+        ReflectionTestUtils.setField(fileController, "maxRequestSize", DataSize.ofBytes(12000));
+        var body = upload(new byte[5000], new byte[5000], new byte[5000]);
+        var request = new MockHttpServletRequest("POST", body.getRequestURI()) {
+            @Override
+            public int getContentLength() {
+                return -1;
+            }
+        };
+        request.setContentType(body.getContentType());
+        request.setContent(body.getContentAsByteArray());
+
+        var resp = fileController.handleFileUpload(request, "1", "2");
+
+        //Without a declared length the body is cut once it goes over the limit, and the files stored before are removed
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, resp.getStatusCode());
+        ArgumentCaptor<Path> stored = ArgumentCaptor.forClass(Path.class);
+        Mockito.verify(fileOperationsService, Mockito.atLeastOnce()).localFileSaver(Mockito.any(), stored.capture());
+        for (Path file : stored.getAllValues()) {
+            assertFalse(Files.exists(file));
+        }
+        assertTrue(fileGroup.getFiles().isEmpty());
+        Mockito.verify(fileGroupRepository, Mockito.never()).save(Mockito.any());
+    }
+
+    @Test
+    void testHandleFileUpload_NotMultipart() throws Exception {
+        var request = new MockHttpServletRequest("POST", "/api-load-files/upload/course/1/file-group/2");
+        request.setContentType("application/json");
+
+        var resp = fileController.handleFileUpload(request, "1", "2");
+
+        assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(fileOperationsService, fileGroupRepository);
+    }
+
+    // Stored file of 1000 bytes, 0 to 99 repeated
+    private File storedFile(String hash) throws Exception {
+        byte[] content = new byte[1000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 100);
+        }
+        var file = new File(1, "lecture.pdf");
+        file.setId(3L);
+        file.setHash(hash);
+        Files.createDirectories(FileController.FILES_FOLDER);
+        Files.write(FileController.FILES_FOLDER.resolve(file.getNameIdent()), content);
+        storedFiles.add(file.getNameIdent());
+        Mockito.when(fileRepository.findById(3L)).thenReturn(Optional.of(file));
+        return file;
+    }
+
+    private static MockHttpServletRequest download() {
+        return new MockHttpServletRequest("GET", "/api-load-files/course/1/download/3");
+    }
+
+    @Test
+    void testHandleFileDownload_Full() throws Exception {
+        storedFile("abc");
+        var response = new MockHttpServletResponse();
+
+        fileController.handleFileDownload("3", "1", download(), response);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(1000, response.getContentAsByteArray().length);
+        assertEquals("1000", response.getHeader("Content-Length"));
+        assertEquals("bytes", response.getHeader("Accept-Ranges"));
+        assertEquals("\"abc\"", response.getHeader("ETag"));
+        assertNotNull(response.getHeader("Last-Modified"));
+    }
+
+    @Test
+    void testHandleFileDownload_RangeWithSendfile() throws Exception {
+        File file = storedFile("abc");
+        var request = download();
+        request.addHeader("Range", "bytes=100-");
+        request.addHeader("If-Range", "\"abc\"");
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        var response = new MockHttpServletResponse();
+
+        fileController.handleFileDownload("3", "1", request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 100-999/1000", response.getHeader("Content-Range"));
+        assertEquals("900", response.getHeader("Content-Length"));
+        //The container sends the file
+        assertEquals(0, response.getContentAsByteArray().length);
+        assertEquals(FileController.FILES_FOLDER.resolve(file.getNameIdent()).toAbsolutePath().toString(),
+                request.getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertEquals(100L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(1000L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+    }
+
+    @Test
+    void testHandleFileDownload_MultiRange() throws Exception {
+        storedFile("abc");
+        var request = download();
+        request.addHeader("Range", "bytes=205-207,0-1");
+        var response = new MockHttpServletResponse();
+
+        fileController.handleFileDownload("3", "1", request, response);
+
+        assertEquals(206, response.getStatus());
+        String boundary = response.getContentType().substring("multipart/byteranges; boundary=".length());
+        String body = new String(response.getContentAsByteArray(), StandardCharsets.ISO_8859_1);
+        assertEquals("\r\n--" + boundary + "\r\nContent-Type: application/pdf\r\nContent-Range: bytes 0-1/1000\r\n\r\n\u0000\u0001"
+                + "\r\n--" + boundary + "\r\nContent-Type: application/pdf\r\nContent-Range: bytes 205-207/1000\r\n\r\n\u0005\u0006\u0007"
+                + "\r\n--" + boundary + "--\r\n", body);
+        assertEquals(String.valueOf(response.getContentAsByteArray().length), response.getHeader("Content-Length"));
+    }
+
+    @Test
+    void testHandleFileDownload_ChangedIfRange() throws Exception {
+        storedFile("abc");
+        var request = download();
+        request.addHeader("Range", "bytes=100-");
+        request.addHeader("If-Range", "\"old\"");
+        var response = new MockHttpServletResponse();
+
+        fileController.handleFileDownload("3", "1", request, response);
+
+        //The whole new file is sent
+        assertEquals(200, response.getStatus());
+        assertEquals(1000, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void testHandleFileDownload_NotModified() throws Exception {
+        storedFile(null);
+        var response = new MockHttpServletResponse();
+        fileController.handleFileDownload("3", "1", download(), response);
+        var request = download();
+        request.addHeader("If-None-Match", response.getHeader("ETag"));
+        response = new MockHttpServletResponse();
+
+        fileController.handleFileDownload("3", "1", request, response);
+
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void testHandleFileDownload_NotSatisfiable() throws Exception {
+        storedFile("abc");
+        var request = download();
+        request.addHeader("Range", "bytes=1000-");
+        var response = new MockHttpServletResponse();
+
+        fileController.handleFileDownload("3", "1", request, response);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */1000", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    void testHandleFileDownload_ClientAbort() throws Exception {
+        storedFile("abc");
+        Mockito.doThrow(new ClientAbortException("Connection reset")).when(fileOperationsService)
+                .localFileDownloader(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+        var response = new MockHttpServletResponse();
+
+        fileController.handleFileDownload("3", "1", download(), response);
+
+        //Nothing else can be sent to a client that is gone
+        assertEquals(200, response.getStatus());
+        assertNull(response.getErrorMessage());
+    }
+
+    @Test
+    void testHandleFileDownload_ReadFailure() throws Exception {
+        storedFile("abc");
+        Mockito.doAnswer(invocation -> {
+            invocation.<MockHttpServletResponse>getArgument(4).setContentLengthLong(1000);
+            throw new IOException("Input/output error");
+        }).when(fileOperationsService).localFileDownloader(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+        var response = new MockHttpServletResponse();
+
+        fileController.handleFileDownload("3", "1", download(), response);
+
+        assertEquals(500, response.getStatus());
+        //The headers of the file are not sent with the error
+        assertNull(response.getHeader("Content-Length"));
+    }
+
+    // File 3 of the course stored in S3, where 'amazonS3' is
+    private void storedInS3(AmazonS3 amazonS3) {
+        ReflectionTestUtils.setField(fileController, "profileStage", "prod");
+        FileOperationsService.amazonS3 = amazonS3;
+        var file = new File(1, "lecture.pdf");
+        file.setId(3L);
+        Mockito.when(fileRepository.findById(3L)).thenReturn(Optional.of(file));
+    }
+
+    // Object returned by S3 with 'length' bytes, for the range 'contentRange' of the file if not null
+    private static S3Object s3Object(int length, String contentRange) {
+        var metadata = new ObjectMetadata();
+        metadata.setContentLength(length);
+        metadata.setHeader("ETag", "abc");
+        metadata.setLastModified(new Date(1000000L));
+        if (contentRange != null) {
+            metadata.setHeader("Content-Range", contentRange);
+        }
+        var object = new S3Object();
+        object.setObjectMetadata(metadata);
+        object.setObjectContent(new S3ObjectInputStream(new ByteArrayInputStream(new byte[length]), new HttpGet()));
+        return object;
+    }
+
+    @Test
+    void testHandleFileDownload_ProductionRange() throws Exception {
+        var amazonS3 = Mockito.mock(AmazonS3.class);
+        storedInS3(amazonS3);
+        Mockito.when(amazonS3.getObject(Mockito.any(GetObjectRequest.class))).thenReturn(s3Object(900, "bytes 100-999/1000"));
+        var request = download();
+        request.addHeader("Range", "bytes=100-");
+        request.addHeader("If-Range", "\"abc\"");
+        var response = new MockHttpServletResponse();
+
+        fileController.handleFileDownload("3", "1", request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 100-999/1000", response.getHeader("Content-Range"));
+        assertEquals("900", response.getHeader("Content-Length"));
+        assertEquals("\"abc\"", response.getHeader("ETag"));
+        assertEquals("bytes", response.getHeader("Accept-Ranges"));
+        assertEquals(900, response.getContentAsByteArray().length);
+        //The range is only sent by S3 if the file is the one the client has
+        ArgumentCaptor<GetObjectRequest> sent = ArgumentCaptor.forClass(GetObjectRequest.class);
+        Mockito.verify(amazonS3).getObject(sent.capture());
+        assertEquals(100L, sent.getValue().getRange()[0]);
+        assertEquals(List.of("\"abc\""), sent.getValue().getMatchingETagConstraints());
+    }
+
+    @Test
+    void testHandleFileDownload_ProductionChangedIfRange() throws Exception {
+        var amazonS3 = Mockito.mock(AmazonS3.class);
+        storedInS3(amazonS3);
+        //S3 answers nothing when the ETag does not match
+        Mockito.when(amazonS3.getObject(Mockito.any(GetObjectRequest.class))).thenReturn(null).thenReturn(s3Object(1000, null));
+        var request = download();
+        request.addHeader("Range", "bytes=100-199");
+        request.addHeader("If-Range", "\"old\"");
+        var response = new MockHttpServletResponse();
+
+        fileController.handleFileDownload("3", "1", request, response);
+
+        //The whole new file is sent
+        assertEquals(200, response.getStatus());
+        assertEquals("1000", response.getHeader("Content-Length"));
+        assertEquals(1000, response.getContentAsByteArray().length);
+        ArgumentCaptor<GetObjectRequest> sent = ArgumentCaptor.forClass(GetObjectRequest.class);
+        Mockito.verify(amazonS3, Mockito.times(2)).getObject(sent.capture());
+        assertArrayEquals(new long[] { 100L, 199L }, sent.getAllValues().get(0).getRange());
+        assertNull(sent.getAllValues().get(1).getRange());
+    }
+
+    @Test
+    void testHandleFileDownload_ProductionNotModified() throws Exception {
+        var amazonS3 = Mockito.mock(AmazonS3.class);
+        storedInS3(amazonS3);
+        var request = download();
+        request.addHeader("If-None-Match", "\"abc\"");
+        var response = new MockHttpServletResponse();
+
+        fileController.handleFileDownload("3", "1", request, response);
+
+        assertEquals(304, response.getStatus());
+        ArgumentCaptor<GetObjectRequest> sent = ArgumentCaptor.forClass(GetObjectRequest.class);
+        Mockito.verify(amazonS3).getObject(sent.capture());
+        assertEquals(List.of("\"abc\""), sent.getValue().getNonmatchingETagConstraints());
+    }
+
+    @Test
+    void testHandleFileDownload_ProductionNotFound() throws Exception {
+        var amazonS3 = Mockito.mock(AmazonS3.class);
+        storedInS3(amazonS3);
+        var notFound = new AmazonS3Exception("Not found");
+        notFound.setStatusCode(404);
+        Mockito.when(amazonS3.getObject(Mockito.any(GetObjectRequest.class))).thenThrow(notFound);
+        var response = new MockHttpServletResponse();
+
+        fileController.handleFileDownload("3", "1", download(), response);
+
+        assertEquals(404, response.getStatus());
+    }
+
+    @Test
+    void testHandleFileDownload_ProductionFailure() throws Exception {
+        var amazonS3 = Mockito.mock(AmazonS3.class);
+        storedInS3(amazonS3);
+        Mockito.when(amazonS3.getObject(Mockito.any(GetObjectRequest.class))).thenThrow(new AmazonClientException("Unable to connect"));
+        var response = new MockHttpServletResponse();
+
+        fileController.handleFileDownload("3", "1", download(), response);
+
+        assertEquals(500, response.getStatus());
+    }
+}
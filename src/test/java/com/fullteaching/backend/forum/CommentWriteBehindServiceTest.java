@@ -0,0 +1,186 @@
+package com.fullteaching.backend.forum;
+
+import com.fullteaching.backend.comment.Comment;
+import com.fullteaching.backend.comment.CommentRepository;
+import com.fullteaching.backend.course.ContentChange;
+import com.fullteaching.backend.course.CourseCache;
+import com.fullteaching.backend.user.User;
+import com.fullteaching.backend.user.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@RunWith(MockitoJUnitRunner.class)
+class CommentWriteBehindServiceTest {
+
+    private static final String DATABASE_ID = "5f0c4e8a-1d2b-4c3d-9e8f-0a1b2c3d4e5f";
+
+    @InjectMocks
+    private CommentWriteBehindService writeBehindService;
+
+    @Mock
+    private ForumPostService forumPostService;
+
+    @Mock
+    private CommentRepository commentRepository;
+
+    @Mock
+    private CourseCache courseCache;
+
+    @Mock
+    private ForumUpdatesService forumUpdatesService;
+
+    @Mock
+    private ForumSearchService forumSearchService;
+
+    @Mock
+    private ForumHotEntriesService forumHotEntriesService;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private Path logDir;
+
+    private User author;
+
+    //Comments saved by each call to 'postComments'
+    private final List<List<Long>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    public void init() throws IOException {
+        MockitoAnnotations.initMocks(this);
+        logDir = Files.createTempDirectory("write-behind");
+        ReflectionTestUtils.setField(writeBehindService, "enabled", true);
+        ReflectionTestUtils.setField(writeBehindService, "logDir", logDir.toString());
+        ReflectionTestUtils.setField(writeBehindService, "flushIntervalMs", 1L);
+        ReflectionTestUtils.setField(writeBehindService, "batchSize", 500);
+        ReflectionTestUtils.setField(writeBehindService, "readTimeoutMs", 5000L);
+
+        Mockito.when(forumSearchService.getDatabaseId()).thenReturn(DATABASE_ID);
+
+        AtomicLong ids = new AtomicLong(100);
+        Mockito.when(forumPostService.nextCommentId(Mockito.any())).thenAnswer(invocation -> ids.incrementAndGet());
+        Mockito.doAnswer(invocation -> {
+            List<Long> batch = new ArrayList<>();
+            for (PendingComment pending : invocation.<List<PendingComment>>getArgument(0)) {
+                batch.add(pending.getComment().getId());
+            }
+            batches.add(batch);
+            return null;
+        }).when(forumPostService).postComments(Mockito.any());
+
+        author = new User("Victoria", "123", "Vic", "vic.jpg");
+        author.setId(4L);
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        writeBehindService.shutdown();
+        FileSystemUtils.deleteRecursively(logDir);
+    }
+
+    @Test
+    void testPostComment_LoggedThenSaved() throws Exception {
+        writeBehindService.init();
+
+        Comment comment = writeBehindService.postComment(1L, 3L, 2L, null, new Comment("Now?", 100L, author));
+        writeBehindService.awaitSaved(4L);
+
+        assertEquals(101L, comment.getId());
+        assertEquals(List.of(List.of(101L)), batches);
+        Mockito.verify(courseCache).invalidate(1L, ContentChange.created(ContentChange.Type.COMMENT, 101L),
+                ContentChange.saved(ContentChange.Type.ENTRY, 2L), ContentChange.saved(ContentChange.Type.FORUM, 3L));
+        Mockito.verify(forumUpdatesService, Mockito.timeout(5000)).publishComment(1L, 2L, null, comment);
+        Mockito.verify(forumSearchService, Mockito.timeout(5000)).indexComment(1L, 2L, comment);
+        //Emptied once everything is saved, down to the id of the database
+        long empty = 8 + DATABASE_ID.length();
+        for (int i = 0; i < 100 && Files.size(logDir.resolve("comments.log")) > empty; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(empty, Files.size(logDir.resolve("comments.log")));
+    }
+
+    @Test
+    void testPostComment_ReplyToUnsavedComment() throws Exception {
+        //Nothing is saved until the database is back
+        Mockito.doThrow(new QueryTimeoutException("Down")).when(forumPostService).postComments(Mockito.any());
+        writeBehindService.init();
+
+        Comment parent = writeBehindService.postComment(1L, 3L, 2L, null, new Comment("Now?", 100L, author));
+        Comment reply = writeBehindService.postComment(1L, 3L, 2L, parent.getId(), new Comment("Yes", 101L, author));
+        Comment otherEntry = writeBehindService.postComment(1L, 3L, 5L, parent.getId(), new Comment("No", 102L, author));
+
+        assertNotNull(reply);
+        assertNull(otherEntry);
+        Mockito.verify(commentRepository, Mockito.never()).findEntryId(Mockito.anyLong());
+    }
+
+    @Test
+    void testFlush_FailedBatchIsTriedAgain() throws Exception {
+        Mockito.doThrow(new QueryTimeoutException("Down")).doAnswer(invocation -> {
+            batches.add(List.of(invocation.<List<PendingComment>>getArgument(0).size() + 0L));
+            return null;
+        }).when(forumPostService).postComments(Mockito.any());
+        writeBehindService.init();
+
+        writeBehindService.postComment(1L, 3L, 2L, null, new Comment("Now?", 100L, author));
+        writeBehindService.awaitSaved(4L);
+
+        Mockito.verify(forumPostService, Mockito.times(2)).postComments(Mockito.any());
+        assertEquals(List.of(List.of(1L)), batches);
+    }
+
+    @Test
+    void testInit_RecoversUnsavedComments() throws Exception {
+        try (ForumCommentLog commentLog = new ForumCommentLog(logDir.resolve("comments.log"), DATABASE_ID)) {
+            commentLog.recover();
+            commentLog.append(List.of(pending(10L), pending(11L)));
+        }
+        Mockito.when(commentRepository.findExistingIds(List.of(10L, 11L))).thenReturn(List.of(10L));
+        Mockito.when(userRepository.findAllById(Set.of(4L))).thenReturn(List.of(author));
+
+        writeBehindService.init();
+
+        ArgumentCaptor<List<PendingComment>> saved = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(forumPostService, Mockito.timeout(5000)).postComments(saved.capture());
+        assertEquals(1, saved.getValue().size());
+        assertEquals(11L, saved.getValue().get(0).getComment().getId());
+        Mockito.verify(forumSearchService, Mockito.timeout(5000)).indexComment(Mockito.eq(1L), Mockito.eq(2L), Mockito.any());
+        //Published with its author, as subscribers connected since the restart may have loaded the forum without it
+        ArgumentCaptor<Comment> published = ArgumentCaptor.forClass(Comment.class);
+        Mockito.verify(forumUpdatesService, Mockito.timeout(5000)).publishComment(Mockito.eq(1L), Mockito.eq(2L), Mockito.isNull(), published.capture());
+        assertEquals(11L, published.getValue().getId());
+        assertEquals(author, published.getValue().getUser());
+    }
+
+    private PendingComment pending(long id) {
+        Comment comment = new Comment("Before the crash", 100L, null);
+        comment.setId(id);
+        return new PendingComment(1L, 3L, 2L, null, 4L, comment);
+    }
+}
@@ -0,0 +1,140 @@
+package com.fullteaching.backend.forum;
+
+import com.fullteaching.backend.comment.Comment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ForumCommentLogTest {
+
+    private static final String DATABASE_ID = "5f0c4e8a-1d2b-4c3d-9e8f-0a1b2c3d4e5f";
+
+    private Path dir;
+
+    private Path file;
+
+    @BeforeEach
+    public void init() throws IOException {
+        dir = Files.createTempDirectory("comment-log");
+        file = dir.resolve("wal").resolve("comments.log");
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Test
+    void testAppendAndRecover() throws IOException {
+        try (ForumCommentLog commentLog = new ForumCommentLog(file, DATABASE_ID)) {
+            assertTrue(commentLog.recover().isEmpty());
+            commentLog.append(List.of(pending(1L, null, "Café?"), pending(2L, 1L, "Sí")));
+            commentLog.append(List.of(pending(3L, null, null)));
+        }
+
+        try (ForumCommentLog commentLog = new ForumCommentLog(file, DATABASE_ID)) {
+            List<PendingComment> recovered = commentLog.recover();
+
+            assertEquals(3, recovered.size());
+            PendingComment reply = recovered.get(1);
+            assertEquals(2L, reply.getComment().getId());
+            assertEquals("Sí", reply.getComment().getMessage());
+            assertEquals(Long.valueOf(1L), reply.getParentId());
+            assertEquals(7L, reply.getCourseId());
+            assertEquals(8L, reply.getForumId());
+            assertEquals(9L, reply.getEntryId());
+            assertEquals(4L, reply.getUserId());
+            assertEquals(100L, reply.getComment().getDate());
+            assertNull(recovered.get(0).getParentId());
+            assertNull(recovered.get(2).getComment().getMessage());
+        }
+    }
+
+    @Test
+    void testRecover_PartialRecordIsCutOff() throws IOException {
+        try (ForumCommentLog commentLog = new ForumCommentLog(file, DATABASE_ID)) {
+            commentLog.recover();
+            commentLog.append(List.of(pending(1L, null, "Complete")));
+        }
+        long complete = Files.size(file);
+        try (ForumCommentLog commentLog = new ForumCommentLog(file, DATABASE_ID)) {
+            commentLog.recover();
+            commentLog.append(List.of(pending(2L, null, "Partial")));
+        }
+        //A crash in the middle of the second record
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+        }
+
+        try (ForumCommentLog commentLog = new ForumCommentLog(file, DATABASE_ID)) {
+            List<PendingComment> recovered = commentLog.recover();
+
+            assertEquals(1, recovered.size());
+            assertEquals(1L, recovered.get(0).getComment().getId());
+            assertEquals(complete, Files.size(file));
+            commentLog.append(List.of(pending(3L, null, "After")));
+        }
+        try (ForumCommentLog commentLog = new ForumCommentLog(file, DATABASE_ID)) {
+            List<PendingComment> recovered = commentLog.recover();
+
+            assertEquals(2, recovered.size());
+            assertEquals(3L, recovered.get(1).getComment().getId());
+        }
+    }
+
+    @Test
+    void testTruncate() throws IOException {
+        try (ForumCommentLog commentLog = new ForumCommentLog(file, DATABASE_ID)) {
+            commentLog.recover();
+            commentLog.append(List.of(pending(1L, null, "Saved")));
+            commentLog.truncate();
+            commentLog.append(List.of(pending(2L, null, "Not saved")));
+        }
+
+        try (ForumCommentLog commentLog = new ForumCommentLog(file, DATABASE_ID)) {
+            List<PendingComment> recovered = commentLog.recover();
+
+            assertEquals(1, recovered.size());
+            assertEquals(2L, recovered.get(0).getComment().getId());
+        }
+    }
+
+    @Test
+    void testRecover_LogOfAnotherDatabaseIsSetAside() throws IOException {
+        try (ForumCommentLog commentLog = new ForumCommentLog(file, DATABASE_ID)) {
+            commentLog.recover();
+            commentLog.append(List.of(pending(1L, null, "Old database")));
+        }
+
+        try (ForumCommentLog commentLog = new ForumCommentLog(file, "a8d1e2f3-4b5c-4d6e-8f90-1a2b3c4d5e6f")) {
+            assertTrue(commentLog.recover().isEmpty());
+            commentLog.append(List.of(pending(2L, null, "New database")));
+        }
+        try (ForumCommentLog commentLog = new ForumCommentLog(file, "a8d1e2f3-4b5c-4d6e-8f90-1a2b3c4d5e6f")) {
+            List<PendingComment> recovered = commentLog.recover();
+
+            assertEquals(1, recovered.size());
+            assertEquals(2L, recovered.get(0).getComment().getId());
+        }
+        //The old log is kept, not recovered
+        try (var files = Files.list(file.getParent())) {
+            assertEquals(1, files.filter(f -> f.getFileName().toString().endsWith(".rejected")).count());
+        }
+    }
+
+    private PendingComment pending(long id, Long parentId, String message) {
+        Comment comment = new Comment(message, 100L, null);
+        comment.setId(id);
+        return new PendingComment(7L, 8L, 9L, parentId, 4L, comment);
+    }
+}
@@ -1,6 +1,8 @@
 package com.fullteaching.backend.forum;
 
+import com.fullteaching.backend.course.ContentChange;
 import com.fullteaching.backend.course.Course;
+import com.fullteaching.backend.course.CourseCache;
 import com.fullteaching.backend.coursedetails.CourseDetails;
 import com.fullteaching.backend.coursedetails.CourseDetailsRepository;
 import com.fullteaching.backend.entry.Entry;
@@ -15,6 +17,7 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 
 import java.util.ArrayList;
 
@@ -29,9 +32,15 @@ class ForumControllerTest {
     @Mock
     private AuthorizationService authorizationService;
 
+    @Mock
+    private CourseCache courseCache;
+
     @Mock
     private CourseDetailsRepository courseDetailsRepository;
 
+    @Mock
+    private ForumCountersRepairService forumCountersRepairService;
+
     private User loggedUser;
 
 
@@ -62,9 +71,43 @@ class ForumControllerTest {
         var resp = forumController.modifyForum(true, String.valueOf(courseDetails.getId()));
 
         Mockito.verify(courseDetailsRepository, Mockito.times(1)).save(courseDetails);
+        Mockito.verify(courseCache, Mockito.times(1)).invalidate(course.getId(), ContentChange.saved(ContentChange.Type.FORUM, forum.getId()));
 
         assertEquals(HttpStatus.OK, resp.getStatusCode());
         assertEquals(true, resp.getBody());
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void testRepairForumCounters_Success() {
+        var course = new Course("prog", "prog.jpg", loggedUser);
+        course.setId(1L);
+
+        var forum = new Forum(true);
+        forum.setId(3L);
+
+        var courseDetails = new CourseDetails();
+        courseDetails.setId(1L);
+        courseDetails.setCourse(course);
+        courseDetails.setForum(forum);
+
+        Mockito.when(courseDetailsRepository.findById(1L)).thenReturn(java.util.Optional.of(courseDetails));
+        Mockito.when(forumCountersRepairService.repairForum(3L)).thenReturn(12L);
+
+        var resp = forumController.repairForumCounters("1");
+
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        assertEquals(12L, resp.getBody());
+        Mockito.verify(courseCache).invalidate(1L, ContentChange.saved(ContentChange.Type.FORUM, 3L));
+    }
+
+    @Test
+    void testRepairForumCounters_Unauthorized() {
+        Mockito.when(authorizationService.checkAuthorization(null, null)).thenReturn(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+
+        var resp = forumController.repairForumCounters("1");
+
+        assertEquals(HttpStatus.NOT_FOUND, resp.getStatusCode());
+        Mockito.verifyZeroInteractions(forumCountersRepairService);
+    }
+}
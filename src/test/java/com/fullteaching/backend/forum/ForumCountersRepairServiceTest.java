@@ -0,0 +1,85 @@
+package com.fullteaching.backend.forum;
+
+import com.fullteaching.backend.entry.EntryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@RunWith(MockitoJUnitRunner.class)
+class ForumCountersRepairServiceTest {
+
+    @InjectMocks
+    private ForumCountersRepairService repairService;
+
+    @Mock
+    private ForumRepository forumRepository;
+
+    @Mock
+    private EntryRepository entryRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(repairService, "transactionTemplate", new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(repairService, "chunkSize", 2);
+    }
+
+    @Test
+    void testRepairAll_EntriesThenForumsInChunks() {
+        Mockito.when(entryRepository.lockNextEntries(Mockito.eq(Long.MIN_VALUE), Mockito.any()))
+                .thenReturn(List.<Object[]>of(new Object[] { 1L, 100L }, new Object[] { 2L, 200L }));
+        Mockito.when(entryRepository.lockNextEntries(Mockito.eq(2L), Mockito.any()))
+                .thenReturn(List.<Object[]>of(new Object[] { 3L, 300L }));
+        Mockito.when(entryRepository.countComments(List.of(1L, 2L)))
+                .thenReturn(List.<Object[]>of(new Object[] { 2L, 5L, 250L }));
+        Mockito.when(entryRepository.countComments(List.of(3L)))
+                .thenReturn(List.<Object[]>of(new Object[] { 3L, 1L, 50L }));
+        Mockito.when(forumRepository.lockNextForums(Mockito.eq(Long.MIN_VALUE), Mockito.any())).thenReturn(List.of(7L, 8L));
+        Mockito.when(forumRepository.lockNextForums(Mockito.eq(8L), Mockito.any())).thenReturn(List.of());
+        Mockito.when(forumRepository.sumEntryCounters(List.of(7L, 8L)))
+                .thenReturn(List.<Object[]>of(new Object[] { 7L, 3L, 6L, 300L }));
+
+        long repaired = repairService.repairAll();
+
+        assertEquals(3, repaired);
+        Mockito.verify(entryRepository).setCounters(1L, 0, 100L);
+        Mockito.verify(entryRepository).setCounters(2L, 5L, 250L);
+        //The entry is newer than its comments
+        Mockito.verify(entryRepository).setCounters(3L, 1L, 300L);
+        Mockito.verify(forumRepository).setCounters(7L, 3L, 6L, 300L);
+        Mockito.verify(forumRepository).setCounters(8L, 0, 0, 0);
+        Mockito.verify(transactionManager, Mockito.times(4)).commit(Mockito.any());
+    }
+
+    @Test
+    void testRepairForum() {
+        Mockito.when(entryRepository.lockNextEntriesOfForum(Mockito.eq(7L), Mockito.eq(Long.MIN_VALUE), Mockito.any()))
+                .thenReturn(List.<Object[]>of(new Object[] { 1L, 100L }));
+        Mockito.when(entryRepository.countComments(List.of(1L))).thenReturn(List.of());
+        Mockito.when(forumRepository.lockForum(7L)).thenReturn(List.of(7L));
+        Mockito.when(forumRepository.sumEntryCounters(List.of(7L)))
+                .thenReturn(List.<Object[]>of(new Object[] { 7L, 1L, 0L, 100L }));
+
+        long repaired = repairService.repairForum(7L);
+
+        assertEquals(1, repaired);
+        Mockito.verify(entryRepository).setCounters(1L, 0, 100L);
+        Mockito.verify(forumRepository).setCounters(7L, 1L, 0L, 100L);
+        Mockito.verify(entryRepository, Mockito.never()).lockNextEntries(Mockito.anyLong(), Mockito.any());
+    }
+}
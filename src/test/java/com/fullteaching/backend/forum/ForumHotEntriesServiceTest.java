@@ -0,0 +1,158 @@
+package com.fullteaching.backend.forum;
+
+import com.fullteaching.backend.comment.CommentRepository;
+import com.fullteaching.backend.entry.EntryRepository;
+import com.fullteaching.backend.entry.EntrySummary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@RunWith(MockitoJUnitRunner.class)
+class ForumHotEntriesServiceTest {
+
+    private static final long HALF_LIFE = 3600000L;
+
+    @InjectMocks
+    private ForumHotEntriesService forumHotEntriesService;
+
+    @Mock
+    private CommentRepository commentRepository;
+
+    @Mock
+    private EntryRepository entryRepository;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(forumHotEntriesService, "halfLifeMillis", HALF_LIFE);
+        ReflectionTestUtils.setField(forumHotEntriesService, "topK", 2);
+        //Every entry asked for exists
+        Mockito.when(entryRepository.findSummariesByForumIdAndIdIn(Mockito.eq(1L), Mockito.any())).thenAnswer(invocation -> {
+            List<EntrySummary> summaries = new ArrayList<>();
+            for (Long id : (Collection<Long>) invocation.getArgument(1)) {
+                summaries.add(new EntrySummary(id, "Entry " + id, 0L, "Vic", "vic.jpg"));
+            }
+            return summaries;
+        });
+    }
+
+    private static List<Long> ids(List<ForumHotEntry> entries) {
+        List<Long> ids = new ArrayList<>();
+        for (ForumHotEntry entry : entries) {
+            ids.add(entry.getEntry().getId());
+        }
+        return ids;
+    }
+
+    @Test
+    void testGetHotEntries_BuiltFromTheDatabase() {
+        List<Object[]> rows = List.of(new Object[] { 10L, 0.5 }, new Object[] { 11L, 1.5 }, new Object[] { 12L, 0.25 });
+        Mockito.when(commentRepository.sumDecayedActivity(Mockito.eq(1L), Mockito.anyLong(), Mockito.anyLong(), Mockito.eq((double) HALF_LIFE)))
+                .thenReturn(rows);
+
+        var hot = forumHotEntriesService.getHotEntries(1L, 10);
+
+        //Only the best 'top-k' are kept
+        assertEquals(List.of(11L, 10L), ids(hot));
+        assertEquals(1.5, hot.get(0).getScore(), 0.01);
+        assertEquals(0.5, hot.get(1).getScore(), 0.01);
+
+        forumHotEntriesService.getHotEntries(1L, 10);
+        Mockito.verify(commentRepository, Mockito.times(1)).sumDecayedActivity(Mockito.eq(1L), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyDouble());
+    }
+
+    @Test
+    void testCommentPosted_UpdatesTheRanking() {
+        List<Object[]> rows = List.of(new Object[] { 10L, 1.0 }, new Object[] { 11L, 0.9 }, new Object[] { 12L, 0.8 });
+        Mockito.when(commentRepository.sumDecayedActivity(Mockito.eq(1L), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyDouble()))
+                .thenReturn(rows);
+        forumHotEntriesService.getHotEntries(1L, 10);
+        long now = System.currentTimeMillis();
+
+        //An entry out of the top enters it with a new comment
+        forumHotEntriesService.commentPosted(1L, 12L, now);
+        assertEquals(List.of(12L, 10L), ids(forumHotEntriesService.getHotEntries(1L, 10)));
+
+        //Old comments weigh less than new ones
+        forumHotEntriesService.commentPosted(1L, 11L, now - 4 * HALF_LIFE);
+        forumHotEntriesService.commentPosted(1L, 11L, now - 4 * HALF_LIFE);
+        var hot = forumHotEntriesService.getHotEntries(1L, 10);
+        assertEquals(List.of(12L, 11L), ids(hot));
+        assertEquals(1.8, hot.get(0).getScore(), 0.01);
+        assertEquals(1.025, hot.get(1).getScore(), 0.01);
+
+        assertEquals(List.of(12L), ids(forumHotEntriesService.getHotEntries(1L, 1)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testGetHotEntries_DeletedEntriesAreReplaced() {
+        List<Object[]> rows = List.of(new Object[] { 10L, 1.0 }, new Object[] { 11L, 0.9 }, new Object[] { 12L, 0.8 }, new Object[] { 13L, 0.7 });
+        Mockito.when(commentRepository.sumDecayedActivity(Mockito.eq(1L), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyDouble()))
+                .thenReturn(rows);
+        assertEquals(List.of(10L, 11L), ids(forumHotEntriesService.getHotEntries(1L, 10)));
+        //Entry 10 is deleted
+        Mockito.when(entryRepository.findSummariesByForumIdAndIdIn(Mockito.eq(1L), Mockito.any())).thenAnswer(invocation -> {
+            List<EntrySummary> summaries = new ArrayList<>();
+            for (Long id : (Collection<Long>) invocation.getArgument(1)) {
+                if (id != 10L) {
+                    summaries.add(new EntrySummary(id, "Entry " + id, 0L, "Vic", "vic.jpg"));
+                }
+            }
+            return summaries;
+        });
+
+        //The next best ranked entry takes its place, and the deleted one is not asked for again
+        assertEquals(List.of(11L, 12L), ids(forumHotEntriesService.getHotEntries(1L, 10)));
+        assertEquals(List.of(11L, 12L), ids(forumHotEntriesService.getHotEntries(1L, 10)));
+        Mockito.verify(entryRepository, Mockito.times(2)).findSummariesByForumIdAndIdIn(Mockito.eq(1L), Mockito.argThat(ids -> ids.contains(10L)));
+        //Nor brought back by a new comment of another entry
+        forumHotEntriesService.commentPosted(1L, 13L, System.currentTimeMillis());
+        assertEquals(List.of(13L, 11L), ids(forumHotEntriesService.getHotEntries(1L, 10)));
+        Mockito.verify(commentRepository, Mockito.times(1)).sumDecayedActivity(Mockito.eq(1L), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyDouble());
+    }
+
+    @Test
+    void testForumDeleted_RankingIsDropped() {
+        Mockito.when(commentRepository.sumDecayedActivity(Mockito.eq(1L), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyDouble()))
+                .thenReturn(List.<Object[]>of(new Object[] { 10L, 1.0 }));
+        assertEquals(List.of(10L), ids(forumHotEntriesService.getHotEntries(1L, 10)));
+
+        forumHotEntriesService.forumDeleted(1L);
+        Mockito.when(commentRepository.sumDecayedActivity(Mockito.eq(1L), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyDouble()))
+                .thenReturn(List.of());
+
+        assertTrue(forumHotEntriesService.getHotEntries(1L, 10).isEmpty());
+    }
+
+    @Test
+    void testCommentPosted_ForumNotLoaded() {
+        forumHotEntriesService.commentPosted(1L, 10L, System.currentTimeMillis());
+
+        Mockito.when(commentRepository.sumDecayedActivity(Mockito.eq(1L), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyDouble()))
+                .thenReturn(List.of());
+        //The comment is in the database, not counted again
+        assertTrue(forumHotEntriesService.getHotEntries(1L, 10).isEmpty());
+        Mockito.verify(entryRepository, Mockito.never()).findSummariesByForumIdAndIdIn(Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    void testLogAdd() {
+        assertEquals(4.0, ForumHotEntriesService.logAdd(3.0, 3.0), 1e-9);
+        assertEquals(Math.log(5) / Math.log(2), ForumHotEntriesService.logAdd(2.0, 0.0), 1e-9);
+        assertEquals(2000.0, ForumHotEntriesService.logAdd(2000.0, -2000.0), 1e-9);
+    }
+}
@@ -0,0 +1,147 @@
+package com.fullteaching.backend.forum;
+
+import com.fullteaching.backend.comment.CommentRepository;
+import com.fullteaching.backend.entry.EntryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@RunWith(MockitoJUnitRunner.class)
+class ForumReadServiceTest {
+
+    @InjectMocks
+    private ForumReadService forumReadService;
+
+    @Mock
+    private ForumReadStateRepository forumReadStateRepository;
+
+    @Mock
+    private EntryRepository entryRepository;
+
+    @Mock
+    private CommentRepository commentRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private Forum forum;
+
+    @BeforeEach
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        ReflectionTestUtils.setField(forumReadService, "transactionTemplate", new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(forumReadService, "chunkSize", 2);
+
+        forum = new Forum(true);
+        forum.setId(5L);
+        forum.setEntryCount(3);
+        forum.setCommentCount(4);
+    }
+
+    private static ForumReadState state(List<Long> entryIds, List<Long> commentIds) {
+        ReadBitmap entries = new ReadBitmap();
+        entryIds.forEach(entries::add);
+        ReadBitmap comments = new ReadBitmap();
+        commentIds.forEach(comments::add);
+        ForumReadState state = new ForumReadState(7L, 1L);
+        state.setEntries(entries.toBytes());
+        state.setComments(comments.toBytes());
+        state.setReadCount(entries.cardinality() + comments.cardinality());
+        return state;
+    }
+
+    @Test
+    void testGetReadState_NothingRead() {
+        ForumReadSummary summary = forumReadService.getReadState(7L, 1L, forum, List.of(10L), List.of(20L, 21L));
+
+        assertEquals(7, summary.getUnreadCount());
+        assertEquals(List.of(10L), summary.getUnreadEntryIds());
+        assertEquals(List.of(20L, 21L), summary.getUnreadCommentIds());
+    }
+
+    @Test
+    void testGetReadState_SomeRead() {
+        Mockito.when(forumReadStateRepository.findByUserIdAndCourseId(7L, 1L)).thenReturn(state(List.of(10L), List.of(21L)));
+
+        ForumReadSummary summary = forumReadService.getReadState(7L, 1L, forum, List.of(10L, 11L), List.of(20L, 21L));
+
+        assertEquals(5, summary.getUnreadCount());
+        assertEquals(List.of(11L), summary.getUnreadEntryIds());
+        assertEquals(List.of(20L), summary.getUnreadCommentIds());
+    }
+
+    @Test
+    void testMarkRead_OnlyIdsOfTheForum() {
+        Mockito.when(entryRepository.findIdsOfForumIn(5L, List.of(10L, 99L))).thenReturn(List.of(10L));
+        Mockito.when(commentRepository.findIdsOfForumIn(5L, List.of(20L, 21L))).thenReturn(List.of(20L, 21L));
+        Mockito.when(commentRepository.findIdsOfForumIn(5L, List.of(22L))).thenReturn(List.of());
+        Mockito.when(forumReadStateRepository.lockByUserIdAndCourseId(7L, 1L)).thenReturn(state(List.of(), List.of(20L)));
+
+        ForumReadSummary summary = forumReadService.markRead(7L, 1L, forum, List.of(10L, 99L, 10L), List.of(20L, 21L, 22L));
+
+        assertEquals(4, summary.getUnreadCount());
+        ArgumentCaptor<ForumReadState> saved = ArgumentCaptor.forClass(ForumReadState.class);
+        Mockito.verify(forumReadStateRepository).save(saved.capture());
+        assertEquals(3, saved.getValue().getReadCount());
+        assertTrue(ReadBitmap.fromBytes(saved.getValue().getEntries()).contains(10L));
+        assertFalse(ReadBitmap.fromBytes(saved.getValue().getEntries()).contains(99L));
+        assertTrue(ReadBitmap.fromBytes(saved.getValue().getComments()).contains(21L));
+    }
+
+    @Test
+    void testMarkRead_AlreadyReadIsNotSaved() {
+        Mockito.when(entryRepository.findIdsOfForumIn(5L, List.of(10L))).thenReturn(List.of(10L));
+        Mockito.when(forumReadStateRepository.lockByUserIdAndCourseId(7L, 1L)).thenReturn(state(List.of(10L), List.of()));
+
+        ForumReadSummary summary = forumReadService.markRead(7L, 1L, forum, List.of(10L), List.of());
+
+        assertEquals(6, summary.getUnreadCount());
+        Mockito.verify(forumReadStateRepository, Mockito.never()).save(Mockito.any());
+    }
+
+    @Test
+    void testMarkRead_RetriedWhenCreatedConcurrently() {
+        Mockito.when(entryRepository.findIdsOfForumIn(5L, List.of(10L))).thenReturn(List.of(10L));
+        Mockito.when(forumReadStateRepository.lockByUserIdAndCourseId(7L, 1L)).thenReturn(null, state(List.of(11L), List.of()));
+        Mockito.when(forumReadStateRepository.save(Mockito.any()))
+                .thenThrow(new DataIntegrityViolationException("Duplicate entry"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        ForumReadSummary summary = forumReadService.markRead(7L, 1L, forum, List.of(10L), List.of());
+
+        assertEquals(5, summary.getUnreadCount());
+        Mockito.verify(forumReadStateRepository, Mockito.times(2)).save(Mockito.any());
+    }
+
+    @Test
+    void testMarkAllRead_InChunksOfEntries() {
+        Mockito.when(entryRepository.findNextIdsOfForum(Mockito.eq(5L), Mockito.eq(Long.MIN_VALUE), Mockito.any())).thenReturn(List.of(10L, 11L));
+        Mockito.when(entryRepository.findNextIdsOfForum(Mockito.eq(5L), Mockito.eq(11L), Mockito.any())).thenReturn(List.of(12L));
+        Mockito.when(commentRepository.findIdsOfEntries(List.of(10L, 11L))).thenReturn(List.of(20L, 21L, 22L));
+        Mockito.when(commentRepository.findIdsOfEntries(List.of(12L))).thenReturn(List.of(23L));
+
+        ForumReadSummary summary = forumReadService.markAllRead(7L, 1L, forum);
+
+        assertEquals(0, summary.getUnreadCount());
+        ArgumentCaptor<ForumReadState> saved = ArgumentCaptor.forClass(ForumReadState.class);
+        Mockito.verify(forumReadStateRepository).save(saved.capture());
+        assertEquals(7, saved.getValue().getReadCount());
+        assertEquals(7L, saved.getValue().getUserId());
+        assertEquals(1L, saved.getValue().getCourseId());
+    }
+
+}
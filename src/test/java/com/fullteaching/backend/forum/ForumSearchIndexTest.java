@@ -0,0 +1,103 @@
+package com.fullteaching.backend.forum;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ForumSearchIndexTest {
+
+    private ForumSearchIndex index;
+
+    @BeforeEach
+    public void init() {
+        index = new ForumSearchIndex();
+    }
+
+    @Test
+    void testTokenize_FoldsCaseAndAccents() {
+        assertEquals(List.of("cafe", "examen", "las", "2020"), ForumSearchIndex.tokenize("¡Café, EXAMEN a las 2020!"));
+        assertTrue(ForumSearchIndex.tokenize(null).isEmpty());
+    }
+
+    @Test
+    void testSearch_RanksByRelevance() {
+        add(ForumSearchIndex.COMMENT, 10L, 1L, "The exam is on Monday");
+        add(ForumSearchIndex.ENTRY, 1L, 1L, "Exam date");
+        add(ForumSearchIndex.COMMENT, 11L, 1L, "Monday or Tuesday, nobody knows");
+        add(ForumSearchIndex.COMMENT, 12L, 2L, "Nothing to see here");
+
+        List<ForumSearchIndex.Hit> hits = index.search(ForumSearchIndex.tokenize("exam monday"), 10, Float.MAX_VALUE, -1);
+
+        assertEquals(3, hits.size());
+        //Entry titles weigh more than comments
+        assertEquals(ForumSearchIndex.ENTRY, hits.get(0).type);
+        assertEquals(1L, hits.get(0).id);
+        //Both terms before one of them
+        assertEquals(10L, hits.get(1).id);
+        assertEquals(11L, hits.get(2).id);
+        assertTrue(hits.get(0).score > hits.get(1).score && hits.get(1).score > hits.get(2).score);
+    }
+
+    @Test
+    void testSearch_PagesAfterTheLastHit() {
+        for (long id = 1; id <= 5; id++) {
+            add(ForumSearchIndex.COMMENT, id, 1L, "same words");
+        }
+
+        List<ForumSearchIndex.Hit> first = index.search(List.of("words"), 2, Float.MAX_VALUE, -1);
+        ForumSearchIndex.Hit last = first.get(1);
+        List<ForumSearchIndex.Hit> second = index.search(List.of("words"), 2, last.score, last.doc);
+        List<ForumSearchIndex.Hit> third = index.search(List.of("words"), 2, second.get(1).score, second.get(1).doc);
+
+        //Same score: by document
+        assertEquals(List.of(1L, 2L), List.of(first.get(0).id, first.get(1).id));
+        assertEquals(List.of(3L, 4L), List.of(second.get(0).id, second.get(1).id));
+        assertEquals(1, third.size());
+        assertEquals(5L, third.get(0).id);
+    }
+
+    @Test
+    void testAdd_DocumentIsNotAddedTwice() {
+        assertTrue(add(ForumSearchIndex.ENTRY, 1L, 1L, "Exam"));
+        //A comment may have the same id as an entry
+        assertTrue(add(ForumSearchIndex.COMMENT, 1L, 1L, "Exam"));
+        assertFalse(add(ForumSearchIndex.ENTRY, 1L, 1L, "Exam"));
+
+        assertEquals(2, index.size());
+        assertTrue(index.contains(ForumSearchIndex.COMMENT, 1L));
+        assertFalse(index.contains(ForumSearchIndex.COMMENT, 2L));
+    }
+
+    @Test
+    void testWriteAndRead() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (long id = 1; id <= 300; id++) {
+            List<String> tokens = ForumSearchIndex.tokenize("Comment number " + id);
+            ForumSearchIndex.write(out, ForumSearchIndex.COMMENT, id, 1L, tokens.size(), ForumSearchIndex.termFrequencies(tokens));
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int i = 0; i < 300; i++) {
+            index.read(in);
+        }
+
+        assertEquals(300, index.size());
+        List<ForumSearchIndex.Hit> hits = index.search(List.of("250"), 10, Float.MAX_VALUE, -1);
+        assertEquals(1, hits.size());
+        assertEquals(250L, hits.get(0).id);
+        assertEquals(300, index.search(List.of("comment"), 1000, Float.MAX_VALUE, -1).size());
+    }
+
+    private boolean add(byte type, long id, long entryId, String text) {
+        List<String> tokens = ForumSearchIndex.tokenize(text);
+        return index.add(type, id, entryId, tokens.size(), ForumSearchIndex.termFrequencies(tokens));
+    }
+}
@@ -0,0 +1,209 @@
+package com.fullteaching.backend.forum;
+
+import com.fullteaching.backend.comment.Comment;
+import com.fullteaching.backend.comment.CommentRepository;
+import com.fullteaching.backend.entry.Entry;
+import com.fullteaching.backend.entry.EntryRepository;
+import com.fullteaching.backend.user.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@RunWith(MockitoJUnitRunner.class)
+class ForumSearchServiceTest {
+
+    @InjectMocks
+    private ForumSearchService forumSearchService;
+
+    @Mock
+    private EntryRepository entryRepository;
+
+    @Mock
+    private CommentRepository commentRepository;
+
+    @Mock
+    private ForumSearchDatabaseRepository databaseRepository;
+
+    private Path indexDir;
+
+    private Forum forum;
+
+    @BeforeEach
+    public void init() throws IOException {
+        MockitoAnnotations.initMocks(this);
+        indexDir = Files.createTempDirectory("forum-search");
+        configure(forumSearchService);
+        Mockito.when(databaseRepository.findFirstByOrderByIdAsc()).thenReturn(new ForumSearchDatabase("db-1"));
+
+        forum = new Forum(true);
+        forum.setId(5L);
+        forum.setEntryCount(3);
+        forum.setCommentCount(2);
+        Mockito.when(entryRepository.findNextTitlesOfForum(Mockito.eq(5L), Mockito.eq(Long.MIN_VALUE), Mockito.any()))
+                .thenReturn(List.<Object[]>of(new Object[] { 1L, "Exam date" }, new Object[] { 2L, "Project groups" }));
+        Mockito.when(entryRepository.findNextTitlesOfForum(Mockito.eq(5L), Mockito.eq(2L), Mockito.any()))
+                .thenReturn(List.<Object[]>of(new Object[] { 3L, "Exam review" }));
+        Mockito.when(commentRepository.findMessagesOfEntries(List.of(1L, 2L)))
+                .thenReturn(List.<Object[]>of(new Object[] { 1L, 10L, "Is the exam on Monday?" }, new Object[] { 2L, 11L, "Groups of three" }));
+        Mockito.when(commentRepository.findMessagesOfEntries(List.of(3L))).thenReturn(List.of());
+        Mockito.when(entryRepository.findSearchRows(Mockito.any())).thenAnswer(invocation -> {
+            List<Object[]> rows = new ArrayList<>();
+            for (Long id : invocation.<List<Long>>getArgument(0)) {
+                rows.add(new Object[] { id, "Entry " + id, 100L + id, "Vic" });
+            }
+            return rows;
+        });
+        Mockito.when(commentRepository.findSearchRows(Mockito.any())).thenAnswer(invocation -> {
+            List<Object[]> rows = new ArrayList<>();
+            for (Long id : invocation.<List<Long>>getArgument(0)) {
+                rows.add(new Object[] { id, "Comment " + id, 200L + id, "Vic" });
+            }
+            return rows;
+        });
+    }
+
+    @AfterEach
+    public void cleanUp() throws IOException {
+        FileSystemUtils.deleteRecursively(indexDir);
+    }
+
+    @Test
+    void testSearch_BuildsTheIndexInChunks() {
+        ForumSearchPage first = forumSearchService.search(1L, forum, "EXAM", null, 2);
+        ForumSearchPage second = forumSearchService.search(1L, forum, "exam", ForumSearchPage.parseCursor(first.getNextCursor()), 2);
+
+        assertEquals(2, first.getHits().size());
+        assertEquals(ForumSearchHit.Type.ENTRY, first.getHits().get(0).getType());
+        assertEquals(1L, first.getHits().get(0).getEntryId());
+        assertEquals("Entry 1", first.getHits().get(0).getText());
+        assertEquals(101L, first.getHits().get(0).getDate());
+        assertNull(first.getHits().get(0).getCommentId());
+        assertEquals(3L, first.getHits().get(1).getEntryId());
+        assertEquals(1, second.getHits().size());
+        assertEquals(ForumSearchHit.Type.COMMENT, second.getHits().get(0).getType());
+        assertEquals(Long.valueOf(10L), second.getHits().get(0).getCommentId());
+        assertEquals(1L, second.getHits().get(0).getEntryId());
+        assertNull(second.getNextCursor());
+        //Built only once
+        Mockito.verify(entryRepository, Mockito.times(2)).findNextTitlesOfForum(Mockito.eq(5L), Mockito.anyLong(), Mockito.any());
+        assertTrue(Files.exists(indexDir.resolve("forum-1.idx")));
+    }
+
+    @Test
+    void testIndexComment_FoundAfterARestart() {
+        forumSearchService.search(1L, forum, "exam", null, 10);
+        forumSearchService.indexComment(1L, 2L, comment(12L, "Can we change groups before the exam?"));
+        forum.setCommentCount(3);
+
+        ForumSearchService restarted = restarted();
+        ForumSearchPage page = restarted.search(1L, forum, "groups", null, 10);
+
+        assertEquals(3, page.getHits().size());
+        assertTrue(page.getHits().stream().anyMatch(hit -> Long.valueOf(12L).equals(hit.getCommentId())));
+        //Read from the file
+        Mockito.verify(entryRepository, Mockito.times(2)).findNextTitlesOfForum(Mockito.eq(5L), Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    void testSearch_RebuildsAnIndexThatDoesNotMatchTheCounters() {
+        forumSearchService.search(1L, forum, "exam", null, 10);
+        forum.setCommentCount(4);
+
+        ForumSearchService restarted = restarted();
+        restarted.search(1L, forum, "exam", null, 10);
+
+        Mockito.verify(entryRepository, Mockito.times(4)).findNextTitlesOfForum(Mockito.eq(5L), Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    void testIndexEntry_CourseNeverSearched() {
+        Entry entry = new Entry("Exam date", 100L, null);
+        entry.setId(4L);
+        entry.setComments(List.of(comment(13L, "When?")));
+
+        forumSearchService.indexEntry(1L, entry);
+
+        //Built from the database when it is first searched
+        assertFalse(Files.exists(indexDir.resolve("forum-1.idx")));
+        Mockito.verifyZeroInteractions(entryRepository, commentRepository);
+    }
+
+    @Test
+    void testSearch_QueryWithoutWords() {
+        ForumSearchPage page = forumSearchService.search(1L, forum, "¿?", null, 10);
+
+        assertTrue(page.getHits().isEmpty());
+        assertNull(page.getNextCursor());
+        Mockito.verifyZeroInteractions(entryRepository, commentRepository);
+    }
+
+    @Test
+    void testSearch_RebuildsAnIndexOfAnotherDatabase() {
+        forumSearchService.search(1L, forum, "exam", null, 10);
+
+        //Created again with the same ids
+        Mockito.when(databaseRepository.findFirstByOrderByIdAsc()).thenReturn(null, new ForumSearchDatabase("db-2"));
+        ForumSearchService restarted = restarted();
+        restarted.search(1L, forum, "exam", null, 10);
+
+        Mockito.verify(databaseRepository).save(Mockito.any(ForumSearchDatabase.class));
+        Mockito.verify(entryRepository, Mockito.times(4)).findNextTitlesOfForum(Mockito.eq(5L), Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    void testSearch_RebuildsAnIndexOfAnotherForum() {
+        forumSearchService.search(1L, forum, "exam", null, 10);
+        forum.setId(6L);
+
+        restarted().search(1L, forum, "exam", null, 10);
+
+        Mockito.verify(entryRepository).findNextTitlesOfForum(Mockito.eq(6L), Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    void testDeleteIndex() {
+        forumSearchService.search(1L, forum, "exam", null, 10);
+
+        forumSearchService.deleteIndex(1L);
+
+        assertFalse(Files.exists(indexDir.resolve("forum-1.idx")));
+        forumSearchService.search(1L, forum, "exam", null, 10);
+        Mockito.verify(entryRepository, Mockito.times(4)).findNextTitlesOfForum(Mockito.eq(5L), Mockito.anyLong(), Mockito.any());
+    }
+
+    private ForumSearchService restarted() {
+        ForumSearchService restarted = new ForumSearchService();
+        ReflectionTestUtils.setField(restarted, "entryRepository", entryRepository);
+        ReflectionTestUtils.setField(restarted, "commentRepository", commentRepository);
+        ReflectionTestUtils.setField(restarted, "databaseRepository", databaseRepository);
+        configure(restarted);
+        return restarted;
+    }
+
+    private void configure(ForumSearchService service) {
+        ReflectionTestUtils.setField(service, "indexDir", indexDir.toString());
+        ReflectionTestUtils.setField(service, "chunkSize", 2);
+    }
+
+    private Comment comment(long id, String message) {
+        Comment comment = new Comment(message, 100L, new User("Victoria", "123", "Vic", "vic.jpg"));
+        comment.setId(id);
+        return comment;
+    }
+}
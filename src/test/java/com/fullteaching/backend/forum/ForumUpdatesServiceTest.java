@@ -0,0 +1,246 @@
+package com.fullteaching.backend.forum;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fullteaching.backend.comment.Comment;
+import com.fullteaching.backend.entry.Entry;
+import com.fullteaching.backend.user.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ForumUpdatesServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ForumUpdatesService forumUpdatesService;
+
+    private User author;
+
+    @BeforeEach
+    public void init() {
+        forumUpdatesService = new ForumUpdatesService();
+        ReflectionTestUtils.setField(forumUpdatesService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(forumUpdatesService, "queueCapacity", 16);
+        ReflectionTestUtils.setField(forumUpdatesService, "historySize", 3);
+        ReflectionTestUtils.setField(forumUpdatesService, "sendTimeoutMs", 1000L);
+
+        author = new User("Victoria", "123", "Vic", "vic.jpg");
+    }
+
+    @Test
+    void testSubscribe_HelloThenUpdates() throws Exception {
+        List<JsonNode> received = new ArrayList<>();
+        WebSocketSession session = session("s1", received, null);
+
+        forumUpdatesService.subscribe(1L, session, null);
+        forumUpdatesService.publishEntry(1L, entry(7L));
+        forumUpdatesService.publishComment(1L, 7L, null, comment(8L));
+        forumUpdatesService.publishComment(2L, 9L, null, comment(10L));
+
+        assertEquals(3, received.size());
+        assertEquals("HELLO", received.get(0).get("type").asText());
+        long seq = received.get(0).get("seq").asLong();
+        assertEquals("ENTRY", received.get(1).get("type").asText());
+        assertEquals(seq + 1, received.get(1).get("seq").asLong());
+        assertEquals("Vic", received.get(1).get("entry").get("userNickName").asText());
+        assertEquals("COMMENT", received.get(2).get("type").asText());
+        assertEquals(seq + 2, received.get(2).get("seq").asLong());
+        assertEquals(7L, received.get(2).get("entryId").asLong());
+        assertFalse(received.get(2).has("parentId"));
+    }
+
+    @Test
+    void testPublish_FullQueueIsCoalesced() throws Exception {
+        ReflectionTestUtils.setField(forumUpdatesService, "queueCapacity", 2);
+        List<JsonNode> received = new ArrayList<>();
+        List<Runnable> slowClient = new ArrayList<>();
+        WebSocketSession session = session("s1", received, slowClient);
+
+        //The hello message leaves the queue, but is not sent until the client is released
+        forumUpdatesService.subscribe(1L, session, null);
+        assertEquals(1, slowClient.size());
+        for (long id = 1; id <= 5; id++) {
+            forumUpdatesService.publishComment(1L, 7L, 1L, comment(id));
+        }
+        release(slowClient);
+
+        assertEquals(4, received.size());
+        assertEquals("HELLO", received.get(0).get("type").asText());
+        assertEquals(1L, received.get(1).get("comment").get("id").asLong());
+        assertEquals(2L, received.get(2).get("comment").get("id").asLong());
+        JsonNode batch = received.get(3);
+        assertEquals("BATCH", batch.get("type").asText());
+        assertEquals(3, batch.get("updates").size());
+        assertEquals(3L, batch.get("updates").get(0).get("comment").get("id").asLong());
+        assertEquals(5L, batch.get("updates").get(2).get("comment").get("id").asLong());
+        assertEquals(batch.get("updates").get(2).get("seq").asLong(), batch.get("seq").asLong());
+    }
+
+    @Test
+    void testSubscribe_ResumesFromLastSeen() throws Exception {
+        List<JsonNode> first = new ArrayList<>();
+        forumUpdatesService.subscribe(1L, session("s1", first, null), null);
+        forumUpdatesService.publishEntry(1L, entry(1L));
+        forumUpdatesService.publishEntry(1L, entry(2L));
+        forumUpdatesService.publishEntry(1L, entry(3L));
+        long lastSeen = first.get(1).get("seq").asLong();
+
+        List<JsonNode> resumed = new ArrayList<>();
+        forumUpdatesService.subscribe(1L, session("s2", resumed, null), lastSeen);
+        List<JsonNode> upToDate = new ArrayList<>();
+        forumUpdatesService.subscribe(1L, session("s3", upToDate, null), lastSeen + 2);
+
+        assertEquals(1, resumed.size());
+        assertEquals("BATCH", resumed.get(0).get("type").asText());
+        assertEquals(2, resumed.get(0).get("updates").size());
+        assertEquals(2L, resumed.get(0).get("updates").get(0).get("entryId").asLong());
+        assertEquals("HELLO", upToDate.get(0).get("type").asText());
+        assertEquals(lastSeen + 2, upToDate.get(0).get("seq").asLong());
+    }
+
+    @Test
+    void testSubscribe_ResetWhenUpdatesAreNoLongerKept() throws Exception {
+        List<JsonNode> first = new ArrayList<>();
+        forumUpdatesService.subscribe(1L, session("s1", first, null), null);
+        for (long id = 1; id <= 5; id++) {
+            forumUpdatesService.publishEntry(1L, entry(id));
+        }
+        long lastSeen = first.get(1).get("seq").asLong();
+
+        List<JsonNode> resumed = new ArrayList<>();
+        forumUpdatesService.subscribe(1L, session("s2", resumed, null), lastSeen);
+        //A 'seq' this instance never published, as after a restart
+        List<JsonNode> unknown = new ArrayList<>();
+        forumUpdatesService.subscribe(1L, session("s3", unknown, null), Long.MAX_VALUE);
+
+        assertEquals("RESET", resumed.get(0).get("type").asText());
+        assertEquals(lastSeen + 4, resumed.get(0).get("seq").asLong());
+        assertEquals("RESET", unknown.get(0).get("type").asText());
+    }
+
+    @Test
+    void testPublish_SlowClientDoesNotDelayOthers() throws Exception {
+        List<JsonNode> slow = new ArrayList<>();
+        List<Runnable> slowClient = new ArrayList<>();
+        forumUpdatesService.subscribe(1L, session("s1", slow, slowClient), null);
+        List<JsonNode> fast = new ArrayList<>();
+        forumUpdatesService.subscribe(1L, session("s2", fast, null), null);
+
+        forumUpdatesService.publishEntry(1L, entry(1L));
+        forumUpdatesService.publishEntry(1L, entry(2L));
+
+        assertEquals(3, fast.size());
+        assertEquals(0, slow.size());
+        release(slowClient);
+        assertEquals(3, slow.size());
+    }
+
+    @Test
+    void testPublish_FailedSessionIsRemoved() throws Exception {
+        NativeWebSocketSession session = Mockito.mock(NativeWebSocketSession.class);
+        Mockito.when(session.getId()).thenReturn("s1");
+        RemoteEndpoint.Async remote = remote(session);
+        //Also how a client that does not read fails, once 'send-timeout-ms' is over
+        Mockito.doAnswer(invocation -> {
+            invocation.<SendHandler>getArgument(1).onResult(new SendResult(new IOException("Broken pipe")));
+            return null;
+        }).when(remote).sendText(Mockito.anyString(), Mockito.any());
+
+        forumUpdatesService.subscribe(1L, session, null);
+
+        assertEquals(0, forumUpdatesService.getSubscriberCount(1L));
+        Mockito.verify(remote).setSendTimeout(1000L);
+        Mockito.verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertTrue(channels().isEmpty());
+    }
+
+    @Test
+    void testUnsubscribe_EmptyChannelIsRemoved() throws Exception {
+        WebSocketSession first = session("s1", new ArrayList<>(), null);
+        WebSocketSession second = session("s2", new ArrayList<>(), null);
+        forumUpdatesService.subscribe(1L, first, null);
+        forumUpdatesService.subscribe(1L, second, null);
+
+        forumUpdatesService.unsubscribe(1L, first);
+        assertEquals(1, channels().size());
+        forumUpdatesService.unsubscribe(1L, second);
+        forumUpdatesService.publishEntry(1L, entry(1L));
+
+        assertTrue(channels().isEmpty());
+    }
+
+    // Sends complete right away, or are held in 'held' until released if it is not null
+    private WebSocketSession session(String id, List<JsonNode> received, List<Runnable> held) {
+        NativeWebSocketSession session = Mockito.mock(NativeWebSocketSession.class);
+        Mockito.when(session.getId()).thenReturn(id);
+        RemoteEndpoint.Async remote = remote(session);
+        Mockito.doAnswer(invocation -> {
+            String message = invocation.getArgument(0);
+            SendHandler handler = invocation.getArgument(1);
+            Runnable sent = () -> {
+                try {
+                    received.add(objectMapper.readTree(message));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                handler.onResult(new SendResult());
+            };
+            if (held != null) {
+                held.add(sent);
+            } else {
+                sent.run();
+            }
+            return null;
+        }).when(remote).sendText(Mockito.anyString(), Mockito.any());
+        return session;
+    }
+
+    private RemoteEndpoint.Async remote(NativeWebSocketSession session) {
+        Session nativeSession = Mockito.mock(Session.class);
+        RemoteEndpoint.Async remote = Mockito.mock(RemoteEndpoint.Async.class);
+        Mockito.when(session.getNativeSession(Session.class)).thenReturn(nativeSession);
+        Mockito.when(nativeSession.getAsyncRemote()).thenReturn(remote);
+        return remote;
+    }
+
+    // Completes the sends held so far and the ones that follow
+    private void release(List<Runnable> held) {
+        while (!held.isEmpty()) {
+            held.remove(0).run();
+        }
+    }
+
+    private Map<?, ?> channels() {
+        return (Map<?, ?>) ReflectionTestUtils.getField(forumUpdatesService, "channels");
+    }
+
+    private Entry entry(long id) {
+        Entry entry = new Entry("Entry " + id, System.currentTimeMillis(), author);
+        entry.setId(id);
+        entry.setComments(Collections.emptyList());
+        return entry;
+    }
+
+    private Comment comment(long id) {
+        Comment comment = new Comment("Comment " + id, System.currentTimeMillis(), author);
+        comment.setId(id);
+        return comment;
+    }
+}
@@ -0,0 +1,96 @@
+package com.fullteaching.backend.forum;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadBitmapTest {
+
+    @Test
+    void testAddAndContains() {
+        ReadBitmap bitmap = new ReadBitmap();
+
+        assertTrue(bitmap.add(5L));
+        assertTrue(bitmap.add(70000L));
+        assertTrue(bitmap.add(1L << 40));
+        assertFalse(bitmap.add(5L));
+
+        assertEquals(3, bitmap.cardinality());
+        assertTrue(bitmap.contains(5L));
+        assertTrue(bitmap.contains(70000L));
+        assertTrue(bitmap.contains(1L << 40));
+        assertFalse(bitmap.contains(6L));
+        assertFalse(bitmap.contains(5L + 65536));
+        assertFalse(bitmap.contains(-5L));
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(-1L));
+    }
+
+    @Test
+    void testDenseGroupBecomesBitmap() {
+        ReadBitmap bitmap = new ReadBitmap();
+        for (long id = 0; id < 10000; id += 2) {
+            bitmap.add(id);
+        }
+        for (long id = 1; id < 10000; id += 2) {
+            bitmap.add(id);
+        }
+
+        assertEquals(10000, bitmap.cardinality());
+        for (long id = 0; id < 10000; id++) {
+            assertTrue(bitmap.contains(id));
+        }
+        assertFalse(bitmap.contains(10000L));
+        assertFalse(bitmap.add(9999L));
+    }
+
+    @Test
+    void testSerializationRoundTrip() {
+        ReadBitmap bitmap = new ReadBitmap();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            bitmap.add(random.nextInt(200000));
+        }
+        for (long id = 1_000_000; id < 1_006_000; id++) {
+            bitmap.add(id);
+        }
+
+        ReadBitmap copy = ReadBitmap.fromBytes(bitmap.toBytes());
+
+        assertEquals(bitmap.cardinality(), copy.cardinality());
+        for (long id = 0; id < 1_010_000; id++) {
+            assertEquals(bitmap.contains(id), copy.contains(id));
+        }
+        assertTrue(copy.add(2_000_000L));
+        assertFalse(copy.add(1_000_000L));
+    }
+
+    @Test
+    void testSerializedCompactly() {
+        //Ids of a course are close to each other, but interleaved with those of other courses
+        ReadBitmap bitmap = new ReadBitmap();
+        for (long id = 500_000; id < 530_000; id += 3) {
+            bitmap.add(id);
+        }
+
+        byte[] bytes = bitmap.toBytes();
+
+        assertEquals(10000, ReadBitmap.fromBytes(bytes).cardinality());
+        assertTrue(bytes.length < 15000, "Serialized in " + bytes.length + " bytes");
+    }
+
+    @Test
+    void testFromBytes_EmptyAndInvalid() {
+        assertEquals(0, ReadBitmap.fromBytes(null).cardinality());
+        assertEquals(0, ReadBitmap.fromBytes(new ReadBitmap().toBytes()).cardinality());
+
+        ReadBitmap bitmap = new ReadBitmap();
+        bitmap.add(123456L);
+        byte[] bytes = bitmap.toBytes();
+        byte[] truncated = java.util.Arrays.copyOf(bytes, bytes.length - 1);
+        assertThrows(IllegalArgumentException.class, () -> ReadBitmap.fromBytes(truncated));
+        assertThrows(IllegalArgumentException.class, () -> ReadBitmap.fromBytes(new byte[] { 9, 0 }));
+    }
+
+}
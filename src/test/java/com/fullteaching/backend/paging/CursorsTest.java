@@ -0,0 +1,25 @@
+package com.fullteaching.backend.paging;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CursorsTest {
+
+    @Test
+    void testRoundTrip() {
+        assertArrayEquals(new long[] { 1500L, -7L, Long.MAX_VALUE }, Cursors.decodeLongs(Cursors.encode(1500L, -7L, Long.MAX_VALUE), 3));
+        //Only the last value may contain the separator
+        assertArrayEquals(new String[] { "3", "nick:name" }, Cursors.decode(Cursors.encode(3L, "nick:name"), 2));
+        assertArrayEquals(new String[] { "3", "" }, Cursors.decode(Cursors.encode(3L, ""), 2));
+        assertFalse(Cursors.encode(1L, 2L).contains("="));
+    }
+
+    @Test
+    void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> Cursors.decodeLongs("not base64!", 2));
+        assertThrows(IllegalArgumentException.class, () -> Cursors.decodeLongs(Cursors.encode(1L), 2));
+        assertThrows(IllegalArgumentException.class, () -> Cursors.decodeLongs(Cursors.encode(1L, 2L, 3L), 2));
+        assertThrows(IllegalArgumentException.class, () -> Cursors.decodeLongs(Cursors.encode(1L, "a"), 2));
+    }
+}
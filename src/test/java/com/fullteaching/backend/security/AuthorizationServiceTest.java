@@ -1,5 +1,7 @@
 package com.fullteaching.backend.security;
 
+import com.fullteaching.backend.course.Course;
+import com.fullteaching.backend.session.Session;
 import com.fullteaching.backend.user.User;
 import com.fullteaching.backend.user.UserComponent;
 import org.junit.jupiter.api.Assertions;
@@ -13,6 +15,7 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.ArrayList;
 
@@ -189,4 +192,26 @@ class AuthorizationServiceTest {
             authorizationService.checkAuthorizationUsers(object, null);
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCheckAuthorization_DeletedCourse() {
+        var course = new Course("prog", "prog.jpg", loggedUser);
+        ReflectionTestUtils.setField(course, "deleted", true);
+
+        var response = authorizationService.checkAuthorization(course, loggedUser);
+
+        Assertions.assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    @Test
+    void testCheckAuthorizationUsers_SessionOfDeletedCourse() {
+        var course = new Course("prog", "prog.jpg", loggedUser);
+        ReflectionTestUtils.setField(course, "deleted", true);
+        var userList = new ArrayList<User>();
+        userList.add(loggedUser);
+
+        var response = authorizationService.checkAuthorizationUsers(new Session("Intro", "First session", 0, course), userList);
+
+        Assertions.assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+}
@@ -1,6 +1,8 @@
 package com.fullteaching.backend.session;
 
+import com.fullteaching.backend.course.ContentChange;
 import com.fullteaching.backend.course.Course;
+import com.fullteaching.backend.course.CourseCache;
 import com.fullteaching.backend.course.CourseRepository;
 import com.fullteaching.backend.security.AuthorizationService;
 import com.fullteaching.backend.user.User;
@@ -35,6 +37,9 @@ class SessionControllerTest {
     @Mock
     private AuthorizationService authorizationService;
 
+    @Mock
+    private CourseCache courseCache;
+
     private User loggedUser;
 
 
@@ -122,4 +127,47 @@ class SessionControllerTest {
         assertEquals(session.getTitle(), savedSession.getTitle());
         assertEquals(session.getDescription(), savedSession.getDescription());
     }
+
+    @Test
+    void testPatchSession_Success() {
+        var patch = new SessionPatch(null, 3L, "New title", null, null);
+
+        Mockito.when(sessionRepository.findCourseId(5L)).thenReturn(1L);
+        Mockito.when(courseRepository.findTeacher(1L)).thenReturn(loggedUser);
+        Mockito.when(authorizationService.checkAuthorization(loggedUser, loggedUser)).thenReturn(null);
+        Mockito.when(sessionRepository.patch(5L, 3L, "New title", null, null)).thenReturn(1);
+
+        var resp = sessionController.patchSession(patch, "5");
+
+        Mockito.verify(sessionRepository, Mockito.never()).save(Mockito.any());
+        Mockito.verify(courseCache).invalidate(1L, ContentChange.saved(ContentChange.Type.SESSION, 5L));
+        assertEquals(HttpStatus.OK, resp.getStatusCode());
+        var applied = (SessionPatch) resp.getBody();
+        assertEquals(Long.valueOf(4L), applied.getVersion());
+        assertEquals("New title", applied.getTitle());
+        assertNull(applied.getDescription());
+    }
+
+    @Test
+    void testPatchSession_Conflict() {
+        var patch = new SessionPatch(null, 3L, "New title", null, null);
+
+        Mockito.when(sessionRepository.findCourseId(5L)).thenReturn(1L);
+        Mockito.when(courseRepository.findTeacher(1L)).thenReturn(loggedUser);
+        Mockito.when(authorizationService.checkAuthorization(loggedUser, loggedUser)).thenReturn(null);
+        Mockito.when(sessionRepository.patch(5L, 3L, "New title", null, null)).thenReturn(0);
+
+        var resp = sessionController.patchSession(patch, "5");
+
+        Mockito.verifyZeroInteractions(courseCache);
+        assertEquals(HttpStatus.CONFLICT, resp.getStatusCode());
+    }
+
+    @Test
+    void testPatchSession_MissingVersion() {
+        var resp = sessionController.patchSession(new SessionPatch(null, null, "New title", null, null), "5");
+
+        Mockito.verify(sessionRepository, Mockito.never()).patch(Mockito.anyLong(), Mockito.anyLong(), Mockito.any(), Mockito.any(), Mockito.any());
+        assertEquals(HttpStatus.BAD_REQUEST, resp.getStatusCode());
+    }
 }
\ No newline at end of file